@@ -283,6 +283,22 @@ implements   AttributeVisitor,
                                                                                .build();
     }
 
+    /**
+     * Returns the program class pool in which the call targets are looked up.
+     */
+    ClassPool getProgramClassPool()
+    {
+        return programClassPool;
+    }
+
+    /**
+     * Returns the library class pool in which the call targets are looked up.
+     */
+    ClassPool getLibraryClassPool()
+    {
+        return libraryClassPool;
+    }
+
     @Override
     public void visitAnyClass(Clazz clazz)
     {
@@ -18,13 +18,11 @@
 
 package proguard.analysis;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import proguard.classfile.Clazz;
 import proguard.classfile.Method;
@@ -50,26 +48,23 @@ import proguard.classfile.instruction.SwitchInstruction;
  * </p>
  *
  * <p>
- * In principle, dominator analysis is based on a simple equation:
- * <ol>
- *     <li>The entry node dominates only itself</li>
- *     <li>
- *         Any other node's dominator set is calculated by
- *         forming the intersection of the dominator sets of
- *         all its control flow predecessors. Afterwards, the node
- *         itself is also added to its dominator set.
- *     </li>
- * </ol>
- * Like this, the dominator information is propagated through the
- * control flow graph one by one, potentially requiring several
- * iterations until the solution is stable, as the dominator sets
- * of some predecessors might still be uninitialized when used.
+ * The calculator first groups the instructions of the method into
+ * basic blocks, i.e. straight sequences of instructions that are only
+ * entered at their first instruction and only left after their last one.
+ * Within a basic block, every instruction dominates the instructions
+ * that follow it. The dominators of the blocks themselves are computed on
+ * a compact graph of the blocks, represented by plain int arrays, with the
+ * iterative algorithm of Cooper, Harvey and Kennedy ("A Simple, Fast
+ * Dominance Algorithm"). It walks the blocks in reverse postorder and
+ * intersects the dominator tree paths of their predecessors, which
+ * typically converges after two or three passes. Dominance queries then
+ * take constant time, based on the preorder and postorder numbers of the
+ * dominator tree.
  * </p>
  *
  * <p>
- * The implementation here is based on an algorithm
- * that solves the underlying dataflow equation using optimized
- * {@link BitSet} objects instead of normal sets.
+ * Post-dominators and dominance frontiers are derived from the same graph
+ * when they are first requested.
  * </p>
  *
  * @author Samuel Hopstock
@@ -87,8 +82,8 @@ implements   AttributeVisitor
      * Virtual instruction offset modelling the method
      * entry. This is needed such that the method entry
      * is guaranteed to have no incoming control flow edges,
-     * as this would prevent the algorithm from converging
-     * properly without complicated alternative measures.
+     * and such that exception handlers that cover the first
+     * instruction have a common dominator with it.
      */
     public static final int ENTRY_NODE_OFFSET = -2;
 
@@ -103,17 +98,27 @@ implements   AttributeVisitor
                                                                            Instruction.OP_DRETURN,
                                                                            Instruction.OP_ARETURN);
 
-    /**
-     * Maps an offset to its dominator set, represented by
-     * a {@link BitSet}: This data structure contains at most one
-     * bit per offset in the method, which is set to 1 if the offset
-     * dominates the current instruction or 0 otherwise.
-     */
-    private final Map<Integer, BitSet> dominatorMap = new HashMap<>();
-    private       int                  bitSetSize   = 0;
+    private static final int ENTRY_NODE = 0;
+    private static final int NONE       = -1;
 
     private final boolean ignoreExceptions;
 
+    // The basic block graph of the current method. Node 0 is the entry
+    // node, the last node is the exit node, and the nodes in between are
+    // the basic blocks, in the order of their offsets.
+    private int   codeLength;
+    private int   exitNode;
+    private int[] instructionNodes;
+    private int[] nodeOffsets;
+    private int[] successorStarts;
+    private int[] successors;
+    private int[] predecessorStarts;
+    private int[] predecessors;
+
+    private DominatorTree      dominatorTree;
+    private DominatorTree      postDominatorTree;
+    private List<Set<Integer>> dominanceFrontiers;
+
     /**
      * Creates a new DominatorCalculator. The default behavior is to ignore exceptions.
      */
@@ -139,7 +144,9 @@ implements   AttributeVisitor
      * instruction is guaranteed to be executed once the
      * containing method is invoked, you can use the
      * virtual inferior {@link #EXIT_NODE_OFFSET} as a
-     * collection for all return instructions.
+     * collection for all return instructions. If the
+     * method never returns, every instruction dominates
+     * the exit.
      *
      * @param dominator The potentially dominating instruction's
      *                  offset
@@ -150,27 +157,111 @@ implements   AttributeVisitor
      */
     public boolean dominates(int dominator, int inferior)
     {
-        BitSet dominators = dominatorMap.get(inferior);
-        if (dominators == null)
+        int inferiorNode = reachableNode(inferior);
+        if (inferiorNode == NONE)
+        {
+            if (inferior == EXIT_NODE_OFFSET && dominatorTree != null)
+            {
+                // Nothing is executed on the way to an unreachable exit,
+                // so every instruction trivially dominates it.
+                return dominator >= ENTRY_NODE_OFFSET &&
+                       dominator <  codeLength;
+            }
+            throw new IllegalStateException("No dominator information known for offset " + inferior);
+        }
+
+        int dominatorNode = node(dominator);
+        if (dominatorNode == inferiorNode)
+        {
+            // Within a basic block, instructions dominate their successors.
+            return dominator <= inferior;
+        }
+
+        return dominatorNode != NONE &&
+               dominatorTree.dominates(dominatorNode, inferiorNode);
+    }
+
+    /**
+     * Check if one instruction post-dominates another one.
+     * If this is the case, the post-dominating instruction
+     * is guaranteed to be executed after the inferior
+     * instruction, before the method returns. If the
+     * method can't return anymore after the inferior
+     * instruction, every instruction post-dominates it.
+     *
+     * @param postDominator The potentially post-dominating instruction's
+     *                      offset
+     * @param inferior      The potentially post-dominated instruction's
+     *                      offset
+     * @return true if the potential post-dominator is indeed
+     *     guaranteed to be executed after the inferior
+     */
+    public boolean postDominates(int postDominator, int inferior)
+    {
+        int inferiorNode = reachableNode(inferior);
+        if (inferiorNode == NONE)
         {
             throw new IllegalStateException("No dominator information known for offset " + inferior);
         }
-        return dominators.get(offsetToIndex(dominator));
+
+        if (postDominatorTree == null)
+        {
+            // The post-dominators are the dominators of the reversed graph.
+            postDominatorTree = new DominatorTree(exitNode + 1,
+                                                  exitNode,
+                                                  predecessorStarts,
+                                                  predecessors,
+                                                  successorStarts,
+                                                  successors,
+                                                  dominatorTree);
+        }
+
+        if (!postDominatorTree.contains(inferiorNode))
+        {
+            return true;
+        }
+
+        int postDominatorNode = node(postDominator);
+        if (postDominatorNode == inferiorNode)
+        {
+            // Within a basic block, instructions post-dominate their predecessors.
+            return postDominator >= inferior;
+        }
+
+        return postDominatorNode != NONE &&
+               postDominatorTree.dominates(postDominatorNode, inferiorNode);
     }
 
     /**
-     * As we introduced {@link #ENTRY_NODE_OFFSET} and
-     * {@link #EXIT_NODE_OFFSET} as virtual instruction
-     * offsets, the rest of the instructions are shifted
-     * by those two places. In order to transparently handle
-     * this, this method converts actual method offsets
-     * to their internal index counterparts.
+     * Returns the dominance frontier of an instruction, i.e. the
+     * offsets of the instructions where the control flow paths that
+     * the instruction dominates meet paths that it doesn't dominate.
+     * These are always the first instructions of basic blocks, or
+     * {@link #EXIT_NODE_OFFSET}.
+     *
+     * @param offset The instruction's offset.
+     * @return The offsets of the dominance frontier.
      */
-    private int offsetToIndex(int offset)
+    public Set<Integer> getDominanceFrontier(int offset)
     {
-        return offset + 2;
+        int node = reachableNode(offset);
+        if (node == NONE)
+        {
+            throw new IllegalStateException("No dominator information known for offset " + offset);
+        }
+
+        if (dominanceFrontiers == null)
+        {
+            dominanceFrontiers = calculateDominanceFrontiers();
+        }
+
+        Set<Integer> dominanceFrontier = dominanceFrontiers.get(node);
+        return dominanceFrontier == null ?
+            Collections.emptySet() :
+            Collections.unmodifiableSet(dominanceFrontier);
     }
 
+
     // Implementations for AttributeVisitor
 
     @Override
@@ -182,152 +273,545 @@ implements   AttributeVisitor
     @Override
     public void visitCodeAttribute(Clazz clazz, Method method, CodeAttribute codeAttribute)
     {
-        dominatorMap.clear();
-        bitSetSize = offsetToIndex(codeAttribute.u4codeLength);
-
-        // Entry node only dominates itself,
-        // all other nodes are initialized to have all nodes dominate them
-        // (this is necessary due to the fact that the propagation uses
-        // intersection, requiring the full universe for uninitialized nodes)
-        BitSet entryDominators = new BitSet(bitSetSize);
-        entryDominators.set(offsetToIndex(ENTRY_NODE_OFFSET));
-        dominatorMap.put(ENTRY_NODE_OFFSET, entryDominators);
-        dominatorMap.put(EXIT_NODE_OFFSET, initBitSet());
-
-        propagateToSuccessor(ENTRY_NODE_OFFSET, 0);
-        for (int handler : findExceptionHandlers(codeAttribute, 0))
-        {
-            propagateToSuccessor(ENTRY_NODE_OFFSET, handler);
-        }
-        run(codeAttribute);
+        postDominatorTree  = null;
+        dominanceFrontiers = null;
+
+        createBasicBlockGraph(codeAttribute);
+
+        dominatorTree = new DominatorTree(exitNode + 1,
+                                          ENTRY_NODE,
+                                          successorStarts,
+                                          successors,
+                                          predecessorStarts,
+                                          predecessors,
+                                          null);
     }
 
+
+    // Small utility methods.
+
     /**
-     * Iterate through the whole method code one time, in the
-     * order of a breadth-first search algorithm over the control
-     * flow graph. I.e. handle direct child nodes before grand
-     * children.
+     * Returns the graph node of the given offset, or {@link #NONE}
+     * if no instruction starts at the offset.
      */
-    private void run(CodeAttribute codeAttribute)
+    private int node(int offset)
     {
-        if (codeAttribute.u4codeLength == 0)
+        return offset == ENTRY_NODE_OFFSET        ? ENTRY_NODE               :
+               offset == EXIT_NODE_OFFSET         ? exitNode                 :
+               offset >= 0 && offset < codeLength ? instructionNodes[offset] :
+                                                    NONE;
+    }
+
+    /**
+     * Returns the graph node of the given offset, or {@link #NONE}
+     * if no instruction starts at the offset, or if it can't be
+     * reached from the method entry.
+     */
+    private int reachableNode(int offset)
+    {
+        if (dominatorTree == null)
         {
-            // Skip the method if it doesn't contain any code (e.g. if it was skipped during Dex2Pro conversion).
-            return;
+            return NONE;
         }
-        LinkedHashSet<Integer> workList = new LinkedHashSet<>();
-        workList.add(0);
-        workList.addAll(findExceptionHandlers(codeAttribute, 0));
 
-        while (!workList.isEmpty())
+        int node = node(offset);
+        return node != NONE && dominatorTree.contains(node) ? node : NONE;
+    }
+
+    /**
+     * Creates the graph of the basic blocks of the given code.
+     *
+     * <p>
+     * An instruction has an edge to its regular successors: the
+     * next instruction, its branch targets, or the exit node for
+     * return instructions. Unless exceptions are ignored, it also
+     * has an edge to the exception handlers that cover any of its
+     * regular successors, so the instructions of a handler aren't
+     * dominated by the try block that it covers.
+     * </p>
+     */
+    private void createBasicBlockGraph(CodeAttribute codeAttribute)
+    {
+        byte[] code = codeAttribute.code;
+        codeLength  = codeAttribute.u4codeLength;
+
+        // Decode the instructions and collect their successors,
+        // with the exit node represented by its virtual offset.
+        int[]     instructionOffsets         = new int[codeLength];
+        int[]     instructionSuccessorStarts = new int[codeLength + 1];
+        int[]     instructionSuccessors      = new int[codeLength];
+        int[]     successorMarks             = new int[codeLength];
+        boolean[] leaders                    = new boolean[codeLength];
+        int       instructionCount           = 0;
+        int       successorCount             = 0;
+        int[]     targets                    = new int[2];
+
+        instructionNodes = new int[codeLength];
+        Arrays.fill(instructionNodes, NONE);
+
+        for (int offset = 0; offset < codeLength; )
         {
-            int offset = workList.stream()
-                                 .skip(workList.size() - 1)
-                                 .findFirst()
-                                 .orElseThrow(() -> new IllegalStateException("Can't get last element in non-empty work list"));
-            workList.remove(offset);
-
-            Instruction instruction       = InstructionFactory.create(codeAttribute.code, offset);
-            int         instructionLength = instruction.length(offset);
-            int         nextOffset        = offset + instructionLength;
-            boolean     nextOffsetExists  = nextOffset < codeAttribute.u4codeLength;
-
-            Set<Integer> successors = new HashSet<>();
+            Instruction instruction = InstructionFactory.create(code, offset);
+            int         nextOffset  = offset + instruction.length(offset);
+            int         targetCount = 0;
+            boolean     returns     = false;
+
             if (instruction instanceof BranchInstruction)
             {
                 BranchInstruction branch = (BranchInstruction) instruction;
-                successors.add(offset + branch.branchOffset);
-                if (nextOffsetExists && !UNCONDITIONAL_BRANCHES.contains(branch.opcode))
+                targets[targetCount++] = offset + branch.branchOffset;
+                if (nextOffset < codeLength && !UNCONDITIONAL_BRANCHES.contains(branch.opcode))
                 {
-                    successors.add(nextOffset);
+                    targets[targetCount++] = nextOffset;
                 }
             }
             else if (instruction instanceof SwitchInstruction)
             {
                 SwitchInstruction switchInstruction = (SwitchInstruction) instruction;
-                successors.add(offset + switchInstruction.defaultOffset);
-                for (int jumpOffset : switchInstruction.jumpOffsets)
+                int[]             jumpOffsets       = switchInstruction.jumpOffsets;
+                if (targets.length < jumpOffsets.length + 1)
                 {
-                    successors.add(offset + jumpOffset);
+                    targets = new int[jumpOffsets.length + 1];
+                }
+                targets[targetCount++] = offset + switchInstruction.defaultOffset;
+                for (int jumpOffset : jumpOffsets)
+                {
+                    targets[targetCount++] = offset + jumpOffset;
                 }
             }
             else if (RETURN_INSTRUCTIONS.contains(instruction.opcode))
             {
-                propagateToSuccessor(offset, EXIT_NODE_OFFSET);
+                returns = true;
             }
-            else if (nextOffsetExists)
+            else if (nextOffset < codeLength)
             {
-                successors.add(nextOffset);
+                targets[targetCount++] = nextOffset;
             }
 
-            Set<Integer> exceptionSuccessors = new HashSet<>();
-            for (int successor : successors)
+            // Add the distinct successors and the handlers that cover them.
+            int mark = instructionCount + 1;
+            instructionOffsets[instructionCount]         = offset;
+            instructionSuccessorStarts[instructionCount] = successorCount;
+            instructionNodes[offset]                     = instructionCount;
+
+            if (returns)
+            {
+                instructionSuccessors = add(instructionSuccessors, successorCount++, EXIT_NODE_OFFSET);
+            }
+
+            for (int index = 0; index < targetCount; index++)
+            {
+                int target = targets[index];
+                if (target >= 0 && target < codeLength && successorMarks[target] != mark)
+                {
+                    successorMarks[target] = mark;
+                    instructionSuccessors  = add(instructionSuccessors, successorCount++, target);
+
+                    if (!ignoreExceptions)
+                    {
+                        for (ExceptionInfo exceptionInfo : codeAttribute.exceptionTable)
+                        {
+                            int handler = exceptionInfo.u2handlerPC;
+                            if (exceptionInfo.isApplicable(target) && successorMarks[handler] != mark)
+                            {
+                                successorMarks[handler] = mark;
+                                instructionSuccessors   = add(instructionSuccessors, successorCount++, handler);
+                            }
+                        }
+                    }
+                }
+            }
+
+            // Any successor other than plain fall-through starts a new basic block.
+            int instructionSuccessorCount = successorCount - instructionSuccessorStarts[instructionCount];
+            if (instructionSuccessorCount != 1 || instructionSuccessors[successorCount - 1] != nextOffset)
+            {
+                for (int index = instructionSuccessorStarts[instructionCount]; index < successorCount; index++)
+                {
+                    if (instructionSuccessors[index] >= 0)
+                    {
+                        leaders[instructionSuccessors[index]] = true;
+                    }
+                }
+                if (nextOffset < codeLength)
+                {
+                    leaders[nextOffset] = true;
+                }
+            }
+
+            instructionCount++;
+            offset = nextOffset;
+        }
+        instructionSuccessorStarts[instructionCount] = successorCount;
+
+        // The entry node has edges to the first instruction
+        // and to the handlers that cover it.
+        int   entrySuccessorCount = 0;
+        int[] entrySuccessors     = new int[1];
+        if (codeLength > 0)
+        {
+            entrySuccessors = add(entrySuccessors, entrySuccessorCount++, 0);
+            leaders[0]      = true;
+
+            if (!ignoreExceptions)
+            {
+                for (ExceptionInfo exceptionInfo : codeAttribute.exceptionTable)
+                {
+                    int handler = exceptionInfo.u2handlerPC;
+                    if (exceptionInfo.isApplicable(0) && !contains(entrySuccessors, entrySuccessorCount, handler))
+                    {
+                        entrySuccessors = add(entrySuccessors, entrySuccessorCount++, handler);
+                        leaders[handler] = true;
+                    }
+                }
+            }
+        }
+
+        // Group the instructions into basic blocks, mapping the offsets
+        // of the instructions to the nodes of their blocks.
+        int[] blockEnds  = new int[instructionCount + 2];
+        int   blockCount = 0;
+        nodeOffsets      = new int[instructionCount + 2];
+        nodeOffsets[ENTRY_NODE] = ENTRY_NODE_OFFSET;
+        for (int index = 0; index < instructionCount; index++)
+        {
+            int offset = instructionOffsets[index];
+            if (leaders[offset] || index == 0)
             {
-                exceptionSuccessors.addAll(findExceptionHandlers(codeAttribute, successor));
+                nodeOffsets[++blockCount] = offset;
             }
-            successors.addAll(exceptionSuccessors);
+            blockEnds[blockCount]    = index;
+            instructionNodes[offset] = blockCount;
+        }
+        exitNode              = blockCount + 1;
+        nodeOffsets[exitNode] = EXIT_NODE_OFFSET;
 
-            for (int successor : successors)
+        // Collect the edges between the nodes. Only the last instruction
+        // of a block can have successors outside of the block.
+        int nodeCount   = exitNode + 1;
+        successorStarts = new int[nodeCount + 1];
+        successors      = new int[successorCount + entrySuccessorCount];
+        int edgeCount   = 0;
+        for (int index = 0; index < entrySuccessorCount; index++)
+        {
+            int successorNode = instructionNodes[entrySuccessors[index]];
+            if (successorNode != NONE)
             {
-                if (propagateToSuccessor(offset, successor))
+                successors[edgeCount++] = successorNode;
+            }
+        }
+        for (int block = 1; block <= blockCount; block++)
+        {
+            successorStarts[block] = edgeCount;
+            int lastInstruction    = blockEnds[block];
+            for (int index = instructionSuccessorStarts[lastInstruction]; index < instructionSuccessorStarts[lastInstruction + 1]; index++)
+            {
+                int successor     = instructionSuccessors[index];
+                int successorNode = successor == EXIT_NODE_OFFSET ? exitNode : instructionNodes[successor];
+                if (successorNode != NONE)
                 {
-                    workList.add(successor);
+                    successors[edgeCount++] = successorNode;
                 }
             }
         }
+        successorStarts[exitNode]  = edgeCount;
+        successorStarts[nodeCount] = edgeCount;
+
+        // Invert the edges.
+        predecessorStarts = new int[nodeCount + 1];
+        predecessors      = new int[edgeCount];
+        for (int index = 0; index < edgeCount; index++)
+        {
+            predecessorStarts[successors[index] + 1]++;
+        }
+        for (int node = 0; node < nodeCount; node++)
+        {
+            predecessorStarts[node + 1] += predecessorStarts[node];
+        }
+        int[] predecessorCounts = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++)
+        {
+            for (int index = successorStarts[node]; index < successorStarts[node + 1]; index++)
+            {
+                int successor = successors[index];
+                predecessors[predecessorStarts[successor] + predecessorCounts[successor]++] = node;
+            }
+        }
     }
 
     /**
-     * Create a {@link BitSet} where all bits representing
-     * offsets in the method are set to true.
+     * Calculates the dominance frontiers of all nodes, following
+     * Cooper, Harvey and Kennedy: the frontier of a node contains the
+     * join points that it doesn't strictly dominate, but where one of
+     * the predecessors is dominated by it.
      */
-    private BitSet initBitSet()
+    private List<Set<Integer>> calculateDominanceFrontiers()
     {
-        BitSet result = new BitSet(bitSetSize);
-        result.set(0, bitSetSize);
-        return result;
+        int                nodeCount          = exitNode + 1;
+        List<Set<Integer>> dominanceFrontiers = new ArrayList<>(Collections.nCopies(nodeCount, null));
+
+        for (int node = 0; node < nodeCount; node++)
+        {
+            if (dominatorTree.contains(node) &&
+                predecessorStarts[node + 1] - predecessorStarts[node] > 1)
+            {
+                int immediateDominator = dominatorTree.getImmediateDominator(node);
+                for (int index = predecessorStarts[node]; index < predecessorStarts[node + 1]; index++)
+                {
+                    int runner = predecessors[index];
+                    if (dominatorTree.contains(runner))
+                    {
+                        while (runner != immediateDominator)
+                        {
+                            Set<Integer> dominanceFrontier = dominanceFrontiers.get(runner);
+                            if (dominanceFrontier == null)
+                            {
+                                dominanceFrontier = new HashSet<>();
+                                dominanceFrontiers.set(runner, dominanceFrontier);
+                            }
+                            dominanceFrontier.add(nodeOffsets[node]);
+
+                            // The entry node dominates all nodes, so the
+                            // runner reaches the immediate dominator.
+                            runner = dominatorTree.getImmediateDominator(runner);
+                        }
+                    }
+                }
+            }
+        }
+
+        return dominanceFrontiers;
     }
 
     /**
-     * Propagate dominator information to a successor of the
-     * current instruction.
-     *
-     * @return true if this propagation step changed the
-     *     successor's dominator information
+     * Adds the given element to the given array,
+     * doubling the size of the array if necessary.
      */
-    private boolean propagateToSuccessor(int curr, int successor)
+    private static int[] add(int[] array, int size, int element)
     {
-        BitSet currDominators      = dominatorMap.computeIfAbsent(curr, o -> initBitSet());
-        BitSet successorDominators = dominatorMap.computeIfAbsent(successor, o -> initBitSet());
-        BitSet beforePropagation   = (BitSet) successorDominators.clone();
-
-        successorDominators.and(currDominators);
-        successorDominators.set(offsetToIndex(successor));
+        if (size == array.length)
+        {
+            array = Arrays.copyOf(array, Math.max(1, size * 2));
+        }
+        array[size] = element;
+        return array;
+    }
 
-        return !beforePropagation.equals(successorDominators);
+    /**
+     * Returns whether the first elements of the given array contain
+     * the given element.
+     */
+    private static boolean contains(int[] array, int size, int element)
+    {
+        for (int index = 0; index < size; index++)
+        {
+            if (array[index] == element)
+            {
+                return true;
+            }
+        }
+        return false;
     }
 
+
     /**
-     * Find the start of all exception handlers in a code attribute that are
-     * associated with a try block covering the given offset.
-     * @param codeAttribute
-     * @param offset
-     * @return
+     * The dominator tree of a graph with int nodes, whose edges are given
+     * in compressed sparse row format, i.e. the successors of node n are
+     * the elements of the successor array from index start[n] up to,
+     * but excluding, start[n + 1].
      */
-    private Set<Integer> findExceptionHandlers(CodeAttribute codeAttribute, int offset)
+    private static class DominatorTree
     {
-        Set<Integer> handlers = new HashSet<>();
-        if (ignoreExceptions)
+        private final int[] immediateDominators;
+        private final int[] preorderNumbers;
+        private final int[] postorderNumbers;
+
+
+        /**
+         * Creates the dominator tree of the nodes that can be reached
+         * from the given root node.
+         *
+         * @param nodeCount         The number of nodes in the graph.
+         * @param root              The root node.
+         * @param successorStarts   The start indices of the successors of each node.
+         * @param successors        The successors of all nodes.
+         * @param predecessorStarts The start indices of the predecessors of each node.
+         * @param predecessors      The predecessors of all nodes.
+         * @param domain            If not null, only the nodes in this tree are considered.
+         */
+        public DominatorTree(int           nodeCount,
+                             int           root,
+                             int[]         successorStarts,
+                             int[]         successors,
+                             int[]         predecessorStarts,
+                             int[]         predecessors,
+                             DominatorTree domain)
         {
-            return handlers;
+            // Number the reachable nodes in depth-first postorder.
+            int[] order       = new int[nodeCount];
+            int[] orderNodes  = new int[nodeCount];
+            int[] stack       = new int[nodeCount];
+            int[] edgeIndices = new int[nodeCount];
+            int   orderCount  = 0;
+            int   stackSize   = 0;
+            Arrays.fill(order, NONE);
+
+            order[root]        = nodeCount;
+            edgeIndices[root]  = successorStarts[root];
+            stack[stackSize++] = root;
+            while (stackSize > 0)
+            {
+                int node = stack[stackSize - 1];
+                if (edgeIndices[node] < successorStarts[node + 1])
+                {
+                    int successor = successors[edgeIndices[node]++];
+                    if (order[successor] == NONE &&
+                        (domain == null || domain.contains(successor)))
+                    {
+                        // Mark the successor as visited.
+                        order[successor]       = nodeCount;
+                        edgeIndices[successor] = successorStarts[successor];
+                        stack[stackSize++]     = successor;
+                    }
+                }
+                else
+                {
+                    stackSize--;
+                    order[node]              = orderCount;
+                    orderNodes[orderCount++] = node;
+                }
+            }
+
+            // Iterate over the nodes in reverse postorder until the immediate
+            // dominators are stable. The root is the last node in postorder.
+            immediateDominators = new int[nodeCount];
+            Arrays.fill(immediateDominators, NONE);
+            immediateDominators[root] = root;
+
+            boolean changed = true;
+            while (changed)
+            {
+                changed = false;
+                for (int index = orderCount - 2; index >= 0; index--)
+                {
+                    int node                  = orderNodes[index];
+                    int newImmediateDominator = NONE;
+                    for (int predecessorIndex = predecessorStarts[node]; predecessorIndex < predecessorStarts[node + 1]; predecessorIndex++)
+                    {
+                        int predecessor = predecessors[predecessorIndex];
+                        if (immediateDominators[predecessor] != NONE)
+                        {
+                            newImmediateDominator = newImmediateDominator == NONE ?
+                                predecessor :
+                                intersect(predecessor, newImmediateDominator, order);
+                        }
+                    }
+
+                    if (immediateDominators[node] != newImmediateDominator)
+                    {
+                        immediateDominators[node] = newImmediateDominator;
+                        changed = true;
+                    }
+                }
+            }
+
+            // Number the nodes of the tree in preorder and postorder, so a
+            // node dominates another one if its subtree contains the other one.
+            int[] childStarts = new int[nodeCount + 1];
+            int[] children    = new int[Math.max(0, orderCount - 1)];
+            for (int index = 0; index < orderCount - 1; index++)
+            {
+                childStarts[immediateDominators[orderNodes[index]] + 1]++;
+            }
+            for (int node = 0; node < nodeCount; node++)
+            {
+                childStarts[node + 1] += childStarts[node];
+            }
+            int[] childCounts = new int[nodeCount];
+            for (int index = 0; index < orderCount - 1; index++)
+            {
+                int node   = orderNodes[index];
+                int parent = immediateDominators[node];
+                children[childStarts[parent] + childCounts[parent]++] = node;
+            }
+
+            preorderNumbers  = new int[nodeCount];
+            postorderNumbers = new int[nodeCount];
+            int preorderCount  = 0;
+            int postorderCount = 0;
+
+            preorderNumbers[root] = preorderCount++;
+            edgeIndices[root]     = childStarts[root];
+            stack[stackSize++]    = root;
+            while (stackSize > 0)
+            {
+                int node = stack[stackSize - 1];
+                if (edgeIndices[node] < childStarts[node + 1])
+                {
+                    int child = children[edgeIndices[node]++];
+                    preorderNumbers[child] = preorderCount++;
+                    edgeIndices[child]     = childStarts[child];
+                    stack[stackSize++]     = child;
+                }
+                else
+                {
+                    stackSize--;
+                    postorderNumbers[node] = postorderCount++;
+                }
+            }
         }
-        for (ExceptionInfo exceptionInfo : codeAttribute.exceptionTable)
+
+
+        /**
+         * Returns whether the given node is part of the tree.
+         */
+        public boolean contains(int node)
         {
-            if (exceptionInfo.isApplicable(offset))
+            return immediateDominators[node] != NONE;
+        }
+
+
+        /**
+         * Returns the immediate dominator of the given node of the tree.
+         * The immediate dominator of the root is the root itself.
+         */
+        public int getImmediateDominator(int node)
+        {
+            return immediateDominators[node];
+        }
+
+
+        /**
+         * Returns whether the given dominator dominates the given
+         * inferior node of the tree.
+         */
+        public boolean dominates(int dominator, int inferior)
+        {
+            return contains(dominator)                                 &&
+                   preorderNumbers[dominator] <= preorderNumbers[inferior] &&
+                   postorderNumbers[inferior] <= postorderNumbers[dominator];
+        }
+
+
+        /**
+         * Returns the closest common dominator of the given nodes,
+         * walking up the tree based on the postorder numbers of the
+         * nodes.
+         */
+        private int intersect(int node1, int node2, int[] order)
+        {
+            while (node1 != node2)
             {
-                handlers.add(exceptionInfo.u2handlerPC);
+                while (order[node1] < order[node2])
+                {
+                    node1 = immediateDominators[node1];
+                }
+                while (order[node2] < order[node1])
+                {
+                    node2 = immediateDominators[node2];
+                }
             }
+            return node1;
         }
-        return handlers;
     }
 }
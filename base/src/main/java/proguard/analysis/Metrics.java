@@ -1,6 +1,7 @@
 package proguard.analysis;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Utility to collect statistical information.
@@ -31,7 +32,7 @@ public class Metrics
         CONCRETE_CALL_NO_CODE_ATTRIBUTE
     }
 
-    public static final Map<MetricType, Integer> counts = new TreeMap<>();
+    public static final Map<MetricType, Integer> counts = new ConcurrentSkipListMap<>();
 
 
     public static void increaseCount(MetricType type)
@@ -47,11 +48,19 @@ public class Metrics
     {
         StringBuilder result = new StringBuilder("Metrics:\n");
 
-        counts.forEach((type, count) -> result.append(type.name())
-                                              .append(": ")
-                                              .append(count)
-                                              .append("\n"));
-        counts.clear();
+        // Remove the counts one by one, so no concurrent increments get lost.
+        for (MetricType type : counts.keySet())
+        {
+            Integer count = counts.remove(type);
+            if (count != null)
+            {
+                result.append(type.name())
+                      .append(": ")
+                      .append(count)
+                      .append("\n");
+            }
+        }
+
         return result.toString();
     }
 }
@@ -0,0 +1,270 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis;
+
+import proguard.analysis.datastructure.callgraph.CallGraph;
+import proguard.classfile.ClassPool;
+import proguard.classfile.Clazz;
+import proguard.classfile.constant.Constant;
+import proguard.classfile.constant.Utf8Constant;
+import proguard.classfile.constant.visitor.AllConstantVisitor;
+import proguard.classfile.constant.visitor.ConstantVisitor;
+import proguard.classfile.visitor.ClassPoolVisitor;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves the calls of all classes in a {@link ClassPool} on multiple
+ * threads. Each thread analyzes one class at a time with its own
+ * {@link CallResolver}, so the partial evaluators of the resolvers are
+ * never shared.
+ *
+ * <p>The resolvers are created by a {@link CallResolverFactory}. They should
+ * all add their calls to the same {@link CallGraph#concurrentCallGraph()}.
+ * Their {@link CallVisitor}s are invoked on the threads of the resolvers:
+ * either every resolver gets its own visitors, which are then confined to a
+ * single thread, or the resolvers share visitors that are thread-safe, e.g.
+ * by wrapping them in a {@link SynchronizedCallVisitor}. Likewise, a
+ * shared {@link CallResolver.Builder#setShouldAnalyzeNextCodeAttribute}
+ * supplier must be thread-safe.</p>
+ *
+ * <p>The resolvers only read the classes. Before starting the threads, this
+ * visitor creates all resolvers and converts all {@link Utf8Constant}s of
+ * the visited class pool and of the class pools of the resolvers to their
+ * String representations, so the threads never modify any constants. For a
+ * {@link proguard.classfile.LazyClassPool}, this creates all of its classes.
+ * When the analysis of a class fails, this visitor waits for the other
+ * threads to finish their current classes before rethrowing the failure.</p>
+ *
+ * <p>Since the calls of all classes are collected in sets, the resulting
+ * call graph is the same as when resolving the calls with a single
+ * {@link CallResolver}.</p>
+ */
+public class ParallelCallResolver
+implements   ClassPoolVisitor
+{
+
+    /**
+     * A factory for the {@link CallResolver}s of the threads.
+     */
+    public interface CallResolverFactory
+    {
+        /**
+         * Creates a {@link CallResolver} that will be used by a single thread.
+         */
+        CallResolver createCallResolver();
+    }
+
+
+    private final CallResolverFactory callResolverFactory;
+    private final ExecutorService     executorService;
+    private final int                 threadCount;
+
+    /**
+     * Create a new parallel call resolver that runs on its own threads.
+     *
+     * @param callResolverFactory The factory for the {@link CallResolver}s of the threads.
+     * @param threadCount         The number of threads. If it is 1 or less, the calls are
+     *                            resolved on the calling thread.
+     */
+    public ParallelCallResolver(CallResolverFactory callResolverFactory,
+                                int                 threadCount)
+    {
+        this(callResolverFactory, null, threadCount);
+    }
+
+    /**
+     * Create a new parallel call resolver.
+     *
+     * @param callResolverFactory The factory for the {@link CallResolver}s of the threads.
+     * @param executorService     The executor service that runs the resolvers. If null,
+     *                            the resolver creates its own threads for every class pool.
+     * @param threadCount         The number of resolvers that run at the same time. If it is
+     *                            1 or less, the calls are resolved on the calling thread.
+     */
+    public ParallelCallResolver(CallResolverFactory callResolverFactory,
+                                ExecutorService     executorService,
+                                int                 threadCount)
+    {
+        this.callResolverFactory = callResolverFactory;
+        this.executorService     = executorService;
+        this.threadCount         = threadCount;
+    }
+
+    @Override
+    public void visitClassPool(ClassPool classPool)
+    {
+        List<Clazz> classes = new ArrayList<>(classPool.size());
+        classPool.classes().forEach(classes::add);
+
+        if (threadCount <= 1 || classes.size() <= 1)
+        {
+            CallResolver callResolver = callResolverFactory.createCallResolver();
+            classes.forEach(clazz -> clazz.accept(callResolver));
+            return;
+        }
+
+        // Create the resolvers and prepare the constants on this thread,
+        // so the other threads only read the classes.
+        List<CallResolver> callResolvers = new ArrayList<>(threadCount);
+        for (int thread = 0; thread < Math.min(threadCount, classes.size()); thread++)
+        {
+            callResolvers.add(callResolverFactory.createCallResolver());
+        }
+
+        Map<ClassPool, Boolean> classPools = new IdentityHashMap<>();
+        classPools.put(classPool, true);
+        for (CallResolver callResolver : callResolvers)
+        {
+            classPools.put(callResolver.getProgramClassPool(), true);
+            classPools.put(callResolver.getLibraryClassPool(), true);
+        }
+        for (ClassPool pool : classPools.keySet())
+        {
+            if (pool != null)
+            {
+                pool.classesAccept(new AllConstantVisitor(new Utf8ConstantStringConverter()));
+            }
+        }
+
+        ExecutorService executorService = this.executorService != null ?
+            this.executorService :
+            Executors.newFixedThreadPool(threadCount);
+
+        // The threads take the next class that hasn't been taken yet,
+        // so they are balanced even if some classes take much longer.
+        AtomicInteger nextClassIndex = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(threadCount);
+        try
+        {
+            for (CallResolver callResolver : callResolvers)
+            {
+                futures.add(executorService.submit(() ->
+                {
+                    int classIndex;
+                    while ((classIndex = nextClassIndex.getAndIncrement()) < classes.size())
+                    {
+                        classes.get(classIndex).accept(callResolver);
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while resolving calls", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        finally
+        {
+            // Stop the other threads from taking any more classes, and wait
+            // until they have finished their current classes, so none of them
+            // is still analyzing any classes when we return.
+            nextClassIndex.set(classes.size());
+            awaitAll(futures);
+
+            if (executorService != this.executorService)
+            {
+                executorService.shutdown();
+            }
+        }
+    }
+
+
+    /**
+     * This {@link ConstantVisitor} converts the {@link Utf8Constant}s that it
+     * visits to their String representations.
+     */
+    private static class Utf8ConstantStringConverter
+    implements           ConstantVisitor
+    {
+        @Override
+        public void visitAnyConstant(Clazz clazz, Constant constant) {}
+
+
+        @Override
+        public void visitUtf8Constant(Clazz clazz, Utf8Constant utf8Constant)
+        {
+            utf8Constant.getString();
+        }
+    }
+
+
+    // Small utility methods.
+
+    /**
+     * Waits until all given futures are done, ignoring their results.
+     * Interrupts don't stop the waiting, but they are restored afterwards.
+     */
+    private static void awaitAll(List<Future<?>> futures)
+    {
+        boolean interrupted = false;
+        for (Future<?> future : futures)
+        {
+            while (true)
+            {
+                try
+                {
+                    future.get();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+                catch (ExecutionException | CancellationException e)
+                {
+                    // The first failure has already been reported.
+                    break;
+                }
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis;
+
+import proguard.analysis.datastructure.callgraph.Call;
+
+/**
+ * This {@link CallVisitor} delegates to another {@link CallVisitor}, one
+ * call at a time. This way, a visitor that isn't thread-safe can be shared
+ * by the {@link CallResolver}s of a {@link ParallelCallResolver}.
+ */
+public class SynchronizedCallVisitor
+implements   CallVisitor
+{
+
+    private final CallVisitor callVisitor;
+
+    /**
+     * Create a new synchronized call visitor.
+     *
+     * @param callVisitor The {@link CallVisitor} to which the calls are delegated.
+     */
+    public SynchronizedCallVisitor(CallVisitor callVisitor)
+    {
+        this.callVisitor = callVisitor;
+    }
+
+    @Override
+    public synchronized void visitCall(Call call)
+    {
+        callVisitor.visitCall(call);
+    }
+}
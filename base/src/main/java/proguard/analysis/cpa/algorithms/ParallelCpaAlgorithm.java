@@ -0,0 +1,300 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.analysis.cpa.algorithms;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.interfaces.AbortOperator;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Algorithm;
+import proguard.analysis.cpa.interfaces.ConfigurableProgramAnalysis;
+import proguard.analysis.cpa.interfaces.MergeOperator;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.analysis.cpa.interfaces.PrecisionAdjustment;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.analysis.cpa.interfaces.StopOperator;
+import proguard.analysis.cpa.interfaces.TransferRelation;
+import proguard.analysis.cpa.interfaces.Waitlist;
+
+/**
+ * This {@link Algorithm} is a parallel variant of the {@link CpaAlgorithm}. It repeatedly pops a batch of
+ * independent states from the waitlist, computes their precision adjustments and abstract successors
+ * concurrently on the given {@link ExecutorService}, and then, once all successors of the batch have been
+ * computed, merges them into the reached set on the calling thread, in the order of the batch.
+ *
+ * <p>Computing the successors is typically the expensive part of the analysis. While it runs, the reached set
+ * and the waitlist are only read, so they don't need to be thread-safe. Instead of a concurrent waitlist and a
+ * striped reached set, the algorithm therefore processes the states in batches, and the merging behaves exactly as in
+ * the {@link CpaAlgorithm}: a state of the batch that is merged away by the successors of an earlier state
+ * of the batch isn't processed anymore, like it would have been removed from the waitlist. The algorithm
+ * hence reaches the same fixpoint as the {@link CpaAlgorithm}, although, just like with a different waitlist,
+ * it may visit the states in a different order. The transfer relation and the precision adjustment must be
+ * thread-safe.
+ */
+public class ParallelCpaAlgorithm
+    implements Algorithm
+{
+
+    private static final Logger              log                    = LogManager.getLogger(ParallelCpaAlgorithm.class);
+    private static final int                 DEFAULT_MAX_BATCH_SIZE = 256;
+    private final        TransferRelation    transferRelation;
+    private final        MergeOperator       mergeOperator;
+    private final        StopOperator        stopOperator;
+    private final        PrecisionAdjustment precisionAdjustment;
+    private final        ExecutorService     executorService;
+    private final        int                 maxBatchSize;
+
+    /**
+     * Create an algorithm to run the specified CPA in parallel.
+     *
+     * @param cpa             a CPA instance wrapping the transfer relation, the merge, and the stop operator, and the precision adjustment
+     * @param executorService the executor service computing the abstract successors
+     */
+    public ParallelCpaAlgorithm(ConfigurableProgramAnalysis cpa, ExecutorService executorService)
+    {
+        this(cpa.getTransferRelation(),
+             cpa.getMergeOperator(),
+             cpa.getStopOperator(),
+             cpa.getPrecisionAdjustment(),
+             executorService,
+             DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Create a parallel CPA algorithm from CPA components.
+     *
+     * @param transferRelation    a thread-safe transfer relation specifying how successor states are computed
+     * @param mergeOperator       a merge operator defining how (and whether) the older {@link AbstractState} should be updated with the newly discovered {@link AbstractState}
+     * @param stopOperator        a stop operator deciding whether the successor state should be added to the {@link ReachedSet} based on the content of the latter
+     * @param precisionAdjustment a thread-safe precision adjustment selecting the {@link Precision} for the currently processed {@link AbstractState} considering the {@link ReachedSet} content
+     * @param executorService     the executor service computing the abstract successors
+     * @param maxBatchSize        the maximum number of states whose successors are computed concurrently
+     */
+    public ParallelCpaAlgorithm(TransferRelation    transferRelation,
+                                MergeOperator       mergeOperator,
+                                StopOperator        stopOperator,
+                                PrecisionAdjustment precisionAdjustment,
+                                ExecutorService     executorService,
+                                int                 maxBatchSize)
+    {
+        if (maxBatchSize < 1)
+        {
+            throw new IllegalArgumentException("The maximum batch size must be positive [" + maxBatchSize + "]");
+        }
+
+        this.transferRelation = transferRelation;
+        this.mergeOperator = mergeOperator;
+        this.stopOperator = stopOperator;
+        this.precisionAdjustment = precisionAdjustment;
+        this.executorService = executorService;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Like the {@link CpaAlgorithm}, the algorithm is parametrized with the reached set and the waitlist. The {@code abortOperator}
+     * determines whether the analysis should end prematurely, after the states of the current batch have been processed.
+     */
+    @Override
+    public void run(ReachedSet reachedSet, Waitlist waitlist, AbortOperator abortOperator)
+    {
+        List<AbstractState>                               batch      = new ArrayList<>(maxBatchSize);
+        List<Future<Collection<? extends AbstractState>>> successors = new ArrayList<>(maxBatchSize);
+        List<Collection<? extends AbstractState>>         results    = new ArrayList<>(maxBatchSize);
+        boolean                                           abort      = false;
+
+        while (!abort && !waitlist.isEmpty())
+        {
+            try
+            {
+                // pop a batch of states, which are independent of each other until their successors are merged
+                while (!waitlist.isEmpty() && batch.size() < maxBatchSize)
+                {
+                    AbstractState currentState = waitlist.pop();
+                    if (abortOperator.abort(currentState))
+                    {
+                        abort = true;
+                        break;
+                    }
+                    batch.add(currentState);
+                }
+
+                // compute the successors concurrently, without modifying the reached set
+                for (AbstractState currentState : batch)
+                {
+                    successors.add(executorService.submit(() -> getAbstractSuccessors(currentState, reachedSet)));
+                }
+
+                // wait for all successors of the batch, since computing them reads the reached set
+                for (Future<Collection<? extends AbstractState>> future : successors)
+                {
+                    results.add(getResult(future));
+                }
+
+                // merge the successors sequentially, in the order of the batch
+                Set<AbstractState> killed = Collections.emptySet(); // abstract states removed from the waitlist and reached set
+                for (int index = 0; index < batch.size(); index++)
+                {
+                    Collection<? extends AbstractState> currentSuccessors = results.get(index);
+                    if (killed.contains(batch.get(index)))
+                    {
+                        // the state would have been removed from the waitlist before the sequential algorithm popped it
+                        continue;
+                    }
+
+                    for (AbstractState successorState : currentSuccessors)
+                    {
+                        Set<AbstractState> kill = mergeSuccessor(successorState, reachedSet, waitlist);
+                        if (!kill.isEmpty())
+                        {
+                            if (killed.isEmpty())
+                            {
+                                killed = new HashSet<>();
+                            }
+                            killed.addAll(kill);
+                        }
+                    }
+                }
+            }
+            catch (Exception exception)
+            {
+                log.error("CPA run stopped for the following error: ", exception);
+                waitlist.clear();
+            }
+            finally
+            {
+                // make sure no successors are still being computed when the reached set is modified again
+                awaitAll(successors);
+                batch.clear();
+                successors.clear();
+                results.clear();
+            }
+        }
+    }
+
+    // private methods
+
+    /**
+     * Adjusts the precision of the given state and returns its abstract successors.
+     */
+    private Collection<? extends AbstractState> getAbstractSuccessors(AbstractState currentState, ReachedSet reachedSet)
+    {
+        Precision currentPrecision = currentState.getPrecision();
+        currentState = precisionAdjustment.prec(currentState, currentPrecision, reachedSet.getReached(currentState)).getAbstractState();
+        currentPrecision = currentState.getPrecision();
+
+        return transferRelation.getAbstractSuccessors(currentState, currentPrecision);
+    }
+
+    /**
+     * Merges the given successor state into the reached set and the waitlist, like the {@link CpaAlgorithm},
+     * and returns the states that have been removed from them.
+     */
+    private Set<AbstractState> mergeSuccessor(AbstractState successorState, ReachedSet reachedSet, Waitlist waitlist)
+    {
+        Set<AbstractState> gen  = Collections.emptySet(); // abstract states to be added to the waitlist and reached set
+        Set<AbstractState> kill = Collections.emptySet(); // abstract states to be removed from the waitlist and reached set
+        for (AbstractState reachedState : reachedSet.getReached(successorState)) // iterate only over the reached sets which may be merged with the successor state
+        {
+            AbstractState mergedState = mergeOperator.merge(successorState, reachedState, successorState.getPrecision());
+            if (!mergedState.equals(reachedState))
+            {
+                // only allocate the sets if the merge actually changes something
+                if (gen.isEmpty())
+                {
+                    gen = new HashSet<>();
+                    kill = new HashSet<>();
+                }
+                gen.add(mergedState);
+                kill.add(reachedState);
+            }
+        }
+        if (!gen.isEmpty())
+        {
+            reachedSet.addAll(gen);
+            reachedSet.removeAll(kill);
+            waitlist.addAll(gen);
+            waitlist.removeAll(kill);
+        }
+        if (!stopOperator.stop(successorState, reachedSet.getReached(successorState), successorState.getPrecision()))
+        {
+            waitlist.add(successorState);
+            reachedSet.add(successorState);
+        }
+        return kill;
+    }
+
+    /**
+     * Waits for the given successors, rethrowing any exception from their computation.
+     */
+    private Collection<? extends AbstractState> getResult(Future<Collection<? extends AbstractState>> future) throws Exception
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+            {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Waits until none of the given successor computations is running anymore, ignoring their results.
+     */
+    private void awaitAll(List<Future<Collection<? extends AbstractState>>> futures)
+    {
+        boolean interrupted = false;
+        for (Future<Collection<? extends AbstractState>> future : futures)
+        {
+            while (true)
+            {
+                try
+                {
+                    future.get();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+                catch (Exception e)
+                {
+                    break;
+                }
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
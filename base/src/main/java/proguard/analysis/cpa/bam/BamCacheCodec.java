@@ -0,0 +1,79 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.analysis.cpa.bam;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.classfile.Signature;
+
+/**
+ * A {@link BamCacheCodec} encodes the keys and the block abstractions of a {@link PersistentBamCache} and tells which of them are still valid in the current analysis.
+ *
+ * <p>A stored block abstraction is only reused if the content hash of its block didn't change. The content hash must hence cover everything the block abstraction
+ * depends on, e.g., the code of the function and of all the functions it transitively calls. The configuration hash covers everything else the encoded states
+ * depend on, e.g., the analysis parameters. If it differs, none of the stored block abstractions are reused.
+ *
+ * <p>The decoding methods throw an {@link IOException} if the stored data can't be mapped to the current analysis, in which case the block abstraction isn't reused.
+ * The encoding methods throw an {@link IOException} for unsupported data, in which case the block abstraction isn't stored.
+ */
+public interface BamCacheCodec<SignatureT extends Signature>
+{
+
+    /**
+     * Returns a hash of the configuration of the analysis.
+     */
+    byte[] getConfigurationHash();
+
+    /**
+     * Returns a hash of the content of the block of the given function, or null if it is unknown.
+     */
+    byte[] getContentHash(SignatureT signature);
+
+    /**
+     * Writes the given function signature.
+     */
+    void writeSignature(DataOutput output, SignatureT signature) throws IOException;
+
+    /**
+     * Reads a function signature of the current analysis.
+     */
+    SignatureT readSignature(DataInput input) throws IOException;
+
+    /**
+     * Writes the given abstract state.
+     */
+    void writeState(DataOutput output, AbstractState state) throws IOException;
+
+    /**
+     * Reads an abstract state of the current analysis.
+     */
+    AbstractState readState(DataInput input) throws IOException;
+
+    /**
+     * Writes the given precision, which may be null.
+     */
+    void writePrecision(DataOutput output, Precision precision) throws IOException;
+
+    /**
+     * Reads a precision, which may be null.
+     */
+    Precision readPrecision(DataInput input) throws IOException;
+}
@@ -108,7 +108,7 @@ public class BamCacheImpl<SignatureT extends Signature>
     /**
      * The key of the cache is created from the three parameters that define a block abstraction. The equals and hashCode methods are overridden to guarantee the correct behavior of the hash map.
      */
-    private static class HashKey
+    static class HashKey
     {
 
         private final AbstractState stateKey;
@@ -21,10 +21,17 @@ package proguard.analysis.cpa.bam;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -34,11 +41,14 @@ import proguard.analysis.datastructure.callgraph.Call;
 import proguard.analysis.datastructure.callgraph.SymbolicCall;
 import proguard.classfile.Signature;
 import proguard.analysis.cpa.algorithms.CpaAlgorithm;
+import proguard.analysis.cpa.algorithms.ParallelCpaAlgorithm;
 import proguard.analysis.cpa.defaults.BreadthFirstWaitlist;
 import proguard.analysis.cpa.defaults.Cfa;
 import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
+import proguard.analysis.cpa.defaults.SimpleCpa;
 import proguard.analysis.cpa.defaults.StopSepOperator;
 import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Algorithm;
 import proguard.analysis.cpa.interfaces.CallEdge;
 import proguard.analysis.cpa.interfaces.CfaEdge;
 import proguard.analysis.cpa.interfaces.CfaNode;
@@ -55,6 +65,11 @@ import proguard.analysis.cpa.interfaces.Waitlist;
  * https://dl.acm.org/doi/pdf/10.1145/3368089.3409718}. On a high level the task of this domain-independent transfer relation is to extend the intra-procedural domain-dependent transfer relation of a
  * {@link CpaWithBamOperators} inter-procedurally. For more details on how the transfer relation works see {@link BamTransferRelation#getAbstractSuccessors(AbstractState, Precision)}.
  *
+ * <p>If an {@link ExecutorService} is provided, the procedure calls of the main function are analyzed concurrently with a {@link ParallelCpaAlgorithm}, each one on its own call stack.
+ * The procedures called by them are analyzed sequentially on the same thread, so the threads never wait for tasks of the executor service. When several threads need the same block
+ * abstraction, only one of them computes it while the others wait for the result. In this mode the cache, as well as the operators and the transfer relation of the wrapped CPA, must be
+ * thread-safe.
+ *
  * @author Carlo Alberto Pozzoli
  */
 public class BamTransferRelation<CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>, CfaEdgeT extends CfaEdge<CfaNodeT>, SignatureT extends Signature>
@@ -66,12 +81,16 @@ public class BamTransferRelation<CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
     // TODO: maybe we don't need the cfa
     private final        Cfa<CfaNodeT, CfaEdgeT, SignatureT>                 cfa;
     private final        Stack<StackEntry>                                   stack             = new Stack<>();
-    private              boolean                                             fixedPointReached = false;
+    private volatile     boolean                                             fixedPointReached = false;
     private final        CfaNodeT                                            mainLocation;
     private final        BamCache<SignatureT>                                cache;
     private              int                                                 maxCallStackDepth = -1;
     private final        StopOperator                                        fixedPointStopOperator;
     private final        AbortOperator                                       abortOperator;
+    private final        ExecutorService                                     executorService;
+    private final        ThreadLocal<Stack<StackEntry>>                      workerStacks      = new ThreadLocal<>();
+    private final        Map<BlockKey, InFlightBlock>                        inFlightBlocks    = new ConcurrentHashMap<>();
+    private final        Map<Thread, InFlightBlock>                          waitingThreads    = new HashMap<>();
 
     /**
      * Create a BAM transfer relation with an unlimited call stack.
@@ -107,6 +126,36 @@ public class BamTransferRelation<CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
                                BamCache<SignatureT> cache,
                                int maxCallStackDepth,
                                AbortOperator abortOperator)
+    {
+        this(wrappedCpa, cfa, mainFunction, cache, maxCallStackDepth, abortOperator, null);
+    }
+
+    /**
+     * Create a BAM transfer relation that analyzes the procedure calls of the main function in parallel. When the call stack meets its size limit the method call analysis is delegated
+     * to the wrapped intra-procedural transfer relation.
+     *
+     * <p>If an executor service is provided, the threads of the executor service invoke the wrapped CPA concurrently: its transfer relation, abstract domain, merge operator, stop operator,
+     * precision adjustment, and reduce, expand, and rebuild operators must all be thread-safe, as must be the cache and the abort operator. The transfer relation doesn't check this. For
+     * example, a JVM taint analysis is thread-safe as long as its taint sources and the factories of its map abstract states are.
+     *
+     * @param wrappedCpa        a wrapped CPA with BAM operators, whose operators and transfer relation are thread-safe if an executor service is provided
+     * @param cfa               a control flow automaton
+     * @param mainFunction      the signature of the main function of an analyzed program
+     * @param cache             a thread-safe cache for the block abstractions, e.g., a {@link ConcurrentBamCache}
+     * @param maxCallStackDepth maximum depth of the call stack analyzed inter-procedurally.
+     *                          0 means intra-procedural analysis.
+     *                          < 0 means no maximum depth.
+     * @param abortOperator     an abort operator used for computing block abstractions
+     * @param executorService   the executor service analyzing the procedure calls of the main function,
+     *                          null means sequential analysis
+     */
+    public BamTransferRelation(CpaWithBamOperators<CfaNodeT, CfaEdgeT, SignatureT> wrappedCpa,
+                               Cfa<CfaNodeT, CfaEdgeT, SignatureT> cfa,
+                               SignatureT mainFunction,
+                               BamCache<SignatureT> cache,
+                               int maxCallStackDepth,
+                               AbortOperator abortOperator,
+                               ExecutorService executorService)
     {
         this.wrappedCpa = wrappedCpa;
         this.cfa = cfa;
@@ -115,6 +164,7 @@ public class BamTransferRelation<CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
         this.fixedPointStopOperator = new StopSepOperator(wrappedCpa.getAbstractDomain());
         this.maxCallStackDepth = maxCallStackDepth;
         this.abortOperator = abortOperator;
+        this.executorService = executorService;
     }
 
     // implementations for TransferRelation
@@ -145,11 +195,11 @@ public class BamTransferRelation<CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
             throw new IllegalArgumentException("The abstract state of type " + AbstractState.class + " is not location dependent");
         }
 
-        CfaNodeT                  currentLocation    = ((ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>) abstractState).getProgramLocation();
+        CfaNodeT                  currentLocation    = getProgramLocation(abstractState);
         Collection<AbstractState> abstractSuccessors = new ArrayList<>();
 
         // executed only on the first call
-        if (stack.isEmpty() && currentLocation.equals(mainLocation))
+        if (stack().isEmpty() && currentLocation.equals(mainLocation))
         {
             abstractSuccessors.addAll(fixedPoint(abstractState, currentLocation, precision));
         }
@@ -161,14 +211,14 @@ public class BamTransferRelation<CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
             {
                 // if the call target is an unknown node (i.e., either the method code of a symbolic call is not available or a library call is excluded from the analysis)
                 // similarly if the maximum call depth is reached we delegate to the intra-procedural wrapped transfer relation instead of calling recursively applyBlockAbstraction
-                if ((maxCallStackDepth < 0 || stack.size() < maxCallStackDepth)
+                if ((maxCallStackDepth < 0 || stack().size() < maxCallStackDepth)
                     && !callEdge.getTarget().isUnknownNode())
                 {
                     abstractSuccessors.addAll(applyBlockAbstraction(abstractState, precision, (CfaEdge<CfaNodeT> & CallEdge) callEdge));
                 }
                 else
                 {
-                    abstractSuccessors.add(((ProgramLocationDependentTransferRelation) wrappedCpa.getTransferRelation()).getEdgeAbstractSuccessor(abstractState, callEdge, precision));
+                    abstractSuccessors.add(getWrappedTransferRelation().getEdgeAbstractSuccessor(abstractState, callEdge, precision));
                 }
             }
         }
@@ -190,6 +240,14 @@ public class BamTransferRelation<CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
         return maxCallStackDepth;
     }
 
+    /**
+     * Returns the executor service analyzing the procedure calls of the main function, null if the analysis is sequential.
+     */
+    public ExecutorService getExecutorService()
+    {
+        return executorService;
+    }
+
     /**
      * Returns the wrapped domain-dependent intra-procedural CPA.
      */
@@ -246,12 +304,10 @@ public class BamTransferRelation<CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
     private <CfaCallEdgeT extends CfaEdge<CfaNodeT> & CallEdge> Collection<? extends AbstractState> applyBlockAbstraction(AbstractState callState, Precision precision, CfaCallEdgeT callEdge)
     {
 
-        ReachedSet reached         = getReachedSet();
-        Waitlist   waitlist        = getWaitlist();
         Call       call            = callEdge == null ? null : callEdge.getCall();
         CfaNodeT   entryNode       = call != null
                                      ? cfa.getFunctionEntryNode(callEdge.getTarget().getSignature())
-                                     : ((ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>) callState).getProgramLocation();
+                                     : getProgramLocation(callState);
         SignatureT currentFunction = entryNode.getSignature();
 
         // TODO: maybe we can have a better way to identify that the function was called from fixedPoint than having a null call
@@ -261,109 +317,289 @@ public class BamTransferRelation<CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
                                           ? wrappedCpa.getReduceOperator().reduce(callState, cfa.getFunctionEntryNode(currentFunction), call)
                                           : callState;
 
-        Optional<AbstractState> previousCall = stack.stream()
-                                                    .filter(x -> x.function.equals(currentFunction) && wrappedCpa.getAbstractDomain().isLessOrEqual(reducedEntryState, x.entryState))
-                                                    .map(x -> x.entryState)
-                                                    .findFirst();
+        Optional<AbstractState> previousCall = stack().stream()
+                                                      .filter(x -> x.function.equals(currentFunction) && wrappedCpa.getAbstractDomain().isLessOrEqual(reducedEntryState, x.entryState))
+                                                      .map(x -> x.entryState)
+                                                      .findFirst();
+
+        Collection<? extends AbstractState> exitStates;
 
         // check if there are calls to the same function on the stack that cover the current call
         if (previousCall.isPresent())
         {
-            // if this is not the first call, get from the cache the result of the unrolling of the recursive procedure that has been already calculated
-            BlockAbstraction cacheEntry = cache.get(previousCall.get(), precision, currentFunction);
-            if (cacheEntry != null)
+            exitStates = getRecursiveCallResult(callState, previousCall.get(), precision, currentFunction);
+        }
+        else if (executorService == null || call == null)
+        {
+            exitStates = analyzeBlock(callState, reducedEntryState, precision, currentFunction, call == null && executorService != null).asCollection();
+        }
+        else
+        {
+            // other threads may need the same block abstraction, so only one of them can use and update it at a time
+            BlockKey      blockKey      = new BlockKey(currentFunction, reducedEntryState, precision);
+            InFlightBlock inFlightBlock = claimBlock(blockKey);
+            if (inFlightBlock == null)
             {
-                reached = cacheEntry.getReachedSet();
+                // the threads computing the block abstraction are waiting for each other, this is handled like a recursive call
+                exitStates = new ArrayList<>(getRecursiveCallResult(callState, reducedEntryState, precision, currentFunction));
             }
-            // if this is the first unrolling the recursive call is not analyzed
             else
             {
-                stack.peek().incompleteCallStates.add(callState);
-                fixedPointReached = false;
+                try
+                {
+                    // copy the result before another thread can update it
+                    exitStates = new ArrayList<>(analyzeBlock(callState, reducedEntryState, precision, currentFunction, false).asCollection());
+                }
+                finally
+                {
+                    releaseBlock(blockKey, inFlightBlock);
+                }
             }
         }
+
+        // TODO: as before, maybe we can have a better way to identify that the function was called from fixedPoint
+        if (call != null)
+        {
+            // reconstruct the next state of the caller procedure applying the expand and reduce operators.
+            exitStates = exitStates.stream()
+                                   .filter(e -> getProgramLocation(e).isExitNode())
+                                   .map(e -> wrappedCpa.getExpandOperator().expand(callState, e, entryNode, call))
+                                   .map(e -> wrappedCpa.getRebuildOperator().rebuild(callState, e))
+                                   .collect(Collectors.toSet());
+        }
+
+        return exitStates;
+    }
+
+    /**
+     * Returns the states reached so far by the call to the same function covering the current call, or marks the current call as incomplete if there are none yet.
+     */
+    private Collection<? extends AbstractState> getRecursiveCallResult(AbstractState callState, AbstractState previousEntryState, Precision precision, SignatureT currentFunction)
+    {
+        // if this is not the first call, get from the cache the result of the unrolling of the recursive procedure that has been already calculated
+        BlockAbstraction cacheEntry = cache.get(previousEntryState, precision, currentFunction);
+        if (cacheEntry != null)
+        {
+            return cacheEntry.getReachedSet().asCollection();
+        }
+
+        // if this is the first unrolling the recursive call is not analyzed
+        stack().peek().incompleteCallStates.add(callState);
+        fixedPointReached = false;
+        return Collections.emptyList();
+    }
+
+    /**
+     * Analyzes the block of the given function for the reduced entry state, updates its abstraction in the cache, and returns its reached set.
+     */
+    private ReachedSet analyzeBlock(AbstractState callState, AbstractState reducedEntryState, Precision precision, SignatureT currentFunction, boolean parallel)
+    {
+        ReachedSet reached;
+        Waitlist   waitlist;
+
+        // get previously calculated results from the cache
+        BlockAbstraction cacheEntry = cache.get(reducedEntryState, precision, currentFunction);
+
+        if (cacheEntry != null)
+        {
+            // TODO: these might be different waitlist/reached set types if the cache is initialized externally (things that is not currently possible). Shall we add all elements from the them
+            //  instead of copying?
+            reached = cacheEntry.getReachedSet();
+            waitlist = cacheEntry.getWaitlist();
+        }
         else
         {
-            // get previously calculated results from the cache
-            BlockAbstraction cacheEntry = cache.get(reducedEntryState, precision, currentFunction);
+            reached = getReachedSet();
+            waitlist = getWaitlist();
+            reached.add(reducedEntryState);
+            waitlist.add(reducedEntryState);
+        }
+
+        Stack<StackEntry> stack = stack();
+        stack.push(new StackEntry(currentFunction, reducedEntryState));
+
+        // analyze the current procedure call with the CPA algorithm, this is the recursive step of the BAM CPA
+        // n.b. if the procedure has been already analyzed completely for the input the CPA algorithm will return immediately
+        createAlgorithm(parallel).run(reached, waitlist, abortOperator);
 
-            if (cacheEntry != null)
+        StackEntry stackEntry = stack.pop();
+
+        // since the fixed point has not been reached all the calls not analyzed are added to the waitlist
+        if (!stackEntry.incompleteCallStates.isEmpty())
+        {
+            // the call to the current method will be added to the waitlist of the caller
+            if (!stack.isEmpty())
             {
-                // TODO: these might be different waitlist/reached set types if the cache is initialized externally (things that is not currently possible). Shall we add all elements from the them
-                //  instead of copying?
-                reached = cacheEntry.getReachedSet();
-                waitlist = cacheEntry.getWaitlist();
+                stack.peek().incompleteCallStates.add(callState);
             }
-            else
+
+            for (AbstractState incompleteCallState : stackEntry.incompleteCallStates)
             {
-                reached.add(reducedEntryState);
-                waitlist.add(reducedEntryState);
+                waitlist.add(incompleteCallState);
             }
+        }
 
-            stack.push(new StackEntry(currentFunction, reducedEntryState));
-
-            // analyze the current procedure call with the CPA algorithm, this is the recursive step of the BAM CPA
-            // n.b. if the procedure has been already analyzed completely for the input the CPA algorithm will return immediately
-            new CpaAlgorithm(this, wrappedCpa.getMergeOperator(), wrappedCpa.getStopOperator(), wrappedCpa.getPrecisionAdjustment()).run(reached, waitlist, abortOperator);
+        cacheEntry = cache.get(reducedEntryState, precision, currentFunction);
 
-            StackEntry stackEntry = stack.pop();
+        // check if the fixed point has not been reached at this iteration (i.e. some new exit state is not covered by one already calculated)
+        if (cacheEntry != null)
+        {
+            // TODO: as above, we might want to add all instead of copying
+            ReachedSet reachedOld = cacheEntry.getReachedSet();
 
-            // since the fixed point has not been reached all the calls not analyzed are added to the waitlist
-            if (!stackEntry.incompleteCallStates.isEmpty())
+            for (AbstractState reachedState : reached.asCollection())
             {
-                // the call to the current method will be added to the waitlist of the caller
-                if (!stack.isEmpty())
+                CfaNodeT reachedLocation = getProgramLocation(reachedState);
+                if (reachedLocation.getSignature().equals(currentFunction)
+                    && reachedLocation.isExitNode()
+                    && !(fixedPointStopOperator.stop(reachedState, reachedOld.asCollection(), null)))
                 {
-                    stack.peek().incompleteCallStates.add(callState);
+                    if (!stack.isEmpty())
+                    {
+                        stack.peek().incompleteCallStates.add(callState);
+                    }
+                    fixedPointReached = false;
+                    break;
                 }
+            }
+        }
+
+        cache.put(reducedEntryState, precision, currentFunction, new BlockAbstraction(reached, waitlist));
 
-                for (AbstractState incompleteCallState : stackEntry.incompleteCallStates)
+        return reached;
+    }
+
+    /**
+     * Returns the algorithm analyzing a block. In the parallel case, each abstract successor is computed on the call stack of the current thread.
+     */
+    private Algorithm createAlgorithm(boolean parallel)
+    {
+        if (!parallel)
+        {
+            return new CpaAlgorithm(this, wrappedCpa.getMergeOperator(), wrappedCpa.getStopOperator(), wrappedCpa.getPrecisionAdjustment());
+        }
+
+        List<StackEntry> callerStack = new ArrayList<>(stack());
+        TransferRelation workerTransferRelation = (abstractState, precision) ->
+        {
+            Stack<StackEntry> workerStack = new Stack<>();
+            workerStack.addAll(callerStack);
+
+            Stack<StackEntry> previousStack = workerStacks.get();
+            workerStacks.set(workerStack);
+            try
+            {
+                return getAbstractSuccessors(abstractState, precision);
+            }
+            finally
+            {
+                if (previousStack == null)
+                {
+                    workerStacks.remove();
+                }
+                else
                 {
-                    waitlist.add(incompleteCallState);
+                    workerStacks.set(previousStack);
                 }
             }
+        };
+
+        return new ParallelCpaAlgorithm(new SimpleCpa(wrappedCpa.getAbstractDomain(),
+                                                      workerTransferRelation,
+                                                      wrappedCpa.getMergeOperator(),
+                                                      wrappedCpa.getStopOperator(),
+                                                      wrappedCpa.getPrecisionAdjustment()),
+                                        executorService);
+    }
+
+    /**
+     * Returns the location of the given abstract state in the CFA.
+     */
+    @SuppressWarnings("unchecked") // the states of the wrapped CPA are location dependent in the CFA of this transfer relation
+    private CfaNodeT getProgramLocation(AbstractState abstractState)
+    {
+        return ((ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>) abstractState).getProgramLocation();
+    }
+
+    /**
+     * Returns the transfer relation of the wrapped CPA, which computes the successors along single edges of the CFA of this transfer relation.
+     */
+    @SuppressWarnings("unchecked") // the wrapped transfer relation is location dependent in the CFA of this transfer relation
+    private ProgramLocationDependentTransferRelation<CfaNodeT, CfaEdgeT, SignatureT> getWrappedTransferRelation()
+    {
+        return (ProgramLocationDependentTransferRelation<CfaNodeT, CfaEdgeT, SignatureT>) wrappedCpa.getTransferRelation();
+    }
+
+    /**
+     * Returns the call stack of the current thread.
+     */
+    private Stack<StackEntry> stack()
+    {
+        Stack<StackEntry> workerStack = executorService == null ? null : workerStacks.get();
+        return workerStack == null ? stack : workerStack;
+    }
+
+    /**
+     * Claims the block abstraction with the given key for the current thread, waiting while another thread holds it. Returns null if the thread holding it is, directly or
+     * indirectly, waiting for the current thread.
+     */
+    private InFlightBlock claimBlock(BlockKey blockKey)
+    {
+        Thread        currentThread = Thread.currentThread();
+        InFlightBlock claim         = new InFlightBlock(currentThread);
 
-            cacheEntry = cache.get(reducedEntryState, precision, currentFunction);
+        while (true)
+        {
+            InFlightBlock owner = inFlightBlocks.putIfAbsent(blockKey, claim);
+            if (owner == null)
+            {
+                return claim;
+            }
 
-            // check if the fixed point has not been reached at this iteration (i.e. some new exit state is not covered by one already calculated)
-            if (cacheEntry != null)
+            synchronized (waitingThreads)
             {
-                // TODO: as above, we might want to add all instead of copying
-                ReachedSet reachedOld = cacheEntry.getReachedSet();
+                // the block may have been released in the meantime
+                if (inFlightBlocks.get(blockKey) != owner)
+                {
+                    continue;
+                }
 
-                for (AbstractState reachedState : reached.asCollection())
+                // follow the threads the owner is waiting for, waiting would deadlock if they lead back to the current thread
+                for (InFlightBlock block = owner; block != null; block = waitingThreads.get(block.owner))
                 {
-                    CfaNodeT reachedLocation = ((ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>) reachedState).getProgramLocation();
-                    if (reachedLocation.getSignature().equals(currentFunction)
-                        && reachedLocation.isExitNode()
-                        && !(fixedPointStopOperator.stop(reachedState, reachedOld.asCollection(), null)))
+                    if (block.owner == currentThread)
                     {
-                        if (!stack.isEmpty())
-                        {
-                            stack.peek().incompleteCallStates.add(callState);
-                        }
-                        fixedPointReached = false;
-                        break;
+                        return null;
                     }
                 }
+
+                waitingThreads.put(currentThread, owner);
             }
 
-            cache.put(reducedEntryState, precision, currentFunction, new BlockAbstraction(reached, waitlist));
+            try
+            {
+                owner.await();
+            }
+            finally
+            {
+                synchronized (waitingThreads)
+                {
+                    waitingThreads.remove(currentThread);
+                }
+            }
         }
+    }
 
-        Collection<? extends AbstractState> exitStates = reached.asCollection();
-        // TODO: as before, maybe we can have a better way to identify that the function was called from fixedPoint
-        if (call != null)
+    /**
+     * Releases the given claim of a block abstraction, waking up the threads waiting for it.
+     */
+    private void releaseBlock(BlockKey blockKey, InFlightBlock claim)
+    {
+        synchronized (waitingThreads)
         {
-            // reconstruct the next state of the caller procedure applying the expand and reduce operators.
-            exitStates = exitStates.stream()
-                                   .filter(e -> ((ProgramLocationDependent<CfaNodeT, CfaEdgeT, SignatureT>) e).getProgramLocation().isExitNode())
-                                   .map(e -> wrappedCpa.getExpandOperator().expand(callState, e, entryNode, call))
-                                   .map(e -> wrappedCpa.getRebuildOperator().rebuild(callState, e))
-                                   .collect(Collectors.toSet());
+            inFlightBlocks.remove(blockKey);
         }
-
-        return exitStates;
+        claim.done.countDown();
     }
 
     private class StackEntry
@@ -371,7 +607,8 @@ public class BamTransferRelation<CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
 
         public final SignatureT         function;
         public final AbstractState      entryState;
-        public final Set<AbstractState> incompleteCallStates = new HashSet<>();
+        // the stack entry of the main function is shared by the threads of a parallel analysis
+        public final Set<AbstractState> incompleteCallStates = executorService == null ? new HashSet<>() : ConcurrentHashMap.newKeySet();
 
         public StackEntry(SignatureT function, AbstractState entryState)
         {
@@ -379,4 +616,86 @@ public class BamTransferRelation<CfaNodeT extends CfaNode<CfaEdgeT, SignatureT>,
             this.entryState = entryState;
         }
     }
+
+    /**
+     * The key identifying a block abstraction that is being computed.
+     */
+    private static class BlockKey
+    {
+
+        private final Signature     function;
+        private final AbstractState entryState;
+        private final Precision     precision;
+
+        public BlockKey(Signature function, AbstractState entryState, Precision precision)
+        {
+            this.function = function;
+            this.entryState = entryState;
+            this.precision = precision;
+        }
+
+        // implementations for Object
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (o == this)
+            {
+                return true;
+            }
+            if (!(o instanceof BlockKey))
+            {
+                return false;
+            }
+            BlockKey other = (BlockKey) o;
+            return function.equals(other.function)
+                   && Objects.equals(entryState, other.entryState)
+                   && Objects.equals(precision, other.precision);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(function, entryState, precision);
+        }
+    }
+
+    /**
+     * A claim of a thread computing a block abstraction.
+     */
+    private static class InFlightBlock
+    {
+
+        public final Thread         owner;
+        public final CountDownLatch done = new CountDownLatch(1);
+
+        public InFlightBlock(Thread owner)
+        {
+            this.owner = owner;
+        }
+
+        /**
+         * Waits until the block abstraction is released, preserving the interrupt status of the current thread.
+         */
+        public void await()
+        {
+            boolean interrupted = false;
+            while (true)
+            {
+                try
+                {
+                    done.await();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
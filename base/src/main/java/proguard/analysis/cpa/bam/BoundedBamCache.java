@@ -0,0 +1,284 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.analysis.cpa.bam;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.bam.BamCacheImpl.HashKey;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.classfile.Signature;
+
+/**
+ * A {@link BamCache} with a bounded number of block abstractions and reached states. When a bound is exceeded, block abstractions are evicted according
+ * to the {@link EvictionPolicy}, so the {@link BamTransferRelation} recomputes them if they are needed again instead of running out of memory.
+ *
+ * <p>Block abstractions whose analysis is incomplete, i.e., whose waitlist is not empty, are never evicted, since they are needed for computing the fixed point
+ * of recursive calls. Evicted block abstractions are not available anymore to the analyses inspecting the cache after the run, e.g., the trace reconstruction.
+ *
+ * <p>The cache is thread-safe, so it can also be used by a parallel {@link BamTransferRelation}.
+ */
+public class BoundedBamCache<SignatureT extends Signature>
+    implements BamCache<SignatureT>
+{
+
+    private static final Logger log = LogManager.getLogger(BoundedBamCache.class);
+
+    private final int                                                   maxSize;
+    private final long                                                  maxStateCount;
+    private final EvictionPolicy                                        evictionPolicy;
+    private final Map<SignatureT, Map<HashKey, CacheEntry<SignatureT>>> cache         = new HashMap<>();
+    private final TreeSet<CacheEntry<SignatureT>>                       evictionOrder = new TreeSet<>(Comparator.<CacheEntry<SignatureT>>comparingLong(e -> e.priority)
+                                                                                                            .thenComparingLong(e -> e.sequenceNumber));
+    private       int                                                   size;
+    private       long                                                  stateCount;
+    private       long                                                  clock;
+    private       long                                                  inflation;
+    private       long                                                  hitCount;
+    private       long                                                  missCount;
+    private       long                                                  evictionCount;
+
+    /**
+     * Create a cache evicting the least recently used block abstractions.
+     *
+     * @param maxSize the maximum number of block abstractions
+     */
+    public BoundedBamCache(int maxSize)
+    {
+        this(maxSize, Long.MAX_VALUE, EvictionPolicy.LEAST_RECENTLY_USED);
+    }
+
+    /**
+     * Create a bounded cache.
+     *
+     * @param maxSize        the maximum number of block abstractions
+     * @param maxStateCount  the maximum number of reached states of all block abstractions, as an estimate of their memory footprint
+     * @param evictionPolicy the policy selecting the block abstractions to evict
+     */
+    public BoundedBamCache(int maxSize, long maxStateCount, EvictionPolicy evictionPolicy)
+    {
+        this.maxSize = maxSize;
+        this.maxStateCount = maxStateCount;
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    // implementations for BamCache
+
+    @Override
+    public synchronized void put(AbstractState stateKey, Precision precisionKey, SignatureT blockKey, BlockAbstraction blockAbstraction)
+    {
+        HashKey                hashKey = new HashKey(stateKey, precisionKey);
+        CacheEntry<SignatureT> entry   = cache.computeIfAbsent(blockKey, k -> new HashMap<>()).get(hashKey);
+        if (entry == null)
+        {
+            entry = new CacheEntry<>(blockKey, hashKey);
+            cache.get(blockKey).put(hashKey, entry);
+            size++;
+        }
+        else
+        {
+            evictionOrder.remove(entry);
+            stateCount -= entry.cost;
+        }
+
+        // the size of the reached set estimates both the memory footprint and the cost of recomputing the block abstraction
+        entry.blockAbstraction = blockAbstraction;
+        entry.cost = blockAbstraction.getReachedSet().asCollection().size();
+        stateCount += entry.cost;
+        touch(entry);
+
+        evict(entry);
+        log.trace("BamCacheSize: {}", size);
+    }
+
+    @Override
+    public synchronized BlockAbstraction get(AbstractState stateKey, Precision precisionKey, SignatureT blockKey)
+    {
+        CacheEntry<SignatureT> entry = cache.getOrDefault(blockKey, Collections.emptyMap()).get(new HashKey(stateKey, precisionKey));
+        if (entry == null)
+        {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        evictionOrder.remove(entry);
+        touch(entry);
+        return entry.blockAbstraction;
+    }
+
+    @Override
+    public synchronized Collection<BlockAbstraction> get(SignatureT blockKey)
+    {
+        return cache.getOrDefault(blockKey, Collections.emptyMap())
+                    .values()
+                    .stream()
+                    .map(e -> e.blockAbstraction)
+                    .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized Collection<BlockAbstraction> get(Precision precision, SignatureT blockKey)
+    {
+        return cache.getOrDefault(blockKey, Collections.emptyMap())
+                    .values()
+                    .stream()
+                    .filter(e -> e.key.getPrecisionKey().equals(precision))
+                    .map(e -> e.blockAbstraction)
+                    .collect(Collectors.toSet());
+    }
+
+    @Override
+    public synchronized Collection<BlockAbstraction> values()
+    {
+        return cache.values().stream().map(Map::values).flatMap(Collection::stream).map(e -> e.blockAbstraction).collect(Collectors.toSet());
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    @Override
+    public synchronized Set<SignatureT> getAllMethods()
+    {
+        return Collections.unmodifiableSet(new HashSet<>(cache.keySet()));
+    }
+
+    /**
+     * Returns the number of reached states of all cached block abstractions.
+     */
+    public synchronized long getStateCount()
+    {
+        return stateCount;
+    }
+
+    /**
+     * Returns the number of lookups of a block abstraction that found it in the cache.
+     */
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups of a block abstraction that didn't find it in the cache.
+     */
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of evicted block abstractions.
+     */
+    public synchronized long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    // private methods
+
+    /**
+     * Updates the eviction priority of the given entry, which must not be in the eviction order, after it is used.
+     */
+    private void touch(CacheEntry<SignatureT> entry)
+    {
+        entry.sequenceNumber = ++clock;
+        entry.priority = evictionPolicy == EvictionPolicy.LEAST_RECENTLY_USED
+                         ? entry.sequenceNumber
+                         : inflation + entry.cost;
+        evictionOrder.add(entry);
+    }
+
+    /**
+     * Evicts block abstractions until the bounds are respected again, except for the given entry that has just been added.
+     */
+    private void evict(CacheEntry<SignatureT> addedEntry)
+    {
+        List<CacheEntry<SignatureT>> pinnedEntries = new ArrayList<>();
+        while ((size > maxSize || stateCount > maxStateCount) && !evictionOrder.isEmpty())
+        {
+            CacheEntry<SignatureT> entry = evictionOrder.pollFirst();
+            if (entry == addedEntry || !entry.blockAbstraction.getWaitlist().isEmpty())
+            {
+                pinnedEntries.add(entry);
+                continue;
+            }
+
+            Map<HashKey, CacheEntry<SignatureT>> entries = cache.get(entry.signature);
+            entries.remove(entry.key);
+            if (entries.isEmpty())
+            {
+                cache.remove(entry.signature);
+            }
+            size--;
+            stateCount -= entry.cost;
+            evictionCount++;
+
+            // age the remaining entries, so the costly ones that aren't used anymore get evicted eventually
+            inflation = Math.max(inflation, entry.priority);
+        }
+        evictionOrder.addAll(pinnedEntries);
+    }
+
+    /**
+     * The policy selecting the block abstraction to evict from a {@link BoundedBamCache}.
+     */
+    public enum EvictionPolicy
+    {
+        /**
+         * Evicts the block abstraction that wasn't used for the longest time.
+         */
+        LEAST_RECENTLY_USED,
+        /**
+         * Evicts the block abstraction that is the cheapest to recompute, measured by the size of its reached set. Each eviction raises the priority of the block abstractions used
+         * afterwards, so the costly block abstractions that aren't used anymore get evicted eventually.
+         */
+        LEAST_RECOMPUTATION_COST
+    }
+
+    private static class CacheEntry<SignatureT>
+    {
+
+        private final SignatureT       signature;
+        private final HashKey          key;
+        private       BlockAbstraction blockAbstraction;
+        private       int              cost;
+        private       long             priority;
+        private       long             sequenceNumber;
+
+        private CacheEntry(SignatureT signature, HashKey key)
+        {
+            this.signature = signature;
+            this.key = key;
+        }
+    }
+}
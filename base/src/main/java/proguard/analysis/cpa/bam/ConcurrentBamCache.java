@@ -0,0 +1,107 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.analysis.cpa.bam;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.bam.BamCacheImpl.HashKey;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.classfile.Signature;
+
+/**
+ * A thread-safe implementation of {@link BamCache} where the cache is implemented as a {@link ConcurrentHashMap}. It can be shared by the threads of a
+ * {@link BamTransferRelation} that analyzes blocks in parallel.
+ */
+public class ConcurrentBamCache<SignatureT extends Signature>
+    implements BamCache<SignatureT>
+{
+
+    private static final Logger log = LogManager.getLogger(ConcurrentBamCache.class);
+
+    private final Map<SignatureT, Map<HashKey, BlockAbstraction>> cache = new ConcurrentHashMap<>();
+    private final AtomicInteger                                   size  = new AtomicInteger();
+
+    // implementations for BamCache
+
+    @Override
+    public void put(AbstractState stateKey, Precision precisionKey, SignatureT blockKey, BlockAbstraction blockAbstraction)
+    {
+        if (cache.computeIfAbsent(blockKey, k -> new ConcurrentHashMap<>()).put(new HashKey(stateKey, precisionKey), blockAbstraction) == null)
+        {
+            log.trace("BamCacheSize: {}", size.incrementAndGet());
+        }
+    }
+
+    @Override
+    public BlockAbstraction get(AbstractState stateKey, Precision precisionKey, SignatureT blockKey)
+    {
+        return cache.getOrDefault(blockKey, Collections.emptyMap()).get(new HashKey(stateKey, precisionKey));
+    }
+
+    @Override
+    public Collection<BlockAbstraction> get(SignatureT blockKey)
+    {
+        return cache.getOrDefault(blockKey, Collections.emptyMap()).values();
+    }
+
+    @Override
+    public Collection<BlockAbstraction> get(Precision precision, SignatureT blockKey)
+    {
+        return cache.getOrDefault(blockKey, Collections.emptyMap())
+                    .entrySet()
+                    .stream()
+                    .filter(e -> e.getKey().getPrecisionKey().equals(precision))
+                    .map(Entry::getValue)
+                    .collect(Collectors.toSet());
+    }
+
+    @Override
+    public Collection<BlockAbstraction> values()
+    {
+        return cache.values().stream().map(Map::values).flatMap(Collection::stream).collect(Collectors.toSet());
+    }
+
+    @Override
+    public int size()
+    {
+        return size.get();
+    }
+
+    @Override
+    public Set<SignatureT> getAllMethods()
+    {
+        return Collections.unmodifiableSet(cache.keySet());
+    }
+
+    /**
+     * Returns the block abstractions of the given function by their keys.
+     */
+    Map<HashKey, BlockAbstraction> getEntries(SignatureT blockKey)
+    {
+        return cache.getOrDefault(blockKey, Collections.emptyMap());
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.analysis.cpa.bam;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.bam.BamCacheImpl.HashKey;
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist;
+import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.analysis.cpa.interfaces.ReachedSet;
+import proguard.classfile.Signature;
+
+/**
+ * A {@link BamCache} that can be saved to a file and loaded again in a later analysis, so only the blocks that changed in between need to be analyzed again.
+ *
+ * <p>The block abstractions are stored per function, along with the content hash provided by the {@link BamCacheCodec}. When the cache is loaded, the block
+ * abstractions of a function are only restored if its content hash is still the same and all of them can be decoded. Only complete block abstractions are stored, they are
+ * restored with a {@link ProgramLocationDependentReachedSet} and an empty {@link BreadthFirstWaitlist}, like the ones created by the {@link BamTransferRelation}.
+ *
+ * <p>The cache is thread-safe, so it can also be used by a parallel {@link BamTransferRelation}.
+ */
+public class PersistentBamCache<SignatureT extends Signature>
+    extends ConcurrentBamCache<SignatureT>
+{
+
+    private static final Logger log     = LogManager.getLogger(PersistentBamCache.class);
+    private static final int    MAGIC   = 0x42414d43;
+    private static final int    VERSION = 1;
+
+    private final File                      file;
+    private final BamCacheCodec<SignatureT> codec;
+    private       int                       loadedBlockCount;
+    private       int                       discardedBlockCount;
+
+    /**
+     * Create an empty persistent cache.
+     *
+     * @param file  the file the cache is loaded from and saved to
+     * @param codec the codec encoding and validating the cache entries
+     */
+    public PersistentBamCache(File file, BamCacheCodec<SignatureT> codec)
+    {
+        this.file = file;
+        this.codec = codec;
+    }
+
+    /**
+     * Returns the file the cache is loaded from and saved to.
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Returns the number of block abstractions restored by the last {@link #load()}.
+     */
+    public int getLoadedBlockCount()
+    {
+        return loadedBlockCount;
+    }
+
+    /**
+     * Returns the number of stored block abstractions discarded by the last {@link #load()}, because they were outdated or couldn't be decoded.
+     */
+    public int getDiscardedBlockCount()
+    {
+        return discardedBlockCount;
+    }
+
+    /**
+     * Adds the valid block abstractions stored in the file to the cache. Nothing is added if the file doesn't exist or was saved with a different configuration.
+     *
+     * @throws IOException if the file can't be read or is corrupt, in which case only the block abstractions of the records before the corrupt part may have been added
+     */
+    public void load() throws IOException
+    {
+        loadedBlockCount = 0;
+        discardedBlockCount = 0;
+
+        if (!file.exists())
+        {
+            return;
+        }
+
+        // no length in the file can exceed the size of the file
+        long fileLength = file.length();
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+            {
+                log.warn("Ignoring BAM cache file {} with an unsupported format", file);
+                return;
+            }
+            if (!Arrays.equals(readBytes(input, fileLength), codec.getConfigurationHash()))
+            {
+                log.info("Ignoring BAM cache file {} saved with a different configuration", file);
+                return;
+            }
+
+            // each record takes at least the four bytes of its length
+            int functionCount = readLength(input, fileLength / 4);
+            for (int index = 0; index < functionCount; index++)
+            {
+                // each function is stored as a separate record, so it can be skipped if it can't be restored
+                loadFunction(readBytes(input, fileLength));
+            }
+        }
+
+        log.debug("Loaded {} block abstractions from {}, discarded {}", loadedBlockCount, file, discardedBlockCount);
+    }
+
+    /**
+     * Saves all block abstractions of the cache to the file, replacing its previous content. Block abstractions that the codec doesn't support or whose analysis was aborted
+     * are left out.
+     */
+    public void save() throws IOException
+    {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile))))
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            writeBytes(output, codec.getConfigurationHash());
+
+            List<byte[]> records = new ArrayList<>();
+            for (SignatureT signature : getAllMethods())
+            {
+                byte[] record = saveFunction(signature);
+                if (record != null)
+                {
+                    records.add(record);
+                }
+            }
+
+            output.writeInt(records.size());
+            for (byte[] record : records)
+            {
+                writeBytes(output, record);
+            }
+        }
+
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // private methods
+
+    /**
+     * Restores the block abstractions of a function from the given record, if they are still valid.
+     */
+    private void loadFunction(byte[] record)
+    {
+        DataInput input      = new DataInputStream(new ByteArrayInputStream(record));
+        int       blockCount = 0;
+        try
+        {
+            blockCount = readLength(input, record.length);
+            SignatureT signature   = codec.readSignature(input);
+            byte[]     contentHash = readBytes(input, record.length);
+
+            byte[] currentContentHash = codec.getContentHash(signature);
+            if (currentContentHash == null || !Arrays.equals(contentHash, currentContentHash))
+            {
+                discardedBlockCount += blockCount;
+                return;
+            }
+
+            // decode all block abstractions before adding any of them
+            List<AbstractState>    stateKeys         = new ArrayList<>(blockCount);
+            List<Precision>        precisionKeys     = new ArrayList<>(blockCount);
+            List<BlockAbstraction> blockAbstractions = new ArrayList<>(blockCount);
+            for (int index = 0; index < blockCount; index++)
+            {
+                stateKeys.add(codec.readState(input));
+                precisionKeys.add(codec.readPrecision(input));
+
+                ReachedSet reachedSet = new ProgramLocationDependentReachedSet<>();
+                reachedSet.addAll(readStates(input, record.length));
+                blockAbstractions.add(new BlockAbstraction(reachedSet, new BreadthFirstWaitlist()));
+            }
+
+            for (int index = 0; index < blockCount; index++)
+            {
+                put(stateKeys.get(index), precisionKeys.get(index), signature, blockAbstractions.get(index));
+            }
+            loadedBlockCount += blockCount;
+        }
+        catch (IOException e)
+        {
+            log.debug("Discarding block abstractions from the BAM cache: {}", e.getMessage());
+            discardedBlockCount += blockCount;
+        }
+    }
+
+    /**
+     * Returns a record with the block abstractions of the given function, or null if the function has no content hash.
+     */
+    private byte[] saveFunction(SignatureT signature) throws IOException
+    {
+        byte[] contentHash = codec.getContentHash(signature);
+        if (contentHash == null)
+        {
+            return null;
+        }
+
+        // encode the block abstractions separately, so unsupported ones can be left out
+        List<byte[]> blocks = new ArrayList<>();
+        for (Entry<HashKey, BlockAbstraction> entry : getEntries(signature).entrySet())
+        {
+            // skip the blocks whose analysis was aborted, their block abstractions are incomplete
+            if (!entry.getValue().getWaitlist().isEmpty())
+            {
+                continue;
+            }
+
+            ByteArrayOutputStream block  = new ByteArrayOutputStream();
+            DataOutputStream      output = new DataOutputStream(block);
+            try
+            {
+                codec.writeState(output, entry.getKey().getStateKey());
+                codec.writePrecision(output, entry.getKey().getPrecisionKey());
+                writeStates(output, entry.getValue().getReachedSet().asCollection());
+                blocks.add(block.toByteArray());
+            }
+            catch (IOException e)
+            {
+                log.debug("Not saving a block abstraction of {} to the BAM cache: {}", signature, e.getMessage());
+            }
+        }
+
+        if (blocks.isEmpty())
+        {
+            return null;
+        }
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream      output = new DataOutputStream(record);
+        output.writeInt(blocks.size());
+        codec.writeSignature(output, signature);
+        writeBytes(output, contentHash);
+        for (byte[] block : blocks)
+        {
+            output.write(block);
+        }
+        output.flush();
+
+        return record.toByteArray();
+    }
+
+    private List<AbstractState> readStates(DataInput input, int recordLength) throws IOException
+    {
+        int                 count  = readLength(input, recordLength);
+        List<AbstractState> states = new ArrayList<>(count);
+        for (int index = 0; index < count; index++)
+        {
+            states.add(codec.readState(input));
+        }
+        return states;
+    }
+
+    private void writeStates(DataOutput output, Collection<? extends AbstractState> states) throws IOException
+    {
+        output.writeInt(states.size());
+        for (AbstractState state : states)
+        {
+            codec.writeState(output, state);
+        }
+    }
+
+    private static byte[] readBytes(DataInput input, long maxLength) throws IOException
+    {
+        byte[] bytes = new byte[readLength(input, maxLength)];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads a length or a count, checking it against the given maximum before anything is allocated for it, so a corrupt file can't cause a
+     * {@link NegativeArraySizeException} or an {@link OutOfMemoryError}.
+     */
+    private static int readLength(DataInput input, long maxLength) throws IOException
+    {
+        int length = input.readInt();
+        if (length < 0 || length > maxLength)
+        {
+            throw new IOException("Invalid length [" + length + "] in BAM cache file");
+        }
+        return length;
+    }
+
+    private static void writeBytes(DataOutput output, byte[] bytes) throws IOException
+    {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+}
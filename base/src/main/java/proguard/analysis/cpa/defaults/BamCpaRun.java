@@ -19,9 +19,12 @@
 package proguard.analysis.cpa.defaults;
 
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import proguard.analysis.cpa.bam.BamCache;
 import proguard.analysis.cpa.bam.BamCacheImpl;
 import proguard.analysis.cpa.bam.BamCpa;
+import proguard.analysis.cpa.bam.BamTransferRelation;
+import proguard.analysis.cpa.bam.ConcurrentBamCache;
 import proguard.analysis.cpa.bam.CpaWithBamOperators;
 import proguard.analysis.cpa.bam.ExpandOperator;
 import proguard.analysis.cpa.bam.NoOpRebuildOperator;
@@ -48,8 +51,9 @@ public abstract class BamCpaRun<CpaT extends ConfigurableProgramAnalysis,
     extends CpaRun<BamCpa<CfaNodeT, CfaEdgeT, SignatureT>, AbstractStateT>
 {
 
-    private final   int     maxCallStackDepth;
-    protected final boolean reduceHeap;
+    private final   int             maxCallStackDepth;
+    protected final boolean         reduceHeap;
+    protected final ExecutorService executorService;
 
     /**
      * Create a BAM CPA run.
@@ -74,10 +78,28 @@ public abstract class BamCpaRun<CpaT extends ConfigurableProgramAnalysis,
      * @param reduceHeap        whether reduction/expansion of the heap state is performed at call/return sites
      */
     protected BamCpaRun(AbortOperator abortOperator, int maxCallStackDepth, boolean reduceHeap)
+    {
+        this(abortOperator, maxCallStackDepth, reduceHeap, null);
+    }
+
+    /**
+     * Create a BAM CPA run.
+     *
+     * @param abortOperator     an abort operator
+     * @param maxCallStackDepth the maximum depth of the call stack analyzed interprocedurally
+     *                          0 means intraprocedural analysis
+     *                          < 0 means no maximum depth
+     * @param reduceHeap        whether reduction/expansion of the heap state is performed at call/return sites
+     * @param executorService   the executor service analyzing the procedure calls of the main method in parallel
+     *                          null means sequential analysis
+     *                          otherwise, the intraprocedural CPA and the BAM operators must be thread-safe
+     */
+    protected BamCpaRun(AbortOperator abortOperator, int maxCallStackDepth, boolean reduceHeap, ExecutorService executorService)
     {
         this.abortOperator = abortOperator;
         this.maxCallStackDepth = maxCallStackDepth;
         this.reduceHeap = reduceHeap;
+        this.executorService = executorService;
     }
 
     // implementations for CpaRun
@@ -87,15 +109,16 @@ public abstract class BamCpaRun<CpaT extends ConfigurableProgramAnalysis,
     public BamCpa<CfaNodeT, CfaEdgeT, SignatureT> getCpa()
     {
         return cpa == null
-               ? cpa = new BamCpa<>(new CpaWithBamOperators<>(createIntraproceduralCPA(),
-                                                              createReduceOperator(),
-                                                              createExpandOperator(),
-                                                              createRebuildOperator()),
-                                    getCfa(),
-                                    getMainSignature(),
-                                    createCache(),
-                                    getMaxCallStackDepth(),
-                                    abortOperator)
+               ? cpa = new BamCpa<>(new BamTransferRelation<>(new CpaWithBamOperators<>(createIntraproceduralCPA(),
+                                                                                        createReduceOperator(),
+                                                                                        createExpandOperator(),
+                                                                                        createRebuildOperator()),
+                                                              getCfa(),
+                                                              getMainSignature(),
+                                                              createCache(),
+                                                              getMaxCallStackDepth(),
+                                                              abortOperator,
+                                                              executorService))
                : super.getCpa();
     }
 
@@ -123,11 +146,13 @@ public abstract class BamCpaRun<CpaT extends ConfigurableProgramAnalysis,
     }
 
     /**
-     * Returns a fresh BAM cache.
+     * Returns a fresh BAM cache, which is thread-safe if the analysis is parallel.
      */
     public BamCache<SignatureT> createCache()
     {
-        return new BamCacheImpl<>();
+        return executorService == null
+               ? new BamCacheImpl<>()
+               : new ConcurrentBamCache<>();
     }
 
     /**
@@ -148,6 +173,14 @@ public abstract class BamCpaRun<CpaT extends ConfigurableProgramAnalysis,
         return maxCallStackDepth;
     }
 
+    /**
+     * Returns the executor service analyzing the procedure calls of the main method in parallel, null if the analysis is sequential.
+     */
+    public ExecutorService getExecutorService()
+    {
+        return executorService;
+    }
+
     public Set<SignatureT> getAnalyzedMethods()
     {
         return getCpa().getCache().getAllMethods();
@@ -0,0 +1,329 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.analysis.cpa.jvm.domain.taint;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import proguard.analysis.cpa.bam.BamCacheCodec;
+import proguard.analysis.cpa.bam.PersistentBamCache;
+import proguard.analysis.cpa.defaults.ListAbstractState;
+import proguard.analysis.cpa.defaults.MapAbstractState;
+import proguard.analysis.cpa.defaults.SetAbstractState;
+import proguard.analysis.cpa.defaults.StackAbstractState;
+import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.Precision;
+import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCatchCfaNode;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.analysis.cpa.jvm.state.JvmAbstractState;
+import proguard.analysis.cpa.jvm.state.JvmFrameAbstractState;
+import proguard.analysis.cpa.jvm.state.heap.JvmForgetfulHeapAbstractState;
+import proguard.analysis.cpa.jvm.util.JvmMethodContentHasher;
+import proguard.analysis.cpa.state.MapAbstractStateFactory;
+import proguard.classfile.MethodSignature;
+
+/**
+ * A {@link BamCacheCodec} for the taint analysis with the forgetful heap model, allowing to store its block abstractions in a {@link PersistentBamCache}.
+ *
+ * <p>The program locations are stored by method signature and offset, and the taint sources by their index in the configured taint sources, so the configuration
+ * hash covers the taint sources. The content hashes are computed by a {@link JvmMethodContentHasher}.
+ */
+public class JvmTaintBamCacheCodec
+    implements BamCacheCodec<MethodSignature>
+{
+
+    private static final byte PLAIN_STATE    = 0;
+    private static final byte TAINT_STATE    = 1;
+    private static final byte PLAIN_LOCATION = 0;
+    private static final byte CATCH_LOCATION = 1;
+
+    private final JvmCfa                                                            cfa;
+    private final List<JvmTaintSource>                                              taintSources;
+    private final Map<JvmTaintSource, Integer>                                      taintSourceIndices = new HashMap<>();
+    private final MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> staticFieldMapAbstractStateFactory;
+    private final JvmTaintSourceIndex                                               taintSourceIndex;
+    private final JvmMethodContentHasher                                            contentHasher;
+
+    /**
+     * Create a codec for the taint analysis with the forgetful heap model.
+     *
+     * @param cfa                                a CFA
+     * @param taintSources                       the taint sources of the analysis
+     * @param staticFieldMapAbstractStateFactory the map abstract state factory used for constructing the static field maps
+     */
+    public JvmTaintBamCacheCodec(JvmCfa cfa,
+                                 Collection<? extends JvmTaintSource> taintSources,
+                                 MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> staticFieldMapAbstractStateFactory)
+    {
+        this(cfa, taintSources, staticFieldMapAbstractStateFactory, null);
+    }
+
+    /**
+     * Create a codec for the taint analysis with the forgetful heap model, optionally decoding the sets of taint sources as
+     * {@link JvmTaintBitSetAbstractState}s.
+     *
+     * @param cfa                                a CFA
+     * @param taintSources                       the taint sources of the analysis
+     * @param staticFieldMapAbstractStateFactory the map abstract state factory used for constructing the static field maps
+     * @param taintSourceIndex                   the numbering of the taint sources of the analysis
+     *                                           null means plain sets of taint sources
+     */
+    public JvmTaintBamCacheCodec(JvmCfa cfa,
+                                 Collection<? extends JvmTaintSource> taintSources,
+                                 MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> staticFieldMapAbstractStateFactory,
+                                 JvmTaintSourceIndex taintSourceIndex)
+    {
+        this.cfa = cfa;
+        this.taintSources = new ArrayList<>(taintSources);
+        this.taintSources.sort(Comparator.comparing(JvmTaintSource::toString));
+        for (int index = 0; index < this.taintSources.size(); index++)
+        {
+            taintSourceIndices.put(this.taintSources.get(index), index);
+        }
+        this.staticFieldMapAbstractStateFactory = staticFieldMapAbstractStateFactory;
+        this.taintSourceIndex = taintSourceIndex;
+        this.contentHasher = new JvmMethodContentHasher(cfa);
+    }
+
+    // implementations for BamCacheCodec
+
+    @Override
+    public byte[] getConfigurationHash()
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(staticFieldMapAbstractStateFactory.getClass().getName().getBytes(StandardCharsets.UTF_8));
+            for (JvmTaintSource taintSource : taintSources)
+            {
+                digest.update((byte) 0);
+                digest.update(taintSource.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            return digest.digest();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public byte[] getContentHash(MethodSignature signature)
+    {
+        return contentHasher.getContentHash(signature);
+    }
+
+    @Override
+    public void writeSignature(DataOutput output, MethodSignature signature) throws IOException
+    {
+        output.writeUTF(signature.getClassName());
+        output.writeUTF(signature.method);
+        output.writeUTF(signature.descriptor.toString());
+    }
+
+    @Override
+    public MethodSignature readSignature(DataInput input) throws IOException
+    {
+        MethodSignature signature = new MethodSignature(input.readUTF(), input.readUTF(), input.readUTF());
+
+        // use the signature of the current CFA
+        JvmCfaNode entryNode = cfa.getFunctionEntryNode(signature);
+        if (entryNode == null)
+        {
+            throw new IOException("Unknown method [" + signature + "]");
+        }
+        return entryNode.getSignature();
+    }
+
+    @Override
+    public void writeState(DataOutput output, AbstractState state) throws IOException
+    {
+        if (state.getClass() != JvmAbstractState.class && state.getClass() != JvmTaintAbstractState.class)
+        {
+            throw new IOException("Unsupported abstract state [" + state.getClass().getName() + "]");
+        }
+
+        JvmAbstractState<SetAbstractState<JvmTaintSource>> jvmState = (JvmAbstractState<SetAbstractState<JvmTaintSource>>) state;
+        if (!(jvmState.getHeap() instanceof JvmForgetfulHeapAbstractState))
+        {
+            throw new IOException("Unsupported heap model [" + jvmState.getHeap().getClass().getName() + "]");
+        }
+
+        output.writeByte(state instanceof JvmTaintAbstractState ? TAINT_STATE : PLAIN_STATE);
+        writeLocation(output, jvmState.getProgramLocation());
+        writeValues(output, jvmState.getFrame().getLocalVariables());
+        writeValues(output, jvmState.getFrame().getOperandStack());
+
+        MapAbstractState<String, SetAbstractState<JvmTaintSource>> staticFields = jvmState.getStaticFields();
+        output.writeInt(staticFields.size());
+        for (Entry<String, SetAbstractState<JvmTaintSource>> entry : staticFields.entrySet())
+        {
+            output.writeUTF(entry.getKey());
+            writeValue(output, entry.getValue());
+        }
+    }
+
+    @Override
+    public AbstractState readState(DataInput input) throws IOException
+    {
+        byte       kind            = input.readByte();
+        JvmCfaNode programLocation = readLocation(input);
+
+        ListAbstractState<SetAbstractState<JvmTaintSource>> localVariables = new ListAbstractState<>();
+        localVariables.addAll(readValues(input));
+        StackAbstractState<SetAbstractState<JvmTaintSource>> operandStack = new StackAbstractState<>();
+        operandStack.addAll(readValues(input));
+
+        MapAbstractState<String, SetAbstractState<JvmTaintSource>> staticFields = staticFieldMapAbstractStateFactory.createMapAbstractState();
+        int staticFieldCount = input.readInt();
+        for (int index = 0; index < staticFieldCount; index++)
+        {
+            staticFields.put(input.readUTF(), readValue(input));
+        }
+
+        JvmFrameAbstractState<SetAbstractState<JvmTaintSource>>         frame = new JvmFrameAbstractState<>(localVariables, operandStack);
+        JvmForgetfulHeapAbstractState<SetAbstractState<JvmTaintSource>> heap  = new JvmForgetfulHeapAbstractState<>(taintSourceIndex == null ? SetAbstractState.bottom : taintSourceIndex.getBottom());
+        switch (kind)
+        {
+            case PLAIN_STATE:
+                return new JvmAbstractState<>(programLocation, frame, heap, staticFields);
+            case TAINT_STATE:
+                return new JvmTaintAbstractState(programLocation, frame, heap, staticFields);
+            default:
+                throw new IOException("Unknown abstract state kind [" + kind + "]");
+        }
+    }
+
+    @Override
+    public void writePrecision(DataOutput output, Precision precision) throws IOException
+    {
+        // the taint analysis doesn't adjust the precision
+        if (precision != null)
+        {
+            throw new IOException("Unsupported precision [" + precision.getClass().getName() + "]");
+        }
+    }
+
+    @Override
+    public Precision readPrecision(DataInput input)
+    {
+        return null;
+    }
+
+    // private methods
+
+    private void writeLocation(DataOutput output, JvmCfaNode location) throws IOException
+    {
+        MethodSignature signature = location.getSignature();
+        boolean         isCatch   = location instanceof JvmCatchCfaNode;
+        JvmCfaNode      node      = signature == null
+                                    ? null
+                                    : isCatch
+                                      ? cfa.getFunctionCatchNode(signature, location.getOffset())
+                                      : cfa.getFunctionNode(signature, location.getOffset());
+        if (node != location)
+        {
+            throw new IOException("Unsupported program location [" + location + "]");
+        }
+
+        output.writeByte(isCatch ? CATCH_LOCATION : PLAIN_LOCATION);
+        writeSignature(output, signature);
+        output.writeInt(location.getOffset());
+    }
+
+    private JvmCfaNode readLocation(DataInput input) throws IOException
+    {
+        byte            kind      = input.readByte();
+        MethodSignature signature = readSignature(input);
+        int             offset    = input.readInt();
+        JvmCfaNode      node      = kind == CATCH_LOCATION
+                                    ? cfa.getFunctionCatchNode(signature, offset)
+                                    : cfa.getFunctionNode(signature, offset);
+        if (node == null)
+        {
+            throw new IOException("Unknown program location [" + signature + ":" + offset + "]");
+        }
+        return node;
+    }
+
+    private void writeValues(DataOutput output, List<SetAbstractState<JvmTaintSource>> values) throws IOException
+    {
+        output.writeInt(values.size());
+        for (SetAbstractState<JvmTaintSource> value : values)
+        {
+            writeValue(output, value);
+        }
+    }
+
+    private List<SetAbstractState<JvmTaintSource>> readValues(DataInput input) throws IOException
+    {
+        int                                    count  = input.readInt();
+        List<SetAbstractState<JvmTaintSource>> values = new ArrayList<>(count);
+        for (int index = 0; index < count; index++)
+        {
+            values.add(readValue(input));
+        }
+        return values;
+    }
+
+    private void writeValue(DataOutput output, SetAbstractState<JvmTaintSource> value) throws IOException
+    {
+        output.writeInt(value.size());
+        for (JvmTaintSource taintSource : value)
+        {
+            Integer index = taintSourceIndices.get(taintSource);
+            if (index == null)
+            {
+                throw new IOException("Unknown taint source [" + taintSource + "]");
+            }
+            output.writeInt(index);
+        }
+    }
+
+    private SetAbstractState<JvmTaintSource> readValue(DataInput input) throws IOException
+    {
+        int count = input.readInt();
+        if (count == 0)
+        {
+            return taintSourceIndex == null ? SetAbstractState.bottom : taintSourceIndex.getBottom();
+        }
+
+        SetAbstractState<JvmTaintSource> value = new SetAbstractState<>();
+        for (int index = 0; index < count; index++)
+        {
+            int taintSourceIndex = input.readInt();
+            if (taintSourceIndex < 0 || taintSourceIndex >= taintSources.size())
+            {
+                throw new IOException("Unknown taint source [" + taintSourceIndex + "]");
+            }
+            value.add(taintSources.get(taintSourceIndex));
+        }
+        return this.taintSourceIndex == null ? value : this.taintSourceIndex.createState(value);
+    }
+}
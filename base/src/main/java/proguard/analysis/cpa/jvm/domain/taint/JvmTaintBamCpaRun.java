@@ -18,11 +18,18 @@
 
 package proguard.analysis.cpa.jvm.domain.taint;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.analysis.cpa.bam.BamCache;
 import proguard.analysis.cpa.bam.ExpandOperator;
+import proguard.analysis.cpa.bam.PersistentBamCache;
 import proguard.analysis.cpa.bam.ReduceOperator;
 import proguard.analysis.cpa.defaults.DelegateAbstractDomain;
 import proguard.analysis.cpa.defaults.MergeJoinOperator;
@@ -32,6 +39,7 @@ import proguard.analysis.cpa.defaults.StopJoinOperator;
 import proguard.analysis.cpa.interfaces.AbortOperator;
 import proguard.analysis.cpa.interfaces.AbstractDomain;
 import proguard.analysis.cpa.interfaces.AbstractState;
+import proguard.analysis.cpa.interfaces.ReachedSet;
 import proguard.analysis.cpa.jvm.cfa.JvmCfa;
 import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge;
 import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
@@ -64,6 +72,8 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
     extends JvmBamCpaRun<SimpleCpa, SetAbstractState<JvmTaintSource>, OuterAbstractStateT>
 {
 
+    private static final Logger log = LogManager.getLogger(JvmTaintBamCpaRun.class);
+
     private final Set<? extends JvmTaintSource>                                                     taintSources;
     private final MethodSignature                                                                mainMethodSignature;
     private final MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>              staticFieldMapAbstractStateFactory;
@@ -71,6 +81,8 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
     private final MapAbstractStateFactory<String, SetAbstractState<Reference>>                   principalHeapNodeMapAbstractStateFactory;
     private final MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<JvmTaintSource>>> followerHeapMapAbstractStateFactory;
     private final MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>              followerHeapNodeMapAbstractStateFactory;
+    private final File                                                                           cacheFile;
+    private final JvmTaintSourceIndex                                                            taintSourceIndex;
 
     /**
      * Create a CPA run. If reduceHeap is set to false no reduction/expansion is applied to the heap states at call/return sites
@@ -103,7 +115,172 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
                                 MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<JvmTaintSource>>> followerHeapMapAbstractStateFactory,
                                 MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> followerHeapNodeMapAbstractStateFactory)
     {
-        super(cfa, maxCallStackDepth, heapModel, abortOperator, reduceHeap);
+        this(cfa,
+             taintSources,
+             mainMethodSignature,
+             maxCallStackDepth,
+             heapModel,
+             abortOperator,
+             reduceHeap,
+             staticFieldMapAbstractStateFactory,
+             principalHeapMapAbstractStateFactory,
+             principalHeapNodeMapAbstractStateFactory,
+             followerHeapMapAbstractStateFactory,
+             followerHeapNodeMapAbstractStateFactory,
+             null);
+    }
+
+    /**
+     * Create a CPA run. If reduceHeap is set to false no reduction/expansion is applied to the heap states at call/return sites
+     * (this parameter is irrelevant for FORGETFUL heap model). If an executor service is provided, the procedure calls of the main method
+     * are analyzed in parallel.
+     *
+     * @param cfa                                      a CFA
+     * @param taintSources                             a set of taint sources
+     * @param mainMethodSignature                      the signature of the main method
+     * @param maxCallStackDepth                        the maximum depth of the call stack analyzed interprocedurally
+     *                                                 0 means intraprocedural analysis
+     *                                                 < 0 means no maximum depth
+     * @param heapModel                                a heap model to be used
+     * @param abortOperator                            an abort operator
+     * @param reduceHeap                               whether reduction/expansion of the heap state is performed at call/return sites
+     * @param principalHeapMapAbstractStateFactory     a map abstract state factory used for constructing the mapping from references to objects in the principal heap model
+     * @param principalHeapNodeMapAbstractStateFactory a map abstract state factory used for constructing the mapping from fields to values in the principal heap model
+     * @param followerHeapMapAbstractStateFactory      a map abstract state factory used for constructing the mapping from references to objects in the follower heap model
+     * @param followerHeapNodeMapAbstractStateFactory  a map abstract state factory used for constructing the mapping from fields to values in the follower heap model
+     * @param executorService                          the executor service analyzing the procedure calls of the main method in parallel
+     *                                                 null means sequential analysis
+     *                                                 otherwise, the taint sources and the map abstract state factories must be thread-safe
+     */
+    protected JvmTaintBamCpaRun(JvmCfa cfa,
+                                Set<? extends JvmTaintSource> taintSources,
+                                MethodSignature mainMethodSignature,
+                                int maxCallStackDepth,
+                                HeapModel heapModel,
+                                AbortOperator abortOperator,
+                                boolean reduceHeap,
+                                MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> staticFieldMapAbstractStateFactory,
+                                MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<Reference>>> principalHeapMapAbstractStateFactory,
+                                MapAbstractStateFactory<String, SetAbstractState<Reference>> principalHeapNodeMapAbstractStateFactory,
+                                MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<JvmTaintSource>>> followerHeapMapAbstractStateFactory,
+                                MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> followerHeapNodeMapAbstractStateFactory,
+                                ExecutorService executorService)
+    {
+        this(cfa,
+             taintSources,
+             mainMethodSignature,
+             maxCallStackDepth,
+             heapModel,
+             abortOperator,
+             reduceHeap,
+             staticFieldMapAbstractStateFactory,
+             principalHeapMapAbstractStateFactory,
+             principalHeapNodeMapAbstractStateFactory,
+             followerHeapMapAbstractStateFactory,
+             followerHeapNodeMapAbstractStateFactory,
+             executorService,
+             null);
+    }
+
+    /**
+     * Create a CPA run. If reduceHeap is set to false no reduction/expansion is applied to the heap states at call/return sites
+     * (this parameter is irrelevant for FORGETFUL heap model). If an executor service is provided, the procedure calls of the main method
+     * are analyzed in parallel. If a cache file is provided, the block abstractions stored in it by a previous run are reused, as far as
+     * the code they depend on didn't change, and the cache file is updated after the run (only supported by the FORGETFUL heap model).
+     *
+     * @param cfa                                      a CFA
+     * @param taintSources                             a set of taint sources
+     * @param mainMethodSignature                      the signature of the main method
+     * @param maxCallStackDepth                        the maximum depth of the call stack analyzed interprocedurally
+     *                                                 0 means intraprocedural analysis
+     *                                                 < 0 means no maximum depth
+     * @param heapModel                                a heap model to be used
+     * @param abortOperator                            an abort operator
+     * @param reduceHeap                               whether reduction/expansion of the heap state is performed at call/return sites
+     * @param principalHeapMapAbstractStateFactory     a map abstract state factory used for constructing the mapping from references to objects in the principal heap model
+     * @param principalHeapNodeMapAbstractStateFactory a map abstract state factory used for constructing the mapping from fields to values in the principal heap model
+     * @param followerHeapMapAbstractStateFactory      a map abstract state factory used for constructing the mapping from references to objects in the follower heap model
+     * @param followerHeapNodeMapAbstractStateFactory  a map abstract state factory used for constructing the mapping from fields to values in the follower heap model
+     * @param executorService                          the executor service analyzing the procedure calls of the main method in parallel
+     *                                                 null means sequential analysis
+     * @param cacheFile                                the file the block abstractions are persisted to across runs
+     *                                                 null means no persistence
+     */
+    protected JvmTaintBamCpaRun(JvmCfa cfa,
+                                Set<? extends JvmTaintSource> taintSources,
+                                MethodSignature mainMethodSignature,
+                                int maxCallStackDepth,
+                                HeapModel heapModel,
+                                AbortOperator abortOperator,
+                                boolean reduceHeap,
+                                MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> staticFieldMapAbstractStateFactory,
+                                MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<Reference>>> principalHeapMapAbstractStateFactory,
+                                MapAbstractStateFactory<String, SetAbstractState<Reference>> principalHeapNodeMapAbstractStateFactory,
+                                MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<JvmTaintSource>>> followerHeapMapAbstractStateFactory,
+                                MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> followerHeapNodeMapAbstractStateFactory,
+                                ExecutorService executorService,
+                                File cacheFile)
+    {
+        this(cfa,
+             taintSources,
+             mainMethodSignature,
+             maxCallStackDepth,
+             heapModel,
+             abortOperator,
+             reduceHeap,
+             staticFieldMapAbstractStateFactory,
+             principalHeapMapAbstractStateFactory,
+             principalHeapNodeMapAbstractStateFactory,
+             followerHeapMapAbstractStateFactory,
+             followerHeapNodeMapAbstractStateFactory,
+             executorService,
+             cacheFile,
+             false);
+    }
+
+    /**
+     * Create a CPA run. If reduceHeap is set to false no reduction/expansion is applied to the heap states at call/return sites
+     * (this parameter is irrelevant for FORGETFUL heap model). If an executor service is provided, the procedure calls of the main method
+     * are analyzed in parallel. If a cache file is provided, the block abstractions stored in it by a previous run are reused, as far as
+     * the code they depend on didn't change, and the cache file is updated after the run (only supported by the FORGETFUL heap model).
+     * If the taint sources are indexed, the sets of taint sources are represented as {@link JvmTaintBitSetAbstractState}s.
+     *
+     * @param cfa                                      a CFA
+     * @param taintSources                             a set of taint sources
+     * @param mainMethodSignature                      the signature of the main method
+     * @param maxCallStackDepth                        the maximum depth of the call stack analyzed interprocedurally
+     *                                                 0 means intraprocedural analysis
+     *                                                 < 0 means no maximum depth
+     * @param heapModel                                a heap model to be used
+     * @param abortOperator                            an abort operator
+     * @param reduceHeap                               whether reduction/expansion of the heap state is performed at call/return sites
+     * @param principalHeapMapAbstractStateFactory     a map abstract state factory used for constructing the mapping from references to objects in the principal heap model
+     * @param principalHeapNodeMapAbstractStateFactory a map abstract state factory used for constructing the mapping from fields to values in the principal heap model
+     * @param followerHeapMapAbstractStateFactory      a map abstract state factory used for constructing the mapping from references to objects in the follower heap model
+     * @param followerHeapNodeMapAbstractStateFactory  a map abstract state factory used for constructing the mapping from fields to values in the follower heap model
+     * @param executorService                          the executor service analyzing the procedure calls of the main method in parallel
+     *                                                 null means sequential analysis
+     * @param cacheFile                                the file the block abstractions are persisted to across runs
+     *                                                 null means no persistence
+     * @param indexTaintSources                        whether the taint sources are numbered, so their sets can be represented as bit vectors
+     */
+    protected JvmTaintBamCpaRun(JvmCfa cfa,
+                                Set<? extends JvmTaintSource> taintSources,
+                                MethodSignature mainMethodSignature,
+                                int maxCallStackDepth,
+                                HeapModel heapModel,
+                                AbortOperator abortOperator,
+                                boolean reduceHeap,
+                                MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> staticFieldMapAbstractStateFactory,
+                                MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<Reference>>> principalHeapMapAbstractStateFactory,
+                                MapAbstractStateFactory<String, SetAbstractState<Reference>> principalHeapNodeMapAbstractStateFactory,
+                                MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<JvmTaintSource>>> followerHeapMapAbstractStateFactory,
+                                MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> followerHeapNodeMapAbstractStateFactory,
+                                ExecutorService executorService,
+                                File cacheFile,
+                                boolean indexTaintSources)
+    {
+        super(cfa, maxCallStackDepth, heapModel, abortOperator, reduceHeap, executorService);
         this.taintSources                             = taintSources;
         this.mainMethodSignature                      = mainMethodSignature;
         this.staticFieldMapAbstractStateFactory       = staticFieldMapAbstractStateFactory;
@@ -111,24 +288,76 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
         this.principalHeapNodeMapAbstractStateFactory = principalHeapNodeMapAbstractStateFactory;
         this.followerHeapMapAbstractStateFactory      = followerHeapMapAbstractStateFactory;
         this.followerHeapNodeMapAbstractStateFactory  = followerHeapNodeMapAbstractStateFactory;
+        this.cacheFile                                = cacheFile;
+        this.taintSourceIndex                         = indexTaintSources ? new JvmTaintSourceIndex(taintSources) : null;
+    }
+
+    // implementations for CpaRun
 
+    /**
+     * Runs the analysis and, if a cache file is set, saves the block abstractions to it.
+     */
+    @Override
+    public ReachedSet execute()
+    {
+        ReachedSet reachedSet = super.execute();
+        BamCache<MethodSignature> cache = getCpa().getCache();
+        if (cache instanceof PersistentBamCache)
+        {
+            try
+            {
+                ((PersistentBamCache<MethodSignature>) cache).save();
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to save the BAM cache to {}: {}", cacheFile, e.getMessage());
+            }
+        }
+        return reachedSet;
     }
 
     // implementations for JvmBamCpaRun
 
+    /**
+     * Returns a BAM cache loaded from the cache file, if set, or a fresh one otherwise.
+     */
+    @Override
+    public BamCache<MethodSignature> createCache()
+    {
+        if (cacheFile == null)
+        {
+            return super.createCache();
+        }
+        if (heapModel != HeapModel.FORGETFUL)
+        {
+            throw new IllegalStateException("Heap model " + heapModel.name() + " doesn't support persisting the BAM cache");
+        }
+
+        PersistentBamCache<MethodSignature> cache = new PersistentBamCache<>(cacheFile, new JvmTaintBamCacheCodec(cfa, taintSources, staticFieldMapAbstractStateFactory, taintSourceIndex));
+        try
+        {
+            cache.load();
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to load the BAM cache from {}: {}", cacheFile, e.getMessage());
+        }
+        return cache;
+    }
+
     @Override
     public SimpleCpa createIntraproceduralCPA()
     {
         switch (heapModel)
         {
             case FORGETFUL:
-                return new JvmTaintCpa(taintSources);
+                return new JvmTaintCpa(taintSources, taintSourceIndex);
             case TREE:
             case TAINT_TREE:
                 AbstractDomain abstractDomain = new DelegateAbstractDomain<CompositeHeapJvmAbstractState>();
                 return new SimpleCpa(abstractDomain,
                                      new CompositeHeapTransferRelation(Arrays.asList(new JvmReferenceTransferRelation(),
-                                                                                     new JvmTaintTransferRelation(JvmTaintCpa.createSourcesMap(taintSources)))),
+                                                                                     new JvmTaintTransferRelation(JvmTaintCpa.createSourcesMap(taintSources), taintSourceIndex))),
                                      new MergeJoinOperator(abstractDomain),
                                      new StopJoinOperator(abstractDomain));
             default:
@@ -153,7 +382,7 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
     @Override
     public ExpandOperator<JvmCfaNode, JvmCfaEdge, MethodSignature> createExpandOperator()
     {
-        JvmTaintExpandOperator jvmExpandOperator = new JvmTaintExpandOperator(cfa, JvmTaintCpa.createSourcesMap(taintSources), reduceHeap);
+        JvmTaintExpandOperator jvmExpandOperator = new JvmTaintExpandOperator(cfa, JvmTaintCpa.createSourcesMap(taintSources), reduceHeap, taintSourceIndex);
 
         switch (heapModel)
         {
@@ -181,7 +410,7 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
             case FORGETFUL:
                 return Collections.singleton((OuterAbstractStateT) new JvmAbstractState<>(cfa.getFunctionEntryNode(mainMethodSignature),
                                                                                           new JvmFrameAbstractState<>(),
-                                                                                          new JvmForgetfulHeapAbstractState<>(SetAbstractState.bottom),
+                                                                                          new JvmForgetfulHeapAbstractState<>(getTaintBottom()),
                                                                                           staticFieldMapAbstractStateFactory.createMapAbstractState()));
             case TREE:
             case TAINT_TREE:
@@ -196,12 +425,12 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
                                               new JvmFrameAbstractState<>(),
                                               heapModel == HeapModel.TAINT_TREE
                                               ? new JvmTaintTreeHeapFollowerAbstractState(principalState,
-                                                                                          SetAbstractState.bottom,
+                                                                                          getTaintBottom(),
                                                                                           followerHeapMapAbstractStateFactory.createMapAbstractState(),
                                                                                           followerHeapMapAbstractStateFactory,
                                                                                           followerHeapNodeMapAbstractStateFactory)
                                               : new JvmBasicTaintTreeHeapFollowerAbstractState(principalState,
-                                                                                               SetAbstractState.bottom,
+                                                                                               getTaintBottom(),
                                                                                                followerHeapMapAbstractStateFactory.createMapAbstractState(),
                                                                                                followerHeapMapAbstractStateFactory,
                                                                                                followerHeapNodeMapAbstractStateFactory),
@@ -211,6 +440,21 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
         }
     }
 
+    /**
+     * Returns the taint sources numbered for the analysis, or null if the sets of taint sources are plain sets.
+     */
+    public JvmTaintSourceIndex getTaintSourceIndex()
+    {
+        return taintSourceIndex;
+    }
+
+    // private methods
+
+    private SetAbstractState<JvmTaintSource> getTaintBottom()
+    {
+        return taintSourceIndex == null ? SetAbstractState.bottom : taintSourceIndex.getBottom();
+    }
+
     /**
      * A builder for {@link JvmTaintBamCpaRun}. It assumes either the best performing parameters or the most basic one, if there is no absolute benefit.
      *
@@ -226,6 +470,9 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
         protected MapAbstractStateFactory<String, SetAbstractState<Reference>>                   principalHeapNodeMapAbstractStateFactory = HashMapAbstractStateFactory.getInstance();
         protected MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<JvmTaintSource>>> followerHeapMapAbstractStateFactory      = HashMapAbstractStateFactory.getInstance();
         protected MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>              followerHeapNodeMapAbstractStateFactory  = HashMapAbstractStateFactory.getInstance();
+        protected ExecutorService                                                                executorService;
+        protected File                                                                           cacheFile;
+        protected boolean                                                                        indexTaintSources;
 
         // implementations for JvmBamCpaRun.Builder
 
@@ -250,7 +497,10 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
                                            principalHeapMapAbstractStateFactory,
                                            principalHeapNodeMapAbstractStateFactory,
                                            followerHeapMapAbstractStateFactory,
-                                           followerHeapNodeMapAbstractStateFactory);
+                                           followerHeapNodeMapAbstractStateFactory,
+                                           executorService,
+                                           cacheFile,
+                                           indexTaintSources);
         }
 
         @Override
@@ -345,5 +595,36 @@ public class JvmTaintBamCpaRun<OuterAbstractStateT extends AbstractState>
             this.followerHeapNodeMapAbstractStateFactory = followerHeapNodeMapAbstractStateFactory;
             return this;
         }
+
+        /**
+         * Sets the executor service analyzing the procedure calls of the main method in parallel. By default, the analysis is sequential.
+         * The taint transfer relation and the operators of the run are then invoked from multiple threads. They only read the taint sources
+         * and create their states with the map abstract state factories, so these must be thread-safe, e.g., the predicates of the taint sources
+         * must not have side effects.
+         */
+        public Builder setExecutorService(ExecutorService executorService)
+        {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * Sets the file the block abstractions are persisted to across runs, so the unchanged methods don't need to be analyzed again.
+         */
+        public Builder setCacheFile(File cacheFile)
+        {
+            this.cacheFile = cacheFile;
+            return this;
+        }
+
+        /**
+         * Sets whether the taint sources are numbered, so their sets are represented as bit vectors, which are cheaper to join and store. By default,
+         * the sets of taint sources are plain hash sets.
+         */
+        public Builder setIndexTaintSources(boolean indexTaintSources)
+        {
+            this.indexTaintSources = indexTaintSources;
+            return this;
+        }
     }
 }
@@ -0,0 +1,446 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.analysis.cpa.jvm.domain.taint;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import proguard.analysis.cpa.defaults.SetAbstractState;
+
+/**
+ * This {@link SetAbstractState} represents a set of {@link JvmTaintSource}s as a bit vector over the numbering of a {@link JvmTaintSourceIndex}.
+ * The bits of the first 64 sources are stored inline, so typical sets don't need any additional arrays. Joins and comparisons with sets of the same
+ * index are word-wise operations that don't hash any sources, and joins return one of their operands whenever possible.
+ *
+ * <p>The set behaves like any other set of taint sources, so it can be mixed with plain {@link SetAbstractState}s, but it can only contain indexed
+ * sources. Like other set abstract states, it should only be modified after copying it.
+ */
+public class JvmTaintBitSetAbstractState
+    extends SetAbstractState<JvmTaintSource>
+{
+
+    private static final long   serialVersionUID = 1L;
+    private static final long[] NO_BITS          = new long[0];
+
+    private final JvmTaintSourceIndex taintSourceIndex;
+    // The bits of the taint sources 0 to 63.
+    private       long                bits;
+    // The bits of the taint sources from 64 onward, per 64 sources.
+    private       long[]              moreBits;
+
+    /**
+     * Create an empty set of taint sources.
+     *
+     * @param taintSourceIndex the numbering of the taint sources
+     */
+    public JvmTaintBitSetAbstractState(JvmTaintSourceIndex taintSourceIndex)
+    {
+        this(taintSourceIndex, 0L, NO_BITS);
+    }
+
+    private JvmTaintBitSetAbstractState(JvmTaintSourceIndex taintSourceIndex, long bits, long[] moreBits)
+    {
+        super(Collections.emptyList());
+        this.taintSourceIndex = taintSourceIndex;
+        this.bits             = bits;
+        this.moreBits         = moreBits;
+    }
+
+    /**
+     * Returns the numbering of the taint sources.
+     */
+    public JvmTaintSourceIndex getTaintSourceIndex()
+    {
+        return taintSourceIndex;
+    }
+
+    // implementations for LatticeAbstractState
+
+    @Override
+    public SetAbstractState<JvmTaintSource> join(SetAbstractState<JvmTaintSource> abstractState)
+    {
+        JvmTaintBitSetAbstractState other = sameIndex(abstractState);
+        if (other == null)
+        {
+            // Avoid copying for the most common mixed cases.
+            if (abstractState.isEmpty())
+            {
+                return this;
+            }
+            if (isEmpty())
+            {
+                return abstractState;
+            }
+            return super.join(abstractState);
+        }
+
+        if (other.isSubsetOf(this))
+        {
+            return this;
+        }
+        if (isSubsetOf(other))
+        {
+            return other;
+        }
+
+        long[] longer  = moreBits.length >= other.moreBits.length ? moreBits : other.moreBits;
+        long[] shorter = longer == moreBits ? other.moreBits : moreBits;
+        long[] joined  = longer.clone();
+        for (int index = 0; index < shorter.length; index++)
+        {
+            joined[index] |= shorter[index];
+        }
+        return new JvmTaintBitSetAbstractState(taintSourceIndex, bits | other.bits, joined);
+    }
+
+    @Override
+    public boolean isLessOrEqual(SetAbstractState<JvmTaintSource> abstractState)
+    {
+        JvmTaintBitSetAbstractState other = sameIndex(abstractState);
+        return other == null ? abstractState.containsAll(this) : isSubsetOf(other);
+    }
+
+    // implementations for AbstractState
+
+    @Override
+    public JvmTaintBitSetAbstractState copy()
+    {
+        return new JvmTaintBitSetAbstractState(taintSourceIndex, bits, moreBits.length == 0 ? NO_BITS : moreBits.clone());
+    }
+
+    // implementations for Set
+
+    @Override
+    public int size()
+    {
+        int size = Long.bitCount(bits);
+        for (long word : moreBits)
+        {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        if (bits != 0L)
+        {
+            return false;
+        }
+        for (long word : moreBits)
+        {
+            if (word != 0L)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object object)
+    {
+        int index = taintSourceIndex.getIndex(object);
+        return index >= 0 && isSet(index);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> collection)
+    {
+        JvmTaintBitSetAbstractState other = sameIndex(collection);
+        return other == null ? super.containsAll(collection) : other.isSubsetOf(this);
+    }
+
+    @Override
+    public boolean add(JvmTaintSource taintSource)
+    {
+        int index = taintSourceIndex.checkedIndex(taintSource);
+        if (isSet(index))
+        {
+            return false;
+        }
+
+        if (index < 64)
+        {
+            bits |= 1L << index;
+        }
+        else
+        {
+            int wordIndex = (index >>> 6) - 1;
+            if (wordIndex >= moreBits.length)
+            {
+                moreBits = Arrays.copyOf(moreBits, wordIndex + 1);
+            }
+            moreBits[wordIndex] |= 1L << index;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends JvmTaintSource> collection)
+    {
+        JvmTaintBitSetAbstractState other = sameIndex(collection);
+        if (other == null)
+        {
+            return super.addAll(collection);
+        }
+        if (other.isSubsetOf(this))
+        {
+            return false;
+        }
+
+        bits |= other.bits;
+        if (other.moreBits.length > moreBits.length)
+        {
+            moreBits = Arrays.copyOf(moreBits, other.moreBits.length);
+        }
+        for (int index = 0; index < other.moreBits.length; index++)
+        {
+            moreBits[index] |= other.moreBits[index];
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object object)
+    {
+        int index = taintSourceIndex.getIndex(object);
+        if (index < 0 || !isSet(index))
+        {
+            return false;
+        }
+
+        if (index < 64)
+        {
+            bits &= ~(1L << index);
+        }
+        else
+        {
+            moreBits[(index >>> 6) - 1] &= ~(1L << index);
+        }
+        return true;
+    }
+
+    @Override
+    public void clear()
+    {
+        bits     = 0L;
+        moreBits = NO_BITS;
+    }
+
+    @Override
+    public Iterator<JvmTaintSource> iterator()
+    {
+        return new Iterator<JvmTaintSource>()
+        {
+            private int nextIndex    = nextSetIndex(0);
+            private int currentIndex = -1;
+
+            @Override
+            public boolean hasNext()
+            {
+                return nextIndex >= 0;
+            }
+
+            @Override
+            public JvmTaintSource next()
+            {
+                if (nextIndex < 0)
+                {
+                    throw new NoSuchElementException();
+                }
+                currentIndex = nextIndex;
+                nextIndex    = nextSetIndex(nextIndex + 1);
+                return taintSourceIndex.getTaintSource(currentIndex);
+            }
+
+            @Override
+            public void remove()
+            {
+                if (currentIndex < 0)
+                {
+                    throw new IllegalStateException();
+                }
+                JvmTaintBitSetAbstractState.this.remove(taintSourceIndex.getTaintSource(currentIndex));
+                currentIndex = -1;
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<JvmTaintSource> spliterator()
+    {
+        return Spliterators.spliterator(this, Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+
+    @Override
+    public Object[] toArray()
+    {
+        return toArray(new Object[0]);
+    }
+
+    @Override
+    public <T> T[] toArray(T[] array)
+    {
+        int size = size();
+        T[] result = array.length >= size ? array : Arrays.copyOf(array, size);
+        // storing through an Object array still throws an ArrayStoreException for an incompatible component type
+        Object[] elements = result;
+        int index = 0;
+        for (JvmTaintSource taintSource : this)
+        {
+            elements[index++] = taintSource;
+        }
+        if (result.length > size)
+        {
+            result[size] = null;
+        }
+        return result;
+    }
+
+    @Override
+    public Object clone()
+    {
+        return copy();
+    }
+
+    // implementations for Serializable
+
+    /**
+     * Serializes the set as a plain {@link SetAbstractState} of its taint sources, since the inherited hash set is always empty.
+     */
+    private Object writeReplace()
+    {
+        return new SetAbstractState<>(this);
+    }
+
+    // implementations for Object
+
+    @Override
+    public boolean equals(Object object)
+    {
+        if (this == object)
+        {
+            return true;
+        }
+        JvmTaintBitSetAbstractState other = object instanceof Collection ? sameIndex((Collection<?>) object) : null;
+        if (other == null)
+        {
+            return object instanceof Set && super.equals(object);
+        }
+        return isSubsetOf(other) && other.isSubsetOf(this);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        // Like any set, the sum of the hash codes of the elements.
+        int hashCode = 0;
+        for (int index = nextSetIndex(0); index >= 0; index = nextSetIndex(index + 1))
+        {
+            hashCode += taintSourceIndex.hashCode(index);
+        }
+        return hashCode;
+    }
+
+    // private methods
+
+    /**
+     * Returns the given collection as a bit set of the same index, or null otherwise.
+     */
+    private JvmTaintBitSetAbstractState sameIndex(Collection<?> collection)
+    {
+        return collection instanceof JvmTaintBitSetAbstractState && ((JvmTaintBitSetAbstractState) collection).taintSourceIndex == taintSourceIndex
+               ? (JvmTaintBitSetAbstractState) collection
+               : null;
+    }
+
+    /**
+     * Returns whether this set is a subset of the given set of the same index.
+     */
+    private boolean isSubsetOf(JvmTaintBitSetAbstractState other)
+    {
+        if ((bits & ~other.bits) != 0L)
+        {
+            return false;
+        }
+        for (int index = 0; index < moreBits.length; index++)
+        {
+            long otherWord = index < other.moreBits.length ? other.moreBits[index] : 0L;
+            if ((moreBits[index] & ~otherWord) != 0L)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the taint source with the given index is in this set.
+     */
+    private boolean isSet(int index)
+    {
+        if (index < 64)
+        {
+            return (bits & (1L << index)) != 0L;
+        }
+        int wordIndex = (index >>> 6) - 1;
+        return wordIndex < moreBits.length && (moreBits[wordIndex] & (1L << index)) != 0L;
+    }
+
+    /**
+     * Returns the first index from the given index onward that is in this set, or -1 if there is none.
+     */
+    private int nextSetIndex(int fromIndex)
+    {
+        if (fromIndex < 64)
+        {
+            long word = bits & (-1L << fromIndex);
+            if (word != 0L)
+            {
+                return Long.numberOfTrailingZeros(word);
+            }
+            fromIndex = 64;
+        }
+
+        int wordIndex = (fromIndex >>> 6) - 1;
+        if (wordIndex >= moreBits.length)
+        {
+            return -1;
+        }
+        long word = moreBits[wordIndex] & (-1L << fromIndex);
+        while (true)
+        {
+            if (word != 0L)
+            {
+                return ((wordIndex + 1) << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++wordIndex == moreBits.length)
+            {
+                return -1;
+            }
+            word = moreBits[wordIndex];
+        }
+    }
+}
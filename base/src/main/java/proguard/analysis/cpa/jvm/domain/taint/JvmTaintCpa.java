@@ -48,7 +48,7 @@ public class JvmTaintCpa
      */
     public JvmTaintCpa(Set<? extends JvmTaintSource> sources)
     {
-        this(createSourcesMap(sources), new DelegateAbstractDomain<JvmAbstractState<SetAbstractState<JvmTaintSource>>>());
+        this(createSourcesMap(sources), null, new DelegateAbstractDomain<JvmAbstractState<SetAbstractState<JvmTaintSource>>>());
     }
 
     /**
@@ -58,13 +58,25 @@ public class JvmTaintCpa
      */
     public JvmTaintCpa(Map<Signature, Set<JvmTaintSource>> signaturesToSources)
     {
-        this(signaturesToSources, new DelegateAbstractDomain<JvmAbstractState<SetAbstractState<JvmTaintSource>>>());
+        this(signaturesToSources, null, new DelegateAbstractDomain<JvmAbstractState<SetAbstractState<JvmTaintSource>>>());
     }
 
-    private JvmTaintCpa(Map<Signature, Set<JvmTaintSource>> sources, AbstractDomain abstractDomain)
+    /**
+     * Create a taint CPA that represents the sets of taint sources as {@link JvmTaintBitSetAbstractState}s, so joining them only takes a few word-wise
+     * operations. The initial states should then contain the bottom of the index instead of {@link SetAbstractState#bottom}.
+     *
+     * @param sources          a set of taint sources
+     * @param taintSourceIndex the numbering of all taint sources
+     */
+    public JvmTaintCpa(Set<? extends JvmTaintSource> sources, JvmTaintSourceIndex taintSourceIndex)
+    {
+        this(createSourcesMap(sources), taintSourceIndex, new DelegateAbstractDomain<JvmAbstractState<SetAbstractState<JvmTaintSource>>>());
+    }
+
+    private JvmTaintCpa(Map<Signature, Set<JvmTaintSource>> sources, JvmTaintSourceIndex taintSourceIndex, AbstractDomain abstractDomain)
     {
         super(abstractDomain,
-              new JvmTaintTransferRelation(sources),
+              new JvmTaintTransferRelation(sources, taintSourceIndex),
               new MergeJoinOperator(abstractDomain),
               new StopJoinOperator(abstractDomain));
     }
@@ -19,6 +19,7 @@
 package proguard.analysis.cpa.jvm.domain.taint;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -52,6 +53,7 @@ public class JvmTaintExpandOperator
 {
 
     private final Map<Signature, Set<JvmTaintSource>> signaturesToSources;
+    private final JvmTaintSourceIndex                 taintSourceIndex;
 
     /**
      * Create the operator specifying the taint sources.
@@ -61,9 +63,24 @@ public class JvmTaintExpandOperator
      * @param expandHeap          whether expansion of the heap is performed
      */
     public JvmTaintExpandOperator(JvmCfa cfa, Map<Signature, Set<JvmTaintSource>> signaturesToSources, boolean expandHeap)
+    {
+        this(cfa, signaturesToSources, expandHeap, null);
+    }
+
+    /**
+     * Create the operator specifying the taint sources, optionally representing the sets of taint sources as {@link JvmTaintBitSetAbstractState}s.
+     *
+     * @param cfa                 the control flow automaton of the analyzed program.
+     * @param signaturesToSources a mapping from method signatures to their {@link JvmTaintSource}
+     * @param expandHeap          whether expansion of the heap is performed
+     * @param taintSourceIndex    the numbering of all taint sources
+     *                            null means plain sets of taint sources
+     */
+    public JvmTaintExpandOperator(JvmCfa cfa, Map<Signature, Set<JvmTaintSource>> signaturesToSources, boolean expandHeap, JvmTaintSourceIndex taintSourceIndex)
     {
         super(cfa, expandHeap);
         this.signaturesToSources = signaturesToSources;
+        this.taintSourceIndex    = taintSourceIndex;
     }
 
     /**
@@ -97,7 +114,7 @@ public class JvmTaintExpandOperator
                        .filter(s -> !s.taintsGlobals.isEmpty())
                        .forEach(s ->
                                 {
-                                    SetAbstractState<JvmTaintSource> newValue = new SetAbstractState<>(s);
+                                    SetAbstractState<JvmTaintSource> newValue = createTaint(s);
                                     s.taintsGlobals.forEach(fqn -> fqnToValue.merge(fqn, newValue, SetAbstractState::join));
                                 });
         fqnToValue.forEach(result::setStatic);
@@ -117,7 +134,7 @@ public class JvmTaintExpandOperator
                        .filter(s -> !s.taintsArgs.isEmpty())
                        .forEach(s ->
                                 {
-                                    SetAbstractState<JvmTaintSource> newValue = new SetAbstractState<>(s);
+                                    SetAbstractState<JvmTaintSource> newValue = createTaint(s);
                                     s.taintsArgs.forEach(a -> argToValue.merge(a, newValue, SetAbstractState::join));
                                 });
         argToValue.forEach((a, value) -> result.setObjectTaint(HeapUtil.getArgumentReference(expandedHeap, parameterSize, descriptor, call.isStatic(), a - 1),
@@ -127,7 +144,7 @@ public class JvmTaintExpandOperator
         if (!sourcesTaintingThis.isEmpty())
         {
             result.setObjectTaint(expandedHeap.getReferenceAbstractState(new JvmStackLocation(parameterSize - 1)),
-                                  new SetAbstractState<>(sourcesTaintingThis));
+                                  createTaint(sourcesTaintingThis));
         }
         return result;
     }
@@ -151,7 +168,7 @@ public class JvmTaintExpandOperator
 
         List<SetAbstractState<JvmTaintSource>> returnValues = new ArrayList<>();
 
-        SetAbstractState<JvmTaintSource> answerContent = new SetAbstractState<>(detectedSources);
+        SetAbstractState<JvmTaintSource> answerContent = createTaint(detectedSources);
         int returnSize = returnInstruction.stackPopCount(null);
         for (int i = 0; i < returnSize; i++)
         {
@@ -162,7 +179,7 @@ public class JvmTaintExpandOperator
         // pad to meet the return type size and append the abstract state
         for (int i = returnSize; i > 1; i--)
         {
-            returnValues.add(SetAbstractState.bottom);
+            returnValues.add(taintSourceIndex == null ? SetAbstractState.bottom : taintSourceIndex.getBottom());
         }
         if (returnSize > 0)
         {
@@ -190,4 +207,16 @@ public class JvmTaintExpandOperator
     {
         return signaturesToSources;
     }
+
+    // private methods
+
+    private SetAbstractState<JvmTaintSource> createTaint(JvmTaintSource taintSource)
+    {
+        return taintSourceIndex == null ? new SetAbstractState<>(taintSource) : taintSourceIndex.createState(taintSource);
+    }
+
+    private SetAbstractState<JvmTaintSource> createTaint(Collection<JvmTaintSource> taintSources)
+    {
+        return taintSourceIndex == null ? new SetAbstractState<>(taintSources) : taintSourceIndex.createState(taintSources);
+    }
 }
@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.domain.taint;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -118,6 +119,63 @@ public class JvmTaintMemoryLocationBamCpaRun
                                               MapAbstractStateFactory<String, SetAbstractState<Reference>> principalHeapNodeMapAbstractStateFactory,
                                               MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<JvmTaintSource>>> followerHeapMapAbstractStateFactory,
                                               MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> followerHeapNodeMapAbstractStateFactory)
+    {
+        this(cfa,
+             taintSources,
+             mainSignature,
+             maxCallStackDepth,
+             heapModel,
+             threshold,
+             taintSinks,
+             abortOperator,
+             memoryLocationAbortOperator,
+             reduceHeap,
+             staticFieldMapAbstractStateFactory,
+             principalHeapMapAbstractStateFactory,
+             principalHeapNodeMapAbstractStateFactory,
+             followerHeapMapAbstractStateFactory,
+             followerHeapNodeMapAbstractStateFactory,
+             null);
+    }
+
+    /**
+     * Create a traced taint CPA run. If a cache file is provided, the block abstractions of the taint analysis stored in it by a previous run
+     * are reused, as far as the code they depend on didn't change, and the cache file is updated after the run.
+     *
+     * @param cfa                                      a CFA
+     * @param taintSources                             a set of taint sources
+     * @param mainSignature                            the main signature of the main method
+     * @param maxCallStackDepth                        the maximum depth of the call stack analyzed interprocedurally.
+     *                                                 0 means intraprocedural analysis.
+     *                                                 < 0 means no maximum depth.
+     * @param threshold                                a cut-off threshold
+     * @param taintSinks                               a collection of taint sinks
+     * @param abortOperator                            an abort operator
+     * @param memoryLocationAbortOperator              an abort operator for trace reconstruction
+     * @param reduceHeap                               whether reduction/expansion of the heap state is performed at call/return sites
+     * @param principalHeapMapAbstractStateFactory     a map abstract state factory used for constructing the mapping from references to objects in the principal heap model
+     * @param principalHeapNodeMapAbstractStateFactory a map abstract state factory used for constructing the mapping from fields to values in the principal heap model
+     * @param followerHeapMapAbstractStateFactory      a map abstract state factory used for constructing the mapping from references to objects in the follower heap model
+     * @param followerHeapNodeMapAbstractStateFactory  a map abstract state factory used for constructing the mapping from fields to values in the follower heap model
+     * @param cacheFile                                the file the block abstractions of the taint analysis are persisted to across runs
+     *                                                 null means no persistence
+     */
+    protected JvmTaintMemoryLocationBamCpaRun(JvmCfa cfa,
+                                              Set<? extends JvmTaintSource> taintSources,
+                                              MethodSignature mainSignature,
+                                              int maxCallStackDepth,
+                                              HeapModel heapModel,
+                                              SetAbstractState<JvmTaintSource> threshold,
+                                              Collection<? extends JvmTaintSink> taintSinks,
+                                              AbortOperator abortOperator,
+                                              AbortOperator memoryLocationAbortOperator,
+                                              boolean reduceHeap,
+                                              MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> staticFieldMapAbstractStateFactory,
+                                              MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<Reference>>> principalHeapMapAbstractStateFactory,
+                                              MapAbstractStateFactory<String, SetAbstractState<Reference>> principalHeapNodeMapAbstractStateFactory,
+                                              MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<JvmTaintSource>>> followerHeapMapAbstractStateFactory,
+                                              MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>> followerHeapNodeMapAbstractStateFactory,
+                                              File cacheFile)
     {
         this(new JvmTaintBamCpaRun<JvmAbstractState<SetAbstractState<JvmTaintSource>>>(cfa,
                                                                                        taintSources,
@@ -130,7 +188,9 @@ public class JvmTaintMemoryLocationBamCpaRun
                                                                                        principalHeapMapAbstractStateFactory,
                                                                                        principalHeapNodeMapAbstractStateFactory,
                                                                                        followerHeapMapAbstractStateFactory,
-                                                                                       followerHeapNodeMapAbstractStateFactory),
+                                                                                       followerHeapNodeMapAbstractStateFactory,
+                                                                                       null,
+                                                                                       cacheFile),
              threshold,
              taintSinks,
              memoryLocationAbortOperator);
@@ -276,6 +336,7 @@ public class JvmTaintMemoryLocationBamCpaRun
         private MapAbstractStateFactory<String, SetAbstractState<Reference>>                   principalHeapNodeMapAbstractStateFactory = HashMapAbstractStateFactory.getInstance();
         private MapAbstractStateFactory<Reference, HeapNode<SetAbstractState<JvmTaintSource>>> followerHeapMapAbstractStateFactory      = HashMapAbstractStateFactory.getInstance();
         private MapAbstractStateFactory<String, SetAbstractState<JvmTaintSource>>              followerHeapNodeMapAbstractStateFactory  = HashMapAbstractStateFactory.getInstance();
+        private File                                                                           cacheFile;
 
         /**
          * Returns the {@link JvmTaintMemoryLocationBamCpaRun} for given parameters.
@@ -300,7 +361,8 @@ public class JvmTaintMemoryLocationBamCpaRun
                                                        principalHeapMapAbstractStateFactory,
                                                        principalHeapNodeMapAbstractStateFactory,
                                                        followerHeapMapAbstractStateFactory,
-                                                       followerHeapNodeMapAbstractStateFactory);
+                                                       followerHeapNodeMapAbstractStateFactory,
+                                                       cacheFile);
         }
 
         /**
@@ -437,5 +499,14 @@ public class JvmTaintMemoryLocationBamCpaRun
             this.followerHeapNodeMapAbstractStateFactory = followerHeapNodeMapAbstractStateFactory;
             return this;
         }
+
+        /**
+         * Sets the file the block abstractions of the taint analysis are persisted to across runs, so the unchanged methods don't need to be analyzed again.
+         */
+        public Builder setCacheFile(File cacheFile)
+        {
+            this.cacheFile = cacheFile;
+            return this;
+        }
     }
 }
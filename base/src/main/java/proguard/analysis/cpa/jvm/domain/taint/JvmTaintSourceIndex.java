@@ -0,0 +1,161 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.analysis.cpa.jvm.domain.taint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link JvmTaintSourceIndex} numbers the taint sources of an analysis once, so their sets can be represented as {@link JvmTaintBitSetAbstractState}s.
+ * The sources are numbered in the order of their string representations, like in a {@link JvmTaintBamCacheCodec}, so the numbering doesn't depend
+ * on the order of the given collection.
+ *
+ * <p>The empty set and the sets with a single source are shared. Like {@link proguard.analysis.cpa.defaults.SetAbstractState#bottom}, they must only be
+ * modified after copying them.
+ */
+public class JvmTaintSourceIndex
+{
+
+    private final JvmTaintSource[]              taintSources;
+    private final int[]                         hashCodes;
+    private final Map<JvmTaintSource, Integer>  indices         = new HashMap<>();
+    private final Map<JvmTaintSource, Integer>  identityIndices = new IdentityHashMap<>();
+    private final JvmTaintBitSetAbstractState   bottom;
+    private final JvmTaintBitSetAbstractState[] singletons;
+
+    /**
+     * Create an index of the given taint sources.
+     *
+     * @param taintSources the taint sources of the analysis
+     */
+    public JvmTaintSourceIndex(Collection<? extends JvmTaintSource> taintSources)
+    {
+        List<JvmTaintSource> sortedTaintSources = new ArrayList<>(new LinkedHashSet<>(taintSources));
+        sortedTaintSources.sort(Comparator.comparing(JvmTaintSource::toString));
+
+        this.taintSources = sortedTaintSources.toArray(new JvmTaintSource[0]);
+        this.hashCodes    = new int[this.taintSources.length];
+        for (int index = 0; index < this.taintSources.length; index++)
+        {
+            indices.put(this.taintSources[index], index);
+            identityIndices.put(this.taintSources[index], index);
+            hashCodes[index] = this.taintSources[index].hashCode();
+        }
+
+        this.bottom     = new JvmTaintBitSetAbstractState(this);
+        this.singletons = new JvmTaintBitSetAbstractState[this.taintSources.length];
+        for (int index = 0; index < this.taintSources.length; index++)
+        {
+            singletons[index] = new JvmTaintBitSetAbstractState(this);
+            singletons[index].add(this.taintSources[index]);
+        }
+    }
+
+    /**
+     * Returns the number of indexed taint sources.
+     */
+    public int size()
+    {
+        return taintSources.length;
+    }
+
+    /**
+     * Returns the index of the given taint source, or -1 if it isn't indexed.
+     */
+    public int getIndex(Object taintSource)
+    {
+        Integer index = identityIndices.get(taintSource);
+        if (index == null)
+        {
+            index = indices.get(taintSource);
+        }
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the taint source with the given index.
+     */
+    public JvmTaintSource getTaintSource(int index)
+    {
+        return taintSources[index];
+    }
+
+    /**
+     * Returns the shared empty set of taint sources.
+     */
+    public JvmTaintBitSetAbstractState getBottom()
+    {
+        return bottom;
+    }
+
+    /**
+     * Returns the shared set containing the given taint source.
+     */
+    public JvmTaintBitSetAbstractState createState(JvmTaintSource taintSource)
+    {
+        return singletons[checkedIndex(taintSource)];
+    }
+
+    /**
+     * Returns a set containing the given taint sources, which is shared if it contains at most one source.
+     */
+    public JvmTaintBitSetAbstractState createState(Collection<? extends JvmTaintSource> taintSources)
+    {
+        if (taintSources.isEmpty())
+        {
+            return bottom;
+        }
+        if (taintSources.size() == 1)
+        {
+            return createState(taintSources.iterator().next());
+        }
+
+        JvmTaintBitSetAbstractState state = new JvmTaintBitSetAbstractState(this);
+        state.addAll(taintSources);
+        return state;
+    }
+
+    // package-private methods
+
+    /**
+     * Returns the hash code of the taint source with the given index.
+     */
+    int hashCode(int index)
+    {
+        return hashCodes[index];
+    }
+
+    /**
+     * Returns the index of the given taint source, throwing an exception if it isn't indexed.
+     */
+    int checkedIndex(Object taintSource)
+    {
+        int index = getIndex(taintSource);
+        if (index < 0)
+        {
+            throw new IllegalArgumentException("Taint source [" + taintSource + "] is not indexed");
+        }
+        return index;
+    }
+}
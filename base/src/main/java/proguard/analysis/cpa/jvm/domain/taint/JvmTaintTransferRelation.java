@@ -18,6 +18,7 @@
 
 package proguard.analysis.cpa.jvm.domain.taint;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -52,6 +53,7 @@ public class JvmTaintTransferRelation
     extends JvmTransferRelation<SetAbstractState<JvmTaintSource>>
 {
     private final Map<Signature, Set<JvmTaintSource>> taintSources;
+    private final JvmTaintSourceIndex                 taintSourceIndex;
 
     /**
      * Create a taint transfer relation.
@@ -60,7 +62,20 @@ public class JvmTaintTransferRelation
      */
     public JvmTaintTransferRelation(Map<Signature, Set<JvmTaintSource>> taintSources)
     {
-        this.taintSources = taintSources;
+        this(taintSources, null);
+    }
+
+    /**
+     * Create a taint transfer relation that optionally represents the sets of taint sources as {@link JvmTaintBitSetAbstractState}s.
+     *
+     * @param taintSources     a mapping from fully qualified names to taint sources
+     * @param taintSourceIndex the numbering of all taint sources
+     *                         null means plain sets of taint sources
+     */
+    public JvmTaintTransferRelation(Map<Signature, Set<JvmTaintSource>> taintSources, JvmTaintSourceIndex taintSourceIndex)
+    {
+        this.taintSources     = taintSources;
+        this.taintSourceIndex = taintSourceIndex;
     }
 
     // implementations for JvmTransferRelation
@@ -82,8 +97,7 @@ public class JvmTaintTransferRelation
                                                                     .collect(Collectors.toList());
         if (!detectedReturnSources.isEmpty() && !answerContent.containsAll(detectedReturnSources))
         {
-            answerContent = answerContent.copy();
-            answerContent.addAll(detectedReturnSources);
+            answerContent = answerContent.join(createTaint(detectedReturnSources));
         }
 
         // pad to the return type size and put the abstract state on the top of the stack
@@ -106,7 +120,7 @@ public class JvmTaintTransferRelation
                        .filter(s -> !s.taintsGlobals.isEmpty())
                        .forEach(s ->
                                 {
-                                    SetAbstractState<JvmTaintSource> newValue = new SetAbstractState<>(s);
+                                    SetAbstractState<JvmTaintSource> newValue = createTaint(s);
                                     s.taintsGlobals.forEach(fqn -> fqnToValue.merge(fqn, newValue, SetAbstractState::join));
                                 });
         fqnToValue.forEach(state::setStatic);
@@ -128,7 +142,7 @@ public class JvmTaintTransferRelation
                        .filter(s -> !s.taintsArgs.isEmpty())
                        .forEach(s ->
                                 {
-                                    SetAbstractState<JvmTaintSource> newValue = new SetAbstractState<>(s);
+                                    SetAbstractState<JvmTaintSource> newValue = createTaint(s);
                                     s.taintsArgs.forEach(a -> argToValue.merge(a, newValue, SetAbstractState::join));
                                 });
         argToValue.forEach((a, value) -> taintAbstractState.setObjectTaint(HeapUtil.getArgumentReference(treeHeap, parameterSize, descriptor, call.isStatic(), a - 1),
@@ -138,14 +152,14 @@ public class JvmTaintTransferRelation
         if (!sourcesTaintingThis.isEmpty())
         {
             taintAbstractState.setObjectTaint(treeHeap.getReferenceAbstractState(new JvmStackLocation(parameterSize - 1)),
-                                              new SetAbstractState<>(sourcesTaintingThis));
+                                              createTaint(sourcesTaintingThis));
         }
     }
 
     @Override
     public SetAbstractState<JvmTaintSource> getAbstractDefault()
     {
-        return SetAbstractState.bottom;
+        return taintSourceIndex == null ? SetAbstractState.bottom : taintSourceIndex.getBottom();
     }
 
     @Override
@@ -158,6 +172,18 @@ public class JvmTaintTransferRelation
         return abstractState;
     }
 
+    // private methods
+
+    private SetAbstractState<JvmTaintSource> createTaint(JvmTaintSource taintSource)
+    {
+        return taintSourceIndex == null ? new SetAbstractState<>(taintSource) : taintSourceIndex.createState(taintSource);
+    }
+
+    private SetAbstractState<JvmTaintSource> createTaint(Collection<JvmTaintSource> taintSources)
+    {
+        return taintSourceIndex == null ? new SetAbstractState<>(taintSources) : taintSourceIndex.createState(taintSources);
+    }
+
     protected class InstructionAbstractInterpreter extends JvmTransferRelation<SetAbstractState<JvmTaintSource>>.InstructionAbstractInterpreter
     {
 
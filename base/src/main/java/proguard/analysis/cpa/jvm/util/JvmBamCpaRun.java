@@ -19,6 +19,7 @@
 package proguard.analysis.cpa.jvm.util;
 
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 import proguard.analysis.cpa.bam.ReduceOperator;
 import proguard.analysis.cpa.defaults.BamCpaRun;
 import proguard.analysis.cpa.defaults.LatticeAbstractState;
@@ -74,7 +75,25 @@ public abstract class JvmBamCpaRun<CpaT extends ConfigurableProgramAnalysis, Abs
      */
     protected JvmBamCpaRun(JvmCfa cfa, int maxCallStackDepth, HeapModel heapModel, AbortOperator abortOperator, boolean reduceHeap)
     {
-        super(abortOperator, maxCallStackDepth, reduceHeap);
+        this(cfa, maxCallStackDepth, heapModel, abortOperator, reduceHeap, null);
+    }
+
+    /**
+     * Create a JVM BAM CPA run.
+     *
+     * @param cfa               a CFA
+     * @param maxCallStackDepth the maximum depth of the call stack analyzed interprocedurally
+     *                          0 means intraprocedural analysis
+     *                          < 0 means no maximum depth
+     * @param abortOperator     an abort operator
+     * @param reduceHeap        whether reduction/expansion of the heap state is performed at call/return sites
+     * @param executorService   the executor service analyzing the procedure calls of the main method in parallel
+     *                          null means sequential analysis
+     *                          otherwise, the intraprocedural CPA and the BAM operators must be thread-safe
+     */
+    protected JvmBamCpaRun(JvmCfa cfa, int maxCallStackDepth, HeapModel heapModel, AbortOperator abortOperator, boolean reduceHeap, ExecutorService executorService)
+    {
+        super(abortOperator, maxCallStackDepth, reduceHeap, executorService);
         this.cfa = cfa;
         this.heapModel = heapModel;
     }
@@ -0,0 +1,416 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.analysis.cpa.jvm.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import proguard.analysis.cpa.jvm.cfa.JvmCfa;
+import proguard.analysis.cpa.jvm.cfa.edges.JvmCallCfaEdge;
+import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode;
+import proguard.classfile.Clazz;
+import proguard.classfile.Method;
+import proguard.classfile.MethodSignature;
+import proguard.classfile.attribute.Attribute;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.attribute.ExceptionInfo;
+import proguard.classfile.attribute.visitor.AllAttributeVisitor;
+import proguard.classfile.attribute.visitor.AttributeNameFilter;
+import proguard.classfile.attribute.visitor.AttributeVisitor;
+import proguard.classfile.attribute.visitor.ExceptionInfoVisitor;
+import proguard.classfile.constant.ClassConstant;
+import proguard.classfile.constant.Constant;
+import proguard.classfile.constant.DoubleConstant;
+import proguard.classfile.constant.DynamicConstant;
+import proguard.classfile.constant.FloatConstant;
+import proguard.classfile.constant.IntegerConstant;
+import proguard.classfile.constant.InvokeDynamicConstant;
+import proguard.classfile.constant.LongConstant;
+import proguard.classfile.constant.MethodHandleConstant;
+import proguard.classfile.constant.MethodTypeConstant;
+import proguard.classfile.constant.RefConstant;
+import proguard.classfile.constant.StringConstant;
+import proguard.classfile.constant.visitor.ConstantVisitor;
+import proguard.classfile.instruction.ConstantInstruction;
+import proguard.classfile.instruction.Instruction;
+import proguard.classfile.instruction.visitor.InstructionVisitor;
+
+/**
+ * This class computes content hashes of the methods of a {@link JvmCfa}. The content hash of a method covers its own code, with the constants it references,
+ * and the content hashes of all the methods it may call, as far as their code is part of the CFA. It hence changes whenever the method or any method it
+ * transitively calls changes.
+ *
+ * <p>The hashes of (mutually) recursive methods are computed together, as a single strongly connected component of the call graph, so every method
+ * is only hashed once.
+ */
+public class JvmMethodContentHasher
+{
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final JvmCfa                       cfa;
+    private final Map<MethodSignature, byte[]> contentHashes = new HashMap<>();
+
+    /**
+     * Create a content hasher for the methods of the given CFA.
+     *
+     * @param cfa a control flow automaton
+     */
+    public JvmMethodContentHasher(JvmCfa cfa)
+    {
+        this.cfa = cfa;
+    }
+
+    /**
+     * Returns the content hash of the given method, or null if the code of the method or of a method it may call is unknown.
+     */
+    public synchronized byte[] getContentHash(MethodSignature signature)
+    {
+        if (!contentHashes.containsKey(signature))
+        {
+            computeContentHashes(signature);
+        }
+        return contentHashes.get(signature);
+    }
+
+    // private methods
+
+    /**
+     * Computes the content hashes of the given method and all the methods it may call, using Tarjan's algorithm for finding strongly connected components,
+     * without recursion.
+     */
+    private void computeContentHashes(MethodSignature root)
+    {
+        Map<MethodSignature, Integer> indices   = new HashMap<>();
+        Map<MethodSignature, Integer> lowLinks  = new HashMap<>();
+        Deque<MethodSignature>        component = new ArrayDeque<>();
+        Set<MethodSignature>          onStack   = new HashSet<>();
+        Deque<Frame>                  frames    = new ArrayDeque<>();
+
+        frames.push(visit(root, indices, lowLinks, component, onStack));
+        while (!frames.isEmpty())
+        {
+            Frame frame = frames.peek();
+            if (frame.callees.hasNext())
+            {
+                MethodSignature callee = frame.callees.next();
+                if (contentHashes.containsKey(callee))
+                {
+                    // the component of the callee has been hashed in an earlier run
+                    continue;
+                }
+                if (!indices.containsKey(callee))
+                {
+                    frames.push(visit(callee, indices, lowLinks, component, onStack));
+                }
+                else if (onStack.contains(callee))
+                {
+                    lowLinks.put(frame.signature, Math.min(lowLinks.get(frame.signature), indices.get(callee)));
+                }
+                continue;
+            }
+
+            frames.pop();
+            if (!frames.isEmpty())
+            {
+                MethodSignature caller = frames.peek().signature;
+                lowLinks.put(caller, Math.min(lowLinks.get(caller), lowLinks.get(frame.signature)));
+            }
+
+            if (lowLinks.get(frame.signature).equals(indices.get(frame.signature)))
+            {
+                // the method is the root of a strongly connected component
+                Set<MethodSignature> members = new TreeSet<>();
+                MethodSignature      member;
+                do
+                {
+                    member = component.pop();
+                    onStack.remove(member);
+                    members.add(member);
+                }
+                while (!member.equals(frame.signature));
+
+                byte[] hash = hashComponent(members);
+                for (MethodSignature signature : members)
+                {
+                    contentHashes.put(signature, hash);
+                }
+            }
+        }
+    }
+
+    private Frame visit(MethodSignature signature,
+                        Map<MethodSignature, Integer> indices,
+                        Map<MethodSignature, Integer> lowLinks,
+                        Deque<MethodSignature> component,
+                        Set<MethodSignature> onStack)
+    {
+        int index = indices.size();
+        indices.put(signature, index);
+        lowLinks.put(signature, index);
+        component.push(signature);
+        onStack.add(signature);
+        return new Frame(signature, getCallees(signature).iterator());
+    }
+
+    /**
+     * Returns the sorted signatures of the methods with code in the CFA that the given method may call.
+     */
+    private Set<MethodSignature> getCallees(MethodSignature signature)
+    {
+        Set<MethodSignature> callees = new TreeSet<>();
+        for (JvmCfaNode node : cfa.getFunctionNodes(signature))
+        {
+            for (JvmCallCfaEdge edge : node.getKnownMethodCallEdges())
+            {
+                MethodSignature target = edge.getCall().getTarget();
+                if (cfa.getFunctionEntryNode(target) != null)
+                {
+                    callees.add(target);
+                }
+            }
+        }
+        return callees;
+    }
+
+    /**
+     * Returns the hash of the code of the given methods and of the content of the methods they call, or null if any of them is unknown.
+     */
+    private byte[] hashComponent(Set<MethodSignature> members)
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+
+        Set<MethodSignature> callees = new TreeSet<>();
+        for (MethodSignature member : members)
+        {
+            JvmCfaNode entryNode = cfa.getFunctionEntryNode(member);
+            Clazz      clazz     = entryNode == null ? null : entryNode.getClazz();
+            Method     method    = clazz == null ? null : clazz.findMethod(member.method, member.descriptor.toString());
+            if (method == null)
+            {
+                return null;
+            }
+
+            CodeDigester codeDigester = new CodeDigester(digest);
+            codeDigester.update(member.getFqn());
+            method.accept(clazz, new AllAttributeVisitor(new AttributeNameFilter(Attribute.CODE, codeDigester)));
+
+            callees.addAll(getCallees(member));
+        }
+
+        callees.removeAll(members);
+        for (MethodSignature callee : callees)
+        {
+            byte[] calleeHash = contentHashes.get(callee);
+            if (calleeHash == null)
+            {
+                return null;
+            }
+            digest.update(calleeHash);
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * A frame of the depth-first traversal of the call graph.
+     */
+    private static class Frame
+    {
+
+        public final MethodSignature           signature;
+        public final Iterator<MethodSignature> callees;
+
+        public Frame(MethodSignature signature, Iterator<MethodSignature> callees)
+        {
+            this.signature = signature;
+            this.callees = callees;
+        }
+    }
+
+    /**
+     * This visitor adds the instructions and the exception handlers of a code attribute to a message digest, replacing constant pool indices by the referenced constants.
+     */
+    private static class CodeDigester
+        implements AttributeVisitor,
+                   InstructionVisitor,
+                   ExceptionInfoVisitor,
+                   ConstantVisitor
+    {
+
+        private final MessageDigest digest;
+
+        public CodeDigester(MessageDigest digest)
+        {
+            this.digest = digest;
+        }
+
+        // implementations for AttributeVisitor
+
+        @Override
+        public void visitCodeAttribute(Clazz clazz, Method method, CodeAttribute codeAttribute)
+        {
+            update(codeAttribute.u4codeLength);
+            codeAttribute.instructionsAccept(clazz, method, this);
+            codeAttribute.exceptionsAccept(clazz, method, this);
+        }
+
+        // implementations for InstructionVisitor
+
+        @Override
+        public void visitAnyInstruction(Clazz clazz, Method method, CodeAttribute codeAttribute, int offset, Instruction instruction)
+        {
+            // the operands of other instructions don't refer to the constant pool
+            digest.update(codeAttribute.code, offset, instruction.length(offset));
+        }
+
+        @Override
+        public void visitConstantInstruction(Clazz clazz, Method method, CodeAttribute codeAttribute, int offset, ConstantInstruction constantInstruction)
+        {
+            digest.update(constantInstruction.opcode);
+            update(constantInstruction.constant);
+            clazz.constantPoolEntryAccept(constantInstruction.constantIndex, this);
+        }
+
+        // implementations for ExceptionInfoVisitor
+
+        @Override
+        public void visitExceptionInfo(Clazz clazz, Method method, CodeAttribute codeAttribute, ExceptionInfo exceptionInfo)
+        {
+            update(exceptionInfo.u2startPC);
+            update(exceptionInfo.u2endPC);
+            update(exceptionInfo.u2handlerPC);
+            update(exceptionInfo.u2catchType == 0 ? "" : clazz.getClassName(exceptionInfo.u2catchType));
+        }
+
+        // implementations for ConstantVisitor
+
+        @Override
+        public void visitAnyConstant(Clazz clazz, Constant constant)
+        {
+            digest.update((byte) constant.getTag());
+        }
+
+        @Override
+        public void visitIntegerConstant(Clazz clazz, IntegerConstant integerConstant)
+        {
+            update(integerConstant.getValue());
+        }
+
+        @Override
+        public void visitLongConstant(Clazz clazz, LongConstant longConstant)
+        {
+            update(Long.toString(longConstant.getValue()));
+        }
+
+        @Override
+        public void visitFloatConstant(Clazz clazz, FloatConstant floatConstant)
+        {
+            update(Float.floatToRawIntBits(floatConstant.getValue()));
+        }
+
+        @Override
+        public void visitDoubleConstant(Clazz clazz, DoubleConstant doubleConstant)
+        {
+            update(Long.toString(Double.doubleToRawLongBits(doubleConstant.getValue())));
+        }
+
+        @Override
+        public void visitStringConstant(Clazz clazz, StringConstant stringConstant)
+        {
+            update(stringConstant.getString(clazz));
+        }
+
+        @Override
+        public void visitClassConstant(Clazz clazz, ClassConstant classConstant)
+        {
+            update(classConstant.getName(clazz));
+        }
+
+        @Override
+        public void visitAnyRefConstant(Clazz clazz, RefConstant refConstant)
+        {
+            digest.update((byte) refConstant.getTag());
+            update(refConstant.getClassName(clazz));
+            update(refConstant.getName(clazz));
+            update(refConstant.getType(clazz));
+        }
+
+        @Override
+        public void visitMethodTypeConstant(Clazz clazz, MethodTypeConstant methodTypeConstant)
+        {
+            update(methodTypeConstant.getType(clazz));
+        }
+
+        @Override
+        public void visitMethodHandleConstant(Clazz clazz, MethodHandleConstant methodHandleConstant)
+        {
+            update(methodHandleConstant.getReferenceKind());
+            clazz.constantPoolEntryAccept(methodHandleConstant.u2referenceIndex, this);
+        }
+
+        @Override
+        public void visitInvokeDynamicConstant(Clazz clazz, InvokeDynamicConstant invokeDynamicConstant)
+        {
+            update(invokeDynamicConstant.getBootstrapMethodAttributeIndex());
+            update(invokeDynamicConstant.getName(clazz));
+            update(invokeDynamicConstant.getType(clazz));
+        }
+
+        @Override
+        public void visitDynamicConstant(Clazz clazz, DynamicConstant dynamicConstant)
+        {
+            update(dynamicConstant.getBootstrapMethodAttributeIndex());
+            update(dynamicConstant.getName(clazz));
+            update(dynamicConstant.getType(clazz));
+        }
+
+        // private methods
+
+        private void update(int value)
+        {
+            digest.update((byte) (value >>> 24));
+            digest.update((byte) (value >>> 16));
+            digest.update((byte) (value >>> 8));
+            digest.update((byte) value);
+        }
+
+        private void update(String value)
+        {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            update(bytes.length);
+            digest.update(bytes);
+        }
+    }
+}
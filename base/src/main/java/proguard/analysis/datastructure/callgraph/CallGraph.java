@@ -19,10 +19,13 @@
 package proguard.analysis.datastructure.callgraph;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import proguard.analysis.CallResolver;
+import proguard.analysis.ParallelCallResolver;
 import proguard.classfile.ClassPool;
 import proguard.classfile.Clazz;
 import proguard.classfile.MethodSignature;
@@ -37,15 +40,51 @@ import proguard.util.CallGraphWalker;
 public class CallGraph
 {
 
-    private static final transient Logger                          log      = LogManager.getLogger(CallGraph.class);
-    public final                   Map<MethodSignature, Set<Call>> incoming = new HashMap<>();
-    public final                   Map<MethodSignature, Set<Call>> outgoing = new HashMap<>();
+    private static final transient Logger                          log = LogManager.getLogger(CallGraph.class);
+    public final                   Map<MethodSignature, Set<Call>> incoming;
+    public final                   Map<MethodSignature, Set<Call>> outgoing;
+    private final                  boolean                         concurrent;
 
     /**
      * If true, incoming edges are not explored further for known entry points.
      */
     private static final boolean STOP_AT_ENTRYPOINT = true;
 
+    /**
+     * Create an empty call graph that is only modified by a single thread.
+     */
+    public CallGraph()
+    {
+        this(new HashMap<>(), new HashMap<>(), false);
+    }
+
+    /**
+     * Create an empty call graph with the given maps.
+     *
+     * @param incoming   The map for the incoming calls of all methods.
+     * @param outgoing   The map for the outgoing calls of all methods.
+     * @param concurrent If true, the sets of calls can be modified by
+     *                   multiple threads at the same time.
+     */
+    protected CallGraph(Map<MethodSignature, Set<Call>> incoming,
+                        Map<MethodSignature, Set<Call>> outgoing,
+                        boolean                         concurrent)
+    {
+        this.incoming   = incoming;
+        this.outgoing   = outgoing;
+        this.concurrent = concurrent;
+    }
+
+    /**
+     * Create an empty call graph to which multiple threads can add calls
+     * at the same time, e.g. the {@link CallResolver}s of a
+     * {@link ParallelCallResolver}.
+     */
+    public static CallGraph concurrentCallGraph()
+    {
+        return new CallGraph(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), true);
+    }
+
     /**
      * Add a {@link Call} to this call graph.
      *
@@ -64,13 +103,22 @@ public class CallGraph
             return;
         }
 
-        outgoing.computeIfAbsent((MethodSignature) call.caller.signature, e -> new HashSet<>())
+        outgoing.computeIfAbsent((MethodSignature) call.caller.signature, e -> createCallSet())
                 .add(call);
 
-        incoming.computeIfAbsent(call.getTarget(), e -> new HashSet<>())
+        incoming.computeIfAbsent(call.getTarget(), e -> createCallSet())
                 .add(call);
     }
 
+    /**
+     * Returns whether multiple threads can add calls to this call graph
+     * at the same time.
+     */
+    public boolean isConcurrent()
+    {
+        return concurrent;
+    }
+
     /**
      * Clear the call graph references.
      */
@@ -200,6 +248,14 @@ public class CallGraph
         return true;
     }
 
+    /**
+     * Creates a set for the incoming or outgoing calls of a method.
+     */
+    private Set<Call> createCallSet()
+    {
+        return concurrent ? ConcurrentHashMap.newKeySet() : new HashSet<>();
+    }
+
     /**
      * Check if a {@link Clazz} either matches the provided class name or extends
      * this provided class. Both direct and transitive inheritance is allowed.
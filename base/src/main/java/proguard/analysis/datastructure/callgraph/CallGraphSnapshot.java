@@ -0,0 +1,941 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.analysis.datastructure.callgraph;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import proguard.analysis.CallResolver;
+import proguard.analysis.datastructure.CodeLocation;
+import proguard.classfile.ClassPool;
+import proguard.classfile.Clazz;
+import proguard.classfile.Member;
+import proguard.classfile.Method;
+import proguard.classfile.MethodDescriptor;
+import proguard.classfile.MethodSignature;
+import proguard.classfile.ProgramClass;
+import proguard.classfile.attribute.CodeAttribute;
+import proguard.classfile.attribute.visitor.AllAttributeVisitor;
+import proguard.classfile.instruction.ConstantInstruction;
+import proguard.classfile.instruction.Instruction;
+import proguard.classfile.instruction.InstructionFactory;
+import proguard.classfile.instruction.visitor.AllInstructionVisitor;
+import proguard.classfile.instruction.visitor.InstructionVisitor;
+import proguard.classfile.io.ProgramClassWriter;
+import proguard.classfile.visitor.MemberVisitor;
+
+/**
+ * Snapshot of the {@link Call}s in a {@link CallGraph}, grouped by the program
+ * classes that contain them, so they can be reused across analysis runs on
+ * the same program instead of running the {@link CallResolver} again.
+ *
+ * <p>For every call, the snapshot contains its {@link CodeLocation}, its
+ * instruction, its flags, and its target. For every program class, it contains
+ * a hash of the class file and a hash of the class hierarchy that its calls
+ * depend on: the classes referenced by its invocation instructions and their
+ * superclasses and interfaces, the subclasses of the classes that are invoked
+ * virtually, and the superclasses of the class itself. For these classes, only
+ * the names, access flags, superclasses, interfaces, and method signatures
+ * matter, not the code. When the snapshot is loaded into a new call graph,
+ * the calls of the classes that are unchanged are re-linked against the given
+ * class pools: like in the {@link CallResolver}, calls to methods that are
+ * present in the class pools become {@link ConcreteCall}s and other calls become
+ * {@link SymbolicCall}s. The classes that have changed, whose call hierarchy has
+ * changed, that are new, or whose calls can't be re-linked are returned, so only
+ * their calls need to be resolved again.</p>
+ *
+ * <p>The argument values, instance values, and return values of the calls are
+ * not part of the snapshot, like after {@link Call#clearValues()}.</p>
+ */
+public class CallGraphSnapshot
+{
+
+    private static final int    MAGIC          = 0x43475348;
+    private static final int    VERSION        = 2;
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private static final int CONTROL_FLOW_DEPENDENT = 0x01;
+    private static final int RUNTIME_TYPE_DEPENDENT = 0x02;
+    private static final int HAS_DESCRIPTOR         = 0x04;
+
+    private final Map<String, ClassCalls> classCalls = new TreeMap<>();
+
+
+    /**
+     * Creates a snapshot of the calls in the program classes of the given call graph.
+     * Calls in classes that aren't part of the class pool are left out.
+     *
+     * @param programClassPool The {@link ClassPool} containing the classes whose calls
+     *                         were resolved. All its classes are part of the snapshot,
+     *                         including the classes without any calls.
+     * @param libraryClassPool The {@link ClassPool} containing the library classes that
+     *                         were used to resolve the calls.
+     * @param callGraph        The {@link CallGraph} containing the calls.
+     * @return The snapshot.
+     */
+    public static CallGraphSnapshot create(ClassPool programClassPool, ClassPool libraryClassPool, CallGraph callGraph)
+    {
+        CallGraphSnapshot snapshot = new CallGraphSnapshot();
+        MessageDigest     digest   = createMessageDigest();
+        HierarchyHasher   hasher   = new HierarchyHasher(programClassPool, libraryClassPool);
+        for (Clazz clazz : programClassPool.classes())
+        {
+            if (clazz instanceof ProgramClass)
+            {
+                snapshot.classCalls.put(clazz.getName(), new ClassCalls(hash((ProgramClass) clazz, digest),
+                                                                        hasher.hash((ProgramClass) clazz)));
+            }
+        }
+
+        for (Set<Call> calls : callGraph.outgoing.values())
+        {
+            for (Call call : calls)
+            {
+                ClassCalls classCalls = snapshot.classCalls.get(call.caller.clazz.getName());
+                if (classCalls != null && programClassPool.getClass(call.caller.clazz.getName()) == call.caller.clazz)
+                {
+                    classCalls.calls.add(new CallInfo(call));
+                }
+            }
+        }
+
+        // Sort the calls, so the snapshot is always written in the same way.
+        snapshot.classCalls.values().forEach(classCalls -> classCalls.calls.sort(CallInfo.ORDER));
+
+        return snapshot;
+    }
+
+
+    /**
+     * Returns the names of the classes in this snapshot, in sorted order.
+     */
+    public Set<String> getClassNames()
+    {
+        return Collections.unmodifiableSet(classCalls.keySet());
+    }
+
+
+    /**
+     * Returns the number of calls in this snapshot.
+     */
+    public int getCallCount()
+    {
+        return classCalls.values().stream().mapToInt(classCalls -> classCalls.calls.size()).sum();
+    }
+
+
+    /**
+     * Returns whether the given class is part of this snapshot and hasn't changed.
+     * Its calls may still have changed if its call hierarchy has changed, which is
+     * checked by {@link #load(ClassPool, ClassPool, CallGraph)}.
+     */
+    public boolean isUnchanged(ProgramClass programClass)
+    {
+        ClassCalls calls = classCalls.get(programClass.getName());
+        return calls != null && Arrays.equals(calls.hash, hash(programClass, createMessageDigest()));
+    }
+
+
+    /**
+     * Adds the calls of the unchanged program classes to the given call graph.
+     *
+     * @param programClassPool The {@link ClassPool} containing the classes whose calls
+     *                         should be loaded.
+     * @param libraryClassPool The {@link ClassPool} containing the library classes, to
+     *                         re-link the targets of the calls.
+     * @param callGraph        The {@link CallGraph} to fill with the calls.
+     * @return The names of the program classes whose calls weren't loaded, because they
+     *     or their call hierarchies have changed, they are new, or their calls couldn't be
+     *     re-linked, in sorted order. Their calls still need to be resolved, e.g. with a
+     *     {@link CallResolver}.
+     */
+    public Set<String> load(ClassPool programClassPool, ClassPool libraryClassPool, CallGraph callGraph)
+    {
+        Set<String>     unresolvedClassNames = new TreeSet<>();
+        MessageDigest   digest               = createMessageDigest();
+        HierarchyHasher hasher               = new HierarchyHasher(programClassPool, libraryClassPool);
+        List<Call>      linkedCalls          = new ArrayList<>();
+        for (Clazz clazz : programClassPool.classes())
+        {
+            if (!(clazz instanceof ProgramClass))
+            {
+                continue;
+            }
+
+            ClassCalls calls = classCalls.get(clazz.getName());
+            if (calls == null ||
+                !Arrays.equals(calls.hash, hash((ProgramClass) clazz, digest)) ||
+                !Arrays.equals(calls.hierarchyHash, hasher.hash((ProgramClass) clazz)) ||
+                !link(calls, (ProgramClass) clazz, programClassPool, libraryClassPool, linkedCalls))
+            {
+                unresolvedClassNames.add(clazz.getName());
+            }
+            else
+            {
+                linkedCalls.forEach(callGraph::addCall);
+            }
+            linkedCalls.clear();
+        }
+
+        return unresolvedClassNames;
+    }
+
+
+    /**
+     * Reads a snapshot from the given file.
+     * @param file the file that was written with {@link #write(File)}.
+     * @return the snapshot.
+     * @throws IOException if the file can't be read or doesn't contain a
+     *                     snapshot in the supported format, for instance
+     *                     because it is corrupt.
+     */
+    public static CallGraphSnapshot read(File file) throws IOException
+    {
+        // No count in the file can exceed the size of the file.
+        long fileLength = file.length();
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (input.readInt() != MAGIC ||
+                input.readInt() != VERSION)
+            {
+                throw new IOException("Unsupported call graph snapshot format [" + file + "]");
+            }
+
+            // Each string takes at least the two bytes of its length.
+            String[] strings = new String[readCount(input, fileLength / 2)];
+            for (int index = 0; index < strings.length; index++)
+            {
+                strings[index] = input.readUTF();
+            }
+
+            CallGraphSnapshot snapshot   = new CallGraphSnapshot();
+            int               classCount = readCount(input, fileLength);
+            for (int classIndex = 0; classIndex < classCount; classIndex++)
+            {
+                String className = readString(input, strings);
+                byte[] hash      = new byte[input.readUnsignedByte()];
+                input.readFully(hash);
+                byte[] hierarchyHash = new byte[input.readUnsignedByte()];
+                input.readFully(hierarchyHash);
+
+                ClassCalls classCalls = new ClassCalls(hash, hierarchyHash);
+                int        callCount  = readCount(input, fileLength);
+                for (int callIndex = 0; callIndex < callCount; callIndex++)
+                {
+                    classCalls.calls.add(CallInfo.read(input, strings, fileLength));
+                }
+
+                snapshot.classCalls.put(className, classCalls);
+            }
+
+            return snapshot;
+        }
+    }
+
+
+    /**
+     * Writes this snapshot to the given file. The file is only replaced once
+     * the snapshot has been written completely.
+     */
+    public void write(File file) throws IOException
+    {
+        // Collect the strings, so they are only written once.
+        Map<String, Integer> stringIndices = new LinkedHashMap<>();
+        for (Map.Entry<String, ClassCalls> entry : classCalls.entrySet())
+        {
+            addString(stringIndices, entry.getKey());
+            entry.getValue().calls.forEach(callInfo -> callInfo.addStrings(stringIndices));
+        }
+
+        File temporaryFile = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile))))
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+
+            output.writeInt(stringIndices.size());
+            for (String string : stringIndices.keySet())
+            {
+                output.writeUTF(string);
+            }
+
+            output.writeInt(classCalls.size());
+            for (Map.Entry<String, ClassCalls> entry : classCalls.entrySet())
+            {
+                ClassCalls calls = entry.getValue();
+
+                writeString(output, stringIndices, entry.getKey());
+                output.writeByte(calls.hash.length);
+                output.write(calls.hash);
+                output.writeByte(calls.hierarchyHash.length);
+                output.write(calls.hierarchyHash);
+                output.writeInt(calls.calls.size());
+                for (CallInfo callInfo : calls.calls)
+                {
+                    callInfo.write(output, stringIndices);
+                }
+            }
+        }
+
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    // Implementations for Object.
+
+    @Override
+    public String toString()
+    {
+        return "CallGraphSnapshot (" + classCalls.size() + " classes, " + getCallCount() + " calls)";
+    }
+
+
+    // Small utility methods.
+
+    /**
+     * Re-links the given calls of the given class, returning whether
+     * all calls could be re-linked.
+     */
+    private static boolean link(ClassCalls   classCalls,
+                                ProgramClass programClass,
+                                ClassPool    programClassPool,
+                                ClassPool    libraryClassPool,
+                                List<Call>   linkedCalls)
+    {
+        for (CallInfo callInfo : classCalls.calls)
+        {
+            Call call = callInfo.link(programClass, programClassPool, libraryClassPool);
+            if (call == null)
+            {
+                return false;
+            }
+            linkedCalls.add(call);
+        }
+        return true;
+    }
+
+
+    /**
+     * Returns the hash of the class file of the given class.
+     */
+    private static byte[] hash(ProgramClass programClass, MessageDigest digest)
+    {
+        digest.reset();
+        programClass.accept(new ProgramClassWriter(new DataOutputStream(new DigestOutputStream(NullOutputStream.INSTANCE, digest))));
+        return digest.digest();
+    }
+
+
+    /**
+     * Creates a message digest for the hashes of the classes.
+     */
+    private static MessageDigest createMessageDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform supports this algorithm.
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static void addString(Map<String, Integer> stringIndices, String string)
+    {
+        if (string != null)
+        {
+            stringIndices.putIfAbsent(string, stringIndices.size());
+        }
+    }
+
+
+    private static void writeString(DataOutput output, Map<String, Integer> stringIndices, String string) throws IOException
+    {
+        output.writeInt(string == null ? -1 : stringIndices.get(string));
+    }
+
+
+    private static String readString(DataInput input, String[] strings) throws IOException
+    {
+        int index = input.readInt();
+        if (index < -1 || index >= strings.length)
+        {
+            throw new IOException("Invalid string index [" + index + "] in call graph snapshot");
+        }
+
+        return index < 0 ? null : strings[index];
+    }
+
+
+    /**
+     * Reads a count, making sure that it is not negative and doesn't exceed
+     * the given maximum, before anything is allocated for it.
+     */
+    private static int readCount(DataInput input, long maxCount) throws IOException
+    {
+        int count = input.readInt();
+        if (count < 0 || count > maxCount)
+        {
+            throw new IOException("Invalid count [" + count + "] in call graph snapshot");
+        }
+
+        return count;
+    }
+
+
+    /**
+     * The hashes of a class and its call hierarchy, and the calls that it
+     * contains.
+     */
+    private static class ClassCalls
+    {
+        private final byte[]         hash;
+        private final byte[]         hierarchyHash;
+        private final List<CallInfo> calls = new ArrayList<>();
+
+
+        private ClassCalls(byte[] hash, byte[] hierarchyHash)
+        {
+            this.hash          = hash;
+            this.hierarchyHash = hierarchyHash;
+        }
+    }
+
+
+    /**
+     * Computes the hashes of the class hierarchies that the calls of classes
+     * depend on, in given class pools. The hashes of the classes and of the
+     * hierarchies are cached, so the classes are only hashed once.
+     */
+    private static class HierarchyHasher
+    {
+        private final ClassPool                programClassPool;
+        private final ClassPool                libraryClassPool;
+        private final MessageDigest            classDigest     = createMessageDigest();
+        private final MessageDigest            hierarchyDigest = createMessageDigest();
+        private final Map<String, Set<String>> subclassNames   = new HashMap<>();
+        private final Map<String, byte[]>      classHashes     = new HashMap<>();
+        private final Map<String, byte[]>      hierarchyHashes = new HashMap<>();
+
+
+        private HierarchyHasher(ClassPool programClassPool, ClassPool libraryClassPool)
+        {
+            this.programClassPool = programClassPool;
+            this.libraryClassPool = libraryClassPool;
+
+            // Collect the direct subclasses and implementations of all classes,
+            // preferring program classes over library classes with the same name.
+            Set<String> classNames = new HashSet<>();
+            programClassPool.classNames().forEachRemaining(classNames::add);
+            libraryClassPool.classNames().forEachRemaining(classNames::add);
+            for (String className : classNames)
+            {
+                Clazz  clazz     = findClass(className);
+                String superName = clazz.getSuperName();
+                if (superName != null)
+                {
+                    subclassNames.computeIfAbsent(superName, name -> new HashSet<>()).add(className);
+                }
+                for (int index = 0; index < clazz.getInterfaceCount(); index++)
+                {
+                    subclassNames.computeIfAbsent(clazz.getInterfaceName(index), name -> new HashSet<>()).add(className);
+                }
+            }
+        }
+
+
+        /**
+         * Returns the hash of the class hierarchy that the calls of the given
+         * class depend on.
+         */
+        private byte[] hash(ProgramClass programClass)
+        {
+            // Collect the classes referenced by the invocation instructions,
+            // and whether they are invoked virtually, plus the class itself,
+            // for its calls to super methods.
+            Set<String> hierarchyKeys = new TreeSet<>();
+            hierarchyKeys.add(hierarchyKey(programClass.getName(), false));
+            programClass.methodsAccept(
+                new AllAttributeVisitor(
+                new AllInstructionVisitor(
+                new InstructionVisitor()
+                {
+                    @Override
+                    public void visitAnyInstruction(Clazz clazz, Method method, CodeAttribute codeAttribute, int offset, Instruction instruction) {}
+
+
+                    @Override
+                    public void visitConstantInstruction(Clazz clazz, Method method, CodeAttribute codeAttribute, int offset, ConstantInstruction constantInstruction)
+                    {
+                        switch (constantInstruction.opcode)
+                        {
+                            case Instruction.OP_INVOKEVIRTUAL:
+                            case Instruction.OP_INVOKEINTERFACE:
+                                hierarchyKeys.add(hierarchyKey(clazz.getRefClassName(constantInstruction.constantIndex), true));
+                                break;
+                            case Instruction.OP_INVOKESPECIAL:
+                            case Instruction.OP_INVOKESTATIC:
+                                hierarchyKeys.add(hierarchyKey(clazz.getRefClassName(constantInstruction.constantIndex), false));
+                                break;
+                        }
+                    }
+                })));
+
+            List<byte[]> hashes = new ArrayList<>(hierarchyKeys.size());
+            for (String hierarchyKey : hierarchyKeys)
+            {
+                hashes.add(hierarchyHash(hierarchyKey));
+            }
+
+            hierarchyDigest.reset();
+            hashes.forEach(hierarchyDigest::update);
+            return hierarchyDigest.digest();
+        }
+
+
+        /**
+         * Returns the cached hash of the hierarchy with the given key: the
+         * given class with its superclasses and interfaces, and, if the class
+         * is invoked virtually, its subclasses with their superclasses and
+         * interfaces.
+         */
+        private byte[] hierarchyHash(String hierarchyKey)
+        {
+            byte[] hash = hierarchyHashes.get(hierarchyKey);
+            if (hash == null)
+            {
+                String      className  = hierarchyKey.substring(1);
+                Set<String> classNames = new TreeSet<>();
+                if (hierarchyKey.charAt(0) == 'V')
+                {
+                    addSubclassNames(className, classNames);
+                }
+                else
+                {
+                    classNames.add(className);
+                }
+                addSuperclassNames(new ArrayList<>(classNames), classNames);
+
+                List<byte[]> hashes = new ArrayList<>(classNames.size());
+                for (String name : classNames)
+                {
+                    hashes.add(classHash(name));
+                }
+
+                hierarchyDigest.reset();
+                hashes.forEach(hierarchyDigest::update);
+                hash = hierarchyDigest.digest();
+                hierarchyHashes.put(hierarchyKey, hash);
+            }
+
+            return hash;
+        }
+
+
+        /**
+         * Returns the cached hash of the parts of the given class that the
+         * resolution of calls depends on, or of its name if it is missing.
+         */
+        private byte[] classHash(String className)
+        {
+            byte[] hash = classHashes.get(className);
+            if (hash == null)
+            {
+                classDigest.reset();
+                DataOutputStream output = new DataOutputStream(new DigestOutputStream(NullOutputStream.INSTANCE, classDigest));
+                try
+                {
+                    output.writeUTF(className);
+
+                    Clazz clazz = findClass(className);
+                    if (clazz != null)
+                    {
+                        output.writeInt(clazz.getAccessFlags());
+                        output.writeUTF(String.valueOf(clazz.getSuperName()));
+                        for (int index = 0; index < clazz.getInterfaceCount(); index++)
+                        {
+                            output.writeUTF(clazz.getInterfaceName(index));
+                        }
+
+                        List<String> methodSignatures = new ArrayList<>();
+                        clazz.methodsAccept(new MemberVisitor()
+                        {
+                            @Override
+                            public void visitAnyMember(Clazz clazz, Member member)
+                            {
+                                methodSignatures.add(member.getName(clazz) + member.getDescriptor(clazz) + ' ' + member.getAccessFlags());
+                            }
+                        });
+                        output.writeInt(methodSignatures.size());
+                        for (String methodSignature : methodSignatures)
+                        {
+                            output.writeUTF(methodSignature);
+                        }
+                    }
+                }
+                catch (IOException e)
+                {
+                    // The output doesn't throw any exceptions.
+                    throw new IllegalStateException(e);
+                }
+
+                hash = classDigest.digest();
+                classHashes.put(className, hash);
+            }
+
+            return hash;
+        }
+
+
+        /**
+         * Adds the names of the given class and of all its subclasses and
+         * implementations to the given set.
+         */
+        private void addSubclassNames(String className, Set<String> classNames)
+        {
+            Deque<String> pendingNames = new ArrayDeque<>();
+            pendingNames.add(className);
+            while (!pendingNames.isEmpty())
+            {
+                String name = pendingNames.poll();
+                if (classNames.add(name))
+                {
+                    pendingNames.addAll(subclassNames.getOrDefault(name, Collections.emptySet()));
+                }
+            }
+        }
+
+
+        /**
+         * Adds the names of all superclasses and interfaces of the given
+         * classes to the given set.
+         */
+        private void addSuperclassNames(Collection<String> startNames, Set<String> classNames)
+        {
+            Deque<String> pendingNames = new ArrayDeque<>(startNames);
+            while (!pendingNames.isEmpty())
+            {
+                Clazz clazz = findClass(pendingNames.poll());
+                if (clazz != null)
+                {
+                    String superName = clazz.getSuperName();
+                    if (superName != null && classNames.add(superName))
+                    {
+                        pendingNames.add(superName);
+                    }
+                    for (int index = 0; index < clazz.getInterfaceCount(); index++)
+                    {
+                        String interfaceName = clazz.getInterfaceName(index);
+                        if (classNames.add(interfaceName))
+                        {
+                            pendingNames.add(interfaceName);
+                        }
+                    }
+                }
+            }
+        }
+
+
+        private static String hierarchyKey(String className, boolean virtual)
+        {
+            return (virtual ? 'V' : 'S') + className;
+        }
+
+
+        private Clazz findClass(String className)
+        {
+            Clazz clazz = programClassPool.getClass(className);
+            return clazz != null ? clazz : libraryClassPool.getClass(className);
+        }
+    }
+
+
+    /**
+     * The serializable information of a call.
+     */
+    private static class CallInfo
+    {
+        private static final Comparator<CallInfo> ORDER =
+            Comparator.comparing((CallInfo callInfo) -> callInfo.callerName)
+                      .thenComparing(callInfo -> callInfo.callerDescriptor)
+                      .thenComparingInt(callInfo -> callInfo.offset)
+                      .thenComparing(callInfo -> String.valueOf(callInfo.targetClassName))
+                      .thenComparing(callInfo -> String.valueOf(callInfo.targetMethodName))
+                      .thenComparing(callInfo -> String.valueOf(callInfo.targetReturnType))
+                      .thenComparing(callInfo -> String.valueOf(callInfo.targetArgumentTypes))
+                      .thenComparingInt(callInfo -> callInfo.flags);
+
+        private final String       callerName;
+        private final String       callerDescriptor;
+        private final int          offset;
+        private final int          line;
+        private final byte[]       instruction;
+        private final int          throwsNullptr;
+        private final int          flags;
+        private final String       targetClassName;
+        private final String       targetMethodName;
+        private final String       targetReturnType;
+        private final List<String> targetArgumentTypes;
+
+
+        private CallInfo(Call call)
+        {
+            MethodSignature callerSignature = (MethodSignature) call.caller.signature;
+            MethodSignature target          = call.getTarget();
+
+            this.callerName          = callerSignature.method;
+            this.callerDescriptor    = callerSignature.descriptor.toString();
+            this.offset              = call.caller.offset;
+            this.line                = call.caller.line;
+            this.instruction         = new byte[call.instruction.length(0)];
+            call.instruction.write(this.instruction, 0);
+            this.throwsNullptr       = call.throwsNullptr;
+            this.flags               = (call.controlFlowDependent ? CONTROL_FLOW_DEPENDENT : 0) |
+                                       (call.runtimeTypeDependent ? RUNTIME_TYPE_DEPENDENT : 0) |
+                                       (target.descriptor != null ? HAS_DESCRIPTOR         : 0);
+            this.targetClassName     = target.getClassName();
+            this.targetMethodName    = target.method;
+            this.targetReturnType    = target.descriptor == null ? null : target.descriptor.getReturnType();
+            this.targetArgumentTypes = target.descriptor == null ? null : target.descriptor.getArgumentTypes();
+        }
+
+
+        private CallInfo(String       callerName,
+                         String       callerDescriptor,
+                         int          offset,
+                         int          line,
+                         byte[]       instruction,
+                         int          throwsNullptr,
+                         int          flags,
+                         String       targetClassName,
+                         String       targetMethodName,
+                         String       targetReturnType,
+                         List<String> targetArgumentTypes)
+        {
+            this.callerName          = callerName;
+            this.callerDescriptor    = callerDescriptor;
+            this.offset              = offset;
+            this.line                = line;
+            this.instruction         = instruction;
+            this.throwsNullptr       = throwsNullptr;
+            this.flags               = flags;
+            this.targetClassName     = targetClassName;
+            this.targetMethodName    = targetMethodName;
+            this.targetReturnType    = targetReturnType;
+            this.targetArgumentTypes = targetArgumentTypes;
+        }
+
+
+        /**
+         * Creates the call in the given class, or returns null if its
+         * calling method doesn't exist.
+         */
+        private Call link(ProgramClass programClass, ClassPool programClassPool, ClassPool libraryClassPool)
+        {
+            Method callerMethod = programClass.findMethod(callerName, callerDescriptor);
+            if (callerMethod == null)
+            {
+                return null;
+            }
+
+            CodeLocation location             = new CodeLocation(programClass, callerMethod, offset, line);
+            Instruction  callInstruction      = InstructionFactory.create(instruction, 0);
+            boolean      controlFlowDependent = (flags & CONTROL_FLOW_DEPENDENT) != 0;
+            boolean      runtimeTypeDependent = (flags & RUNTIME_TYPE_DEPENDENT) != 0;
+
+            MethodDescriptor targetDescriptor = createTargetDescriptor();
+
+            // Like the call resolver, create a concrete call if the target
+            // method is present.
+            Call call = null;
+            if (targetClassName  != null &&
+                targetMethodName != null &&
+                targetDescriptor != null &&
+                !targetDescriptor.isIncomplete())
+            {
+                Clazz targetClass = programClassPool.getClass(targetClassName);
+                if (targetClass == null)
+                {
+                    targetClass = libraryClassPool.getClass(targetClassName);
+                }
+
+                Method targetMethod = targetClass == null ? null :
+                    targetClass.findMethod(targetMethodName, targetDescriptor.toString());
+                if (targetMethod != null)
+                {
+                    call = new ConcreteCall(location,
+                                            targetClass,
+                                            targetMethod,
+                                            throwsNullptr,
+                                            callInstruction,
+                                            controlFlowDependent,
+                                            runtimeTypeDependent);
+                }
+            }
+
+            if (call == null)
+            {
+                call = new SymbolicCall(location,
+                                        new MethodSignature(targetClassName, targetMethodName, targetDescriptor),
+                                        throwsNullptr,
+                                        callInstruction,
+                                        controlFlowDependent,
+                                        runtimeTypeDependent);
+            }
+
+            call.clearValues();
+            return call;
+        }
+
+
+        /**
+         * Creates the descriptor of the target in the same way as the call
+         * resolver, so it has the same hash code.
+         */
+        private MethodDescriptor createTargetDescriptor()
+        {
+            if ((flags & HAS_DESCRIPTOR) == 0)
+            {
+                return null;
+            }
+            if (targetReturnType == null && targetArgumentTypes == null)
+            {
+                return new MethodDescriptor((String) null);
+            }
+            if (targetReturnType == null || targetArgumentTypes == null)
+            {
+                return new MethodDescriptor(targetReturnType, targetArgumentTypes);
+            }
+            return new MethodDescriptor(new MethodDescriptor(targetReturnType, targetArgumentTypes).toString());
+        }
+
+
+        private void addStrings(Map<String, Integer> stringIndices)
+        {
+            addString(stringIndices, callerName);
+            addString(stringIndices, callerDescriptor);
+            addString(stringIndices, targetClassName);
+            addString(stringIndices, targetMethodName);
+            addString(stringIndices, targetReturnType);
+            if (targetArgumentTypes != null)
+            {
+                targetArgumentTypes.forEach(type -> addString(stringIndices, type));
+            }
+        }
+
+
+        private void write(DataOutput output, Map<String, Integer> stringIndices) throws IOException
+        {
+            writeString(output, stringIndices, callerName);
+            writeString(output, stringIndices, callerDescriptor);
+            output.writeInt(offset);
+            output.writeInt(line);
+            output.writeByte(instruction.length);
+            output.write(instruction);
+            output.writeByte(throwsNullptr);
+            output.writeByte(flags);
+            writeString(output, stringIndices, targetClassName);
+            writeString(output, stringIndices, targetMethodName);
+            writeString(output, stringIndices, targetReturnType);
+            if (targetArgumentTypes == null)
+            {
+                output.writeInt(-1);
+            }
+            else
+            {
+                output.writeInt(targetArgumentTypes.size());
+                for (String type : targetArgumentTypes)
+                {
+                    writeString(output, stringIndices, type);
+                }
+            }
+        }
+
+
+        private static CallInfo read(DataInput input, String[] strings, long fileLength) throws IOException
+        {
+            String callerName       = readString(input, strings);
+            String callerDescriptor = readString(input, strings);
+            int    offset           = input.readInt();
+            int    line             = input.readInt();
+            byte[] instruction      = new byte[input.readUnsignedByte()];
+            input.readFully(instruction);
+            int    throwsNullptr    = input.readByte();
+            int    flags            = input.readUnsignedByte();
+            String targetClassName  = readString(input, strings);
+            String targetMethodName = readString(input, strings);
+            String targetReturnType = readString(input, strings);
+
+            // A negative argument count means that the arguments are unknown.
+            List<String> targetArgumentTypes = null;
+            int          argumentCount       = input.readInt();
+            if (argumentCount < -1 || argumentCount > fileLength / 4)
+            {
+                throw new IOException("Invalid argument count [" + argumentCount + "] in call graph snapshot");
+            }
+
+            if (argumentCount >= 0)
+            {
+                targetArgumentTypes = new ArrayList<>(argumentCount);
+                for (int index = 0; index < argumentCount; index++)
+                {
+                    targetArgumentTypes.add(readString(input, strings));
+                }
+            }
+
+            return new CallInfo(callerName,
+                                callerDescriptor,
+                                offset,
+                                line,
+                                instruction,
+                                throwsNullptr,
+                                flags,
+                                targetClassName,
+                                targetMethodName,
+                                targetReturnType,
+                                targetArgumentTypes);
+        }
+    }
+
+
+    /**
+     * An output stream that discards its data, for computing hashes.
+     */
+    private static class NullOutputStream
+    extends              OutputStream
+    {
+        private static final NullOutputStream INSTANCE = new NullOutputStream();
+
+
+        @Override
+        public void write(int b) {}
+
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    }
+}
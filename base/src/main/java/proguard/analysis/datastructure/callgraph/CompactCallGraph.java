@@ -0,0 +1,297 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.analysis.datastructure.callgraph;
+
+import java.util.*;
+import proguard.analysis.datastructure.CodeLocation;
+import proguard.classfile.MethodSignature;
+import proguard.evaluation.value.Value;
+import proguard.util.CallGraphWalker;
+
+/**
+ * Frozen, compact representation of a {@link CallGraph}. Methods are numbered
+ * from 0 in the order of their signatures, and calls are numbered from 0 in the
+ * order of their callers, targets, and offsets. The outgoing and incoming calls
+ * of all methods are stored in compressed sparse row format, and the attributes
+ * of the calls are stored in parallel arrays, so the graph doesn't need any
+ * sets or {@link Call} objects.
+ *
+ * <p>The graph can be explored with the id-based accessors, or with the
+ * {@link CallGraphWalker} methods that accept a {@link CompactCallGraph}.
+ * Changes to the original {@link CallGraph} aren't reflected.</p>
+ */
+public class CompactCallGraph
+{
+
+    private static final byte CONTROL_FLOW_DEPENDENT = 0x01;
+    private static final byte RUNTIME_TYPE_DEPENDENT = 0x02;
+    private static final byte INCOMPLETE_TARGET      = 0x04;
+
+    private final MethodSignature[]             methods;
+    private final Map<MethodSignature, Integer> methodIds;
+
+    // The calls of method i are the calls outgoingOffsets[i] to outgoingOffsets[i+1] - 1.
+    private final int[]          outgoingOffsets;
+    // The calls to method i are the calls incomingCalls[incomingOffsets[i]] to incomingCalls[incomingOffsets[i+1] - 1].
+    private final int[]          incomingOffsets;
+    private final int[]          incomingCalls;
+
+    // The attributes of the calls.
+    private final int[]          callers;
+    private final int[]          targets;
+    private final CodeLocation[] callLocations;
+    private final byte[]         opcodes;
+    private final byte[]         throwsNullptr;
+    private final byte[]         flags;
+
+
+    /**
+     * Creates a compact copy of the given call graph.
+     *
+     * @param callGraph the call graph to copy.
+     */
+    public CompactCallGraph(CallGraph callGraph)
+    {
+        // Number the methods in the order of their signatures.
+        Set<MethodSignature> methodSet = new HashSet<>(callGraph.outgoing.keySet());
+        methodSet.addAll(callGraph.incoming.keySet());
+
+        methods = methodSet.toArray(new MethodSignature[0]);
+        Arrays.sort(methods);
+
+        methodIds = new HashMap<>(methods.length * 2);
+        for (int id = 0; id < methods.length; id++)
+        {
+            methodIds.put(methods[id], id);
+        }
+
+        // Collect the calls, ordered by caller, target, and offset.
+        List<Call> calls = new ArrayList<>();
+        for (Set<Call> outgoingCalls : callGraph.outgoing.values())
+        {
+            calls.addAll(outgoingCalls);
+        }
+        calls.sort(Comparator.comparingInt((Call call) -> methodIds.get((MethodSignature) call.caller.signature))
+                             .thenComparingInt(call -> methodIds.get(call.getTarget()))
+                             .thenComparingInt(call -> call.caller.offset));
+
+        int callCount = calls.size();
+        callers       = new int[callCount];
+        targets       = new int[callCount];
+        callLocations = new CodeLocation[callCount];
+        opcodes       = new byte[callCount];
+        throwsNullptr = new byte[callCount];
+        flags         = new byte[callCount];
+
+        outgoingOffsets = new int[methods.length + 1];
+        incomingOffsets = new int[methods.length + 1];
+        for (int callId = 0; callId < callCount; callId++)
+        {
+            Call call = calls.get(callId);
+
+            callers[callId]       = methodIds.get((MethodSignature) call.caller.signature);
+            targets[callId]       = methodIds.get(call.getTarget());
+            callLocations[callId] = call.caller;
+            opcodes[callId]       = call.instruction.opcode;
+            throwsNullptr[callId] = (byte) call.throwsNullptr;
+            flags[callId]         = (byte) ((call.controlFlowDependent ? CONTROL_FLOW_DEPENDENT : 0) |
+                                            (call.runtimeTypeDependent ? RUNTIME_TYPE_DEPENDENT : 0) |
+                                            (call.hasIncompleteTarget()  ? INCOMPLETE_TARGET      : 0));
+
+            outgoingOffsets[callers[callId] + 1]++;
+            incomingOffsets[targets[callId] + 1]++;
+        }
+
+        // Turn the counts into offsets.
+        for (int id = 0; id < methods.length; id++)
+        {
+            outgoingOffsets[id + 1] += outgoingOffsets[id];
+            incomingOffsets[id + 1] += incomingOffsets[id];
+        }
+
+        // Fill out the incoming calls, which remain ordered by caller.
+        incomingCalls = new int[callCount];
+        int[] incomingPositions = Arrays.copyOf(incomingOffsets, methods.length);
+        for (int callId = 0; callId < callCount; callId++)
+        {
+            incomingCalls[incomingPositions[targets[callId]]++] = callId;
+        }
+    }
+
+
+    /**
+     * Returns the number of methods in this call graph.
+     */
+    public int getMethodCount()
+    {
+        return methods.length;
+    }
+
+
+    /**
+     * Returns the number of calls in this call graph.
+     */
+    public int getCallCount()
+    {
+        return callers.length;
+    }
+
+
+    /**
+     * Returns the id of the given method, or -1 if it doesn't have any
+     * incoming or outgoing calls.
+     */
+    public int getMethodId(MethodSignature method)
+    {
+        Integer id = methodIds.get(method);
+        return id == null ? -1 : id;
+    }
+
+
+    /**
+     * Returns the method with the given id.
+     */
+    public MethodSignature getMethod(int methodId)
+    {
+        return methods[methodId];
+    }
+
+
+    /**
+     * Returns the number of calls in the given method.
+     */
+    public int getOutgoingCallCount(int methodId)
+    {
+        return outgoingOffsets[methodId + 1] - outgoingOffsets[methodId];
+    }
+
+
+    /**
+     * Returns the id of the call with the given index in the given method.
+     */
+    public int getOutgoingCall(int methodId, int index)
+    {
+        return outgoingOffsets[methodId] + index;
+    }
+
+
+    /**
+     * Returns the number of calls to the given method.
+     */
+    public int getIncomingCallCount(int methodId)
+    {
+        return incomingOffsets[methodId + 1] - incomingOffsets[methodId];
+    }
+
+
+    /**
+     * Returns the id of the call with the given index to the given method.
+     */
+    public int getIncomingCall(int methodId, int index)
+    {
+        return incomingCalls[incomingOffsets[methodId] + index];
+    }
+
+
+    /**
+     * Returns the id of the calling method of the given call.
+     */
+    public int getCaller(int callId)
+    {
+        return callers[callId];
+    }
+
+
+    /**
+     * Returns the id of the called method of the given call.
+     */
+    public int getTarget(int callId)
+    {
+        return targets[callId];
+    }
+
+
+    /**
+     * Returns the location of the given call, like {@link Call#caller}.
+     */
+    public CodeLocation getCallLocation(int callId)
+    {
+        return callLocations[callId];
+    }
+
+
+    /**
+     * Returns the opcode of the instruction performing the given call,
+     * like {@link Call#instruction}.
+     */
+    public byte getOpcode(int callId)
+    {
+        return opcodes[callId];
+    }
+
+
+    /**
+     * Returns whether the given call will throw a {@link NullPointerException},
+     * either {@link Value#NEVER}, {@link Value#MAYBE} or {@link Value#ALWAYS},
+     * like {@link Call#throwsNullptr}.
+     */
+    public int getThrowsNullptr(int callId)
+    {
+        return throwsNullptr[callId];
+    }
+
+
+    /**
+     * Returns whether the given call depends on the control flow, like
+     * {@link Call#controlFlowDependent}.
+     */
+    public boolean isControlFlowDependent(int callId)
+    {
+        return (flags[callId] & CONTROL_FLOW_DEPENDENT) != 0;
+    }
+
+
+    /**
+     * Returns whether the given call depends on the runtime type of the
+     * called object, like {@link Call#runtimeTypeDependent}.
+     */
+    public boolean isRuntimeTypeDependent(int callId)
+    {
+        return (flags[callId] & RUNTIME_TYPE_DEPENDENT) != 0;
+    }
+
+
+    /**
+     * Returns whether the target of the given call is only partially known,
+     * like {@link Call#hasIncompleteTarget()}.
+     */
+    public boolean hasIncompleteTarget(int callId)
+    {
+        return (flags[callId] & INCOMPLETE_TARGET) != 0;
+    }
+
+
+    /**
+     * Returns whether the given call is always executed, like
+     * {@link Call#isCertainlyCalled()}.
+     */
+    public boolean isCertainlyCalled(int callId)
+    {
+        return (flags[callId] & (CONTROL_FLOW_DEPENDENT | RUNTIME_TYPE_DEPENDENT)) == 0;
+    }
+}
@@ -32,16 +32,34 @@ public class ClassPool
 {
     // We're using a sorted tree map instead of a hash map to store the classes,
     // in order to make the processing more deterministic.
-    private final TreeMap<String, Clazz> classes = new TreeMap<>();
+    private final NavigableMap<String, Clazz> classes;
 
     // Keep a separate set of the classes to speed up `contains(Clazz)`.
-    private final Set<Clazz> clazzSet = new HashSet<>();
+    private final Set<Clazz> clazzSet;
 
 
     /**
      * Creates a new empty ClassPool.
      */
-    public ClassPool() {}
+    public ClassPool()
+    {
+        this(new TreeMap<>(), new HashSet<>());
+    }
+
+
+    /**
+     * Creates a new empty ClassPool that is backed by the given collections,
+     * for instance concurrent ones.
+     *
+     * @param classes  an empty sorted map for the classes, by name.
+     * @param clazzSet an empty set for the classes.
+     */
+    protected ClassPool(NavigableMap<String, Clazz> classes,
+                        Set<Clazz>                  clazzSet)
+    {
+        this.classes  = classes;
+        this.clazzSet = clazzSet;
+    }
 
 
     /**
@@ -51,6 +69,8 @@ public class ClassPool
      */
     public ClassPool(Clazz... classes)
     {
+        this();
+
         for (Clazz clazz : classes)
         {
             addClass(clazz);
@@ -65,6 +85,8 @@ public class ClassPool
      */
     public ClassPool(Iterable<? extends Clazz> classes)
     {
+        this();
+
         for (Clazz clazz : classes)
         {
             addClass(clazz);
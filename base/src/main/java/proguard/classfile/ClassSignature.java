@@ -20,9 +20,9 @@ package proguard.classfile;
 
 import static proguard.classfile.util.ClassUtil.externalClassName;
 
-import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents the signature of a class without any member information.
@@ -33,7 +33,7 @@ public class ClassSignature
     extends Signature
 {
 
-    private static final transient Map<Clazz, ClassSignature> signatureCache = new IdentityHashMap<>();
+    private static final transient Map<Clazz, ClassSignature> signatureCache = new ConcurrentHashMap<>();
 
     public ClassSignature(String className)
     {
@@ -81,6 +81,10 @@ public class ClassSignature
      */
     public static ClassSignature computeIfAbsent(Clazz clazz)
     {
-        return signatureCache.computeIfAbsent(clazz, c -> new ClassSignature(c.getName()));
+        // Only lock the cache if the signature is missing.
+        ClassSignature signature = signatureCache.get(clazz);
+        return signature != null ?
+            signature :
+            signatureCache.computeIfAbsent(clazz, c -> new ClassSignature(c.getName()));
     }
 }
@@ -0,0 +1,162 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile;
+
+import proguard.classfile.visitor.ClassVisitor;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This {@link ClassPool} can be filled, queried, and visited from multiple
+ * threads at the same time, for instance by a
+ * {@link proguard.classfile.visitor.ParallelAllClassVisitor} or by parallel
+ * class readers. Lookups don't take any locks.
+ * <p/>
+ * Like a plain class pool, it keeps its classes sorted by name, so its
+ * processing remains deterministic. The visitor methods that visit all
+ * classes visit a sorted snapshot of the class pool, so concurrent (or
+ * reentrant) additions and removals don't affect the visited classes.
+ * Lookups of individual classes always reflect the latest additions and
+ * removals.
+ *
+ * @see ClassPool
+ */
+public class ConcurrentClassPool extends ClassPool
+{
+    private final ConcurrentSkipListMap<String, Clazz> classes;
+    private final Set<Clazz>                           clazzSet;
+
+
+    /**
+     * Creates a new empty ConcurrentClassPool.
+     */
+    public ConcurrentClassPool()
+    {
+        this(new ConcurrentSkipListMap<>(),
+             ConcurrentHashMap.newKeySet());
+    }
+
+
+    /**
+     * Creates a new ConcurrentClassPool with the given classes.
+     *
+     * @param classes the classes to be added.
+     */
+    public ConcurrentClassPool(Iterable<? extends Clazz> classes)
+    {
+        this();
+
+        for (Clazz clazz : classes)
+        {
+            addClass(clazz);
+        }
+    }
+
+
+    /**
+     * Creates a new ConcurrentClassPool with the given classes.
+     * The keys are taken from the Clazz instances.
+     *
+     * @param classPool the classes to be added.
+     */
+    public ConcurrentClassPool(ClassPool classPool)
+    {
+        this(classPool.classes());
+    }
+
+
+    private ConcurrentClassPool(ConcurrentSkipListMap<String, Clazz> classes,
+                                Set<Clazz>                           clazzSet)
+    {
+        super(classes, clazzSet);
+
+        this.classes  = classes;
+        this.clazzSet = clazzSet;
+    }
+
+
+    /**
+     * Returns a snapshot of all classes in the class pool, sorted by name.
+     */
+    public Clazz[] snapshot()
+    {
+        // The values of a skip list map are always sorted, and copying them
+        // doesn't block concurrent updates.
+        return classes.values().toArray(new Clazz[0]);
+    }
+
+
+    // Implementations for ClassPool.
+
+    @Override
+    public void addClass(String name, Clazz clazz)
+    {
+        // Add the class to the set first, so a thread that finds the class
+        // by its name also finds it in the set.
+        clazzSet.add(clazz);
+        classes.put(name, clazz);
+    }
+
+
+    @Override
+    public Clazz removeClass(String className)
+    {
+        Clazz removed = classes.remove(className);
+        if (removed != null)
+        {
+            clazzSet.remove(removed);
+        }
+
+        return removed;
+    }
+
+
+    @Override
+    public boolean contains(Clazz clazz)
+    {
+        // Concurrent sets don't accept null.
+        return clazz != null &&
+               clazzSet.contains(clazz);
+    }
+
+
+    @Override
+    public ClassPool refreshedCopy()
+    {
+        return new ConcurrentClassPool(this);
+    }
+
+
+    @Override
+    public void classesAccept(ClassVisitor classVisitor)
+    {
+        for (Clazz clazz : snapshot())
+        {
+            clazz.accept(classVisitor);
+        }
+    }
+
+
+    @Override
+    public void classesAcceptAlphabetically(ClassVisitor classVisitor)
+    {
+        // The snapshot is already sorted.
+        classesAccept(classVisitor);
+    }
+}
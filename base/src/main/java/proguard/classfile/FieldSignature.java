@@ -22,9 +22,9 @@ import static proguard.classfile.util.ClassUtil.externalClassName;
 import static proguard.classfile.util.ClassUtil.externalShortClassName;
 import static proguard.classfile.util.ClassUtil.externalType;
 
-import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents a field signature consisting of class and member name.
@@ -35,7 +35,7 @@ public class FieldSignature
     extends Signature
 {
 
-    private static final transient Map<Field, FieldSignature> signatureCache = new IdentityHashMap<>();
+    private static final transient Map<Field, FieldSignature> signatureCache = new ConcurrentHashMap<>();
     public final                   String                     memberName;
     public final                   String                     descriptor;
 
@@ -81,7 +81,11 @@ public class FieldSignature
      */
     public static FieldSignature computeIfAbsent(Clazz clazz, Field field)
     {
-        return signatureCache.computeIfAbsent(field, f -> new FieldSignature(clazz, field));
+        // Only lock the cache if the signature is missing.
+        FieldSignature signature = signatureCache.get(field);
+        return signature != null ?
+            signature :
+            signatureCache.computeIfAbsent(field, f -> new FieldSignature(clazz, field));
     }
 
     /**
@@ -0,0 +1,286 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile;
+
+import proguard.classfile.visitor.ClassVisitor;
+import proguard.util.StringMatcher;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * This {@link ClassPool} can contain classes that are only created when
+ * they are first accessed, for instance library classes that are only
+ * parsed when they are actually used.
+ * <p/>
+ * Lazy classes are added with their names and suppliers. A lookup by name
+ * only creates the requested class. Visiting classes by a name filter only
+ * creates the matching classes. Visiting or retrieving all classes creates
+ * all of them. A supplier may return null, for instance for a class that
+ * turns out to be irrelevant, in which case the class pool no longer
+ * contains the class. Suppliers are released once they have created their
+ * classes.
+ * <p/>
+ * Consequently, {@link #size()} and {@link #classNames()} don't create any
+ * classes and also count the classes that haven't been created yet: they
+ * are upper bounds until all classes have been created. Code that needs
+ * the exact classes should first retrieve or visit them, for instance with
+ * {@link #classes()}, after which the size is exact.
+ * <p/>
+ * Like a plain class pool, this class is not thread-safe.
+ *
+ * @see ClassPool
+ */
+public class LazyClassPool extends ClassPool
+{
+    // The suppliers of the classes that haven't been created yet.
+    private final NavigableMap<String, Supplier<Clazz>> lazyClasses = new TreeMap<>();
+
+
+    /**
+     * Adds a class with the given name that is created by the given
+     * supplier when it is first accessed. It replaces any class with the
+     * same name.
+     */
+    public void addLazyClass(String name, Supplier<Clazz> supplier)
+    {
+        super.removeClass(name);
+
+        lazyClasses.put(name, supplier);
+    }
+
+
+    /**
+     * Returns the number of classes that haven't been created yet.
+     */
+    public int lazyClassCount()
+    {
+        return lazyClasses.size();
+    }
+
+
+    /**
+     * Returns whether the class with the given name hasn't been created
+     * yet.
+     */
+    public boolean isLazy(String className)
+    {
+        return lazyClasses.containsKey(className);
+    }
+
+
+    // Implementations for ClassPool.
+
+    @Override
+    public void clear()
+    {
+        lazyClasses.clear();
+
+        super.clear();
+    }
+
+
+    @Override
+    public void addClass(String name, Clazz clazz)
+    {
+        lazyClasses.remove(name);
+
+        super.addClass(name, clazz);
+    }
+
+
+    @Override
+    public Clazz removeClass(String className)
+    {
+        // Removing a class that hasn't been created yet still returns it.
+        create(className);
+
+        return super.removeClass(className);
+    }
+
+
+    @Override
+    public Clazz getClass(String className)
+    {
+        create(className);
+
+        return super.getClass(className);
+    }
+
+
+    /**
+     * Returns the names of the classes, including the ones that haven't
+     * been created yet, without creating them. Classes whose suppliers
+     * return null are therefore still listed until they are created.
+     */
+    @Override
+    public Iterator<String> classNames()
+    {
+        if (lazyClasses.isEmpty())
+        {
+            return super.classNames();
+        }
+
+        // Merge the names without creating the classes.
+        SortedSet<String> classNames = new TreeSet<>(lazyClasses.keySet());
+        super.classNames().forEachRemaining(classNames::add);
+
+        return Collections.unmodifiableSortedSet(classNames).iterator();
+    }
+
+
+    @Override
+    public Iterable<Clazz> classes()
+    {
+        createAll();
+
+        return super.classes();
+    }
+
+
+    /**
+     * Returns the number of classes, including the ones that haven't been
+     * created yet, without creating them. This is an upper bound, since
+     * suppliers may still return null. It is exact once all classes have
+     * been created, for instance after calling {@link #classes()}.
+     */
+    @Override
+    public int size()
+    {
+        return super.size() + lazyClasses.size();
+    }
+
+
+    @Override
+    public ClassPool refreshedCopy()
+    {
+        createAll();
+
+        return super.refreshedCopy();
+    }
+
+
+    @Override
+    public <T> Map<String, T> refreshedKeysCopy(Map<String, T> map)
+    {
+        createAll();
+
+        return super.refreshedKeysCopy(map);
+    }
+
+
+    @Override
+    public <T> Map<T, String> refreshedValuesCopy(Map<T, String> map)
+    {
+        createAll();
+
+        return super.refreshedValuesCopy(map);
+    }
+
+
+    @Override
+    public Map<Clazz, String> reverseMapping()
+    {
+        createAll();
+
+        return super.reverseMapping();
+    }
+
+
+    @Override
+    public void classesAccept(ClassVisitor classVisitor)
+    {
+        createAll();
+
+        super.classesAccept(classVisitor);
+    }
+
+
+    @Override
+    public void classesAcceptAlphabetically(ClassVisitor classVisitor)
+    {
+        createAll();
+
+        super.classesAcceptAlphabetically(classVisitor);
+    }
+
+
+    @Override
+    public void classesAccept(StringMatcher classNameFilter,
+                              ClassVisitor  classVisitor)
+    {
+        // Only create the matching classes.
+        String prefix = classNameFilter.prefix();
+
+        Collection<String> names = new ArrayList<>();
+        for (String className : lazyClasses.tailMap(prefix, true).keySet())
+        {
+            if (!className.startsWith(prefix))
+            {
+                break;
+            }
+
+            if (classNameFilter.matches(className))
+            {
+                names.add(className);
+            }
+        }
+
+        for (String className : names)
+        {
+            create(className);
+        }
+
+        super.classesAccept(classNameFilter, classVisitor);
+    }
+
+
+    // Small utility methods.
+
+    /**
+     * Creates the class with the given name, if it hasn't been created
+     * yet.
+     */
+    private void create(String className)
+    {
+        Supplier<Clazz> supplier = lazyClasses.get(className);
+        if (supplier != null)
+        {
+            // Only release the supplier once it has succeeded.
+            Clazz clazz = supplier.get();
+            lazyClasses.remove(className);
+
+            if (clazz != null)
+            {
+                super.addClass(className, clazz);
+            }
+        }
+    }
+
+
+    /**
+     * Creates all classes that haven't been created yet.
+     */
+    private void createAll()
+    {
+        while (!lazyClasses.isEmpty())
+        {
+            create(lazyClasses.firstKey());
+        }
+    }
+}
@@ -21,10 +21,10 @@ package proguard.classfile;
 import static proguard.classfile.util.ClassUtil.externalClassName;
 import static proguard.classfile.util.ClassUtil.externalShortClassName;
 
-import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents a Method signature containing a class, method and a descriptor.
@@ -45,7 +45,7 @@ public class MethodSignature
 {
 
     public static final            MethodSignature              UNKNOWN        = new MethodSignature(null, null, (MethodDescriptor) null);
-    private static final           Map<Method, MethodSignature> signatureCache = new IdentityHashMap<>();
+    private static final           Map<Method, MethodSignature> signatureCache = new ConcurrentHashMap<>();
     public final                   String                       method;
     public final                   MethodDescriptor             descriptor;
     private                        Method                       referencedMethod;
@@ -91,7 +91,11 @@ public class MethodSignature
      */
     public static MethodSignature computeIfAbsent(Clazz clazz, Method method)
     {
-        return signatureCache.computeIfAbsent(method, m -> new MethodSignature(clazz, method));
+        // Only lock the cache if the signature is missing.
+        MethodSignature signature = signatureCache.get(method);
+        return signature != null ?
+            signature :
+            signatureCache.computeIfAbsent(method, m -> new MethodSignature(clazz, method));
     }
 
     @Override
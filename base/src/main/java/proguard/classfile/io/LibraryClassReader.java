@@ -53,6 +53,7 @@ implements   ClassVisitor,
     private final RuntimeDataInput dataInput;
     private final boolean          skipNonPublicClasses;
     private final boolean          skipNonPublicClassMembers;
+    private final Utf8Interner     utf8Interner;
 
     // A callback which can be used to build the Kotlin metadata model.
     private final KotlinMetadataElementValueConsumer kmElementValueConsumer;
@@ -60,6 +61,9 @@ implements   ClassVisitor,
     // A global array that acts as a parameter for the visitor methods.
     private Constant[]      constantPool;
 
+    // A reusable buffer for interned UTF-8 constants.
+    private byte[]          utf8Buffer;
+
 
     /**
      * Creates a new ProgramClassReader for reading from the given DataInput.
@@ -80,11 +84,28 @@ implements   ClassVisitor,
                               boolean                            skipNonPublicClasses,
                               boolean                            skipNonPublicClassMembers,
                               KotlinMetadataElementValueConsumer kmElementValueConsumer)
+    {
+        this(dataInput, skipNonPublicClasses, skipNonPublicClassMembers, kmElementValueConsumer, null);
+    }
+
+
+    /**
+     * Creates a new LibraryClassReader for reading from the given DataInput,
+     * optionally interning the strings of UTF-8 constants with the given
+     * {@link Utf8Interner}, so the names and descriptors of the read classes
+     * and their members are shared with other classes.
+     */
+    public LibraryClassReader(DataInput                          dataInput,
+                              boolean                            skipNonPublicClasses,
+                              boolean                            skipNonPublicClassMembers,
+                              KotlinMetadataElementValueConsumer kmElementValueConsumer,
+                              Utf8Interner                       utf8Interner)
     {
         this.dataInput                 = new RuntimeDataInput(dataInput);
         this.skipNonPublicClasses      = skipNonPublicClasses;
         this.skipNonPublicClassMembers = skipNonPublicClassMembers;
         this.kmElementValueConsumer    = kmElementValueConsumer;
+        this.utf8Interner              = utf8Interner;
     }
 
 
@@ -309,10 +330,25 @@ implements   ClassVisitor,
     {
         int u2length = dataInput.readUnsignedShort();
 
-        // Read the UTF-8 bytes.
-        byte[] bytes = new byte[u2length];
-        dataInput.readFully(bytes);
-        utf8Constant.setBytes(bytes);
+        if (utf8Interner != null)
+        {
+            // Read the UTF-8 bytes into the reusable buffer and share the
+            // corresponding string.
+            if (utf8Buffer == null || utf8Buffer.length < u2length)
+            {
+                utf8Buffer = new byte[Math.max(u2length, 1024)];
+            }
+
+            dataInput.readFully(utf8Buffer, 0, u2length);
+            utf8Constant.setString(utf8Interner.intern(utf8Buffer, 0, u2length));
+        }
+        else
+        {
+            // Read the UTF-8 bytes.
+            byte[] bytes = new byte[u2length];
+            dataInput.readFully(bytes);
+            utf8Constant.setBytes(bytes);
+        }
     }
 
 
@@ -70,6 +70,11 @@ implements   ClassVisitor,
 {
     private final RuntimeDataInput dataInput;
     private final boolean          ignoreStackMapAttributes;
+    private final Utf8Interner     utf8Interner;
+
+    // A buffer for the data of interned UTF-8 constants, while reading the
+    // constant pool.
+    private byte[] utf8Buffer;
 
 
     /**
@@ -87,9 +92,24 @@ implements   ClassVisitor,
      */
     public ProgramClassReader(DataInput dataInput,
                               boolean   ignoreStackMapAttributes)
+    {
+        this(dataInput, ignoreStackMapAttributes, null);
+    }
+
+
+    /**
+     * Creates a new ProgramClassReader for reading from the given DataInput,
+     * optionally treating stack map attributes as unknown attributes, and
+     * optionally interning the strings of UTF-8 constants with the given
+     * {@link Utf8Interner}.
+     */
+    public ProgramClassReader(DataInput    dataInput,
+                              boolean      ignoreStackMapAttributes,
+                              Utf8Interner utf8Interner)
     {
         this.dataInput                = new RuntimeDataInput(dataInput);
         this.ignoreStackMapAttributes = ignoreStackMapAttributes;
+        this.utf8Interner             = utf8Interner;
     }
 
 
@@ -366,10 +386,25 @@ implements   ClassVisitor,
     {
         int u2length = dataInput.readUnsignedShort();
 
-        // Read the UTF-8 bytes.
-        byte[] bytes = new byte[u2length];
-        dataInput.readFully(bytes);
-        utf8Constant.setBytes(bytes);
+        if (utf8Interner != null)
+        {
+            // Read the UTF-8 bytes into the reusable buffer and share the
+            // corresponding string.
+            if (utf8Buffer == null || utf8Buffer.length < u2length)
+            {
+                utf8Buffer = new byte[Math.max(u2length, 1024)];
+            }
+
+            dataInput.readFully(utf8Buffer, 0, u2length);
+            utf8Constant.setString(utf8Interner.intern(utf8Buffer, 0, u2length));
+        }
+        else
+        {
+            // Read the UTF-8 bytes.
+            byte[] bytes = new byte[u2length];
+            dataInput.readFully(bytes);
+            utf8Constant.setBytes(bytes);
+        }
     }
 
 
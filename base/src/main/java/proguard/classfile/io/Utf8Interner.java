@@ -0,0 +1,186 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile.io;
+
+import proguard.util.StringUtil;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class interns the strings of UTF-8 constants while they are being
+ * read, so identical constants of different classes share a single String
+ * instance, for instance "&lt;init&gt;", "Code", or "Ljava/lang/String;".
+ * <p/>
+ * The strings are looked up by their modified UTF-8 bytes, so known strings
+ * don't need to be decoded again. The table is bounded: once it contains
+ * the maximum number of strings, new strings are still decoded, but no
+ * longer added. The table is thread-safe, so it can be shared by class
+ * readers on multiple threads.
+ *
+ * @see ProgramClassReader
+ * @see LibraryClassReader
+ */
+public class Utf8Interner
+{
+    /**
+     * The default maximum number of strings.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+
+
+    private final ConcurrentHashMap<Utf8Key, String> strings = new ConcurrentHashMap<>();
+    private final int                                maxSize;
+
+
+    /**
+     * Creates a new Utf8Interner with the default maximum size.
+     */
+    public Utf8Interner()
+    {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+
+    /**
+     * Creates a new Utf8Interner.
+     * @param maxSize the maximum number of strings in the table.
+     */
+    public Utf8Interner(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+
+    /**
+     * Returns the shared string for the given modified UTF-8 bytes.
+     * @param bytes  the buffer with the bytes.
+     * @param offset the offset of the bytes in the buffer.
+     * @param length the number of bytes.
+     */
+    public String intern(byte[] bytes, int offset, int length)
+    {
+        Utf8Key key = new Utf8Key(bytes, offset, length);
+
+        String string = strings.get(key);
+        if (string == null)
+        {
+            string = StringUtil.getString(bytes, offset, offset + length);
+
+            if (strings.size() < maxSize)
+            {
+                // Store a key with its own copy of the bytes.
+                String previous = strings.putIfAbsent(new Utf8Key(Arrays.copyOfRange(bytes, offset, offset + length), 0, length),
+                                                      string);
+                if (previous != null)
+                {
+                    string = previous;
+                }
+            }
+        }
+
+        return string;
+    }
+
+
+    /**
+     * Returns the number of strings in the table.
+     */
+    public int size()
+    {
+        return strings.size();
+    }
+
+
+    /**
+     * Removes all strings from the table. Strings that have already been
+     * returned remain shared.
+     */
+    public void clear()
+    {
+        strings.clear();
+    }
+
+
+    /**
+     * A key with a range of modified UTF-8 bytes.
+     */
+    private static class Utf8Key
+    {
+        private final byte[] bytes;
+        private final int    offset;
+        private final int    length;
+        private final int    hashCode;
+
+
+        public Utf8Key(byte[] bytes, int offset, int length)
+        {
+            this.bytes  = bytes;
+            this.offset = offset;
+            this.length = length;
+
+            int hashCode = 1;
+            for (int index = offset; index < offset + length; index++)
+            {
+                hashCode = 31 * hashCode + bytes[index];
+            }
+
+            this.hashCode = hashCode;
+        }
+
+
+        // Implementations for Object.
+
+        @Override
+        public boolean equals(Object object)
+        {
+            if (this == object)
+            {
+                return true;
+            }
+            if (!(object instanceof Utf8Key))
+            {
+                return false;
+            }
+
+            Utf8Key other = (Utf8Key)object;
+            if (this.hashCode != other.hashCode ||
+                this.length   != other.length)
+            {
+                return false;
+            }
+
+            for (int index = 0; index < length; index++)
+            {
+                if (this.bytes[this.offset + index] != other.bytes[other.offset + index])
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+}
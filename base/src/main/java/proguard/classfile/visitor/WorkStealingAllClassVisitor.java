@@ -0,0 +1,259 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile.visitor;
+
+import proguard.classfile.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * This {@link ClassPoolVisitor} visits all Clazz instances of the class pool
+ * in parallel, on the threads of a given {@link ForkJoinPool}. It splits the
+ * classes into chunks that idle threads can steal from busy ones, so large
+ * class pools keep all threads busy, without the overhead of a task per
+ * class.
+ * <p/>
+ * Every thread that visits classes gets its own {@link ClassVisitor}, created
+ * with the given {@link ParallelAllClassVisitor.ClassVisitorFactory}. Unlike
+ * the {@link ParallelAllClassVisitor}, this visitor reuses the pool of
+ * threads and their class visitors across calls, so the class visitors must
+ * be able to visit the classes of multiple class pools.
+ * <p/>
+ * The visitor also counts the visited classes and chunks, the time that each
+ * thread spent visiting classes, and the maximum number of queued tasks it
+ * observed, for diagnosing how well the visiting scales.
+ *
+ * @see ParallelAllClassVisitor
+ */
+public class WorkStealingAllClassVisitor
+implements   ClassPoolVisitor
+{
+    /**
+     * The default maximum number of classes that a thread visits as a
+     * single task.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+
+
+    private final ForkJoinPool              forkJoinPool;
+    private final int                       chunkSize;
+    private final ThreadLocal<ClassVisitor> classVisitors;
+
+    private final LongAdder              visitedClassCount  = new LongAdder();
+    private final LongAdder              chunkCount         = new LongAdder();
+    private final LongAccumulator        maxQueuedTaskCount = new LongAccumulator(Math::max, 0L);
+    private final Map<String, LongAdder> workerTimes        = new ConcurrentHashMap<>();
+
+
+    /**
+     * Creates a new WorkStealingAllClassVisitor that visits the classes on
+     * the threads of the common fork/join pool.
+     * @param classVisitorFactory the factory for the class visitors of the
+     *                            individual threads.
+     */
+    public WorkStealingAllClassVisitor(ParallelAllClassVisitor.ClassVisitorFactory classVisitorFactory)
+    {
+        this(classVisitorFactory,
+             ForkJoinPool.commonPool(),
+             DEFAULT_CHUNK_SIZE);
+    }
+
+
+    /**
+     * Creates a new WorkStealingAllClassVisitor.
+     * @param classVisitorFactory the factory for the class visitors of the
+     *                            individual threads.
+     * @param forkJoinPool        the pool of threads that visit the classes.
+     * @param chunkSize           the maximum number of classes that a thread
+     *                            visits as a single task.
+     */
+    public WorkStealingAllClassVisitor(ParallelAllClassVisitor.ClassVisitorFactory classVisitorFactory,
+                                       ForkJoinPool                                forkJoinPool,
+                                       int                                         chunkSize)
+    {
+        if (chunkSize < 1)
+        {
+            throw new IllegalArgumentException("The chunk size must be positive ["+chunkSize+"]");
+        }
+
+        this.forkJoinPool  = forkJoinPool;
+        this.chunkSize     = chunkSize;
+        this.classVisitors = ThreadLocal.withInitial(classVisitorFactory::createClassVisitor);
+    }
+
+
+    /**
+     * Returns the total number of classes that have been visited.
+     */
+    public long getVisitedClassCount()
+    {
+        return visitedClassCount.sum();
+    }
+
+
+    /**
+     * Returns the total number of chunks of classes that have been visited.
+     */
+    public long getChunkCount()
+    {
+        return chunkCount.sum();
+    }
+
+
+    /**
+     * Returns the maximum number of tasks that were waiting in the queues
+     * of the fork/join pool, as observed at the start of every chunk.
+     */
+    public long getMaxQueuedTaskCount()
+    {
+        return maxQueuedTaskCount.get();
+    }
+
+
+    /**
+     * Returns the time in nanoseconds that each thread spent visiting
+     * classes, by thread name.
+     */
+    public Map<String, Long> getWorkerTimes()
+    {
+        Map<String, Long> times = new TreeMap<>();
+        workerTimes.forEach((name, time) -> times.put(name, time.sum()));
+
+        return times;
+    }
+
+
+    /**
+     * Resets all counters.
+     */
+    public void resetStatistics()
+    {
+        visitedClassCount.reset();
+        chunkCount.reset();
+        maxQueuedTaskCount.reset();
+        workerTimes.clear();
+    }
+
+
+    // Implementations for ClassPoolVisitor.
+
+    @Override
+    public void visitClassPool(ClassPool classPool)
+    {
+        // Take a snapshot of the classes, so we can split them.
+        Clazz[] classes = classPool instanceof ConcurrentClassPool ?
+            ((ConcurrentClassPool)classPool).snapshot() :
+            snapshot(classPool);
+
+        if (classes.length > 0)
+        {
+            // Exceptions in the threads are rethrown here.
+            forkJoinPool.invoke(new ChunkVisitor(classes, 0, classes.length));
+        }
+    }
+
+
+    // Small utility methods.
+
+    /**
+     * Returns the classes of the given class pool. The size of the class
+     * pool is only a hint, since it may be an upper bound, like for a
+     * {@link LazyClassPool}, or change while the classes are being copied.
+     */
+    private static Clazz[] snapshot(ClassPool classPool)
+    {
+        List<Clazz> classes = new ArrayList<>(classPool.size());
+
+        for (Clazz clazz : classPool.classes())
+        {
+            classes.add(clazz);
+        }
+
+        return classes.toArray(new Clazz[0]);
+    }
+
+
+    /**
+     * Visits the current thread's class visitor with the given range of
+     * classes, updating the counters.
+     */
+    private void visitChunk(Clazz[] classes, int start, int end)
+    {
+        maxQueuedTaskCount.accumulate(forkJoinPool.getQueuedTaskCount());
+
+        ClassVisitor classVisitor = classVisitors.get();
+
+        long startTime = System.nanoTime();
+
+        for (int index = start; index < end; index++)
+        {
+            classes[index].accept(classVisitor);
+        }
+
+        long time = System.nanoTime() - startTime;
+
+        workerTimes.computeIfAbsent(Thread.currentThread().getName(),
+                                    name -> new LongAdder()).add(time);
+        visitedClassCount.add(end - start);
+        chunkCount.increment();
+    }
+
+
+    /**
+     * This task visits a range of classes, splitting it in halves that can be
+     * stolen by other threads, as long as it is larger than a chunk.
+     */
+    private class ChunkVisitor
+    extends       RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Clazz[] classes;
+        private final int     start;
+        private final int     end;
+
+
+        public ChunkVisitor(Clazz[] classes, int start, int end)
+        {
+            this.classes = classes;
+            this.start   = start;
+            this.end     = end;
+        }
+
+
+        // Implementations for RecursiveAction.
+
+        @Override
+        protected void compute()
+        {
+            if (end - start <= chunkSize)
+            {
+                visitChunk(classes, start, end);
+            }
+            else
+            {
+                int middle = (start + end) >>> 1;
+
+                invokeAll(new ChunkVisitor(classes, start,  middle),
+                          new ChunkVisitor(classes, middle, end));
+            }
+        }
+    }
+}
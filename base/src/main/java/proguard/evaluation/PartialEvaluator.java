@@ -78,6 +78,10 @@ implements   AttributeVisitor,
     public static final int AT_METHOD_ENTRY = -1;
     public static final int AT_CATCH_ENTRY  = -1;
 
+    // Flags for the contexts at each instruction offset.
+    private static final byte GENERALIZED_CONTEXT  = 1;
+    private static final byte SHARED_CONTEXT_AFTER = 2;
+
     private final ValueFactory       valueFactory;
     private final InvocationUnit     invocationUnit;
     private final boolean            evaluateAllCode;
@@ -89,7 +93,7 @@ implements   AttributeVisitor,
     private TracedStack[]            stacksBefore        = new TracedStack[ClassEstimates.TYPICAL_CODE_LENGTH];
     private TracedVariables[]        variablesAfter      = new TracedVariables[ClassEstimates.TYPICAL_CODE_LENGTH];
     private TracedStack[]            stacksAfter         = new TracedStack[ClassEstimates.TYPICAL_CODE_LENGTH];
-    private boolean[]                generalizedContexts = new boolean[ClassEstimates.TYPICAL_CODE_LENGTH];
+    private byte[]                   contextFlags        = new byte[ClassEstimates.TYPICAL_CODE_LENGTH];
     private int[]                    evaluationCounts    = new int[ClassEstimates.TYPICAL_CODE_LENGTH];
     private boolean                  evaluateExceptions;
     private int                      codeLength;
@@ -900,6 +904,10 @@ implements   AttributeVisitor,
 
         int maxOffset = startOffset;
 
+        // The offset of the previous instruction, if its context after
+        // execution is the context before the current instruction.
+        int sharingOffset = NONE;
+
         // Evaluate the subsequent instructions.
         while (true)
         {
@@ -927,9 +935,17 @@ implements   AttributeVisitor,
                     stacksBefore[instructionOffset].copy(stack);
                 }
 
+                // Share the context with the previous instruction, if it
+                // didn't keep its own context after execution.
+                if (sharingOffset != NONE)
+                {
+                    variablesAfter[sharingOffset] = variablesBefore[instructionOffset];
+                    stacksAfter[sharingOffset]    = stacksBefore[instructionOffset];
+                }
+
                 // We'll execute in the generalized context, because it is
                 // the same as the current context.
-                generalizedContexts[instructionOffset] = true;
+                contextFlags[instructionOffset] |= GENERALIZED_CONTEXT;
             }
             else
             {
@@ -943,7 +959,7 @@ implements   AttributeVisitor,
                 // Bail out if the current context is the same as last time.
                 if (!variablesChanged &&
                     !stackChanged     &&
-                    generalizedContexts[instructionOffset])
+                    (contextFlags[instructionOffset] & GENERALIZED_CONTEXT) != 0)
                 {
                     if (DEBUG) System.out.println("Repeated variables, stack, and branch targets");
 
@@ -969,17 +985,18 @@ implements   AttributeVisitor,
                     stack.generalize(stacksBefore[instructionOffset]);
 
                     // We'll execute in the generalized context.
-                    generalizedContexts[instructionOffset] = true;
+                    contextFlags[instructionOffset] |= GENERALIZED_CONTEXT;
                 }
                 else
                 {
                     // We'll execute in the current context.
-                    generalizedContexts[instructionOffset] = false;
+                    contextFlags[instructionOffset] &= ~GENERALIZED_CONTEXT;
                 }
             }
 
             // We'll evaluate this instruction.
             evaluationCounts[instructionOffset]++;
+            sharingOffset = NONE;
 
             // Remember this instruction's offset with any stored value.
             Value storeValue = new InstructionOffsetValue(instructionOffset);
@@ -1053,7 +1070,15 @@ implements   AttributeVisitor,
             if (evaluationCount == 0)
             {
                 // First time we're passing by this instruction.
-                if (variablesAfter[instructionOffset] == null)
+                if (continuesToUniqueSuccessor(codeAttribute, instruction, instructionOffset))
+                {
+                    // The context after execution is always the same as the
+                    // context before the next instruction, so we'll share the
+                    // latter, instead of maintaining a copy.
+                    contextFlags[instructionOffset] |= SHARED_CONTEXT_AFTER;
+                    sharingOffset = instructionOffset;
+                }
+                else if (variablesAfter[instructionOffset] == null)
                 {
                     // There's not even a context at this index yet.
                     variablesAfter[instructionOffset] = new TracedVariables(variables);
@@ -1068,9 +1093,28 @@ implements   AttributeVisitor,
             }
             else
             {
-                // Merge in the current context.
-                variablesAfter[instructionOffset].generalize(variables, true);
-                stacksAfter[instructionOffset].generalize(stack);
+                if (isSharedContextAfter(instructionOffset))
+                {
+                    if (continuesToUniqueSuccessor(codeAttribute, instruction, instructionOffset))
+                    {
+                        // The shared context will be merged at the next
+                        // instruction.
+                        sharingOffset = instructionOffset;
+                    }
+                    else
+                    {
+                        // The instruction unexpectedly branched this time,
+                        // so we'll need a copy of the shared context.
+                        unshareContextAfter(instructionOffset);
+                    }
+                }
+
+                if (sharingOffset == NONE)
+                {
+                    // Merge in the current context.
+                    variablesAfter[instructionOffset].generalize(variables, true);
+                    stacksAfter[instructionOffset].generalize(stack);
+                }
             }
 
             // Did the branch unit get called?
@@ -1224,20 +1268,40 @@ implements   AttributeVisitor,
 
                 if (evaluationCounts[offset] == 0)
                 {
-                    variablesBefore[offset]     = other.variablesBefore[offset];
-                    stacksBefore[offset]        = other.stacksBefore[offset];
-                    variablesAfter[offset]      = other.variablesAfter[offset];
-                    stacksAfter[offset]         = other.stacksAfter[offset];
-                    generalizedContexts[offset] = other.generalizedContexts[offset];
-                    evaluationCounts[offset]    = other.evaluationCounts[offset];
+                    variablesBefore[offset]  = other.variablesBefore[offset];
+                    stacksBefore[offset]     = other.stacksBefore[offset];
+                    variablesAfter[offset]   = other.variablesAfter[offset];
+                    stacksAfter[offset]      = other.stacksAfter[offset];
+                    contextFlags[offset]     = other.contextFlags[offset];
+                    evaluationCounts[offset] = other.evaluationCounts[offset];
+
+                    // The other context after is shared with the other
+                    // context before the next instruction, which isn't
+                    // necessarily our context before the next instruction,
+                    // so we'll keep our own copy.
+                    if (isSharedContextAfter(offset))
+                    {
+                        unshareContextAfter(offset);
+                    }
                 }
                 else
                 {
                     variablesBefore[offset].generalize(other.variablesBefore[offset], false);
                     stacksBefore[offset]   .generalize(other.stacksBefore[offset]);
-                    variablesAfter[offset] .generalize(other.variablesAfter[offset], false);
-                    stacksAfter[offset]    .generalize(other.stacksAfter[offset]);
-                    //generalizedContexts[offset]
+
+                    // Shared contexts are generalized at the next instruction.
+                    if (isSharedContextAfter(offset) &&
+                        !other.isSharedContextAfter(offset))
+                    {
+                        unshareContextAfter(offset);
+                    }
+
+                    if (!isSharedContextAfter(offset))
+                    {
+                        variablesAfter[offset].generalize(other.variablesAfter[offset], false);
+                        stacksAfter[offset]   .generalize(other.stacksAfter[offset]);
+                    }
+                    //contextFlags[offset]
                     evaluationCounts[offset] += other.evaluationCounts[offset];
                 }
             }
@@ -1355,6 +1419,49 @@ implements   AttributeVisitor,
 
     // Small utility methods.
 
+    /**
+     * Returns whether the given instruction, which has just been evaluated,
+     * always continues at the next instruction, which can't be reached in
+     * any other way.
+     */
+    private boolean continuesToUniqueSuccessor(CodeAttribute codeAttribute,
+                                               Instruction   instruction,
+                                               int           instructionOffset)
+    {
+        int nextOffset = instructionOffset + instruction.length(instructionOffset);
+
+        return !branchUnit.wasCalled()                     &&
+               instruction.opcode != Instruction.OP_JSR    &&
+               instruction.opcode != Instruction.OP_JSR_W  &&
+               instruction.opcode != Instruction.OP_RET    &&
+               nextOffset < codeAttribute.u4codeLength     &&
+               !branchTargetFinder.isTarget(nextOffset);
+    }
+
+
+    /**
+     * Returns whether the context after the instruction at the given offset
+     * is shared with the context before the next instruction.
+     */
+    private boolean isSharedContextAfter(int instructionOffset)
+    {
+        return (contextFlags[instructionOffset] & SHARED_CONTEXT_AFTER) != 0;
+    }
+
+
+    /**
+     * Gives the instruction at the given offset its own copy of the context
+     * it shares with the next instruction.
+     */
+    private void unshareContextAfter(int instructionOffset)
+    {
+        variablesAfter[instructionOffset] = new TracedVariables(variablesAfter[instructionOffset]);
+        stacksAfter[instructionOffset]    = new TracedStack(stacksAfter[instructionOffset]);
+
+        contextFlags[instructionOffset] &= ~SHARED_CONTEXT_AFTER;
+    }
+
+
     /**
      * Initializes the data structures for the variables, stack, etc.
      */
@@ -1372,16 +1479,27 @@ implements   AttributeVisitor,
             stacksBefore        = new TracedStack[newCodeLength];
             variablesAfter      = new TracedVariables[newCodeLength];
             stacksAfter         = new TracedStack[newCodeLength];
-            generalizedContexts = new boolean[newCodeLength];
+            contextFlags        = new byte[newCodeLength];
             evaluationCounts    = new int[newCodeLength];
         }
         else
         {
+            // Forget the shared contexts, so they can't be reused at
+            // different offsets.
+            for (int index = 0; index < codeLength; index++)
+            {
+                if (isSharedContextAfter(index))
+                {
+                    variablesAfter[index] = null;
+                    stacksAfter[index]    = null;
+                }
+            }
+
             // Reset the old arrays.
-            Arrays.fill(branchOriginValues,  0, codeLength, null);
-            Arrays.fill(branchTargetValues,  0, codeLength, null);
-            Arrays.fill(generalizedContexts, 0, codeLength, false);
-            Arrays.fill(evaluationCounts,    0, codeLength, 0);
+            Arrays.fill(branchOriginValues, 0, codeLength, null);
+            Arrays.fill(branchTargetValues, 0, codeLength, null);
+            Arrays.fill(contextFlags,       0, codeLength, (byte)0);
+            Arrays.fill(evaluationCounts,   0, codeLength, 0);
 
             for (int index = 0; index < newCodeLength; index++)
             {
@@ -21,20 +21,41 @@ import proguard.classfile.*;
 import proguard.classfile.io.ProgramClassWriter;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This {@link DataEntryWriter} finds received class entries in the given class pool
  * and writes them out to the given data entry writer. For resource entries,
  * it returns valid output streams. For class entries, it returns output
  * streams that must not be used.
+ * <p/>
+ * Optionally, the classes are serialized in parallel, on the threads of a
+ * given executor service, while earlier classes are being written out.
+ * The classes are then only written to the delegate writer after their
+ * class entries have been received, but still on the calling thread and in
+ * the same order, interleaved with any resource entries and directories
+ * that this writer receives, so the output is identical to the sequential
+ * output. Entries that reach the delegate writer in other ways may end up
+ * before pending classes, so all entries whose order matters should pass
+ * through this writer. The classes must not be modified until this writer
+ * has written them out, at the latest when it is closed.
  *
  * @see IdleRewriter
  * @author Eric Lafortune
  */
 public class ClassDataEntryWriter implements DataEntryWriter
 {
+    private static final int DEFAULT_MAX_PENDING_CLASSES = 256;
+
+
     private final ClassPool       classPool;
     private final DataEntryWriter dataEntryWriter;
+    private final ExecutorService executorService;
+    private final int             maxPendingClasses;
+
+    // The classes that are being serialized or waiting to be written out.
+    private final Deque<PendingClass> pendingClasses = new ArrayDeque<>();
 
 
     /**
@@ -45,8 +66,57 @@ public class ClassDataEntryWriter implements DataEntryWriter
     public ClassDataEntryWriter(ClassPool       classPool,
                                 DataEntryWriter dataEntryWriter)
     {
-        this.classPool       = classPool;
-        this.dataEntryWriter = dataEntryWriter;
+        this(classPool,
+             dataEntryWriter,
+             null);
+    }
+
+
+    /**
+     * Creates a new ClassDataEntryWriter that optionally serializes the
+     * classes in parallel.
+     * @param classPool       the class pool in which classes are found.
+     * @param dataEntryWriter the writer to which the class file is written.
+     * @param executorService an optional executor service that serializes
+     *                        the classes.
+     */
+    public ClassDataEntryWriter(ClassPool       classPool,
+                                DataEntryWriter dataEntryWriter,
+                                ExecutorService executorService)
+    {
+        this(classPool,
+             dataEntryWriter,
+             executorService,
+             DEFAULT_MAX_PENDING_CLASSES);
+    }
+
+
+    /**
+     * Creates a new ClassDataEntryWriter that optionally serializes the
+     * classes in parallel.
+     * @param classPool         the class pool in which classes are found.
+     * @param dataEntryWriter   the writer to which the class file is written.
+     * @param executorService   an optional executor service that serializes
+     *                          the classes.
+     * @param maxPendingClasses the maximum number of classes that are being
+     *                          serialized or waiting to be written out at
+     *                          any time, bounding the memory for their
+     *                          serialized data.
+     */
+    public ClassDataEntryWriter(ClassPool       classPool,
+                                DataEntryWriter dataEntryWriter,
+                                ExecutorService executorService,
+                                int             maxPendingClasses)
+    {
+        if (maxPendingClasses < 1)
+        {
+            throw new IllegalArgumentException("The maximum number of pending classes must be positive ["+maxPendingClasses+"]");
+        }
+
+        this.classPool         = classPool;
+        this.dataEntryWriter   = dataEntryWriter;
+        this.executorService   = executorService;
+        this.maxPendingClasses = maxPendingClasses;
     }
 
 
@@ -55,6 +125,8 @@ public class ClassDataEntryWriter implements DataEntryWriter
     @Override
     public boolean createDirectory(DataEntry dataEntry) throws IOException
     {
+        writeAllPendingClasses();
+
         return dataEntryWriter.createDirectory(dataEntry);
     }
 
@@ -64,6 +136,8 @@ public class ClassDataEntryWriter implements DataEntryWriter
                                     DataEntry dataEntry2)
     throws IOException
     {
+        writeAllPendingClasses();
+
         return dataEntryWriter.sameOutputStream(dataEntry1, dataEntry2);
     }
 
@@ -89,24 +163,14 @@ public class ClassDataEntryWriter implements DataEntryWriter
                     dataEntry = new RenamedDataEntry(dataEntry, newClassName + ClassConstants.CLASS_FILE_EXTENSION);
                 }
 
-                // Get the output stream for this input entry.
-                OutputStream outputStream = dataEntryWriter.createOutputStream(dataEntry);
-                if (outputStream != null)
+                // Should we serialize the class in parallel?
+                if (executorService != null)
+                {
+                    submit(dataEntry, clazz, className);
+                }
+                else
                 {
-                    // Write the class to the output stream.
-                    DataOutputStream classOutputStream = new DataOutputStream(outputStream);
-                    try
-                    {
-                        clazz.accept(new ProgramClassWriter(classOutputStream));
-                    }
-                    catch (RuntimeException e)
-                    {
-                        throw (RuntimeException)new RuntimeException("Unexpected error while writing class ["+className+"] ("+e.getMessage()+")").initCause(e);
-                    }
-                    finally
-                    {
-                        classOutputStream.close();
-                    }
+                    writeClass(dataEntry, clazz, className);
                 }
             }
 
@@ -116,6 +180,8 @@ public class ClassDataEntryWriter implements DataEntryWriter
         }
 
         // Delegate for resource entries.
+        writeAllPendingClasses();
+
         return dataEntryWriter.createOutputStream(dataEntry);
     }
 
@@ -123,6 +189,15 @@ public class ClassDataEntryWriter implements DataEntryWriter
     @Override
     public void close() throws IOException
     {
+        try
+        {
+            writeAllPendingClasses();
+        }
+        finally
+        {
+            cancelAll();
+        }
+
         // Close the delegate writer.
         dataEntryWriter.close();
     }
@@ -134,4 +209,190 @@ public class ClassDataEntryWriter implements DataEntryWriter
         pw.println(prefix + "ClassDataEntryWriter");
         dataEntryWriter.println(pw, prefix + "  ");
     }
+
+
+    // Small utility methods.
+
+    /**
+     * Serializes the given class and writes it out to the delegate writer.
+     */
+    private void writeClass(DataEntry dataEntry,
+                            Clazz     clazz,
+                            String    className)
+    throws IOException
+    {
+        // Get the output stream for this input entry.
+        OutputStream outputStream = dataEntryWriter.createOutputStream(dataEntry);
+        if (outputStream != null)
+        {
+            // Write the class to the output stream.
+            DataOutputStream classOutputStream = new DataOutputStream(outputStream);
+            try
+            {
+                clazz.accept(new ProgramClassWriter(classOutputStream));
+            }
+            catch (RuntimeException e)
+            {
+                throw unexpectedError(className, e);
+            }
+            finally
+            {
+                classOutputStream.close();
+            }
+        }
+    }
+
+
+    /**
+     * Submits the given class for serialization, writing out earlier
+     * classes, as long as too many are pending.
+     */
+    private void submit(DataEntry dataEntry,
+                        Clazz     clazz,
+                        String    className)
+    throws IOException
+    {
+        while (pendingClasses.size() >= maxPendingClasses)
+        {
+            writePendingClass(pendingClasses.removeFirst());
+        }
+
+        pendingClasses.addLast(new PendingClass(dataEntry,
+                                                ParallelTask.submit(executorService, () -> serialize(clazz, className))));
+    }
+
+
+    /**
+     * Serializes the given class to a byte array.
+     */
+    private static byte[] serialize(Clazz clazz, String className) throws IOException
+    {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+
+        try (DataOutputStream classOutputStream = new DataOutputStream(byteArrayOutputStream))
+        {
+            clazz.accept(new ProgramClassWriter(classOutputStream));
+        }
+        catch (RuntimeException e)
+        {
+            throw unexpectedError(className, e);
+        }
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+
+    /**
+     * Writes out all pending classes, in order.
+     */
+    private void writeAllPendingClasses() throws IOException
+    {
+        try
+        {
+            while (!pendingClasses.isEmpty())
+            {
+                writePendingClass(pendingClasses.removeFirst());
+            }
+        }
+        catch (IOException | RuntimeException | Error e)
+        {
+            cancelAll();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Waits for the serialized data of the given pending class and writes
+     * them out to the delegate writer.
+     */
+    private void writePendingClass(PendingClass pendingClass) throws IOException
+    {
+        byte[] data;
+        try
+        {
+            data = pendingClass.task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw (IOException)new InterruptedIOException("Interrupted while serializing classes in parallel").initCause(e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+
+        // Get the output stream for this input entry.
+        OutputStream outputStream = dataEntryWriter.createOutputStream(pendingClass.dataEntry);
+        if (outputStream != null)
+        {
+            try
+            {
+                outputStream.write(data);
+            }
+            finally
+            {
+                outputStream.close();
+            }
+        }
+    }
+
+
+    /**
+     * Cancels all pending classes and waits until none of them is being
+     * serialized anymore, ignoring their results.
+     */
+    private void cancelAll()
+    {
+        List<ParallelTask<byte[]>> tasks = new ArrayList<>(pendingClasses.size());
+        for (PendingClass pendingClass : pendingClasses)
+        {
+            tasks.add(pendingClass.task);
+        }
+
+        ParallelTask.cancelAll(tasks);
+
+        pendingClasses.clear();
+    }
+
+
+    /**
+     * Returns an exception for an unexpected error while writing the
+     * given class.
+     */
+    private static RuntimeException unexpectedError(String className, RuntimeException e)
+    {
+        return (RuntimeException)new RuntimeException("Unexpected error while writing class ["+className+"] ("+e.getMessage()+")").initCause(e);
+    }
+
+
+    /**
+     * A class that is being serialized or waiting to be written out.
+     */
+    private static class PendingClass
+    {
+        private final DataEntry            dataEntry;
+        private final ParallelTask<byte[]> task;
+
+
+        private PendingClass(DataEntry dataEntry, ParallelTask<byte[]> task)
+        {
+            this.dataEntry = dataEntry;
+            this.task      = task;
+        }
+    }
 }
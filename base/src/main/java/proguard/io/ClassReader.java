@@ -46,6 +46,7 @@ public class ClassReader implements DataEntryReader
     private final boolean        skipNonPublicLibraryClasses;
     private final boolean        skipNonPublicLibraryClassMembers;
     private final boolean        ignoreStackMapAttributes;
+    private final Utf8Interner   utf8Interner;
     private final WarningPrinter warningPrinter;
     private final ClassVisitor   classVisitor;
 
@@ -85,11 +86,39 @@ public class ClassReader implements DataEntryReader
                        boolean        includeKotlinMetadata,
                        WarningPrinter warningPrinter,
                        ClassVisitor   classVisitor)
+    {
+        this(isLibrary,
+             skipNonPublicLibraryClasses,
+             skipNonPublicLibraryClassMembers,
+             ignoreStackMapAttributes,
+             includeKotlinMetadata,
+             null,
+             warningPrinter,
+             classVisitor);
+    }
+
+
+    /**
+     * Creates a new ClassReader for reading the specified
+     * Clazz objects, optionally interning the strings of all UTF-8
+     * constants with the given {@link Utf8Interner}, which can be shared by
+     * many class readers, so identical strings of different classes share
+     * a single instance.
+     */
+    public ClassReader(boolean        isLibrary,
+                       boolean        skipNonPublicLibraryClasses,
+                       boolean        skipNonPublicLibraryClassMembers,
+                       boolean        ignoreStackMapAttributes,
+                       boolean        includeKotlinMetadata,
+                       Utf8Interner   utf8Interner,
+                       WarningPrinter warningPrinter,
+                       ClassVisitor   classVisitor)
     {
         this.isLibrary                        = isLibrary;
         this.skipNonPublicLibraryClasses      = skipNonPublicLibraryClasses;
         this.skipNonPublicLibraryClassMembers = skipNonPublicLibraryClassMembers;
         this.ignoreStackMapAttributes         = ignoreStackMapAttributes;
+        this.utf8Interner                     = utf8Interner;
         this.warningPrinter                   = warningPrinter;
         this.classVisitor                     = classVisitor;
         this.kmInitializer = includeKotlinMetadata ?
@@ -119,7 +148,8 @@ public class ClassReader implements DataEntryReader
                     dataInputStream,
                     skipNonPublicLibraryClasses,
                     skipNonPublicLibraryClassMembers,
-                    kmInitializer != null ? (k, mv, d1, d2, xi, xs, pn) -> kmInitializer.initialize(clazz, k, mv, d1, d2, xi, xs, pn) : null
+                    kmInitializer != null ? (k, mv, d1, d2, xi, xs, pn) -> kmInitializer.initialize(clazz, k, mv, d1, d2, xi, xs, pn) : null,
+                    utf8Interner
                 );
 
                 clazz.accept(libraryClassReader);
@@ -129,7 +159,8 @@ public class ClassReader implements DataEntryReader
                 clazz = new ProgramClass();
                 ClassVisitor programClassReader = new ProgramClassReader(
                     dataInputStream,
-                    ignoreStackMapAttributes
+                    ignoreStackMapAttributes,
+                    utf8Interner
                 );
 
                 if (kmInitializer != null)
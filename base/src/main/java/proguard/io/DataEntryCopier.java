@@ -22,10 +22,17 @@ import org.apache.logging.log4j.Logger;
 import proguard.util.ExtensionMatcher;
 
 import java.io.*;
+import java.util.zip.ZipEntry;
 
 /**
  * This {@link DataEntryReader} writes the ZIP entries and files that it reads to a
  * given {@link DataEntryWriter}.
+ * <p/>
+ * Optionally, the copier copies deflated entries of memory-mapped archives
+ * ({@link MappedZipDataEntry}) to compressed zip entries as they are, without
+ * inflating and deflating them again. This only happens if the writer
+ * directly returns the output stream of a {@link ZipOutput}, so for instance
+ * not when the data are digested for a signed jar.
  *
  * @author Eric Lafortune
  */
@@ -38,6 +45,7 @@ public class DataEntryCopier implements DataEntryReader
     private static final Logger logger = LogManager.getLogger(DataEntryCopier.class);
 
     private final DataEntryWriter dataEntryWriter;
+    private final boolean         copyCompressedData;
     private final byte[]          buffer = new byte[BUFFER_SIZE];
 
 
@@ -46,7 +54,25 @@ public class DataEntryCopier implements DataEntryReader
      */
     public DataEntryCopier(DataEntryWriter dataEntryWriter)
     {
-        this.dataEntryWriter = dataEntryWriter;
+        this(dataEntryWriter, false);
+    }
+
+
+    /**
+     * Creates a new DataEntryCopier that optionally copies the compressed
+     * data of entries directly.
+     * @param dataEntryWriter    the writer to which the entries are copied.
+     * @param copyCompressedData specifies whether deflated entries of
+     *                           memory-mapped archives should be copied
+     *                           without inflating and deflating them, if
+     *                           the output supports it. Their data are then
+     *                           not passed to {@link #copyData}.
+     */
+    public DataEntryCopier(DataEntryWriter dataEntryWriter,
+                           boolean         copyCompressedData)
+    {
+        this.dataEntryWriter    = dataEntryWriter;
+        this.copyCompressedData = copyCompressedData;
     }
 
 
@@ -69,6 +95,24 @@ public class DataEntryCopier implements DataEntryReader
                 {
                     try
                     {
+                        // Can we copy the compressed data as they are?
+                        if (copyCompressedData &&
+                            dataEntry    instanceof MappedZipDataEntry &&
+                            outputStream instanceof ZipOutput.CompressedDataOutputStream)
+                        {
+                            MappedZipDataEntry mappedZipDataEntry =
+                                (MappedZipDataEntry)dataEntry;
+
+                            if (mappedZipDataEntry.getMethod() == ZipEntry.DEFLATED)
+                            {
+                                ((ZipOutput.CompressedDataOutputStream)outputStream)
+                                    .writeCompressedData(mappedZipDataEntry.getCompressedData(),
+                                                         (int)mappedZipDataEntry.getCrc(),
+                                                         mappedZipDataEntry.getUncompressedSize());
+                                return;
+                            }
+                        }
+
                         InputStream inputStream = dataEntry.getInputStream();
 
                         try
@@ -291,7 +335,7 @@ public class DataEntryCopier implements DataEntryReader
 
 
             // Create the copying DataEntryReader.
-            DataEntryReader reader = new DataEntryCopier(writer);
+            DataEntryReader reader = new DataEntryCopier(writer, true);
 
             boolean inputIsApk  = input.endsWith(".apk") ||
                                   input.endsWith(".ap_");
@@ -303,7 +347,7 @@ public class DataEntryCopier implements DataEntryReader
             boolean inputIsZip  = input.endsWith(".zip");
 
             // Unzip any apks, if necessary.
-            DataEntryReader apkReader = new JarReader(reader);
+            DataEntryReader apkReader = new JarReader(false, true, reader);
             if (inputIsApk)
             {
                 // Always unzip.
@@ -318,7 +362,7 @@ public class DataEntryCopier implements DataEntryReader
                                                      reader);
 
                 // Unzip any jars, if necessary.
-                DataEntryReader jarReader = new JarReader(reader);
+                DataEntryReader jarReader = new JarReader(false, true, reader);
                 if (inputIsJar)
                 {
                     // Always unzip.
@@ -333,7 +377,7 @@ public class DataEntryCopier implements DataEntryReader
                                                          reader);
 
                     // Unzip any aars, if necessary.
-                    DataEntryReader aarReader = new JarReader(reader);
+                    DataEntryReader aarReader = new JarReader(false, true, reader);
                     if (inputIsAar)
                     {
                         // Always unzip.
@@ -348,7 +392,7 @@ public class DataEntryCopier implements DataEntryReader
                                                              reader);
 
                         // Unzip any wars, if necessary.
-                        DataEntryReader warReader = new JarReader(reader);
+                        DataEntryReader warReader = new JarReader(false, true, reader);
                         if (inputIsWar)
                         {
                             // Always unzip.
@@ -363,7 +407,7 @@ public class DataEntryCopier implements DataEntryReader
                                                                  reader);
 
                             // Unzip any ears, if necessary.
-                            DataEntryReader earReader = new JarReader(reader);
+                            DataEntryReader earReader = new JarReader(false, true, reader);
                             if (inputIsEar)
                             {
                                 // Always unzip.
@@ -378,7 +422,7 @@ public class DataEntryCopier implements DataEntryReader
                                                                      reader);
 
                                 // Unzip any jmods, if necessary.
-                                DataEntryReader jmodReader = new JarReader(true, reader);
+                                DataEntryReader jmodReader = new JarReader(true, true, reader);
                                 if (inputIsJmod)
                                 {
                                     // Always unzip.
@@ -393,7 +437,7 @@ public class DataEntryCopier implements DataEntryReader
                                                                          reader);
 
                                     // Unzip any zips, if necessary.
-                                    DataEntryReader zipReader = new JarReader(reader);
+                                    DataEntryReader zipReader = new JarReader(false, true, reader);
                                     if (inputIsZip)
                                     {
                                         // Always unzip.
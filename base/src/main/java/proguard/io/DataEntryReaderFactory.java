@@ -17,6 +17,7 @@
  */
 package proguard.io;
 
+import proguard.classfile.visitor.ClassVisitor;
 import proguard.util.AndMatcher;
 import proguard.util.ExtensionMatcher;
 import proguard.util.FileNameParser;
@@ -31,6 +32,7 @@ import proguard.util.WildcardManager;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import static proguard.classfile.ClassConstants.CLASS_FILE_EXTENSION;
 
@@ -51,6 +53,7 @@ public class DataEntryReaderFactory
 
 
     private final boolean android;
+    private final boolean mapArchives;
 
 
     /**
@@ -62,7 +65,25 @@ public class DataEntryReaderFactory
      */
     public DataEntryReaderFactory(boolean android)
     {
-        this.android = android;
+        this(android, false);
+    }
+
+
+    /**
+     * Creates a new DataEntryReaderFactory.
+     *
+     * @param android     Specifies whether the packaging is targeted at the
+     *                    Android platform. Archives inside the assets
+     *                    directory then aren't unpacked but simply read as
+     *                    data files.
+     * @param mapArchives Specifies whether archive files are mapped in
+     *                    memory, with a {@link MappedZipSource}, so stored
+     *                    nested archives can be read with random access.
+     */
+    public DataEntryReaderFactory(boolean android, boolean mapArchives)
+    {
+        this.android     = android;
+        this.mapArchives = mapArchives;
     }
 
     /**
@@ -74,6 +95,116 @@ public class DataEntryReaderFactory
      * @return a DataEntryReader for reading the given class path entry.
      */
     public DataEntryReader createDataEntryReader(ClassPathEntry classPathEntry, DataEntryReader reader)
+    {
+        return createDataEntryReader(classPathEntry, reader, true);
+    }
+
+
+    /**
+     * Creates a DataEntryReader that can read the given class path entry,
+     * reading and parsing the entries of the class path entry's own archive
+     * in parallel, with a {@link ParallelJarReader}. Any archives nested
+     * inside it are read sequentially, by the worker that reads their entry.
+     * If the class path entry isn't an archive, for instance a directory,
+     * the returned reader reads it sequentially.
+     *
+     * @param classPathEntry  the input class path entry.
+     * @param readerFactory   a factory for the data entry readers to which the
+     *                        reading of actual classes and resource files can
+     *                        be delegated.
+     * @param classVisitor    the visitor that receives all read classes, in
+     *                        the order of their entries.
+     * @param executorService the executor service that reads the entries.
+     * @return a DataEntryReader for reading the given class path entry.
+     */
+    public DataEntryReader createParallelDataEntryReader(ClassPathEntry                       classPathEntry,
+                                                         ParallelJarReader.EntryReaderFactory readerFactory,
+                                                         ClassVisitor                         classVisitor,
+                                                         ExecutorService                      executorService)
+    {
+        if (!isArchive(classPathEntry))
+        {
+            return createDataEntryReader(classPathEntry,
+                                         readerFactory.createEntryReader(classVisitor));
+        }
+
+        // Read the top-level archive in parallel, with fresh readers for
+        // its entries, which still unwrap any nested archives.
+        return new ParallelJarReader(classPathEntry.isJmod(),
+                                     visitor -> createDataEntryReader(classPathEntry,
+                                                                      readerFactory.createEntryReader(visitor),
+                                                                      false),
+                                     classVisitor,
+                                     executorService);
+    }
+
+
+    /**
+     * Creates a DataEntryReader that can read the given class path entry,
+     * loading the library classes of its archive from the given
+     * {@link LibraryClassCache}, with a {@link LibraryClassCacheReader}.
+     * If the cache doesn't contain them yet, the reader reads the archive
+     * and saves its classes in the cache. If the class path entry isn't an
+     * archive, for instance a directory, the returned reader reads it
+     * without the cache.
+     *
+     * @param classPathEntry      the input class path entry.
+     * @param readerFactory       a factory for the data entry readers to which
+     *                            the reading of actual classes can be
+     *                            delegated, typically library class readers.
+     * @param readerConfiguration a description of the configuration of the
+     *                            created readers, for instance whether they
+     *                            skip non-public classes, which becomes part
+     *                            of the cache keys, along with the filters of
+     *                            the class path entry.
+     * @param classVisitor        the visitor that receives all read classes.
+     * @param libraryClassCache   the cache with the classes of archives.
+     * @return a DataEntryReader for reading the given class path entry.
+     */
+    public DataEntryReader createCachingDataEntryReader(ClassPathEntry                       classPathEntry,
+                                                        ParallelJarReader.EntryReaderFactory readerFactory,
+                                                        String                               readerConfiguration,
+                                                        ClassVisitor                         classVisitor,
+                                                        LibraryClassCache                    libraryClassCache)
+    {
+        if (!isArchive(classPathEntry))
+        {
+            return createDataEntryReader(classPathEntry,
+                                         readerFactory.createEntryReader(classVisitor));
+        }
+
+        // The same archive may result in different classes with different
+        // filters or settings.
+        String configuration =
+            readerConfiguration                             + ";" +
+            "android="  + android                           + ";" +
+            "jmod="     + classPathEntry.isJmod()           + ";" +
+            "filter="   + classPathEntry.getFilter()        + ";" +
+            "apk="      + classPathEntry.getApkFilter()     + ";" +
+            "aab="      + classPathEntry.getAabFilter()     + ";" +
+            "jar="      + classPathEntry.getJarFilter()     + ";" +
+            "aar="      + classPathEntry.getAarFilter()     + ";" +
+            "war="      + classPathEntry.getWarFilter()     + ";" +
+            "ear="      + classPathEntry.getEarFilter()     + ";" +
+            "jmod="     + classPathEntry.getJmodFilter()    + ";" +
+            "zip="      + classPathEntry.getZipFilter();
+
+        return new LibraryClassCacheReader(libraryClassCache,
+                                           configuration,
+                                           visitor -> createDataEntryReader(classPathEntry,
+                                                                            readerFactory.createEntryReader(visitor)),
+                                           classVisitor);
+    }
+
+
+    /**
+     * Creates a DataEntryReader that can read the given class path entry,
+     * optionally leaving out the reader for the class path entry's own
+     * archive.
+     */
+    private DataEntryReader createDataEntryReader(ClassPathEntry  classPathEntry,
+                                                  DataEntryReader reader,
+                                                  boolean         includeTopLevelJarReader)
     {
         boolean isApk  = classPathEntry.isApk();
         boolean isAab  = classPathEntry.isAab();
@@ -108,35 +239,35 @@ public class DataEntryReaderFactory
         }
 
         // Unzip any apks, if necessary.
-        reader = wrapInJarReader(reader, false, false, isApk, apkFilter, ".apk");
+        reader = wrapInJarReader(reader, false, false, isApk, includeTopLevelJarReader, apkFilter, ".apk");
         if (!isApk)
         {
             // Unzip any aabs, if necessary.
-            reader = wrapInJarReader(reader, false, false, isAab, aabFilter, ".aab");
+            reader = wrapInJarReader(reader, false, false, isAab, includeTopLevelJarReader, aabFilter, ".aab");
             if (!isAab)
             {
                 // Unzip any jars, if necessary.
-                reader = wrapInJarReader(reader, false, false, isJar, jarFilter, ".jar");
+                reader = wrapInJarReader(reader, false, false, isJar, includeTopLevelJarReader, jarFilter, ".jar");
                 if (!isJar)
                 {
                     // Unzip any aars, if necessary.
-                    reader = wrapInJarReader(reader, false, false, isAar, aarFilter, ".aar");
+                    reader = wrapInJarReader(reader, false, false, isAar, includeTopLevelJarReader, aarFilter, ".aar");
                     if (!isAar)
                     {
                         // Unzip any wars, if necessary.
-                        reader = wrapInJarReader(reader, true, false, isWar, warFilter, ".war");
+                        reader = wrapInJarReader(reader, true, false, isWar, includeTopLevelJarReader, warFilter, ".war");
                         if (!isWar)
                         {
                             // Unzip any ears, if necessary.
-                            reader = wrapInJarReader(reader, false, false, isEar, earFilter, ".ear");
+                            reader = wrapInJarReader(reader, false, false, isEar, includeTopLevelJarReader, earFilter, ".ear");
                             if (!isEar)
                             {
                                 // Unzip any jmods, if necessary.
-                                reader = wrapInJarReader(reader, true, true, isJmod, jmodFilter, ".jmod");
+                                reader = wrapInJarReader(reader, true, true, isJmod, includeTopLevelJarReader, jmodFilter, ".jmod");
                                 if (!isJmod)
                                 {
                                     // Unzip any zips, if necessary.
-                                    reader = wrapInJarReader(reader, false, false, isZip, zipFilter, ".zip");
+                                    reader = wrapInJarReader(reader, false, false, isZip, includeTopLevelJarReader, zipFilter, ".zip");
                                 }
                             }
                         }
@@ -160,6 +291,10 @@ public class DataEntryReaderFactory
      *                           bytes from the zip.
      * @param isJar              specifies whether the data entries should
      *                           always be unzipped.
+     * @param includeJarReader   if the data entries should always be
+     *                           unzipped, specifies whether to actually
+     *                           include the JarReader, or to leave the
+     *                           unzipping to the caller.
      * @param jarFilter          otherwise, an optional filter on the data
      *                           entry names.
      * @param jarExtension       also otherwise, a required data entry name
@@ -171,6 +306,7 @@ public class DataEntryReaderFactory
                                             boolean         stripClassesPrefix,
                                             boolean         stripJmodHeader,
                                             boolean         isJar,
+                                            boolean         includeJarReader,
                                             List<String>    jarFilter,
                                             String          jarExtension)
     {
@@ -183,12 +319,12 @@ public class DataEntryReaderFactory
         }
 
         // Unzip any jars, if necessary.
-        DataEntryReader jarReader = new JarReader(stripJmodHeader, reader);
+        DataEntryReader jarReader = new JarReader(stripJmodHeader, mapArchives, reader);
 
         if (isJar)
         {
-            // Always unzip.
-            return jarReader;
+            // Always unzip, possibly leaving it to the caller.
+            return includeJarReader ? jarReader : reader;
         }
         else
         {
@@ -228,6 +364,23 @@ public class DataEntryReaderFactory
     }
 
 
+    /**
+     * Returns whether the given class path entry is an archive of any of the
+     * supported types.
+     */
+    private static boolean isArchive(ClassPathEntry classPathEntry)
+    {
+        return classPathEntry.isApk()  ||
+               classPathEntry.isAab()  ||
+               classPathEntry.isJar()  ||
+               classPathEntry.isAar()  ||
+               classPathEntry.isWar()  ||
+               classPathEntry.isEar()  ||
+               classPathEntry.isJmod() ||
+               classPathEntry.isZip();
+    }
+
+
     /**
      * Method to return an augmented filter for supported features.
      * <p>
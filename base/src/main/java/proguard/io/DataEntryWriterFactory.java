@@ -77,6 +77,7 @@ public class DataEntryWriterFactory
     private final boolean                    pageAlignNativeLibs;
     private final boolean                    mergeAarJars;
     private final KeyStore.PrivateKeyEntry[] privateKeyEntries;
+    private final ZipCompressionPolicy       compressionPolicy;
 
     private final Map<File,DataEntryWriter>                  jarWriterCache = new HashMap<>();
 
@@ -154,6 +155,54 @@ public class DataEntryWriterFactory
                                   boolean                                    mergeAarJars,
                                   KeyStore.PrivateKeyEntry[]                 privateKeyEntries,
                                   Function<DataEntryWriter, DataEntryWriter> alternativeClassDataEntryWriterProvider)
+    {
+        this(
+                programClassPool,
+                resourceFilePool,
+                modificationTime,
+                uncompressedFilter,
+                uncompressedAlignment,
+                pageAlignNativeLibs,
+                mergeAarJars,
+                privateKeyEntries,
+                alternativeClassDataEntryWriterProvider,
+                ZipCompressionPolicy.DEFAULT
+        );
+    }
+
+    /**
+     * Creates a new DataEntryWriterFactory.
+     *
+     * @param programClassPool          the program class pool to process.
+     * @param resourceFilePool          the resource file pool to process.
+     * @param modificationTime          the modification date and time of
+     *                                  the zip entries, in DOS
+     *                                  format.
+     * @param uncompressedFilter        an optional filter for files that
+     *                                  should not be compressed.
+     * @param uncompressedAlignment     the desired alignment for the data
+     *                                  of uncompressed entries.
+     * @param pageAlignNativeLibs       specifies whether to align native
+     *                                  libraries at page boundaries.
+     * @param mergeAarJars              specifies whether to merge all jars
+     *                                  in an Android app bundle into a
+     *                                  single jar.
+     * @param privateKeyEntries         optional private keys to sign jars.
+     * @param alternativeClassDataEntryWriterProvider optional, to provide an alternative class writer,
+     *                                                instead of the default {@link ClassDataEntryWriter}.
+     * @param compressionPolicy         the policy for compressing the
+     *                                  entries of the written archives.
+     */
+    public DataEntryWriterFactory(ClassPool                                  programClassPool,
+                                  ResourceFilePool                           resourceFilePool,
+                                  int                                        modificationTime,
+                                  StringMatcher                              uncompressedFilter,
+                                  int                                        uncompressedAlignment,
+                                  boolean                                    pageAlignNativeLibs,
+                                  boolean                                    mergeAarJars,
+                                  KeyStore.PrivateKeyEntry[]                 privateKeyEntries,
+                                  Function<DataEntryWriter, DataEntryWriter> alternativeClassDataEntryWriterProvider,
+                                  ZipCompressionPolicy                       compressionPolicy)
     {
         this.programClassPool                        = programClassPool;
         this.resourceFilePool                        = resourceFilePool;
@@ -164,6 +213,7 @@ public class DataEntryWriterFactory
         this.mergeAarJars                            = mergeAarJars;
         this.privateKeyEntries                       = privateKeyEntries;
         this.alternativeClassDataEntryWriterProvider = alternativeClassDataEntryWriterProvider;
+        this.compressionPolicy                       = compressionPolicy;
     }
 
     /**
@@ -210,6 +260,7 @@ public class DataEntryWriterFactory
         this.mergeAarJars                            = mergeAarJars;
         this.privateKeyEntries                       = privateKeyEntries;
         this.alternativeClassDataEntryWriterProvider = alternativeClassDataEntryWriterProvider;
+        this.compressionPolicy                       = ZipCompressionPolicy.DEFAULT;
     }
 
 
@@ -557,6 +608,7 @@ public class DataEntryWriterFactory
                           PAGE_ALIGNMENT,
                           modificationTime,
                           jarHeader,
+                          compressionPolicy,
                           writer);
 
         // Do we need to sign the jar?
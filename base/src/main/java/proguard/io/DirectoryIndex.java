@@ -0,0 +1,266 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * This class records the size, the modification time, and the content hash
+ * of the files in a directory tree, by the names of their data entries.
+ * <p/>
+ * A {@link ParallelDirectorySource} can fill out an index while reading a
+ * directory, and skip the files that are still unchanged according to the
+ * index of a previous run. The index can be written to a file and read
+ * again for that purpose.
+ * <p/>
+ * This class is not thread-safe.
+ *
+ * @see ParallelDirectorySource
+ */
+public class DirectoryIndex
+{
+    private static final int MAGIC   = 0x44494458;
+    private static final int VERSION = 1;
+
+
+    private final Map<String, FileInfo> fileInfos = new TreeMap<>();
+
+
+    /**
+     * Returns the information of the file with the given data entry name,
+     * or null if the index doesn't contain it.
+     */
+    public FileInfo getFileInfo(String name)
+    {
+        return fileInfos.get(name);
+    }
+
+
+    /**
+     * Sets the information of the file with the given data entry name.
+     */
+    public void putFileInfo(String name, FileInfo fileInfo)
+    {
+        fileInfos.put(name, fileInfo);
+    }
+
+
+    /**
+     * Returns whether the index contains the file with the given data entry
+     * name, with the given size and modification time.
+     */
+    public boolean isUnchanged(String name, long size, long modificationTime)
+    {
+        FileInfo fileInfo = fileInfos.get(name);
+
+        return fileInfo != null &&
+               fileInfo.size             == size &&
+               fileInfo.modificationTime == modificationTime;
+    }
+
+
+    /**
+     * Returns whether the index contains the file with the given data entry
+     * name, with the given size and content hash.
+     */
+    public boolean isUnchanged(String name, long size, byte[] hash)
+    {
+        FileInfo fileInfo = fileInfos.get(name);
+
+        return fileInfo != null &&
+               fileInfo.size == size &&
+               Arrays.equals(fileInfo.hash, hash);
+    }
+
+
+    /**
+     * Returns the data entry names of all files in the index, in sorted
+     * order.
+     */
+    public Set<String> getNames()
+    {
+        return Collections.unmodifiableSet(fileInfos.keySet());
+    }
+
+
+    /**
+     * Returns the number of files in the index.
+     */
+    public int size()
+    {
+        return fileInfos.size();
+    }
+
+
+    /**
+     * Reads an index from the given file.
+     * @param file the file that was written with {@link #write(File)}.
+     * @return the index.
+     * @throws IOException if the file can't be read or doesn't contain an
+     *                     index in the supported format.
+     */
+    public static DirectoryIndex read(File file) throws IOException
+    {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (input.readInt() != MAGIC ||
+                input.readInt() != VERSION)
+            {
+                throw new IOException("Unsupported directory index format ["+file+"]");
+            }
+
+            DirectoryIndex directoryIndex = new DirectoryIndex();
+
+            int count = input.readInt();
+            for (int index = 0; index < count; index++)
+            {
+                String name             = input.readUTF();
+                long   size             = input.readLong();
+                long   modificationTime = input.readLong();
+                byte[] hash             = new byte[input.readUnsignedShort()];
+                input.readFully(hash);
+
+                directoryIndex.putFileInfo(name, new FileInfo(size, modificationTime, hash));
+            }
+
+            return directoryIndex;
+        }
+    }
+
+
+    /**
+     * Writes this index to the given file. The file is only replaced once
+     * the index has been written completely.
+     */
+    public void write(File file) throws IOException
+    {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile))))
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(fileInfos.size());
+
+            for (Map.Entry<String, FileInfo> entry : fileInfos.entrySet())
+            {
+                FileInfo fileInfo = entry.getValue();
+
+                output.writeUTF(entry.getKey());
+                output.writeLong(fileInfo.size);
+                output.writeLong(fileInfo.modificationTime);
+                output.writeShort(fileInfo.hash.length);
+                output.write(fileInfo.hash);
+            }
+        }
+
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    // Implementations for Object.
+
+    @Override
+    public String toString()
+    {
+        return "DirectoryIndex ("+fileInfos.size()+" files)";
+    }
+
+
+    /**
+     * The size, modification time, and content hash of a file.
+     */
+    public static class FileInfo
+    {
+        private final long   size;
+        private final long   modificationTime;
+        private final byte[] hash;
+
+
+        /**
+         * Creates a new FileInfo.
+         * @param size             the size of the file, in bytes.
+         * @param modificationTime the modification time of the file, in
+         *                         milliseconds since the epoch.
+         * @param hash             the hash of the contents of the file.
+         */
+        public FileInfo(long size, long modificationTime, byte[] hash)
+        {
+            this.size             = size;
+            this.modificationTime = modificationTime;
+            this.hash             = hash;
+        }
+
+
+        public long getSize()
+        {
+            return size;
+        }
+
+
+        public long getModificationTime()
+        {
+            return modificationTime;
+        }
+
+
+        public byte[] getHash()
+        {
+            return hash.clone();
+        }
+
+
+        // Implementations for Object.
+
+        @Override
+        public boolean equals(Object object)
+        {
+            if (this == object)
+            {
+                return true;
+            }
+            if (object == null || getClass() != object.getClass())
+            {
+                return false;
+            }
+
+            FileInfo other = (FileInfo)object;
+            return size             == other.size             &&
+                   modificationTime == other.modificationTime &&
+                   Arrays.equals(hash, other.hash);
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(size) ^
+                   Long.hashCode(modificationTime) ^
+                   Arrays.hashCode(hash);
+        }
+
+
+        @Override
+        public String toString()
+        {
+            return "FileInfo (size = "+size+", modification time = "+modificationTime+")";
+        }
+    }
+}
@@ -19,18 +19,24 @@ package proguard.io;
 
 import java.io.IOException;
 import java.nio.charset.*;
-import java.util.Enumeration;
+import java.util.*;
 import java.util.zip.*;
 
 /**
  * This {@link DataEntryReader} lets a given {@link DataEntryReader} read all data entries of
  * the read archive data entries.
+ * <p/>
+ * Stored archives inside archives that are read with a {@link MappedZipSource}
+ * are read directly from the memory mapping of the enclosing archive, with
+ * random access. Optionally, the reader also maps archive files itself,
+ * instead of opening them as {@link ZipFile} instances.
  *
  * @author Eric Lafortune
  */
 public class JarReader implements DataEntryReader
 {
     private final boolean         jmod;
+    private final boolean         mapFiles;
     private final DataEntryReader dataEntryReader;
 
 
@@ -52,8 +58,28 @@ public class JarReader implements DataEntryReader
      */
     public JarReader(boolean         jmod,
                      DataEntryReader dataEntryReader)
+    {
+        this(jmod, false, dataEntryReader);
+    }
+
+
+    /**
+     * Creates a new JarReader that optionally reads jmod files and
+     * optionally maps archive files in memory.
+     * @param jmod            specifies whether the input jar is actually a
+     *                        jmod file.
+     * @param mapFiles        specifies whether to read archive files with a
+     *                        {@link MappedZipSource}. Archives that it
+     *                        doesn't support, like Zip64 archives, are still
+     *                        read as zip files.
+     * @param dataEntryReader the reader that can process the jar entries.
+     */
+    public JarReader(boolean         jmod,
+                     boolean         mapFiles,
+                     DataEntryReader dataEntryReader)
     {
         this.jmod            = jmod;
+        this.mapFiles        = mapFiles;
         this.dataEntryReader = dataEntryReader;
     }
 
@@ -63,12 +89,29 @@ public class JarReader implements DataEntryReader
     @Override
     public void read(DataEntry dataEntry) throws IOException
     {
+        // Can we parse the jar entries from the mapping of the enclosing
+        // archive? The source then skips any jmod header by itself.
+        if (dataEntry instanceof MappedZipDataEntry &&
+            ((MappedZipDataEntry)dataEntry).isStored() &&
+            readMapped(new MappedZipSource((MappedZipDataEntry)dataEntry)))
+        {
+            return;
+        }
+
         // Can we parse the jar entries more robustly from a file?
         if (dataEntry instanceof FileDataEntry)
         {
             // Read the data entry using its file.
             FileDataEntry fileDataEntry = (FileDataEntry)dataEntry;
 
+            // Can we parse the jar entries from a mapping of the file?
+            if (mapFiles &&
+                fileDataEntry.getFile().length() <= Integer.MAX_VALUE &&
+                readMapped(new MappedZipSource(fileDataEntry)))
+            {
+                return;
+            }
+
             ZipFile zipFile = new ZipFile(fileDataEntry.getFile(), StandardCharsets.UTF_8);
 
             try
@@ -126,4 +169,33 @@ public class JarReader implements DataEntryReader
             }
         }
     }
+
+
+    // Small utility methods.
+
+    /**
+     * Reads the entries from the given mapped source, returning whether the
+     * source supports the archive.
+     */
+    private boolean readMapped(MappedZipSource mappedZipSource) throws IOException
+    {
+        List<MappedZipDataEntry> entries;
+        try
+        {
+            entries = mappedZipSource.getEntries();
+        }
+        catch (IOException e)
+        {
+            // Leave the archive to the more lenient zip streams.
+            return false;
+        }
+
+        for (MappedZipDataEntry entry : entries)
+        {
+            // Delegate the actual reading to the data entry reader.
+            dataEntryReader.read(entry);
+        }
+
+        return true;
+    }
 }
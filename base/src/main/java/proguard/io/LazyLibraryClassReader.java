@@ -0,0 +1,195 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import proguard.classfile.*;
+import proguard.classfile.io.LibraryClassReader;
+import proguard.classfile.util.*;
+
+import java.io.*;
+
+/**
+ * This {@link DataEntryReader} adds the library classes that it reads to
+ * a {@link LazyClassPool}, without parsing them yet. Each class is only
+ * parsed as a {@link LibraryClass} when the class pool first accesses it.
+ * <p/>
+ * The reader only remembers the names of the classes and their data
+ * entries. It requires data entries that can be read again later, which are
+ * the entries of archives that are mapped in memory (see
+ * {@link DataEntryReaderFactory#DataEntryReaderFactory(boolean, boolean)})
+ * and files. It reads any other data entries, for instance the entries of
+ * archives that are read as streams, right away, like a {@link ClassReader}
+ * for library classes. The names of the classes are derived from the names
+ * of their entries, without the class file extension. Classes that turn out
+ * to be non-public, while non-public classes are skipped, or that turn out
+ * to have a different name, disappear from the class pool when they are
+ * parsed.
+ * <p/>
+ * This reader doesn't build Kotlin metadata models.
+ *
+ * @see LazyClassPool
+ * @see ClassReader
+ */
+public class LazyLibraryClassReader implements DataEntryReader
+{
+    private final LazyClassPool  classPool;
+    private final boolean        skipNonPublicLibraryClasses;
+    private final boolean        skipNonPublicLibraryClassMembers;
+    private final WarningPrinter warningPrinter;
+
+
+    /**
+     * Creates a new LazyLibraryClassReader.
+     * @param classPool                        the class pool to which the
+     *                                         classes are added.
+     * @param skipNonPublicLibraryClasses      specifies whether non-public
+     *                                         classes are skipped.
+     * @param skipNonPublicLibraryClassMembers specifies whether non-public
+     *                                         class members are skipped.
+     * @param warningPrinter                   an optional printer for
+     *                                         classes that can't be parsed
+     *                                         or have unexpected names.
+     */
+    public LazyLibraryClassReader(LazyClassPool  classPool,
+                                  boolean        skipNonPublicLibraryClasses,
+                                  boolean        skipNonPublicLibraryClassMembers,
+                                  WarningPrinter warningPrinter)
+    {
+        this.classPool                        = classPool;
+        this.skipNonPublicLibraryClasses      = skipNonPublicLibraryClasses;
+        this.skipNonPublicLibraryClassMembers = skipNonPublicLibraryClassMembers;
+        this.warningPrinter                   = warningPrinter;
+    }
+
+
+    // Implementations for DataEntryReader.
+
+    @Override
+    public void read(DataEntry dataEntry) throws IOException
+    {
+        String dataEntryName = dataEntry.getName();
+
+        if (isReadableAgain(dataEntry) &&
+            dataEntryName.endsWith(ClassConstants.CLASS_FILE_EXTENSION))
+        {
+            String className =
+                dataEntryName.substring(0, dataEntryName.length() - ClassConstants.CLASS_FILE_EXTENSION.length());
+
+            classPool.addLazyClass(className, () -> parse(dataEntry, className));
+        }
+        else
+        {
+            LibraryClass libraryClass = readClass(dataEntry);
+            if (libraryClass != null)
+            {
+                classPool.addClass(libraryClass);
+            }
+        }
+    }
+
+
+    // Small utility methods.
+
+    /**
+     * Parses the class with the given expected name from the given data
+     * entry, returning null if it isn't relevant or can't be parsed.
+     */
+    private LibraryClass parse(DataEntry dataEntry, String className)
+    {
+        try
+        {
+            LibraryClass libraryClass = readClass(dataEntry);
+            if (libraryClass == null)
+            {
+                return null;
+            }
+
+            if (!className.equals(libraryClass.getName()))
+            {
+                if (warningPrinter != null)
+                {
+                    warningPrinter.print(libraryClass.getName(),
+                                         "Warning: class [" + dataEntry.getName() + "] unexpectedly contains class [" + ClassUtil.externalClassName(libraryClass.getName()) + "]");
+                }
+
+                return null;
+            }
+
+            return libraryClass;
+        }
+        catch (IOException e)
+        {
+            if (warningPrinter != null)
+            {
+                warningPrinter.print(className,
+                                     "Warning: can't process class [" + dataEntry.getName() + "] (" + e.getMessage() + ")");
+            }
+
+            return null;
+        }
+    }
+
+
+    /**
+     * Reads the library class from the given data entry, returning null if
+     * it is skipped.
+     */
+    private LibraryClass readClass(DataEntry dataEntry) throws IOException
+    {
+        try
+        {
+            LibraryClass libraryClass = new LibraryClass();
+
+            libraryClass.accept(new LibraryClassReader(new DataInputStream(dataEntry.getInputStream()),
+                                                       skipNonPublicLibraryClasses,
+                                                       skipNonPublicLibraryClassMembers));
+
+            return libraryClass.getName() != null ?
+                libraryClass :
+                null;
+        }
+        catch (IOException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw (IOException)new IOException("Can't process class ["+dataEntry.getName()+"] ("+e.getMessage()+")").initCause(e);
+        }
+        finally
+        {
+            dataEntry.closeInputStream();
+        }
+    }
+
+
+    /**
+     * Returns whether the given data entry can still be read after the
+     * reader that passes it has finished.
+     */
+    private static boolean isReadableAgain(DataEntry dataEntry)
+    {
+        while (dataEntry instanceof WrappedDataEntry)
+        {
+            dataEntry = ((WrappedDataEntry)dataEntry).wrappedEntry;
+        }
+
+        return dataEntry instanceof MappedZipDataEntry ||
+               dataEntry instanceof FileDataEntry;
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.classfile.*;
+import proguard.classfile.visitor.ClassVisitor;
+import proguard.util.StringUtil;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+/**
+ * This class caches the {@link LibraryClass} instances that have been read
+ * from archives, in files in a given directory, so they can be loaded again
+ * in later runs without parsing the archives.
+ * <p/>
+ * The cache files are keyed by a hash of the contents of the archives and
+ * of a description of the configuration with which they were read, for
+ * instance whether non-public classes were skipped. They contain the
+ * essential data of the library classes: their access flags, names,
+ * super classes, interfaces, and the access flags, names, and descriptors
+ * of their fields and methods. Cache files are written completely before
+ * they replace any earlier versions, and they are loaded from memory
+ * mappings. The strings in a single cache file are stored once and shared
+ * by all classes that are loaded from it.
+ * <p/>
+ * The cache doesn't contain Kotlin metadata, so classes with Kotlin
+ * metadata can't be saved.
+ *
+ * @see LibraryClassCacheReader
+ */
+public class LibraryClassCache
+{
+    private static final Logger logger = LogManager.getLogger(LibraryClassCache.class);
+
+    private static final int    MAGIC          = 0x4c434c43;
+    private static final int    VERSION        = 1;
+    private static final String FILE_EXTENSION = ".classes";
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    // The minimum sizes of the elements in a cache file, in bytes.
+    private static final int REFERENCE_SIZE = 4;
+    private static final int STRING_SIZE    = 4;
+    private static final int MEMBER_SIZE    = 12;
+    private static final int CLASS_SIZE     = 24;
+
+    private static final String[]        EMPTY_INTERFACES = new String[0];
+    private static final LibraryField[]  EMPTY_FIELDS     = new LibraryField[0];
+    private static final LibraryMethod[] EMPTY_METHODS    = new LibraryMethod[0];
+
+
+    private final File directory;
+
+
+    /**
+     * Creates a new LibraryClassCache.
+     * @param directory the directory that contains the cache files. It is
+     *                  created when the first file is saved.
+     */
+    public LibraryClassCache(File directory)
+    {
+        this.directory = directory;
+    }
+
+
+    /**
+     * Returns the key of the classes that are read from the given archive
+     * with the given configuration.
+     * @param archive       the archive file.
+     * @param configuration a description of how the classes are read.
+     */
+    public String getKey(File archive, String configuration) throws IOException
+    {
+        MessageDigest messageDigest = createMessageDigest();
+
+        messageDigest.update(configuration.getBytes(StandardCharsets.UTF_8));
+        messageDigest.update((byte)0);
+
+        try (InputStream inputStream = new FileInputStream(archive))
+        {
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = inputStream.read(buffer)) >= 0)
+            {
+                messageDigest.update(buffer, 0, count);
+            }
+        }
+
+        return StringUtil.toHexString(messageDigest.digest(), null, false);
+    }
+
+
+    /**
+     * Returns whether the cache contains the classes with the given key.
+     */
+    public boolean contains(String key)
+    {
+        return getFile(key).isFile();
+    }
+
+
+    /**
+     * Loads the classes with the given key, if the cache contains them,
+     * and applies the given visitor to them, in the order in which they
+     * were saved.
+     * @param key          the key of the classes.
+     * @param classVisitor the visitor that receives the loaded classes.
+     * @return whether the classes have been loaded. If not, for instance
+     *         because the cache file is corrupt, the visitor hasn't visited
+     *         any classes.
+     */
+    public boolean load(String key, ClassVisitor classVisitor) throws IOException
+    {
+        File file = getFile(key);
+        if (!file.isFile())
+        {
+            return false;
+        }
+
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+
+        List<LibraryClass> classes;
+        try
+        {
+            classes = readClasses(buffer);
+        }
+        catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e)
+        {
+            classes = null;
+        }
+
+        if (classes == null)
+        {
+            logger.warn("Ignoring library class cache file {} with an unsupported format or corrupt contents", file);
+            return false;
+        }
+
+        for (LibraryClass libraryClass : classes)
+        {
+            libraryClass.accept(classVisitor);
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Saves the given classes with the given key, replacing any classes
+     * that the cache already contains with the same key.
+     * @param key     the key of the classes.
+     * @param classes the classes, without Kotlin metadata.
+     * @throws IllegalArgumentException if any of the classes has Kotlin
+     *                                  metadata.
+     */
+    public void save(String key, List<LibraryClass> classes) throws IOException
+    {
+        // Collect the strings, so we can store them once.
+        Map<String, Integer> stringIndices = new LinkedHashMap<>();
+        for (LibraryClass libraryClass : classes)
+        {
+            if (libraryClass.kotlinMetadata != null)
+            {
+                throw new IllegalArgumentException("Can't cache library class ["+libraryClass.getName()+"] with Kotlin metadata");
+            }
+
+            addString(stringIndices, libraryClass.thisClassName);
+            addString(stringIndices, libraryClass.superClassName);
+            addStrings(stringIndices, libraryClass.interfaceNames);
+
+            for (LibraryMember member : members(libraryClass))
+            {
+                addString(stringIndices, member.name);
+                addString(stringIndices, member.descriptor);
+            }
+        }
+
+        directory.mkdirs();
+
+        File file          = getFile(key);
+        File temporaryFile = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile))))
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+
+            output.writeInt(stringIndices.size());
+            for (String string : stringIndices.keySet())
+            {
+                byte[] bytes = StringUtil.getModifiedUtf8Bytes(string);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+
+            output.writeInt(classes.size());
+            for (LibraryClass libraryClass : classes)
+            {
+                output.writeInt(libraryClass.u2accessFlags);
+                writeString(output, stringIndices, libraryClass.thisClassName);
+                writeString(output, stringIndices, libraryClass.superClassName);
+
+                String[] interfaceNames = libraryClass.interfaceNames;
+                int interfaceCount = interfaceNames == null ? 0 : interfaceNames.length;
+                output.writeInt(interfaceCount);
+                for (int index = 0; index < interfaceCount; index++)
+                {
+                    writeString(output, stringIndices, interfaceNames[index]);
+                }
+
+                writeMembers(output, stringIndices, libraryClass.fields);
+                writeMembers(output, stringIndices, libraryClass.methods);
+            }
+        }
+
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    // Small utility methods.
+
+    /**
+     * Returns the cache file for the given key.
+     */
+    private File getFile(String key)
+    {
+        return new File(directory, key + FILE_EXTENSION);
+    }
+
+
+    /**
+     * Reads all classes from the given buffer, or returns null if it
+     * doesn't have the supported format.
+     * @throws IOException if the buffer contains an invalid count.
+     */
+    private static List<LibraryClass> readClasses(ByteBuffer buffer) throws IOException
+    {
+        if (buffer.getInt() != MAGIC ||
+            buffer.getInt() != VERSION)
+        {
+            return null;
+        }
+
+        String[] strings = new String[readCount(buffer, STRING_SIZE)];
+        for (int index = 0; index < strings.length; index++)
+        {
+            byte[] bytes = new byte[readCount(buffer, 1)];
+            buffer.get(bytes);
+            strings[index] = StringUtil.getString(bytes);
+        }
+
+        int classCount = readCount(buffer, CLASS_SIZE);
+        List<LibraryClass> classes = new ArrayList<>(classCount);
+        for (int classIndex = 0; classIndex < classCount; classIndex++)
+        {
+            LibraryClass libraryClass = new LibraryClass();
+
+            libraryClass.u2accessFlags  = buffer.getInt();
+            libraryClass.thisClassName  = readString(buffer, strings);
+            libraryClass.superClassName = readString(buffer, strings);
+
+            int interfaceCount = readCount(buffer, REFERENCE_SIZE);
+            libraryClass.interfaceNames = interfaceCount == 0 ? EMPTY_INTERFACES : new String[interfaceCount];
+            for (int index = 0; index < interfaceCount; index++)
+            {
+                libraryClass.interfaceNames[index] = readString(buffer, strings);
+            }
+
+            int fieldCount = readCount(buffer, MEMBER_SIZE);
+            libraryClass.fields = fieldCount == 0 ? EMPTY_FIELDS : new LibraryField[fieldCount];
+            for (int index = 0; index < fieldCount; index++)
+            {
+                libraryClass.fields[index] = new LibraryField(buffer.getInt(),
+                                                              readString(buffer, strings),
+                                                              readString(buffer, strings));
+            }
+
+            int methodCount = readCount(buffer, MEMBER_SIZE);
+            libraryClass.methods = methodCount == 0 ? EMPTY_METHODS : new LibraryMethod[methodCount];
+            for (int index = 0; index < methodCount; index++)
+            {
+                libraryClass.methods[index] = new LibraryMethod(buffer.getInt(),
+                                                                readString(buffer, strings),
+                                                                readString(buffer, strings));
+            }
+
+            classes.add(libraryClass);
+        }
+
+        return classes;
+    }
+
+
+    /**
+     * Reads a count of elements from the given buffer, making sure that the
+     * remaining data can contain that many elements before anything is
+     * allocated for them.
+     * @param buffer      the buffer.
+     * @param elementSize the minimum size of each element, in bytes.
+     * @throws IOException if the count is negative or too large.
+     */
+    private static int readCount(ByteBuffer buffer, int elementSize) throws IOException
+    {
+        int count = buffer.getInt();
+        if (count < 0 ||
+            count > buffer.remaining() / elementSize)
+        {
+            throw new IOException("Invalid count ["+count+"] in library class cache file");
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Reads a string reference from the given buffer.
+     */
+    private static String readString(ByteBuffer buffer, String[] strings)
+    {
+        int index = buffer.getInt();
+
+        return index < 0 ? null : strings[index];
+    }
+
+
+    /**
+     * Writes the fields or methods of a class.
+     */
+    private static void writeMembers(DataOutputStream     output,
+                                     Map<String, Integer> stringIndices,
+                                     LibraryMember[]      members)
+    throws IOException
+    {
+        int memberCount = members == null ? 0 : members.length;
+        output.writeInt(memberCount);
+        for (int index = 0; index < memberCount; index++)
+        {
+            LibraryMember member = members[index];
+            output.writeInt(member.u2accessFlags);
+            writeString(output, stringIndices, member.name);
+            writeString(output, stringIndices, member.descriptor);
+        }
+    }
+
+
+    /**
+     * Writes a reference to the given string, which may be null.
+     */
+    private static void writeString(DataOutputStream     output,
+                                    Map<String, Integer> stringIndices,
+                                    String               string)
+    throws IOException
+    {
+        output.writeInt(string == null ? -1 : stringIndices.get(string));
+    }
+
+
+    /**
+     * Adds the given strings to the given string indices.
+     */
+    private static void addStrings(Map<String, Integer> stringIndices,
+                                   String[]             strings)
+    {
+        if (strings != null)
+        {
+            for (String string : strings)
+            {
+                addString(stringIndices, string);
+            }
+        }
+    }
+
+
+    /**
+     * Adds the given string to the given string indices, unless it is null
+     * or already present.
+     */
+    private static void addString(Map<String, Integer> stringIndices,
+                                  String               string)
+    {
+        if (string != null)
+        {
+            stringIndices.putIfAbsent(string, stringIndices.size());
+        }
+    }
+
+
+    /**
+     * Returns the fields and methods of the given class.
+     */
+    private static List<LibraryMember> members(LibraryClass libraryClass)
+    {
+        List<LibraryMember> members = new ArrayList<>();
+        if (libraryClass.fields != null)
+        {
+            members.addAll(Arrays.asList(libraryClass.fields));
+        }
+        if (libraryClass.methods != null)
+        {
+            members.addAll(Arrays.asList(libraryClass.methods));
+        }
+        return members;
+    }
+
+
+    /**
+     * Creates a message digest for the cache keys.
+     */
+    private static MessageDigest createMessageDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform supports this algorithm.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import proguard.classfile.*;
+import proguard.classfile.visitor.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This {@link DataEntryReader} reads the library classes of the archive
+ * files that it reads from a {@link LibraryClassCache}, if possible.
+ * <p/>
+ * If the cache doesn't contain the classes of an archive yet, the reader
+ * reads the archive with a fresh {@link DataEntryReader} that is created
+ * with the given {@link ParallelJarReader.EntryReaderFactory}, which
+ * typically returns a chain with a {@link JarReader} and a {@link ClassReader}
+ * for library classes. It then saves the read classes in the cache, unless
+ * they aren't all library classes without Kotlin metadata. Data entries
+ * that aren't files, for instance nested archives, are always read with
+ * a fresh reader.
+ * <p/>
+ * In both cases, the given {@link ClassVisitor} receives the classes in the
+ * order in which the reader has read them.
+ *
+ * @see LibraryClassCache
+ * @see DataEntryReaderFactory#createCachingDataEntryReader
+ */
+public class LibraryClassCacheReader implements DataEntryReader
+{
+    private static final Logger logger = LogManager.getLogger(LibraryClassCacheReader.class);
+
+
+    private final LibraryClassCache                    libraryClassCache;
+    private final String                               configuration;
+    private final ParallelJarReader.EntryReaderFactory entryReaderFactory;
+    private final ClassVisitor                         classVisitor;
+
+
+    /**
+     * Creates a new LibraryClassCacheReader.
+     * @param libraryClassCache  the cache with the classes of archives.
+     * @param configuration      a description of the configuration of the
+     *                           created readers, for instance whether they
+     *                           skip non-public classes, which is part of
+     *                           the cache keys.
+     * @param entryReaderFactory the factory for the readers that can read
+     *                           the archives if the cache doesn't contain
+     *                           their classes yet.
+     * @param classVisitor       the visitor that receives all classes.
+     */
+    public LibraryClassCacheReader(LibraryClassCache                    libraryClassCache,
+                                   String                               configuration,
+                                   ParallelJarReader.EntryReaderFactory entryReaderFactory,
+                                   ClassVisitor                         classVisitor)
+    {
+        this.libraryClassCache  = libraryClassCache;
+        this.configuration      = configuration;
+        this.entryReaderFactory = entryReaderFactory;
+        this.classVisitor       = classVisitor;
+    }
+
+
+    // Implementations for DataEntryReader.
+
+    @Override
+    public void read(DataEntry dataEntry) throws IOException
+    {
+        // Can we compute a key from the archive file?
+        if (!(dataEntry instanceof FileDataEntry) ||
+            dataEntry.isDirectory())
+        {
+            entryReaderFactory.createEntryReader(classVisitor).read(dataEntry);
+            return;
+        }
+
+        String key = libraryClassCache.getKey(((FileDataEntry)dataEntry).getFile(),
+                                              configuration);
+
+        if (libraryClassCache.load(key, classVisitor))
+        {
+            return;
+        }
+
+        // Read the archive and collect its classes.
+        List<Clazz> classes = new ArrayList<>();
+
+        entryReaderFactory.createEntryReader(new ClassCollector(classes)).read(dataEntry);
+
+        List<LibraryClass> libraryClasses = new ArrayList<>(classes.size());
+        for (Clazz clazz : classes)
+        {
+            if (clazz instanceof LibraryClass &&
+                ((LibraryClass)clazz).kotlinMetadata == null)
+            {
+                libraryClasses.add((LibraryClass)clazz);
+            }
+        }
+
+        // Only save the classes if the cache can represent all of them.
+        if (libraryClasses.size() == classes.size())
+        {
+            try
+            {
+                libraryClassCache.save(key, libraryClasses);
+            }
+            catch (IOException e)
+            {
+                logger.warn("Can't save the library classes of [{}] in the cache ({})", dataEntry.getName(), e.getMessage());
+            }
+        }
+
+        for (Clazz clazz : classes)
+        {
+            clazz.accept(classVisitor);
+        }
+    }
+}
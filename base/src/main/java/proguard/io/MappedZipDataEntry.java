@@ -0,0 +1,334 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import proguard.classfile.TypeConstants;
+
+import java.io.*;
+import java.nio.*;
+import java.util.zip.*;
+
+/**
+ * This {@link DataEntry} represents an entry of a memory-mapped zip archive,
+ * as provided by a {@link MappedZipSource}. It only accesses the mapping
+ * when its data are requested. The data of stored entries are accessed
+ * without copying.
+ *
+ * @see MappedZipSource
+ */
+public class MappedZipDataEntry implements DataEntry
+{
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE      = 30;
+
+
+    private final DataEntry  parent;
+    private final ByteBuffer archive;
+    private final String     name;
+    private final int        method;
+    private final int        crc;
+    private final int        compressedSize;
+    private final int        uncompressedSize;
+    private final int        localHeaderOffset;
+
+    private InputStream inputStream;
+
+
+    /**
+     * Creates a new MappedZipDataEntry.
+     * @param parent            the data entry of the enclosing archive.
+     * @param archive           the little-endian contents of the enclosing
+     *                          archive.
+     * @param name              the name of the entry.
+     * @param method            the compression method of the entry.
+     * @param crc               the CRC-32 checksum of the uncompressed data.
+     * @param compressedSize    the size of the compressed data.
+     * @param uncompressedSize  the size of the uncompressed data.
+     * @param localHeaderOffset the offset of the local header of the entry
+     *                          in the archive.
+     */
+    public MappedZipDataEntry(DataEntry  parent,
+                              ByteBuffer archive,
+                              String     name,
+                              int        method,
+                              int        crc,
+                              int        compressedSize,
+                              int        uncompressedSize,
+                              int        localHeaderOffset)
+    {
+        this.parent            = parent;
+        this.archive           = archive;
+        this.name              = name;
+        this.method            = method;
+        this.crc               = crc;
+        this.compressedSize    = compressedSize;
+        this.uncompressedSize  = uncompressedSize;
+        this.localHeaderOffset = localHeaderOffset;
+    }
+
+
+    /**
+     * Returns whether the entry is stored without compression.
+     */
+    public boolean isStored()
+    {
+        return method == ZipEntry.STORED;
+    }
+
+
+    /**
+     * Returns the compression method of the entry.
+     * @see ZipEntry#STORED
+     * @see ZipEntry#DEFLATED
+     */
+    public int getMethod()
+    {
+        return method;
+    }
+
+
+    /**
+     * Returns the CRC-32 checksum of the uncompressed data of the entry.
+     */
+    public long getCrc()
+    {
+        return crc & 0xffffffffL;
+    }
+
+
+    /**
+     * Returns the size of the compressed data of the entry.
+     */
+    public long getCompressedSize()
+    {
+        return compressedSize & 0xffffffffL;
+    }
+
+
+    /**
+     * Returns the size of the uncompressed data of the entry.
+     */
+    public long getUncompressedSize()
+    {
+        return uncompressedSize & 0xffffffffL;
+    }
+
+
+    /**
+     * Returns a read-only view on the compressed data of the entry, without
+     * copying. For stored entries, these are the uncompressed data.
+     */
+    public ByteBuffer getCompressedData() throws IOException
+    {
+        if (localHeaderOffset < 0 ||
+            localHeaderOffset + LOCAL_HEADER_SIZE > archive.limit() ||
+            archive.getInt(localHeaderOffset) != LOCAL_HEADER_SIGNATURE)
+        {
+            throw new IOException("Invalid local header for entry ["+this+"]");
+        }
+
+        // The local header may have a different extra field than the
+        // central directory.
+        int nameLength  = archive.getShort(localHeaderOffset + 26) & 0xffff;
+        int extraLength = archive.getShort(localHeaderOffset + 28) & 0xffff;
+        int dataOffset  = localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+
+        // Compute the end as a long, since sizes of 2 GB and more would
+        // overflow an int.
+        long dataEnd = dataOffset + getCompressedSize();
+        if (dataEnd > archive.limit())
+        {
+            throw new IOException("Truncated data for entry ["+this+"]");
+        }
+
+        ByteBuffer data = archive.asReadOnlyBuffer();
+        data.limit((int)dataEnd);
+        data.position(dataOffset);
+
+        return data.slice();
+    }
+
+
+    // Implementations for DataEntry.
+
+    @Override
+    public String getName()
+    {
+        // Get the right separators.
+        String name = this.name
+            .replace(File.separatorChar, TypeConstants.PACKAGE_SEPARATOR);
+
+        // Chop the trailing directory slash, if any.
+        int length = name.length();
+        return length > 0 &&
+               name.charAt(length-1) == TypeConstants.PACKAGE_SEPARATOR ?
+                   name.substring(0, length -1) :
+                   name;
+    }
+
+
+    @Override
+    public String getOriginalName()
+    {
+        return getName();
+    }
+
+
+    @Override
+    public long getSize()
+    {
+        // Try to get some estimate of the size.
+        return Math.max(getUncompressedSize(), getCompressedSize());
+    }
+
+
+    @Override
+    public boolean isDirectory()
+    {
+        return name.endsWith("/");
+    }
+
+
+    @Override
+    public InputStream getInputStream() throws IOException
+    {
+        if (inputStream == null)
+        {
+            InputStream dataInputStream = new ByteBufferInputStream(getCompressedData());
+
+            switch (method)
+            {
+                case ZipEntry.STORED:
+                    inputStream = dataInputStream;
+                    break;
+
+                case ZipEntry.DEFLATED:
+                    inputStream = new InflaterInputStream(dataInputStream,
+                                                          new Inflater(true),
+                                                          (int)Math.max(1L, Math.min(getCompressedSize(), 8192L)))
+                    {
+                        @Override
+                        public void close() throws IOException
+                        {
+                            super.close();
+
+                            // Release the native memory of our own inflater.
+                            inf.end();
+                        }
+                    };
+                    break;
+
+                default:
+                    throw new IOException("Unsupported compression method ["+method+"] for entry ["+this+"]");
+            }
+        }
+
+        return inputStream;
+    }
+
+
+    @Override
+    public void closeInputStream() throws IOException
+    {
+        if (inputStream != null)
+        {
+            inputStream.close();
+            inputStream = null;
+        }
+    }
+
+
+    @Override
+    public DataEntry getParent()
+    {
+        return parent;
+    }
+
+
+    // Implementations for Object.
+
+    @Override
+    public String toString()
+    {
+        return parent.toString() + ':' + getName();
+    }
+
+
+    /**
+     * This InputStream reads the remaining bytes of a byte buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+
+        public ByteBufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+
+        // Implementations for InputStream.
+
+        @Override
+        public int read()
+        {
+            return buffer.hasRemaining() ?
+                buffer.get() & 0xff :
+                -1;
+        }
+
+
+        @Override
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+
+            int remaining = buffer.remaining();
+            if (remaining == 0)
+            {
+                return -1;
+            }
+
+            int count = Math.min(length, remaining);
+            buffer.get(bytes, offset, count);
+
+            return count;
+        }
+
+
+        @Override
+        public long skip(long count)
+        {
+            int skipped = (int)Math.min(Math.max(count, 0L), buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+
+            return skipped;
+        }
+
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * This {@link DataEntrySource} provides the entries of a zip archive (jar,
+ * apk, jmod,...), based on a memory mapping of the archive.
+ * <p/>
+ * The source parses the central directory of the archive once, up front,
+ * and then provides {@link MappedZipDataEntry} instances that only access
+ * their data when their input streams are requested. Readers that filter
+ * entries by name, like a {@link FilteredDataEntryReader} with a
+ * {@link DataEntryNameFilter}, therefore skip entries without touching their
+ * contents. Stored entries are provided without copying. Stored archives
+ * inside the archive can be read in the same way, with random access, by
+ * slicing the mapping of the enclosing archive; the {@link JarReader} does
+ * so automatically.
+ * <p/>
+ * The source only supports archives smaller than 2 GB, without Zip64
+ * extensions. It rejects archives whose entries don't fit inside them with
+ * an IOException, so the {@link JarReader} can fall back to reading them
+ * with zip streams. Any bytes preceding the archive proper, like the header
+ * of a jmod file, are skipped automatically.
+ * <p/>
+ * The mapping of an archive file is not released explicitly, since Java
+ * doesn't provide a supported way to unmap buffers: it is only released
+ * when the source, its entries, and any buffers obtained from them have
+ * been garbage collected. Until then, the mapping takes up address space
+ * and, on Windows, the archive file can't be deleted or overwritten. Callers
+ * should therefore not hold on to the entries after processing them.
+ *
+ * @see MappedZipDataEntry
+ */
+public class MappedZipSource implements DataEntrySource
+{
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE        = 0x02014b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_DIRECTORY_ENTRY_SIZE  = 46;
+    private static final int MAX_COMMENT_SIZE              = 0xffff;
+
+    private static final int ZIP64_MAGIC_U2 = 0xffff;
+    private static final int ZIP64_MAGIC_U4 = 0xffffffff;
+
+
+    private final DataEntry  parent;
+    private final ByteBuffer buffer;
+
+
+    /**
+     * Creates a new MappedZipSource for the given archive file.
+     */
+    public MappedZipSource(File file) throws IOException
+    {
+        this(new FileDataEntry(file), map(file));
+    }
+
+
+    /**
+     * Creates a new MappedZipSource for the given archive file entry.
+     */
+    public MappedZipSource(FileDataEntry fileDataEntry) throws IOException
+    {
+        this(fileDataEntry, map(fileDataEntry.getFile()));
+    }
+
+
+    /**
+     * Creates a new MappedZipSource for the given stored archive entry of
+     * a mapped archive, sharing the mapping of the enclosing archive.
+     */
+    public MappedZipSource(MappedZipDataEntry mappedZipDataEntry) throws IOException
+    {
+        this(mappedZipDataEntry, storedData(mappedZipDataEntry));
+    }
+
+
+    /**
+     * Creates a new MappedZipSource for the archive in the given buffer.
+     * @param parent the data entry that represents the archive itself.
+     * @param buffer the contents of the archive, between the position and
+     *               the limit of the buffer.
+     */
+    public MappedZipSource(DataEntry  parent,
+                           ByteBuffer buffer)
+    {
+        this.parent = parent;
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+
+    /**
+     * Returns the entries of the archive, in the order of its central
+     * directory.
+     */
+    public List<MappedZipDataEntry> getEntries() throws IOException
+    {
+        int endOffset = findEndOfCentralDirectory();
+
+        int entryCount      = u2(endOffset + 10);
+        int directorySize   = buffer.getInt(endOffset + 12);
+        int directoryOffset = buffer.getInt(endOffset + 16);
+
+        if (entryCount      == ZIP64_MAGIC_U2 ||
+            directorySize   == ZIP64_MAGIC_U4 ||
+            directoryOffset == ZIP64_MAGIC_U4)
+        {
+            throw new IOException("Zip64 archives are not supported ["+parent.getName()+"]");
+        }
+
+        // The recorded offsets are relative to the start of the archive
+        // proper, which may be preceded by other data, like a jmod header.
+        int archiveOffset = endOffset - directorySize - directoryOffset;
+        if (archiveOffset < 0 || directorySize < 0 || directoryOffset < 0)
+        {
+            throw new IOException("Invalid central directory in archive ["+parent.getName()+"]");
+        }
+
+        List<MappedZipDataEntry> entries = new ArrayList<>(entryCount);
+
+        int offset = archiveOffset + directoryOffset;
+        for (int index = 0; index < entryCount; index++)
+        {
+            if (offset + CENTRAL_DIRECTORY_ENTRY_SIZE > endOffset ||
+                buffer.getInt(offset) != CENTRAL_DIRECTORY_SIGNATURE)
+            {
+                throw new IOException("Invalid central directory entry in archive ["+parent.getName()+"]");
+            }
+
+            int method             = u2(offset + 10);
+            int crc                = buffer.getInt(offset + 16);
+            int compressedSize     = buffer.getInt(offset + 20);
+            int uncompressedSize   = buffer.getInt(offset + 24);
+            int nameLength         = u2(offset + 28);
+            int extraLength        = u2(offset + 30);
+            int commentLength      = u2(offset + 32);
+            int localHeaderOffset  = buffer.getInt(offset + 42);
+
+            if (compressedSize    == ZIP64_MAGIC_U4 ||
+                uncompressedSize  == ZIP64_MAGIC_U4 ||
+                localHeaderOffset == ZIP64_MAGIC_U4)
+            {
+                throw new IOException("Zip64 entries are not supported ["+parent.getName()+"]");
+            }
+
+            // Make sure the data can be addressed within the mapping, also
+            // for sizes and offsets that don't fit in a signed int.
+            long dataEnd = (long)archiveOffset +
+                           (localHeaderOffset & 0xffffffffL) +
+                           (compressedSize    & 0xffffffffL);
+            if (dataEnd > endOffset)
+            {
+                throw new IOException("Invalid size or offset of entry in archive ["+parent.getName()+"]");
+            }
+
+            String name = string(offset + CENTRAL_DIRECTORY_ENTRY_SIZE, nameLength);
+
+            entries.add(new MappedZipDataEntry(parent,
+                                               buffer,
+                                               name,
+                                               method,
+                                               crc,
+                                               compressedSize,
+                                               uncompressedSize,
+                                               archiveOffset + localHeaderOffset));
+
+            offset += CENTRAL_DIRECTORY_ENTRY_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return entries;
+    }
+
+
+    // Implementations for DataEntrySource.
+
+    @Override
+    public void pumpDataEntries(DataEntryReader dataEntryReader)
+    throws IOException
+    {
+        for (MappedZipDataEntry entry : getEntries())
+        {
+            dataEntryReader.read(entry);
+        }
+    }
+
+
+    // Small utility methods.
+
+    /**
+     * Maps the given file in memory.
+     */
+    private static ByteBuffer map(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IOException("Archives larger than 2 GB are not supported ["+file+"]");
+            }
+
+            // The mapping remains valid after closing the channel.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+        }
+    }
+
+
+    /**
+     * Returns the data of the given stored archive entry.
+     */
+    private static ByteBuffer storedData(MappedZipDataEntry mappedZipDataEntry) throws IOException
+    {
+        if (!mappedZipDataEntry.isStored())
+        {
+            throw new IOException("Can't map compressed archive entry ["+mappedZipDataEntry.getName()+"]");
+        }
+
+        return mappedZipDataEntry.getCompressedData();
+    }
+
+
+    /**
+     * Returns the offset of the end of central directory record, searching
+     * backward over a possible archive comment.
+     */
+    private int findEndOfCentralDirectory() throws IOException
+    {
+        int limit   = buffer.limit();
+        int minimum = Math.max(0, limit - END_OF_CENTRAL_DIRECTORY_SIZE - MAX_COMMENT_SIZE);
+
+        for (int offset = limit - END_OF_CENTRAL_DIRECTORY_SIZE; offset >= minimum; offset--)
+        {
+            if (buffer.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE &&
+                offset + END_OF_CENTRAL_DIRECTORY_SIZE + u2(offset + 20) == limit)
+            {
+                return offset;
+            }
+        }
+
+        throw new IOException("Can't find the central directory of archive ["+parent.getName()+"]");
+    }
+
+
+    private int u2(int offset)
+    {
+        return buffer.getShort(offset) & 0xffff;
+    }
+
+
+    private String string(int offset, int length)
+    {
+        byte[] bytes = new byte[length];
+
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,578 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This DataEntrySource can read a given file or directory, recursively,
+ * like a {@link DirectorySource}, but it reads the contents of the files
+ * in parallel, on the threads of a given executor service.
+ * <p/>
+ * The directory tree is walked first, collecting the names, sizes, and
+ * modification times of all files. The files are then read into memory on
+ * the worker threads and handed to the given {@link DataEntryReader} on the
+ * calling thread, sorted by their names, with each directory before its
+ * contents. The data entry reader therefore doesn't need to be thread-safe.
+ * Files that are larger than a given size are not read into memory, but
+ * passed as plain {@link FileDataEntry} instances, so readers can still
+ * open archives as zip files, for instance.
+ * <p/>
+ * The source can optionally fill out a {@link DirectoryIndex} with the
+ * sizes, modification times, and content hashes of the files. Given the
+ * index of a previous run, it then skips the files that are unchanged:
+ * files with the same size and modification time, or with the same size
+ * and content hash. It passes those files to a separate data entry reader
+ * instead, if any, for instance to retrieve their results from a cache.
+ *
+ * @see DirectorySource
+ * @see DirectoryIndex
+ */
+public class ParallelDirectorySource implements DataEntrySource
+{
+    private static final int    DEFAULT_MAX_PENDING_FILES      = 256;
+    private static final int    DEFAULT_MAX_BUFFERED_FILE_SIZE = 1024 * 1024;
+    private static final String HASH_ALGORITHM                 = "SHA-256";
+
+
+    private final File            directory;
+    private final ExecutorService executorService;
+    private final DirectoryIndex  previousIndex;
+    private final DirectoryIndex  index;
+    private final DataEntryReader unchangedFileReader;
+    private final int             maxPendingFiles;
+    private final int             maxBufferedFileSize;
+
+
+    /**
+     * Creates a new ParallelDirectorySource for the given directory.
+     * @param directory       the directory or file to read.
+     * @param executorService the executor service that reads the files.
+     */
+    public ParallelDirectorySource(File            directory,
+                                   ExecutorService executorService)
+    {
+        this(directory,
+             executorService,
+             null,
+             null,
+             null);
+    }
+
+
+    /**
+     * Creates a new ParallelDirectorySource for the given directory that
+     * optionally skips unchanged files and records an index.
+     * @param directory           the directory or file to read.
+     * @param executorService     the executor service that reads the files.
+     * @param previousIndex       an optional index of a previous run,
+     *                            specifying which files are unchanged.
+     * @param index               an optional index that is filled out with
+     *                            the information of all read files.
+     * @param unchangedFileReader an optional reader for the files that are
+     *                            unchanged according to the previous index.
+     */
+    public ParallelDirectorySource(File            directory,
+                                   ExecutorService executorService,
+                                   DirectoryIndex  previousIndex,
+                                   DirectoryIndex  index,
+                                   DataEntryReader unchangedFileReader)
+    {
+        this(directory,
+             executorService,
+             previousIndex,
+             index,
+             unchangedFileReader,
+             DEFAULT_MAX_PENDING_FILES,
+             DEFAULT_MAX_BUFFERED_FILE_SIZE);
+    }
+
+
+    /**
+     * Creates a new ParallelDirectorySource for the given directory that
+     * optionally skips unchanged files and records an index.
+     * @param directory           the directory or file to read.
+     * @param executorService     the executor service that reads the files.
+     * @param previousIndex       an optional index of a previous run,
+     *                            specifying which files are unchanged.
+     * @param index               an optional index that is filled out with
+     *                            the information of all read files.
+     * @param unchangedFileReader an optional reader for the files that are
+     *                            unchanged according to the previous index.
+     * @param maxPendingFiles     the maximum number of files that are being
+     *                            read or waiting to be handed to the data
+     *                            entry reader at any time.
+     * @param maxBufferedFileSize the maximum size of the files that are
+     *                            read into memory on the worker threads.
+     */
+    public ParallelDirectorySource(File            directory,
+                                   ExecutorService executorService,
+                                   DirectoryIndex  previousIndex,
+                                   DirectoryIndex  index,
+                                   DataEntryReader unchangedFileReader,
+                                   int             maxPendingFiles,
+                                   int             maxBufferedFileSize)
+    {
+        if (maxPendingFiles < 1)
+        {
+            throw new IllegalArgumentException("The maximum number of pending files must be positive ["+maxPendingFiles+"]");
+        }
+
+        this.directory           = directory;
+        this.executorService     = executorService;
+        this.previousIndex       = previousIndex;
+        this.index               = index;
+        this.unchangedFileReader = unchangedFileReader;
+        this.maxPendingFiles     = maxPendingFiles;
+        this.maxBufferedFileSize = maxBufferedFileSize;
+    }
+
+
+    // Implementations for DataEntrySource.
+
+    @Override
+    public void pumpDataEntries(DataEntryReader dataEntryReader)
+    throws IOException
+    {
+        if (!directory.exists())
+        {
+            throw new IOException("No such file or directory: " + directory);
+        }
+
+        List<WalkedFile> walkedFiles = walk();
+
+        Deque<PendingFile> pendingFiles = new ArrayDeque<>();
+
+        try
+        {
+            for (WalkedFile walkedFile : walkedFiles)
+            {
+                while (pendingFiles.size() >= maxPendingFiles)
+                {
+                    deliver(pendingFiles.removeFirst(), dataEntryReader);
+                }
+
+                pendingFiles.addLast(submit(walkedFile));
+            }
+
+            while (!pendingFiles.isEmpty())
+            {
+                deliver(pendingFiles.removeFirst(), dataEntryReader);
+            }
+        }
+        finally
+        {
+            // Make sure no worker is still reading a file.
+            cancelAll(pendingFiles);
+        }
+    }
+
+
+    // Small utility methods.
+
+    /**
+     * Walks the directory tree, returning all directories and files, sorted
+     * by their names.
+     */
+    private List<WalkedFile> walk() throws IOException
+    {
+        List<WalkedFile> walkedFiles = new ArrayList<>();
+
+        Files.walkFileTree(directory.toPath(),
+                           EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                           Integer.MAX_VALUE,
+                           new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path                path,
+                                                     BasicFileAttributes attributes)
+            {
+                walkedFiles.add(new WalkedFile(createDataEntry(path), true, 0L, 0L));
+
+                return FileVisitResult.CONTINUE;
+            }
+
+
+            @Override
+            public FileVisitResult visitFile(Path                path,
+                                             BasicFileAttributes attributes)
+            {
+                walkedFiles.add(new WalkedFile(createDataEntry(path),
+                                               attributes.isDirectory(),
+                                               attributes.size(),
+                                               attributes.lastModifiedTime().toMillis()));
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // The root sorts first, since it has the shortest path.
+        walkedFiles.sort((walkedFile1, walkedFile2) ->
+            walkedFile1.isRoot == walkedFile2.isRoot ? walkedFile1.name.compareTo(walkedFile2.name) :
+            walkedFile1.isRoot                       ? -1 :
+                                                        1);
+
+        return walkedFiles;
+    }
+
+
+    /**
+     * Creates a data entry for the given path in the directory tree.
+     */
+    private FileDataEntry createDataEntry(Path path)
+    {
+        return new FileDataEntry(directory, path.toFile());
+    }
+
+
+    /**
+     * Starts reading the given file, unless it is a directory or it is
+     * unchanged according to its size and modification time.
+     */
+    private PendingFile submit(WalkedFile walkedFile)
+    {
+        if (walkedFile.isDirectory)
+        {
+            return new PendingFile(walkedFile, null, false);
+        }
+
+        if (previousIndex != null &&
+            previousIndex.isUnchanged(walkedFile.name,
+                                      walkedFile.size,
+                                      walkedFile.modificationTime))
+        {
+            return new PendingFile(walkedFile, null, true);
+        }
+
+        return new PendingFile(walkedFile,
+                               ParallelTask.submit(executorService, () -> readFile(walkedFile)),
+                               false);
+    }
+
+
+    /**
+     * Reads the contents of the given file, if it is small enough, and
+     * computes its hash, if necessary.
+     */
+    private ReadFile readFile(WalkedFile walkedFile) throws IOException
+    {
+        FileDataEntry dataEntry = walkedFile.dataEntry;
+        File          file      = dataEntry.getFile();
+
+        boolean hashed = previousIndex != null || index != null;
+
+        if (walkedFile.size <= maxBufferedFileSize)
+        {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+
+            return new ReadFile(new BufferedFileDataEntry(directory, file, bytes),
+                                hashed ? createMessageDigest().digest(bytes) : null);
+        }
+
+        return new ReadFile(dataEntry,
+                            hashed ? hash(file) : null);
+    }
+
+
+    /**
+     * Hands the given pending file to the data entry reader or to the
+     * reader for unchanged files, recording it in the index.
+     */
+    private void deliver(PendingFile     pendingFile,
+                         DataEntryReader dataEntryReader)
+    throws IOException
+    {
+        WalkedFile walkedFile = pendingFile.walkedFile;
+        String     name       = walkedFile.name;
+
+        try
+        {
+            if (walkedFile.isDirectory)
+            {
+                dataEntryReader.read(walkedFile.dataEntry);
+            }
+            else if (pendingFile.unchanged)
+            {
+                // Copy the information from the previous index.
+                if (index != null)
+                {
+                    index.putFileInfo(name, previousIndex.getFileInfo(name));
+                }
+
+                if (unchangedFileReader != null)
+                {
+                    unchangedFileReader.read(walkedFile.dataEntry);
+                }
+            }
+            else
+            {
+                ReadFile readFile = getReadFile(pendingFile.task);
+
+                if (index != null)
+                {
+                    index.putFileInfo(name, new DirectoryIndex.FileInfo(walkedFile.size,
+                                                                        walkedFile.modificationTime,
+                                                                        readFile.hash));
+                }
+
+                // Is the file unchanged after all, despite its modification
+                // time?
+                if (previousIndex != null &&
+                    previousIndex.isUnchanged(name, walkedFile.size, readFile.hash))
+                {
+                    if (unchangedFileReader != null)
+                    {
+                        unchangedFileReader.read(readFile.dataEntry);
+                    }
+                }
+                else
+                {
+                    dataEntryReader.read(readFile.dataEntry);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IOException("Can't read ["+name+"] ("+e.getMessage()+")", e);
+        }
+    }
+
+
+    /**
+     * Waits for the given file to be read.
+     */
+    private ReadFile getReadFile(ParallelTask<ReadFile> task) throws IOException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw (IOException)new InterruptedIOException("Interrupted while reading files in parallel").initCause(e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+
+    /**
+     * Cancels all given pending files and waits until none of them is
+     * being read anymore, ignoring their results.
+     */
+    private void cancelAll(Deque<PendingFile> pendingFiles)
+    {
+        List<ParallelTask<ReadFile>> tasks = new ArrayList<>(pendingFiles.size());
+        for (PendingFile pendingFile : pendingFiles)
+        {
+            if (pendingFile.task != null)
+            {
+                tasks.add(pendingFile.task);
+            }
+        }
+
+        ParallelTask.cancelAll(tasks);
+
+        pendingFiles.clear();
+    }
+
+
+    /**
+     * Computes the hash of the contents of the given file, without reading
+     * it into memory completely.
+     */
+    private static byte[] hash(File file) throws IOException
+    {
+        MessageDigest messageDigest = createMessageDigest();
+
+        try (InputStream inputStream = new FileInputStream(file))
+        {
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = inputStream.read(buffer)) >= 0)
+            {
+                messageDigest.update(buffer, 0, count);
+            }
+        }
+
+        return messageDigest.digest();
+    }
+
+
+    /**
+     * Creates a message digest for the content hashes.
+     */
+    private static MessageDigest createMessageDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform supports this algorithm.
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * A directory or file that has been found while walking the directory
+     * tree.
+     */
+    private class WalkedFile
+    {
+        private final FileDataEntry dataEntry;
+        private final String        name;
+        private final boolean       isRoot;
+        private final boolean       isDirectory;
+        private final long          size;
+        private final long          modificationTime;
+
+
+        public WalkedFile(FileDataEntry dataEntry,
+                          boolean       isDirectory,
+                          long          size,
+                          long          modificationTime)
+        {
+            this.dataEntry        = dataEntry;
+            this.name             = dataEntry.getName();
+            this.isRoot           = dataEntry.getFile().equals(directory);
+            this.isDirectory      = isDirectory;
+            this.size             = size;
+            this.modificationTime = modificationTime;
+        }
+    }
+
+
+    /**
+     * A directory or file that is waiting to be handed to a data entry
+     * reader, with the task that reads it, if any.
+     */
+    private static class PendingFile
+    {
+        private final WalkedFile             walkedFile;
+        private final ParallelTask<ReadFile> task;
+        private final boolean                unchanged;
+
+
+        public PendingFile(WalkedFile             walkedFile,
+                           ParallelTask<ReadFile> task,
+                           boolean                unchanged)
+        {
+            this.walkedFile = walkedFile;
+            this.task       = task;
+            this.unchanged  = unchanged;
+        }
+    }
+
+
+    /**
+     * The result of reading a file on a worker thread.
+     */
+    private static class ReadFile
+    {
+        private final FileDataEntry dataEntry;
+        private final byte[]        hash;
+
+
+        public ReadFile(FileDataEntry dataEntry,
+                        byte[]        hash)
+        {
+            this.dataEntry = dataEntry;
+            this.hash      = hash;
+        }
+    }
+
+
+    /**
+     * This {@link FileDataEntry} represents a file whose contents have
+     * already been read into memory.
+     */
+    private static class BufferedFileDataEntry extends FileDataEntry
+    {
+        private final byte[]      bytes;
+        private       InputStream inputStream;
+
+
+        public BufferedFileDataEntry(File   directory,
+                                     File   file,
+                                     byte[] bytes)
+        {
+            super(directory, file);
+
+            this.bytes = bytes;
+        }
+
+
+        // Implementations for DataEntry.
+
+        @Override
+        public long getSize()
+        {
+            return bytes.length;
+        }
+
+
+        @Override
+        public boolean isDirectory()
+        {
+            return false;
+        }
+
+
+        @Override
+        public InputStream getInputStream()
+        {
+            if (inputStream == null)
+            {
+                inputStream = new ByteArrayInputStream(bytes);
+            }
+
+            return inputStream;
+        }
+
+
+        @Override
+        public void closeInputStream()
+        {
+            inputStream = null;
+        }
+    }
+}
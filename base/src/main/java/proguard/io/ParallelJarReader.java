@@ -0,0 +1,447 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import proguard.classfile.*;
+import proguard.classfile.visitor.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * This {@link DataEntryReader} reads all data entries of the read archive
+ * data entries in parallel, on the threads of a given executor service.
+ * <p/>
+ * For every archive entry, a fresh {@link DataEntryReader} is created with
+ * the given {@link EntryReaderFactory}, which typically returns a chain
+ * ending in a {@link ClassReader}. The entries of archives on disk are
+ * inflated and parsed on the worker threads. The entries of archives that
+ * are only available as streams (for instance nested archives) are inflated
+ * sequentially, since their streams don't support random access, but they
+ * are still parsed on the worker threads.
+ * <p/>
+ * The classes that the entry readers produce are collected per entry and
+ * then handed to the given {@link ClassVisitor} on the calling thread, in
+ * the order of the entries in the archive. The class visitor therefore
+ * doesn't need to be thread-safe, and, for instance, a {@link ClassPoolFiller}
+ * ends up with exactly the same contents as when reading the archive with a
+ * {@link JarReader}, regardless of the scheduling of the worker threads.
+ * Any other side effects of the entry readers, for instance of resource
+ * readers, happen on the worker threads and must be thread-safe.
+ *
+ * @see JarReader
+ */
+public class ParallelJarReader implements DataEntryReader
+{
+    private static final int DEFAULT_MAX_PENDING_ENTRIES = 256;
+
+
+    /**
+     * A factory for the readers of the individual archive entries.
+     */
+    public interface EntryReaderFactory
+    {
+        /**
+         * Creates a DataEntryReader that reads a single archive entry and
+         * passes any classes that it reads to the given class visitor.
+         */
+        DataEntryReader createEntryReader(ClassVisitor classVisitor);
+    }
+
+
+    private final boolean            jmod;
+    private final EntryReaderFactory entryReaderFactory;
+    private final ClassVisitor       classVisitor;
+    private final ExecutorService    executorService;
+    private final int                maxPendingEntries;
+
+
+    /**
+     * Creates a new ParallelJarReader.
+     * @param entryReaderFactory the factory for the readers that can process
+     *                           the individual jar entries.
+     * @param classVisitor       the visitor that receives all read classes,
+     *                           in the order of their entries.
+     * @param executorService    the executor service that reads the entries.
+     */
+    public ParallelJarReader(EntryReaderFactory entryReaderFactory,
+                             ClassVisitor       classVisitor,
+                             ExecutorService    executorService)
+    {
+        this(false,
+             entryReaderFactory,
+             classVisitor,
+             executorService);
+    }
+
+
+    /**
+     * Creates a new ParallelJarReader that optionally reads jmod files.
+     * @param jmod               specifies whether the input jar is actually a
+     *                           jmod file.
+     * @param entryReaderFactory the factory for the readers that can process
+     *                           the individual jar entries.
+     * @param classVisitor       the visitor that receives all read classes,
+     *                           in the order of their entries.
+     * @param executorService    the executor service that reads the entries.
+     */
+    public ParallelJarReader(boolean            jmod,
+                             EntryReaderFactory entryReaderFactory,
+                             ClassVisitor       classVisitor,
+                             ExecutorService    executorService)
+    {
+        this(jmod,
+             entryReaderFactory,
+             classVisitor,
+             executorService,
+             DEFAULT_MAX_PENDING_ENTRIES);
+    }
+
+
+    /**
+     * Creates a new ParallelJarReader that optionally reads jmod files.
+     * @param jmod               specifies whether the input jar is actually a
+     *                           jmod file.
+     * @param entryReaderFactory the factory for the readers that can process
+     *                           the individual jar entries.
+     * @param classVisitor       the visitor that receives all read classes,
+     *                           in the order of their entries.
+     * @param executorService    the executor service that reads the entries.
+     * @param maxPendingEntries  the maximum number of entries that are being
+     *                           read or waiting to be handed to the class
+     *                           visitor at any time, bounding the memory
+     *                           for buffered entries and results.
+     */
+    public ParallelJarReader(boolean            jmod,
+                             EntryReaderFactory entryReaderFactory,
+                             ClassVisitor       classVisitor,
+                             ExecutorService    executorService,
+                             int                maxPendingEntries)
+    {
+        if (maxPendingEntries < 1)
+        {
+            throw new IllegalArgumentException("The maximum number of pending entries must be positive ["+maxPendingEntries+"]");
+        }
+
+        this.jmod               = jmod;
+        this.entryReaderFactory = entryReaderFactory;
+        this.classVisitor       = classVisitor;
+        this.executorService    = executorService;
+        this.maxPendingEntries  = maxPendingEntries;
+    }
+
+
+    // Implementation for DataEntryReader.
+
+    @Override
+    public void read(DataEntry dataEntry) throws IOException
+    {
+        Deque<ParallelTask<List<Clazz>>> pendingEntries = new ArrayDeque<>();
+
+        // Can we parse the jar entries more robustly from a file?
+        if (dataEntry instanceof FileDataEntry)
+        {
+            // Read the data entry using its file.
+            FileDataEntry fileDataEntry = (FileDataEntry)dataEntry;
+
+            ZipFile zipFile = new ZipFile(fileDataEntry.getFile(), StandardCharsets.UTF_8);
+
+            try
+            {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+                // Get all entries from the input jar.
+                while (entries.hasMoreElements())
+                {
+                    ZipEntry zipEntry = entries.nextElement();
+
+                    // The zip file supports concurrent reading, so the
+                    // workers can inflate the entries themselves.
+                    submit(pendingEntries,
+                           new ZipFileDataEntry(dataEntry,
+                                                zipEntry,
+                                                zipFile));
+                }
+
+                deliverAll(pendingEntries);
+            }
+            finally
+            {
+                // Make sure no worker is still reading from the zip file.
+                cancelAll(pendingEntries);
+
+                zipFile.close();
+            }
+        }
+        else
+        {
+            if (jmod)
+            {
+                // Eat the magic bytes
+                dataEntry.getInputStream().read(new byte[4]);
+            }
+
+            // Read the data entry using its stream.
+            ZipInputStream zipInputStream = new ZipInputStream(dataEntry.getInputStream(), StandardCharsets.UTF_8);
+
+            try
+            {
+                // Get all entries from the input jar.
+                while (true)
+                {
+                    // Can we get another entry?
+                    ZipEntry zipEntry = zipInputStream.getNextEntry();
+                    if (zipEntry == null)
+                    {
+                        break;
+                    }
+
+                    // The stream only supports sequential reading, so we
+                    // have to inflate the entry here.
+                    submit(pendingEntries,
+                           new BufferedZipDataEntry(dataEntry,
+                                                    zipEntry,
+                                                    readFully(zipInputStream)));
+                }
+
+                deliverAll(pendingEntries);
+            }
+            finally
+            {
+                cancelAll(pendingEntries);
+
+                dataEntry.closeInputStream();
+            }
+        }
+    }
+
+
+    // Small utility methods.
+
+    /**
+     * Submits the given entry for reading, handing the results of earlier
+     * entries to the class visitor, as long as too many are pending.
+     */
+    private void submit(Deque<ParallelTask<List<Clazz>>> pendingEntries,
+                        DataEntry                        dataEntry)
+    throws IOException
+    {
+        while (pendingEntries.size() >= maxPendingEntries)
+        {
+            deliver(pendingEntries.removeFirst());
+        }
+
+        pendingEntries.addLast(ParallelTask.submit(executorService, () -> readEntry(dataEntry)));
+    }
+
+
+    /**
+     * Reads the given entry with a fresh entry reader, returning the classes
+     * that it has read.
+     */
+    private List<Clazz> readEntry(DataEntry dataEntry) throws IOException
+    {
+        List<Clazz> classes = new ArrayList<>(1);
+
+        entryReaderFactory.createEntryReader(new ClassCollector(classes)).read(dataEntry);
+
+        return classes;
+    }
+
+
+    /**
+     * Hands the results of all given pending entries to the class visitor,
+     * in order.
+     */
+    private void deliverAll(Deque<ParallelTask<List<Clazz>>> pendingEntries)
+    throws IOException
+    {
+        while (!pendingEntries.isEmpty())
+        {
+            deliver(pendingEntries.removeFirst());
+        }
+    }
+
+
+    /**
+     * Waits for the given pending entry and hands its classes to the class
+     * visitor.
+     */
+    private void deliver(ParallelTask<List<Clazz>> pendingEntry) throws IOException
+    {
+        try
+        {
+            for (Clazz clazz : pendingEntry.get())
+            {
+                clazz.accept(classVisitor);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw (IOException)new InterruptedIOException("Interrupted while reading entries in parallel").initCause(e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+
+    /**
+     * Cancels all given pending entries and waits until none of them is
+     * running anymore, ignoring their results.
+     */
+    private void cancelAll(Deque<ParallelTask<List<Clazz>>> pendingEntries)
+    {
+        ParallelTask.cancelAll(pendingEntries);
+
+        pendingEntries.clear();
+    }
+
+
+    /**
+     * Reads the remaining bytes of the current entry of the given stream.
+     */
+    private static byte[] readFully(InputStream inputStream) throws IOException
+    {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = inputStream.read(buffer)) >= 0)
+        {
+            byteArrayOutputStream.write(buffer, 0, count);
+        }
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+
+    /**
+     * This {@link DataEntry} represents a zip entry whose contents have
+     * already been inflated into memory.
+     */
+    private static class BufferedZipDataEntry implements DataEntry
+    {
+        private final DataEntry   parent;
+        private final ZipEntry    zipEntry;
+        private final byte[]      bytes;
+        private       InputStream inputStream;
+
+
+        public BufferedZipDataEntry(DataEntry parent,
+                                    ZipEntry  zipEntry,
+                                    byte[]    bytes)
+        {
+            this.parent   = parent;
+            this.zipEntry = zipEntry;
+            this.bytes    = bytes;
+        }
+
+
+        // Implementations for DataEntry.
+
+        @Override
+        public String getName()
+        {
+            // Get the right separators.
+            String name = zipEntry.getName()
+                .replace(File.separatorChar, TypeConstants.PACKAGE_SEPARATOR);
+
+            // Chop the trailing directory slash, if any.
+            int length = name.length();
+            return length > 0 &&
+                   name.charAt(length-1) == TypeConstants.PACKAGE_SEPARATOR ?
+                       name.substring(0, length -1) :
+                       name;
+        }
+
+
+        @Override
+        public String getOriginalName()
+        {
+            return getName();
+        }
+
+
+        @Override
+        public long getSize()
+        {
+            return bytes.length;
+        }
+
+
+        @Override
+        public boolean isDirectory()
+        {
+            return zipEntry.isDirectory();
+        }
+
+
+        @Override
+        public InputStream getInputStream()
+        {
+            if (inputStream == null)
+            {
+                inputStream = new ByteArrayInputStream(bytes);
+            }
+
+            return inputStream;
+        }
+
+
+        @Override
+        public void closeInputStream()
+        {
+            inputStream = null;
+        }
+
+
+        @Override
+        public DataEntry getParent()
+        {
+            return parent;
+        }
+
+
+        // Implementations for Object.
+
+        @Override
+        public String toString()
+        {
+            return parent.toString() + ':' + getName();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import java.util.Collection;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A task of a parallel data entry reader or writer, running on the threads
+ * of an executor service.
+ * <p/>
+ * Unlike a plain {@link Future}, which returns from {@link Future#cancel}
+ * while its task may still be running, these tasks can be cancelled and
+ * awaited with {@link #cancelAll}: tasks that haven't started yet never
+ * start, and tasks that are running are waited for. Afterwards, the
+ * caller can safely close or modify anything that the tasks use.
+ *
+ * @see ParallelJarReader
+ * @see ParallelDirectorySource
+ * @see ClassDataEntryWriter
+ */
+class ParallelTask<T>
+{
+    private static final int PENDING  = 0;
+    private static final int RUNNING  = 1;
+    private static final int FINISHED = 2;
+
+
+    private final AtomicInteger  state    = new AtomicInteger(PENDING);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private       Future<T>      future;
+
+
+    private ParallelTask() {}
+
+
+    /**
+     * Submits the given callable to the given executor service.
+     */
+    public static <T> ParallelTask<T> submit(ExecutorService executorService,
+                                             Callable<T>     callable)
+    {
+        ParallelTask<T> task = new ParallelTask<>();
+
+        task.future = executorService.submit(() -> task.call(callable));
+
+        return task;
+    }
+
+
+    /**
+     * Waits for the task to finish and returns its result.
+     * @see Future#get()
+     */
+    public T get() throws InterruptedException, ExecutionException
+    {
+        return future.get();
+    }
+
+
+    /**
+     * Cancels all given tasks and waits until none of them is running
+     * anymore, ignoring their results. Interrupts don't stop the waiting,
+     * but they are restored afterwards.
+     */
+    public static void cancelAll(Collection<? extends ParallelTask<?>> tasks)
+    {
+        // Prevent the tasks that haven't started yet from starting.
+        for (ParallelTask<?> task : tasks)
+        {
+            task.cancel();
+        }
+
+        // Wait for the tasks that have started.
+        boolean interrupted = false;
+        for (ParallelTask<?> task : tasks)
+        {
+            while (true)
+            {
+                try
+                {
+                    task.finished.await();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    // Small utility methods.
+
+    /**
+     * Runs the given callable on a thread of the executor service, unless
+     * the task has already been cancelled.
+     */
+    private T call(Callable<T> callable) throws Exception
+    {
+        if (!state.compareAndSet(PENDING, RUNNING))
+        {
+            throw new CancellationException();
+        }
+
+        try
+        {
+            return callable.call();
+        }
+        finally
+        {
+            state.set(FINISHED);
+            finished.countDown();
+        }
+    }
+
+
+    /**
+     * Marks the task as finished if it hasn't started yet, and removes it
+     * from the executor service, if possible.
+     */
+    private void cancel()
+    {
+        if (state.compareAndSet(PENDING, FINISHED))
+        {
+            finished.countDown();
+        }
+
+        future.cancel(false);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import proguard.util.StringMatcher;
+
+import java.io.*;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * This {@link ZipWriter} compresses the zip entries in parallel, on the
+ * threads of a given executor service. The entries are still written in
+ * the order in which they are closed, so the resulting zip files are
+ * identical to the ones that a plain {@link ZipWriter} writes.
+ *
+ * @see ZipOutput
+ */
+public class ParallelZipWriter extends ZipWriter
+{
+    private static final long DEFAULT_MAX_PENDING_SIZE = 64L * 1024L * 1024L;
+
+
+    private final ExecutorService executorService;
+    private final long            maxPendingSize;
+
+
+    /**
+     * Creates a new ParallelZipWriter that compresses all zip entries.
+     * @param dataEntryWriter the data entry writer that can provide output
+     *                        streams for the zip archives.
+     * @param executorService the executor service that compresses the
+     *                        entries.
+     */
+    public ParallelZipWriter(DataEntryWriter dataEntryWriter,
+                             ExecutorService executorService)
+    {
+        this(null,
+             1,
+             false,
+             null,
+             1,
+             0,
+             null,
+             ZipCompressionPolicy.DEFAULT,
+             dataEntryWriter,
+             executorService,
+             DEFAULT_MAX_PENDING_SIZE);
+    }
+
+
+    /**
+     * Creates a new ParallelZipWriter.
+     * @param uncompressedFilter                an optional filter for files that should not
+     *                                          be compressed.
+     * @param uncompressedAlignment             the desired alignment for the data of
+     *                                          uncompressed entries.
+     * @param useZip64                          Whether to write out the archive in zip64 format.
+     * @param extraUncompressedAlignmentFilter  an optional filter for files that should not
+     *                                          be compressed and use a different alignment.
+     * @param extraUncompressedAlignment        the desired alignment for the data of
+     *                                          entries matching extraAlignmentFilter.
+     * @param modificationTime                  the modification date and time of the zip
+     *                                          entries, in DOS format.
+     * @param header                            an optional header for the zip files.
+     * @param compressionPolicy                 the policy for compressing the entries
+     *                                          that the filters allow to compress.
+     * @param dataEntryWriter                   the data entry writer that can provide
+     *                                          output streams for the zip archives.
+     * @param executorService                   the executor service that compresses the
+     *                                          entries.
+     * @param maxPendingSize                    the maximum total size of the uncompressed
+     *                                          data of entries that are being compressed
+     *                                          or waiting to be written, per zip file.
+     */
+    public ParallelZipWriter(StringMatcher        uncompressedFilter,
+                             int                  uncompressedAlignment,
+                             boolean              useZip64,
+                             StringMatcher        extraUncompressedAlignmentFilter,
+                             int                  extraUncompressedAlignment,
+                             int                  modificationTime,
+                             byte[]               header,
+                             ZipCompressionPolicy compressionPolicy,
+                             DataEntryWriter      dataEntryWriter,
+                             ExecutorService      executorService,
+                             long                 maxPendingSize)
+    {
+        super(uncompressedFilter,
+              uncompressedAlignment,
+              useZip64,
+              extraUncompressedAlignmentFilter,
+              extraUncompressedAlignment,
+              modificationTime,
+              header,
+              compressionPolicy,
+              dataEntryWriter);
+
+        this.executorService = executorService;
+        this.maxPendingSize  = maxPendingSize;
+    }
+
+
+    // Overridden methods for ZipWriter.
+
+    @Override
+    protected ZipOutput createZipOutput(OutputStream         outputStream,
+                                        byte[]               header,
+                                        int                  uncompressedAlignment,
+                                        boolean              useZip64,
+                                        String               comment,
+                                        ZipCompressionPolicy compressionPolicy)
+    throws IOException
+    {
+        return new ZipOutput(outputStream,
+                             header,
+                             uncompressedAlignment,
+                             useZip64,
+                             comment,
+                             compressionPolicy,
+                             executorService,
+                             maxPendingSize);
+    }
+
+
+    @Override
+    public void println(PrintWriter pw, String prefix)
+    {
+        pw.println(prefix + "ParallelZipWriter (max pending size = "+maxPendingSize+")");
+        super.println(pw, prefix + "  ");
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io;
+
+import proguard.util.*;
+
+import java.util.zip.Deflater;
+
+/**
+ * This class specifies how a {@link ZipOutput} compresses its entries:
+ * with which deflate level and strategy, which entries it stores without
+ * compression, and whether it stores entries whose compressed data wouldn't
+ * be smaller than their uncompressed data.
+ * <p/>
+ * The policy is applied per entry, based on its name. Subclasses can
+ * override the getters to vary the settings per entry. The {@link #DEFAULT}
+ * policy compresses all entries at the best compression level, like
+ * {@link ZipOutput} always did.
+ *
+ * @see Builder
+ */
+public class ZipCompressionPolicy
+{
+    /**
+     * The default policy, compressing all entries at the best compression
+     * level.
+     */
+    public static final ZipCompressionPolicy DEFAULT = new Builder().build();
+
+
+    private final int           level;
+    private final int           strategy;
+    private final boolean       storeIfNotSmaller;
+    private final StringMatcher uncompressedFilter;
+
+
+    /**
+     * Creates a new ZipCompressionPolicy.
+     * @param level              the deflate level of compressed entries.
+     * @param strategy           the deflate strategy of compressed entries.
+     * @param storeIfNotSmaller  specifies whether entries should be stored
+     *                           without compression if their compressed data
+     *                           aren't smaller than their uncompressed data.
+     * @param uncompressedFilter an optional filter for the names of entries
+     *                           that should not be compressed.
+     * @see Deflater
+     */
+    public ZipCompressionPolicy(int           level,
+                                int           strategy,
+                                boolean       storeIfNotSmaller,
+                                StringMatcher uncompressedFilter)
+    {
+        if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) &&
+            level != Deflater.DEFAULT_COMPRESSION)
+        {
+            throw new IllegalArgumentException("Invalid compression level ["+level+"]");
+        }
+
+        if (strategy != Deflater.DEFAULT_STRATEGY &&
+            strategy != Deflater.FILTERED         &&
+            strategy != Deflater.HUFFMAN_ONLY)
+        {
+            throw new IllegalArgumentException("Invalid compression strategy ["+strategy+"]");
+        }
+
+        this.level              = level;
+        this.strategy           = strategy;
+        this.storeIfNotSmaller  = storeIfNotSmaller;
+        this.uncompressedFilter = uncompressedFilter;
+    }
+
+
+    /**
+     * Returns whether the entry with the given name should be compressed,
+     * if its writer asks to compress it.
+     */
+    public boolean isCompressed(String name)
+    {
+        return uncompressedFilter == null ||
+               !uncompressedFilter.matches(name);
+    }
+
+
+    /**
+     * Returns the deflate level for the entry with the given name.
+     */
+    public int getLevel(String name)
+    {
+        return level;
+    }
+
+
+    /**
+     * Returns the deflate strategy for the entry with the given name.
+     */
+    public int getStrategy(String name)
+    {
+        return strategy;
+    }
+
+
+    /**
+     * Returns whether the entry with the given name should be stored
+     * without compression if its compressed data aren't smaller than its
+     * uncompressed data.
+     */
+    public boolean isStoreIfNotSmaller(String name)
+    {
+        return storeIfNotSmaller;
+    }
+
+
+    // Implementations for Object.
+
+    @Override
+    public String toString()
+    {
+        return "ZipCompressionPolicy (level = "+level+", strategy = "+strategy+", store if not smaller = "+storeIfNotSmaller+", uncompressed filter = "+uncompressedFilter+")";
+    }
+
+
+    /**
+     * Builds a {@link ZipCompressionPolicy}.
+     */
+    public static class Builder
+    {
+        private int           level              = Deflater.BEST_COMPRESSION;
+        private int           strategy           = Deflater.DEFAULT_STRATEGY;
+        private boolean       storeIfNotSmaller  = false;
+        private StringMatcher uncompressedFilter = null;
+
+
+        /**
+         * @return the built {@link ZipCompressionPolicy}.
+         */
+        public ZipCompressionPolicy build()
+        {
+            return new ZipCompressionPolicy(level,
+                                            strategy,
+                                            storeIfNotSmaller,
+                                            uncompressedFilter);
+        }
+
+
+        /**
+         * @param level the deflate level of compressed entries, from
+         *              {@link Deflater#NO_COMPRESSION} to
+         *              {@link Deflater#BEST_COMPRESSION}. The default is
+         *              {@link Deflater#BEST_COMPRESSION}.
+         * @return the {@link Builder}.
+         */
+        public Builder setLevel(int level)
+        {
+            this.level = level;
+            return this;
+        }
+
+
+        /**
+         * @param strategy the deflate strategy of compressed entries, for
+         *                 instance {@link Deflater#FILTERED}. The default is
+         *                 {@link Deflater#DEFAULT_STRATEGY}.
+         * @return the {@link Builder}.
+         */
+        public Builder setStrategy(int strategy)
+        {
+            this.strategy = strategy;
+            return this;
+        }
+
+
+        /**
+         * @param storeIfNotSmaller specifies whether entries should be stored
+         *                          without compression if their compressed
+         *                          data aren't smaller than their
+         *                          uncompressed data.
+         * @return the {@link Builder}.
+         */
+        public Builder setStoreIfNotSmaller(boolean storeIfNotSmaller)
+        {
+            this.storeIfNotSmaller = storeIfNotSmaller;
+            return this;
+        }
+
+
+        /**
+         * @param uncompressedFilter a filter for the names of entries that
+         *                           should not be compressed, or null.
+         * @return the {@link Builder}.
+         */
+        public Builder setUncompressedFilter(StringMatcher uncompressedFilter)
+        {
+            this.uncompressedFilter = uncompressedFilter;
+            return this;
+        }
+
+
+        /**
+         * @param extensions the extensions of the names of entries that
+         *                   should not be compressed, for instance ".png".
+         * @return the {@link Builder}.
+         */
+        public Builder setUncompressedExtensions(String... extensions)
+        {
+            StringMatcher[] matchers = new StringMatcher[extensions.length];
+            for (int index = 0; index < extensions.length; index++)
+            {
+                matchers[index] = new ExtensionMatcher(extensions[index]);
+            }
+
+            this.uncompressedFilter = new OrMatcher(matchers);
+            return this;
+        }
+    }
+}
@@ -20,7 +20,10 @@ package proguard.io;
 import proguard.util.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 /**
@@ -29,12 +32,32 @@ import java.util.zip.*;
  * or uncompressed. Uncompressed entries can be aligned to a multiple of a
  * given number of bytes.
  * <p/>
+ * The output streams of compressed entries implement
+ * {@link CompressedDataOutputStream}, so their data can also be written as
+ * data that have already been deflated.
+ * <p/>
  * Multiple entries and output streams can be open at the same time. The entries
  * are added to the central directory in the order in which they are opened, but
  * the corresponding data are only written when their output streams are closed.
  * <p/>
  * The code automatically computes the CRC and lengths of the data, for
  * compressed and uncompressed data.
+ * <p/>
+ * A {@link ZipCompressionPolicy} specifies the deflate level and strategy
+ * of compressed entries, and whether some entries are stored without
+ * compression instead.
+ * <p/>
+ * Optionally, the entries are compressed in parallel, on the threads of a
+ * given executor service. The data of the entries are still written in the
+ * order in which their output streams are closed, so the resulting archive
+ * is identical to the archive that is written sequentially.
+ * <p/>
+ * Optionally, the entries are streamed, so they don't need to be buffered
+ * in memory completely. A compressed entry is then written right away, as
+ * long as no other entry is being streamed, followed by a data descriptor
+ * with its CRC and sizes. Other entries that are closed in the meantime are
+ * written after it. Uncompressed entries, which need their CRC and sizes in
+ * their local headers, are buffered in temporary files if they are large.
  *
  * @author Eric Lafortune
  */
@@ -46,10 +69,12 @@ public class ZipOutput
     private static final int MAGIC_ZIP64_END_OF_CENTRAL_DIRECTORY         = 0x06064b50;
     private static final int MAGIC_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
     private static final int MAGIC_ZIP64_EXTENDED_EXTRA_INFORMATION_FIELD = 0x0001;
+    private static final int MAGIC_DATA_DESCRIPTOR                        = 0x08074b50;
 
 
     private static final int VERSION              = 10;
     private static final int GENERAL_PURPOSE_FLAG =  0;
+    private static final int DATA_DESCRIPTOR_FLAG =  0x08;
     private static final int METHOD_UNCOMPRESSED  =  0;
     private static final int METHOD_COMPRESSED    =  8;
 
@@ -59,17 +84,27 @@ public class ZipOutput
     private static final int  ZIP64_EXTENDED_LARGE_EXTRA_INFORMATION_FIELD_SIZE  = 24;
     private static final long ZIP64_FIELD_TOO_SMALL_32BIT                        = 0xFFFFFFFF;
 
+    private static final int MAX_STREAMING_BUFFER_SIZE = 1024 * 1024;
+
     private static final boolean DEBUG = false;
 
     protected     LargeDataOutputStream outputStream;
     private final int                   uncompressedAlignment;
 
-    private final String             comment;
-    private final boolean            useZip64;
+    private final String               comment;
+    private final boolean              useZip64;
+    private final ZipCompressionPolicy compressionPolicy;
+    private final ExecutorService      executorService;
+    private final long                 maxPendingSize;
+    private final boolean              streaming;
 
     private List<ZipEntry> zipEntries    = new ArrayList<>();
     private Set<String>    zipEntryNames = new HashSet<>();
 
+    private final Queue<PendingEntry> pendingEntries = new ArrayDeque<>();
+    private       long                pendingSize;
+    private       ZipEntry            streamingEntry;
+
 
     // Regular constructors.
 
@@ -148,6 +183,10 @@ public class ZipOutput
         this.uncompressedAlignment = uncompressedAlignment;
         this.useZip64              = useZip64;
         this.comment               = comment;
+        this.compressionPolicy     = ZipCompressionPolicy.DEFAULT;
+        this.executorService       = null;
+        this.maxPendingSize        = 0L;
+        this.streaming             = false;
     }
 
 
@@ -190,11 +229,144 @@ public class ZipOutput
                      boolean      useZip64,
                      String       comment)
     throws IOException
+    {
+        this(outputStream,
+             header,
+             uncompressedAlignment,
+             useZip64,
+             comment,
+             null,
+             0L);
+    }
+
+
+    /**
+     * Creates a new ZipOutput that aligns uncompressed entries, contains a
+     * comment, and optionally compresses its entries in parallel.
+     *
+     * @param outputStream          the output stream to which the zip data will be written.
+     * @param header                an optional header for the zip file.
+     * @param uncompressedAlignment the requested alignment of uncompressed data.
+     * @param useZip64              Whether to write out the archive in zip64 format.
+     * @param comment               optional comment for the entire zip file.
+     * @param executorService       an optional executor service that
+     *                              compresses the entries. If null, the
+     *                              entries are compressed on the calling
+     *                              thread.
+     * @param maxPendingSize        the maximum total size of the data of
+     *                              closed entries that are being compressed
+     *                              or waiting to be written. When closing
+     *                              an entry exceeds it, the calling thread
+     *                              waits for the oldest entries to be
+     *                              written.
+     */
+    public ZipOutput(OutputStream    outputStream,
+                     byte[]          header,
+                     int             uncompressedAlignment,
+                     boolean         useZip64,
+                     String          comment,
+                     ExecutorService executorService,
+                     long            maxPendingSize)
+    throws IOException
+    {
+        this(outputStream,
+             header,
+             uncompressedAlignment,
+             useZip64,
+             comment,
+             ZipCompressionPolicy.DEFAULT,
+             executorService,
+             maxPendingSize);
+    }
+
+
+    /**
+     * Creates a new ZipOutput that aligns uncompressed entries, contains a
+     * comment, compresses its entries according to the given policy, and
+     * optionally compresses them in parallel.
+     *
+     * @param outputStream          the output stream to which the zip data will be written.
+     * @param header                an optional header for the zip file.
+     * @param uncompressedAlignment the requested alignment of uncompressed data.
+     * @param useZip64              Whether to write out the archive in zip64 format.
+     * @param comment               optional comment for the entire zip file.
+     * @param compressionPolicy     the policy for compressing the entries.
+     * @param executorService       an optional executor service that
+     *                              compresses the entries. If null, the
+     *                              entries are compressed on the calling
+     *                              thread.
+     * @param maxPendingSize        the maximum total size of the data of
+     *                              closed entries that are being compressed
+     *                              or waiting to be written. When closing
+     *                              an entry exceeds it, the calling thread
+     *                              waits for the oldest entries to be
+     *                              written.
+     */
+    public ZipOutput(OutputStream         outputStream,
+                     byte[]               header,
+                     int                  uncompressedAlignment,
+                     boolean              useZip64,
+                     String               comment,
+                     ZipCompressionPolicy compressionPolicy,
+                     ExecutorService      executorService,
+                     long                 maxPendingSize)
+    throws IOException
+    {
+        this(outputStream,
+             header,
+             uncompressedAlignment,
+             useZip64,
+             comment,
+             compressionPolicy,
+             executorService,
+             maxPendingSize,
+             false);
+    }
+
+
+    /**
+     * Creates a new ZipOutput that aligns uncompressed entries, contains a
+     * comment, compresses its entries according to the given policy,
+     * optionally compresses them in parallel, and optionally streams them.
+     *
+     * @param outputStream          the output stream to which the zip data will be written.
+     * @param header                an optional header for the zip file.
+     * @param uncompressedAlignment the requested alignment of uncompressed data.
+     * @param useZip64              Whether to write out the archive in zip64 format.
+     * @param comment               optional comment for the entire zip file.
+     * @param compressionPolicy     the policy for compressing the entries.
+     * @param executorService       an optional executor service that
+     *                              compresses the entries. If null, the
+     *                              entries are compressed on the calling
+     *                              thread.
+     * @param maxPendingSize        the maximum total size of the data of
+     *                              closed entries that are being compressed
+     *                              or waiting to be written.
+     * @param streaming             specifies whether compressed entries
+     *                              should be streamed with data descriptors
+     *                              where possible, and large buffered
+     *                              entries should be kept in temporary files
+     *                              instead of in memory.
+     */
+    public ZipOutput(OutputStream         outputStream,
+                     byte[]               header,
+                     int                  uncompressedAlignment,
+                     boolean              useZip64,
+                     String               comment,
+                     ZipCompressionPolicy compressionPolicy,
+                     ExecutorService      executorService,
+                     long                 maxPendingSize,
+                     boolean              streaming)
+    throws IOException
     {
         this.outputStream          = new LargeDataOutputStream(outputStream);
         this.uncompressedAlignment = uncompressedAlignment;
         this.useZip64              = useZip64;
         this.comment               = comment;
+        this.compressionPolicy     = compressionPolicy;
+        this.executorService       = executorService;
+        this.maxPendingSize        = maxPendingSize;
+        this.streaming             = streaming;
         if (header != null)
         {
             outputStream.write(header);
@@ -259,7 +431,8 @@ public class ZipOutput
      * It is the caller's responsibility to close the output stream.
      * @param name                  the name of the zip entry.
      * @param compress              specifies whether the entry should be
-     *                              compressed.
+     *                              compressed, if the compression policy
+     *                              allows it.
      * @param uncompressedAlignment the requested alignment of uncompressed
      *                              data.
      * @param modificationTime      the modification date and time of the zip
@@ -288,7 +461,7 @@ public class ZipOutput
         }
 
         ZipEntry entry = new ZipEntry(name,
-                                      compress,
+                                      compress && compressionPolicy.isCompressed(name),
                                       uncompressedAlignment,
                                       modificationTime,
                                       extraField,
@@ -319,6 +492,9 @@ public class ZipOutput
      */
     public void close(long centralDirectoryOffset) throws IOException
     {
+        // Make sure all entries have been written.
+        writeAllPendingEntries();
+
         // Write the central directory.
         long centralDirectorySize = writeEntriesOfCentralDirectory();
 
@@ -343,6 +519,8 @@ public class ZipOutput
 
     /**
      * Returns the current size of the data written to the output stream.
+     * This doesn't include the data of entries that are still being
+     * compressed in parallel.
      */
     protected long size()
     {
@@ -354,13 +532,16 @@ public class ZipOutput
      * Starts the central directory.
      * @return the current position in the output stream.
      */
-    protected long writeStartOfCentralDirectory()
+    protected long writeStartOfCentralDirectory() throws IOException
     {
         if (DEBUG)
         {
             System.out.println("ZipOutput.writeStartOfCentralDirectory");
         }
 
+        // Make sure all entries have been written.
+        writeAllPendingEntries();
+
         // The central directory as such doesn't have a header.
         return outputStream.getLongSize();
     }
@@ -467,6 +648,31 @@ public class ZipOutput
     }
 
 
+    /**
+     * This interface is implemented by the output streams of compressed zip
+     * entries. It allows to write data that have already been deflated,
+     * for instance by copying them from an input archive, instead of
+     * writing the uncompressed data and deflating them again.
+     */
+    public interface CompressedDataOutputStream
+    {
+        /**
+         * Writes the given raw deflated data as the data of the zip entry.
+         * This method must be called at most once, before any uncompressed
+         * data have been written. The data are written to the zip file when
+         * the output stream is closed, so they must remain valid until then.
+         * @param compressedData   the deflated data, without zlib header.
+         * @param crc              the CRC-32 checksum of the uncompressed
+         *                         data.
+         * @param uncompressedSize the size of the uncompressed data.
+         */
+        void writeCompressedData(ByteBuffer compressedData,
+                                 int        crc,
+                                 long       uncompressedSize)
+        throws IOException;
+    }
+
+
     /**
      * This class represents a zip entry in its enclosing zip file. It can
      * provide an output stream and write its headers and its data to the main
@@ -485,6 +691,11 @@ public class ZipOutput
         private String  name;
         private byte[]  extraField;
         private String  comment;
+        private boolean dataDescriptor;
+
+        // The uncompressed data, in case the entry is stored if its
+        // compressed data aren't smaller.
+        private ByteBuffer uncompressedData;
 
 
         /**
@@ -525,9 +736,50 @@ public class ZipOutput
 
         public OutputStream createOutputStream() throws IOException
         {
-            return compressed ?
-                new CompressedZipEntryOutputStream() :
-                new UncompressedZipEntryOutputStream();
+            if (!compressed)
+            {
+                return new UncompressedZipEntryOutputStream();
+            }
+
+            // We only need to buffer the uncompressed data if we compress
+            // them in parallel or may store them instead.
+            if (executorService != null ||
+                compressionPolicy.isStoreIfNotSmaller(name))
+            {
+                return new BufferedCompressedZipEntryOutputStream();
+            }
+
+            // Can we stream the data right away?
+            return streaming && streamingEntry == null ?
+                new StreamingZipEntryOutputStream() :
+                new CompressedZipEntryOutputStream();
+        }
+
+
+        /**
+         * Writes the local file header and the given data, compressed or
+         * uncompressed, to the main zip output stream.
+         */
+        private void writeData(ByteBuffer data) throws IOException
+        {
+            // Store the uncompressed data instead, if compressing them
+            // didn't help.
+            if (uncompressedData != null)
+            {
+                if (data.remaining() >= uncompressedData.remaining())
+                {
+                    compressed = false;
+                    data       = uncompressedData;
+                }
+
+                uncompressedData = null;
+            }
+
+            offset         = outputStream.getLongSize();
+            compressedSize = data.remaining();
+
+            writeLocalFileHeader();
+            writeBuffer(data);
         }
 
 
@@ -549,7 +801,7 @@ public class ZipOutput
 
             writeInt(MAGIC_LOCAL_FILE_HEADER);
             writeShort(useZip64 ? ZIP64_MIN_VERSION : VERSION);
-            writeShort(GENERAL_PURPOSE_FLAG);
+            writeShort(dataDescriptor ? GENERAL_PURPOSE_FLAG | DATA_DESCRIPTOR_FLAG : GENERAL_PURPOSE_FLAG);
             writeShort(compressed ? METHOD_COMPRESSED : METHOD_UNCOMPRESSED);
             writeInt(modificationTime);
             writeInt(crc);
@@ -603,6 +855,37 @@ public class ZipOutput
         }
 
 
+        /**
+         * Writes the data descriptor, which follows the data of a streamed
+         * entry, to the main zip output stream.
+         */
+        private void writeDataDescriptor() throws IOException
+        {
+            if (DEBUG)
+            {
+                System.out.println("ZipOutput.writeDataDescriptor ["+name+"] (offset = "+offset+", "+compressedSize+"/"+uncompressedSize+" bytes)");
+            }
+
+            writeInt(MAGIC_DATA_DESCRIPTOR);
+            writeInt(crc);
+
+            // Like Java's ZipOutputStream, only write 8-byte sizes if they
+            // don't fit in 4 bytes.
+            if (useZip64 && (
+                (compressedSize   >> 32 > 0) ||
+                (uncompressedSize >> 32 > 0)))
+            {
+                writeLong(compressedSize);
+                writeLong(uncompressedSize);
+            }
+            else
+            {
+                writeInt(compressedSize);
+                writeInt(uncompressedSize);
+            }
+        }
+
+
         /**
          * Writes the file header for the central directory to the main zip
          * output stream.
@@ -624,7 +907,7 @@ public class ZipOutput
             writeInt(MAGIC_CENTRAL_DIRECTORY_FILE_HEADER);
             writeShort(useZip64 ? ZIP64_MIN_VERSION : VERSION); // Creation version.
             writeShort(useZip64 ? ZIP64_MIN_VERSION : VERSION); // Extraction Version.
-            writeShort(GENERAL_PURPOSE_FLAG);
+            writeShort(dataDescriptor ? GENERAL_PURPOSE_FLAG | DATA_DESCRIPTOR_FLAG : GENERAL_PURPOSE_FLAG);
             writeShort(compressed ? METHOD_COMPRESSED : METHOD_UNCOMPRESSED);
             writeInt(modificationTime);
             writeInt(crc);
@@ -674,23 +957,18 @@ public class ZipOutput
          * This OutputStream writes its uncompressed zip entry out to its zip
          * output stream when it is closed.
          */
-        private class UncompressedZipEntryOutputStream extends ByteArrayOutputStream
+        private class UncompressedZipEntryOutputStream extends OutputStream
         {
-            private CRC32 crc32 = new CRC32();
-
+            private CRC32       crc32  = new CRC32();
+            private EntryBuffer buffer = createEntryBuffer();
 
-            private UncompressedZipEntryOutputStream()
-            {
-                super(16 * 1024);
-            }
 
-
-            // Overridden methods for OutputStream.
+            // Implementations for OutputStream.
 
             @Override
-            public synchronized void write(int b)
+            public synchronized void write(int b) throws IOException
             {
-                super.write(b);
+                buffer.write(b);
 
                 crc32.update(b);
             }
@@ -704,9 +982,9 @@ public class ZipOutput
 
 
             @Override
-            public synchronized void write(byte[] b, int off, int len)
+            public synchronized void write(byte[] b, int off, int len) throws IOException
             {
-                super.write(b, off, len);
+                buffer.write(b, off, len);
 
                 crc32.update(b, off, len);
             }
@@ -715,17 +993,11 @@ public class ZipOutput
             @Override
             public void close() throws IOException
             {
-                super.close();
-
-                byte[] bytes = super.toByteArray();
-
-                offset           = outputStream.getLongSize();
                 crc              = (int)crc32.getValue();
-                compressedSize   = bytes.length;
-                uncompressedSize = bytes.length;
+                uncompressedSize = buffer.size();
 
-                writeLocalFileHeader();
-                outputStream.write(bytes);
+                // Write the buffered data without copying them.
+                writeEntryData(ZipEntry.this, buffer.toByteBuffer());
             }
         }
 
@@ -734,19 +1006,43 @@ public class ZipOutput
          * This OutputStream writes its compressed zip entry out to its zip
          * output stream when it is closed.
          */
-        private class CompressedZipEntryOutputStream extends DeflaterOutputStream
+        private class CompressedZipEntryOutputStream
+        extends       DeflaterOutputStream
+        implements    CompressedDataOutputStream
         {
-            private CRC32 crc32 = new CRC32();
+            private CRC32      crc32 = new CRC32();
+            private ByteBuffer compressedData;
 
 
             private CompressedZipEntryOutputStream()
             {
-                super(new ByteArrayOutputStream(16 * 1024),
-                      new Deflater(Deflater.BEST_COMPRESSION, true),
+                super(createEntryBuffer(),
+                      createDeflater(name),
                       1024);
             }
 
 
+            // Implementations for CompressedDataOutputStream.
+
+            @Override
+            public void writeCompressedData(ByteBuffer compressedData,
+                                            int        crc,
+                                            long       uncompressedSize)
+            throws IOException
+            {
+                if (this.compressedData != null ||
+                    ZipEntry.this.uncompressedSize > 0)
+                {
+                    throw new IOException("Data have already been written to zip entry ["+name+"]");
+                }
+
+                this.compressedData = compressedData.duplicate();
+
+                ZipEntry.this.crc              = crc;
+                ZipEntry.this.uncompressedSize = uncompressedSize;
+            }
+
+
             // Overridden methods for OutputStream.
 
             //public void write(int b) throws IOException
@@ -766,6 +1062,11 @@ public class ZipOutput
             @Override
             public void write(byte[] b, int off, int len) throws IOException
             {
+                if (compressedData != null)
+                {
+                    throw new IOException("Compressed data have already been written to zip entry ["+name+"]");
+                }
+
                 super.write(b, off, len);
 
                 crc32.update(b, off, len);
@@ -781,22 +1082,436 @@ public class ZipOutput
                 super.def.end();
                 super.close();
 
-                ByteArrayOutputStream byteArrayOutputStream =
-                    (ByteArrayOutputStream)super.out;
+                if (compressedData != null)
+                {
+                    // Copy the raw compressed data as they are.
+                    writeEntryData(ZipEntry.this, compressedData);
+
+                    compressedData = null;
+                }
+                else
+                {
+                    crc = (int)crc32.getValue();
+
+                    // Write the buffered data without copying them.
+                    writeEntryData(ZipEntry.this, ((EntryBuffer)super.out).toByteBuffer());
+                }
+            }
+        }
+
+
+        /**
+         * This OutputStream writes its compressed zip entry out to its zip
+         * output stream right away, after a local header with a data
+         * descriptor flag, and writes the data descriptor when it is closed.
+         * Entries that are closed in the meantime are written out after it.
+         */
+        private class StreamingZipEntryOutputStream
+        extends       DeflaterOutputStream
+        implements    CompressedDataOutputStream
+        {
+            private CRC32   crc32 = new CRC32();
+            private long    dataOffset;
+            private boolean compressedDataWritten;
+
+
+            private StreamingZipEntryOutputStream() throws IOException
+            {
+                super(new NonClosingOutputStream(outputStream),
+                      createDeflater(name),
+                      1024);
 
-                byte[] compressedBytes = byteArrayOutputStream.toByteArray();
+                // Write any entries that were closed before.
+                writePendingEntries(-1L);
 
+                streamingEntry = ZipEntry.this;
+                dataDescriptor = true;
                 offset         = outputStream.getLongSize();
-                crc            = (int)crc32.getValue();
-                compressedSize = compressedBytes.length;
 
                 writeLocalFileHeader();
-                outputStream.write(compressedBytes);
+
+                dataOffset = outputStream.getLongSize();
+            }
+
+
+            // Implementations for CompressedDataOutputStream.
+
+            @Override
+            public void writeCompressedData(ByteBuffer compressedData,
+                                            int        crc,
+                                            long       uncompressedSize)
+            throws IOException
+            {
+                if (compressedDataWritten ||
+                    ZipEntry.this.uncompressedSize > 0)
+                {
+                    throw new IOException("Data have already been written to zip entry ["+name+"]");
+                }
+
+                writeBuffer(compressedData.duplicate());
+
+                compressedDataWritten          = true;
+                ZipEntry.this.crc              = crc;
+                ZipEntry.this.uncompressedSize = uncompressedSize;
+            }
+
+
+            // Overridden methods for OutputStream.
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+                if (compressedDataWritten)
+                {
+                    throw new IOException("Compressed data have already been written to zip entry ["+name+"]");
+                }
+
+                super.write(b, off, len);
+
+                crc32.update(b, off, len);
+                uncompressedSize += len;
+            }
+
+
+            @Override
+            public void close() throws IOException
+            {
+                // Has the entry been closed already?
+                if (streamingEntry != ZipEntry.this)
+                {
+                    return;
+                }
+
+                if (!compressedDataWritten)
+                {
+                    super.finish();
+                    crc = (int)crc32.getValue();
+                }
+
+                // Make sure the memory is freed. [JDK-4797189]
+                // We don't close the main zip output stream.
+                super.def.end();
+
+                compressedSize = outputStream.getLongSize() - dataOffset;
+
+                writeDataDescriptor();
+
+                // Write any entries that were closed in the meantime.
+                streamingEntry = null;
+                writePendingEntries(maxPendingSize);
+            }
+        }
+
+
+        /**
+         * This OutputStream buffers the uncompressed data of its zip entry
+         * and compresses them when it is closed, on the executor service,
+         * if any. The compressed zip entry is written out to its zip output
+         * stream after all entries that were closed before it.
+         */
+        private class BufferedCompressedZipEntryOutputStream
+        extends       ByteArrayOutputStream
+        implements    CompressedDataOutputStream
+        {
+            private CRC32      crc32 = new CRC32();
+            private ByteBuffer compressedData;
+
+
+            private BufferedCompressedZipEntryOutputStream()
+            {
+                super(16 * 1024);
+            }
+
+
+            // Implementations for CompressedDataOutputStream.
+
+            @Override
+            public void writeCompressedData(ByteBuffer compressedData,
+                                            int        crc,
+                                            long       uncompressedSize)
+            throws IOException
+            {
+                if (this.compressedData != null ||
+                    count > 0)
+                {
+                    throw new IOException("Data have already been written to zip entry ["+name+"]");
+                }
+
+                this.compressedData = compressedData.duplicate();
+
+                ZipEntry.this.crc              = crc;
+                ZipEntry.this.uncompressedSize = uncompressedSize;
+            }
+
+
+            // Overridden methods for OutputStream.
+
+            @Override
+            public synchronized void write(int b)
+            {
+                super.write(b);
+
+                crc32.update(b);
+            }
+
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len)
+            {
+                super.write(b, off, len);
+
+                crc32.update(b, off, len);
+            }
+
+
+            @Override
+            public void close() throws IOException
+            {
+                super.close();
+
+                if (compressedData != null)
+                {
+                    // Copy the raw compressed data as they are.
+                    writeEntryData(ZipEntry.this, compressedData);
+
+                    compressedData = null;
+                }
+                else
+                {
+                    crc              = (int)crc32.getValue();
+                    uncompressedSize = count;
+
+                    if (compressionPolicy.isStoreIfNotSmaller(name))
+                    {
+                        uncompressedData = ByteBuffer.wrap(buf, 0, count);
+                    }
+
+                    final byte[]   bytes    = buf;
+                    final int      length   = count;
+                    final Deflater deflater = createDeflater(name);
+
+                    if (executorService == null)
+                    {
+                        writeEntryData(ZipEntry.this, deflate(deflater, bytes, length));
+                    }
+                    else
+                    {
+                        // Compress the buffered data in the background.
+                        addPendingEntry(ZipEntry.this,
+                                        executorService.submit(() -> deflate(deflater, bytes, length)),
+                                        length);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Creates a buffer for the data of an entry, which keeps its data in a
+     * temporary file once they get large, if the entries are streamed.
+     */
+    private EntryBuffer createEntryBuffer()
+    {
+        return new EntryBuffer(streaming ?
+                                   MAX_STREAMING_BUFFER_SIZE :
+                                   Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * This OutputStream buffers the data of a zip entry in memory, up to a
+     * given size, and in a temporary file beyond that size.
+     */
+    private static class EntryBuffer extends OutputStream
+    {
+        private final int maxMemorySize;
+
+        private ByteArrayBuffer memoryBuffer = new ByteArrayBuffer();
+        private File            file;
+        private OutputStream    fileOutputStream;
+        private long            size;
+
+
+        private EntryBuffer(int maxMemorySize)
+        {
+            this.maxMemorySize = maxMemorySize;
+        }
+
+
+        /**
+         * Returns the number of bytes written so far.
+         */
+        public long size()
+        {
+            return size;
+        }
+
+
+        /**
+         * Returns a view on the data written so far. The buffer can't be
+         * used further afterwards.
+         */
+        public ByteBuffer toByteBuffer() throws IOException
+        {
+            if (file == null)
+            {
+                return memoryBuffer.toByteBuffer();
+            }
+
+            fileOutputStream.close();
+            fileOutputStream = null;
+
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IOException("Zip entry too large to buffer ("+size+" bytes)");
+            }
+
+            // Map the temporary file, so we don't need to load it. We can
+            // delete the file right away, at least on most systems.
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"))
+            {
+                return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, size);
+            }
+            finally
+            {
+                file.delete();
+            }
+        }
+
+
+        // Implementations for OutputStream.
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            spillIfNecessary(1);
+
+            if (file == null)
+            {
+                memoryBuffer.write(b);
+            }
+            else
+            {
+                fileOutputStream.write(b);
+            }
+
+            size++;
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            spillIfNecessary(len);
+
+            if (file == null)
+            {
+                memoryBuffer.write(b, off, len);
+            }
+            else
+            {
+                fileOutputStream.write(b, off, len);
+            }
+
+            size += len;
+        }
+
+
+        // Small utility methods.
+
+        /**
+         * Moves the buffered data to a temporary file if they would exceed
+         * the maximum memory size with the given number of extra bytes.
+         */
+        private void spillIfNecessary(int extraSize) throws IOException
+        {
+            if (file == null &&
+                size + extraSize > maxMemorySize)
+            {
+                file = File.createTempFile("proguard", ".zipentry");
+                file.deleteOnExit();
+
+                fileOutputStream = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+
+                memoryBuffer.writeTo(fileOutputStream);
+                memoryBuffer = null;
             }
         }
     }
 
 
+    /**
+     * This ByteArrayOutputStream provides a view on its data.
+     */
+    private static class ByteArrayBuffer extends ByteArrayOutputStream
+    {
+        private ByteArrayBuffer()
+        {
+            super(16 * 1024);
+        }
+
+
+        /**
+         * Returns a view on the data written so far, without copying them.
+         */
+        public ByteBuffer toByteBuffer()
+        {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+
+    /**
+     * This OutputStream writes to the main zip output stream, without
+     * closing it.
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream
+    {
+        private NonClosingOutputStream(OutputStream outputStream)
+        {
+            super(outputStream);
+        }
+
+
+        // Overridden methods for OutputStream.
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+        }
+
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+
+    /**
+     * This class represents a zip entry whose data are being compressed or
+     * waiting to be written to the zip output stream.
+     */
+    private static class PendingEntry
+    {
+        private final ZipEntry           entry;
+        private final Future<ByteBuffer> data;
+        private final long               size;
+
+
+        private PendingEntry(ZipEntry           entry,
+                             Future<ByteBuffer> data,
+                             long               size)
+        {
+            this.entry = entry;
+            this.data  = data;
+            this.size  = size;
+        }
+    }
+
+
     /**
      * This output stream is mostly identical to DataOutputStream,
      * except it stores the amount of bytes written so far in a long
@@ -834,10 +1549,12 @@ public class ZipOutput
 
 
         @Override
-        public void write(byte[] b) throws IOException
+        public synchronized void write(byte[] b, int off, int len) throws IOException
         {
-            super.write(b);
-            written += b.length;
+            // The super implementation of write(byte[]) delegates to this
+            // method.
+            super.write(b, off, len);
+            written += len;
         }
     }
 
@@ -894,6 +1611,186 @@ public class ZipOutput
     }
 
 
+    /**
+     * Writes out the local header and the given data of the given entry,
+     * after the data of any entries that are still pending.
+     */
+    private void writeEntryData(ZipEntry   entry,
+                                ByteBuffer data)
+    throws IOException
+    {
+        if (pendingEntries.isEmpty() &&
+            streamingEntry == null)
+        {
+            entry.writeData(data);
+        }
+        else
+        {
+            addPendingEntry(entry,
+                            CompletableFuture.completedFuture(data),
+                            data.remaining());
+        }
+    }
+
+
+    /**
+     * Adds the given entry with its future data to the pending entries,
+     * and writes out as many pending entries as possible, or as necessary
+     * to respect the maximum pending size.
+     */
+    private void addPendingEntry(ZipEntry           entry,
+                                 Future<ByteBuffer> data,
+                                 long               size)
+    throws IOException
+    {
+        pendingEntries.add(new PendingEntry(entry, data, size));
+        pendingSize += size;
+
+        writePendingEntries(maxPendingSize);
+    }
+
+
+    /**
+     * Writes out all pending entries, after checking that no entry is still
+     * being streamed.
+     */
+    private void writeAllPendingEntries() throws IOException
+    {
+        if (streamingEntry != null)
+        {
+            throw new IOException("Zip entry ["+streamingEntry.name+"] hasn't been closed");
+        }
+
+        writePendingEntries(-1L);
+    }
+
+
+    /**
+     * Writes out the pending entries, in the order in which they were added,
+     * as long as their data are ready, or as long as their total size
+     * exceeds the given maximum size. Nothing is written while an entry is
+     * being streamed.
+     */
+    private void writePendingEntries(long maxPendingSize) throws IOException
+    {
+        while (!pendingEntries.isEmpty() &&
+               streamingEntry == null)
+        {
+            PendingEntry pendingEntry = pendingEntries.peek();
+            if (!pendingEntry.data.isDone() &&
+                pendingSize <= maxPendingSize)
+            {
+                break;
+            }
+
+            pendingEntries.remove();
+            pendingSize -= pendingEntry.size;
+
+            pendingEntry.entry.writeData(getData(pendingEntry.data));
+        }
+    }
+
+
+    /**
+     * Waits for the given future data and returns them.
+     */
+    private static ByteBuffer getData(Future<ByteBuffer> data) throws IOException
+    {
+        try
+        {
+            return data.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw (IOException)new InterruptedIOException("Interrupted while compressing zip entries in parallel").initCause(e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+
+    /**
+     * Creates a deflater without zlib header for the entry with the given
+     * name, as specified by the compression policy.
+     */
+    private Deflater createDeflater(String name)
+    {
+        Deflater deflater = new Deflater(compressionPolicy.getLevel(name), true);
+        deflater.setStrategy(compressionPolicy.getStrategy(name));
+
+        return deflater;
+    }
+
+
+    /**
+     * Returns the raw deflated data of the given uncompressed data, as
+     * written by a compressed zip entry output stream, ending the given
+     * deflater.
+     */
+    private static ByteBuffer deflate(Deflater deflater, byte[] bytes, int length)
+    {
+        // Make sure the memory is freed. [JDK-4797189]
+        try
+        {
+            deflater.setInput(bytes, 0, length);
+            deflater.finish();
+
+            ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream(Math.max(64, length / 2));
+            byte[]                buffer          = new byte[Math.max(64, Math.min(length, 64 * 1024))];
+
+            while (!deflater.finished())
+            {
+                int count = deflater.deflate(buffer);
+                compressedBytes.write(buffer, 0, count);
+            }
+
+            return ByteBuffer.wrap(compressedBytes.toByteArray());
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+
+    /**
+     * Writes out the remaining bytes of the given buffer to the zip output
+     * stream.
+     */
+    protected void writeBuffer(ByteBuffer buffer) throws IOException
+    {
+        if (buffer.hasArray())
+        {
+            outputStream.write(buffer.array(),
+                               buffer.arrayOffset() + buffer.position(),
+                               buffer.remaining());
+        }
+        else
+        {
+            byte[] bytes = new byte[Math.min(buffer.remaining(), 64 * 1024)];
+
+            while (buffer.hasRemaining())
+            {
+                int count = Math.min(buffer.remaining(), bytes.length);
+                buffer.get(bytes, 0, count);
+                outputStream.write(bytes, 0, count);
+            }
+        }
+    }
+
+
     /**
      * Provides a simple test for this class, creating a zip file with the
      * given name and a few aligned/compressed/uncompressed zip entries.
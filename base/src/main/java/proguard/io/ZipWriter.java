@@ -30,14 +30,16 @@ import java.io.*;
  */
 public class ZipWriter implements DataEntryWriter
 {
-    private final StringMatcher   uncompressedFilter;
-    private final int             uncompressedAlignment;
-    private final boolean         useZip64;
-    private final StringMatcher   extraUncompressedAlignmentFilter;
-    private final int             extraUncompressedAlignment;
-    private final int             modificationTime;
-    private final byte[]          header;
-    private final DataEntryWriter dataEntryWriter;
+    private final StringMatcher        uncompressedFilter;
+    private final int                  uncompressedAlignment;
+    private final boolean              useZip64;
+    private final StringMatcher        extraUncompressedAlignmentFilter;
+    private final int                  extraUncompressedAlignment;
+    private final int                  modificationTime;
+    private final byte[]               header;
+    private final ZipCompressionPolicy compressionPolicy;
+    private final boolean              streaming;
+    private final DataEntryWriter      dataEntryWriter;
 
     private DataEntry currentParentEntry;
     public  ZipOutput currentZipOutput;
@@ -117,6 +119,8 @@ public class ZipWriter implements DataEntryWriter
         this.extraUncompressedAlignment       = extraUncompressedAlignment;
         this.modificationTime                 = modificationTime;
         this.header                           = null;
+        this.compressionPolicy                = ZipCompressionPolicy.DEFAULT;
+        this.streaming                        = false;
         this.dataEntryWriter                  = dataEntryWriter;
     }
 
@@ -180,6 +184,8 @@ public class ZipWriter implements DataEntryWriter
         this.extraUncompressedAlignment       = extraUncompressedAlignment;
         this.modificationTime                 = modificationTime;
         this.header                           = header;
+        this.compressionPolicy                = ZipCompressionPolicy.DEFAULT;
+        this.streaming                        = false;
         this.dataEntryWriter                  = dataEntryWriter;
     }
 
@@ -207,6 +213,93 @@ public class ZipWriter implements DataEntryWriter
                      int             modificationTime,
                      byte[]          header,
                      DataEntryWriter dataEntryWriter)
+    {
+        this(uncompressedFilter,
+             uncompressedAlignment,
+             useZip64,
+             extraUncompressedAlignmentFilter,
+             extraUncompressedAlignment,
+             modificationTime,
+             header,
+             ZipCompressionPolicy.DEFAULT,
+             dataEntryWriter);
+    }
+
+
+    /**
+     * Creates a new ZipWriter.
+     * @param uncompressedFilter                an optional filter for files that should not
+     *                                          be compressed.
+     * @param uncompressedAlignment             the desired alignment for the data of
+     *                                          uncompressed entries.
+     * @param useZip64                          Whether to write out the archive in zip64 format.
+     * @param extraUncompressedAlignmentFilter  an optional filter for files that should not
+     *                                          be compressed and use a different alignment.
+     * @param extraUncompressedAlignment        the desired alignment for the data of
+     *                                          entries matching extraAlignmentFilter.
+     * @param modificationTime                  the modification date and time of the zip
+     *                                          entries, in DOS format.
+     * @param header                            an optional header for the zip files.
+     * @param compressionPolicy                 the policy for compressing the entries
+     *                                          that the filters allow to compress.
+     * @param dataEntryWriter                   the data entry writer that can provide
+     *                                          output streams for the zip archives.
+     */
+    public ZipWriter(StringMatcher        uncompressedFilter,
+                     int                  uncompressedAlignment,
+                     boolean              useZip64,
+                     StringMatcher        extraUncompressedAlignmentFilter,
+                     int                  extraUncompressedAlignment,
+                     int                  modificationTime,
+                     byte[]               header,
+                     ZipCompressionPolicy compressionPolicy,
+                     DataEntryWriter      dataEntryWriter)
+    {
+        this(uncompressedFilter,
+             uncompressedAlignment,
+             useZip64,
+             extraUncompressedAlignmentFilter,
+             extraUncompressedAlignment,
+             modificationTime,
+             header,
+             compressionPolicy,
+             false,
+             dataEntryWriter);
+    }
+
+
+    /**
+     * Creates a new ZipWriter.
+     * @param uncompressedFilter                an optional filter for files that should not
+     *                                          be compressed.
+     * @param uncompressedAlignment             the desired alignment for the data of
+     *                                          uncompressed entries.
+     * @param useZip64                          Whether to write out the archive in zip64 format.
+     * @param extraUncompressedAlignmentFilter  an optional filter for files that should not
+     *                                          be compressed and use a different alignment.
+     * @param extraUncompressedAlignment        the desired alignment for the data of
+     *                                          entries matching extraAlignmentFilter.
+     * @param modificationTime                  the modification date and time of the zip
+     *                                          entries, in DOS format.
+     * @param header                            an optional header for the zip files.
+     * @param compressionPolicy                 the policy for compressing the entries
+     *                                          that the filters allow to compress.
+     * @param streaming                         specifies whether the zip outputs should
+     *                                          stream their entries, instead of buffering
+     *                                          them in memory.
+     * @param dataEntryWriter                   the data entry writer that can provide
+     *                                          output streams for the zip archives.
+     */
+    public ZipWriter(StringMatcher        uncompressedFilter,
+                     int                  uncompressedAlignment,
+                     boolean              useZip64,
+                     StringMatcher        extraUncompressedAlignmentFilter,
+                     int                  extraUncompressedAlignment,
+                     int                  modificationTime,
+                     byte[]               header,
+                     ZipCompressionPolicy compressionPolicy,
+                     boolean              streaming,
+                     DataEntryWriter      dataEntryWriter)
     {
         this.uncompressedFilter               = uncompressedFilter;
         this.uncompressedAlignment            = uncompressedAlignment;
@@ -215,6 +308,8 @@ public class ZipWriter implements DataEntryWriter
         this.extraUncompressedAlignment       = extraUncompressedAlignment;
         this.modificationTime                 = modificationTime;
         this.header                           = header;
+        this.compressionPolicy                = compressionPolicy;
+        this.streaming                        = streaming;
         this.dataEntryWriter                  = dataEntryWriter;
     }
 
@@ -308,7 +403,8 @@ public class ZipWriter implements DataEntryWriter
     public void println(PrintWriter pw, String prefix)
     {
         pw.println(prefix + "ZipWriter (uncompressed filter = "+uncompressedFilter+", alignment = "+uncompressedAlignment+
-                   ", extraAlignmentFilter = "+extraUncompressedAlignmentFilter+", extraAlignment = "+extraUncompressedAlignment+")");
+                   ", extraAlignmentFilter = "+extraUncompressedAlignmentFilter+", extraAlignment = "+extraUncompressedAlignment+
+                   ", compression policy = "+compressionPolicy+", streaming = "+streaming+")");
         dataEntryWriter.println(pw, prefix + "  ");
     }
 
@@ -335,7 +431,8 @@ public class ZipWriter implements DataEntryWriter
 
 
     /**
-     * Creates a zip output with the given header and parameters.
+     * Creates a zip output with the given header and parameters, and with
+     * the compression policy of this writer.
      */
     protected ZipOutput createZipOutput(OutputStream  outputStream,
                                         byte[]        header,
@@ -343,12 +440,39 @@ public class ZipWriter implements DataEntryWriter
                                         boolean       useZip64,
                                         String        comment)
     throws IOException
+    {
+        return createZipOutput(outputStream,
+                               header,
+                               uncompressedAlignment,
+                               useZip64,
+                               comment,
+                               compressionPolicy);
+    }
+
+
+    /**
+     * Creates a zip output with the given header, parameters, and
+     * compression policy. By default, this writer only creates its zip
+     * outputs through {@link #createZipOutput(OutputStream, byte[], int, boolean, String)},
+     * which invokes this method.
+     */
+    protected ZipOutput createZipOutput(OutputStream         outputStream,
+                                        byte[]               header,
+                                        int                  uncompressedAlignment,
+                                        boolean              useZip64,
+                                        String               comment,
+                                        ZipCompressionPolicy compressionPolicy)
+    throws IOException
     {
         return new ZipOutput(outputStream,
                              header,
                              uncompressedAlignment,
                              useZip64,
-                             comment);
+                             comment,
+                             compressionPolicy,
+                             null,
+                             0L,
+                             streaming);
     }
 
 
@@ -19,18 +19,22 @@
 package proguard.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import proguard.analysis.Metrics;
 import proguard.analysis.Metrics.MetricType;
+import proguard.analysis.datastructure.CodeLocation;
 import proguard.analysis.datastructure.callgraph.Call;
 import proguard.analysis.datastructure.callgraph.CallGraph;
+import proguard.analysis.datastructure.callgraph.CompactCallGraph;
 import proguard.analysis.datastructure.callgraph.Node;
 import proguard.classfile.MethodSignature;
 
@@ -84,9 +88,8 @@ public class CallGraphWalker
                                                      int maxWidth)
     {
         Set<MethodSignature> visited = new HashSet<>();
-        explore(callGraph,
-                start,
-                CallGraphWalker::calculateSuccessors,
+        explore(start,
+                n -> calculateSuccessors(callGraph, n),
                 n -> visited.add(n.signature),
                 maxDepth,
                 maxWidth);
@@ -124,9 +127,8 @@ public class CallGraphWalker
                                                        int maxWidth)
     {
         Set<MethodSignature> visited = new HashSet<>();
-        explore(callGraph,
-                start,
-                CallGraphWalker::calculatePredecessors,
+        explore(start,
+                n -> calculatePredecessors(callGraph, n),
                 n -> visited.add(n.signature),
                 maxDepth,
                 maxWidth);
@@ -186,9 +188,8 @@ public class CallGraphWalker
                                             int maxDepth,
                                             int maxWidth)
     {
-        return explore(callGraph,
-                       start,
-                       CallGraphWalker::calculateSuccessors,
+        return explore(start,
+                       n -> calculateSuccessors(callGraph, n),
                        handler,
                        maxDepth,
                        maxWidth);
@@ -229,9 +230,8 @@ public class CallGraphWalker
                                               int maxDepth,
                                               int maxWidth)
     {
-        return explore(callGraph,
-                       start,
-                       CallGraphWalker::calculatePredecessors,
+        return explore(start,
+                       n -> calculatePredecessors(callGraph, n),
                        handler,
                        maxDepth,
                        maxWidth);
@@ -252,12 +252,155 @@ public class CallGraphWalker
         return predecessorPathsAccept(callGraph, start, handler, MAX_DEPTH_DEFAULT, MAX_WIDTH_DEFAULT);
     }
 
+    /**
+     * Like {@link #getSuccessors(CallGraph, MethodSignature, int, int)}, but exploring a {@link CompactCallGraph}
+     * directly on its method ids, without creating any {@link Node}s. Methods that have already been found
+     * count toward the maximum width in the same way.
+     *
+     * @param callGraph The {@link CompactCallGraph} to use as the basis for this exploration
+     * @param start     The method that is to be used as the exploration root
+     * @param maxDepth  See {@link #MAX_DEPTH_DEFAULT}
+     * @param maxWidth  See {@link #MAX_WIDTH_DEFAULT}
+     * @return A set of all transitively reachable methods
+     */
+    public static Set<MethodSignature> getSuccessors(CompactCallGraph callGraph,
+                                                     MethodSignature  start,
+                                                     int              maxDepth,
+                                                     int              maxWidth)
+    {
+        return reachableMethods(callGraph, start, true, maxDepth, maxWidth);
+    }
+
+    /**
+     * Like {@link #getSuccessors(CompactCallGraph, MethodSignature, int, int)} but using default
+     * values for max depth and max width.
+     *
+     * @param callGraph The {@link CompactCallGraph} to use as the basis for this exploration
+     * @param start     The method that is to be used as the exploration root
+     * @return A set of all transitively reachable methods
+     */
+    public static Set<MethodSignature> getSuccessors(CompactCallGraph callGraph, MethodSignature start)
+    {
+        return getSuccessors(callGraph, start, MAX_DEPTH_DEFAULT, MAX_WIDTH_DEFAULT);
+    }
+
+    /**
+     * Like {@link #getPredecessors(CallGraph, MethodSignature, int, int)}, but exploring a {@link CompactCallGraph}
+     * directly on its method ids, without creating any {@link Node}s. Methods that have already been found
+     * count toward the maximum width in the same way.
+     *
+     * @param callGraph The {@link CompactCallGraph} to use as the basis for this exploration
+     * @param start     The method that is to be used as the exploration root
+     * @param maxDepth  See {@link #MAX_DEPTH_DEFAULT}
+     * @param maxWidth  See {@link #MAX_WIDTH_DEFAULT}
+     * @return A set of all methods that can transitively reach the root
+     */
+    public static Set<MethodSignature> getPredecessors(CompactCallGraph callGraph,
+                                                       MethodSignature  start,
+                                                       int              maxDepth,
+                                                       int              maxWidth)
+    {
+        return reachableMethods(callGraph, start, false, maxDepth, maxWidth);
+    }
+
+    /**
+     * Like {@link #getPredecessors(CompactCallGraph, MethodSignature, int, int)} but using default
+     * values for max depth and max width.
+     *
+     * @param callGraph The {@link CompactCallGraph} to use as the basis for this exploration
+     * @param start     The method that is to be used as the exploration root
+     * @return A set of all methods that can transitively reach the root
+     */
+    public static Set<MethodSignature> getPredecessors(CompactCallGraph callGraph, MethodSignature start)
+    {
+        return getPredecessors(callGraph, start, MAX_DEPTH_DEFAULT, MAX_WIDTH_DEFAULT);
+    }
+
+    /**
+     * Like {@link #successorPathsAccept(CallGraph, MethodSignature, Predicate, int, int)}, but
+     * exploring a {@link CompactCallGraph}.
+     *
+     * @param callGraph The {@link CompactCallGraph} to use as the basis of this exploration
+     * @param start     The method that is to be used as the exploration root
+     * @param handler   The callback function that is invoked for newly visited paths. If this returns false,
+     *                  this specific path is not explored any further, without marking it as truncated.
+     * @param maxDepth  See {@link #MAX_DEPTH_DEFAULT}
+     * @param maxWidth  See {@link #MAX_WIDTH_DEFAULT}
+     * @return The {@link Node} representing the start method and all its successors
+     */
+    public static Node successorPathsAccept(CompactCallGraph callGraph,
+                                            MethodSignature  start,
+                                            Predicate<Node>  handler,
+                                            int              maxDepth,
+                                            int              maxWidth)
+    {
+        return explore(start,
+                       n -> calculateSuccessors(callGraph, n),
+                       handler,
+                       maxDepth,
+                       maxWidth);
+    }
+
+    /**
+     * Like {@link #successorPathsAccept(CompactCallGraph, MethodSignature, Predicate, int, int)}
+     * but using default values for max depth and max width.
+     *
+     * @param callGraph The {@link CompactCallGraph} to use as the basis of this exploration
+     * @param start     The method that is to be used as the exploration root
+     * @param handler   The callback function that is invoked for newly visited paths. If this returns false,
+     *                  this specific path is not explored any further, without marking it as truncated.
+     * @return The {@link Node} representing the start method and all its successors
+     */
+    public static Node successorPathsAccept(CompactCallGraph callGraph, MethodSignature start, Predicate<Node> handler)
+    {
+        return successorPathsAccept(callGraph, start, handler, MAX_DEPTH_DEFAULT, MAX_WIDTH_DEFAULT);
+    }
+
+    /**
+     * Like {@link #predecessorPathsAccept(CallGraph, MethodSignature, Predicate, int, int)}, but
+     * exploring a {@link CompactCallGraph}.
+     *
+     * @param callGraph The {@link CompactCallGraph} to use as the basis of this exploration
+     * @param start     The method that is to be used as the exploration root
+     * @param handler   The callback function that is invoked for newly visited paths. If this returns false,
+     *                  this specific path is not explored any further, without marking it as truncated.
+     * @param maxDepth  See {@link #MAX_DEPTH_DEFAULT}
+     * @param maxWidth  See {@link #MAX_WIDTH_DEFAULT}
+     * @return The {@link Node} representing the start method and all its predecessors
+     */
+    public static Node predecessorPathsAccept(CompactCallGraph callGraph,
+                                              MethodSignature  start,
+                                              Predicate<Node>  handler,
+                                              int              maxDepth,
+                                              int              maxWidth)
+    {
+        return explore(start,
+                       n -> calculatePredecessors(callGraph, n),
+                       handler,
+                       maxDepth,
+                       maxWidth);
+    }
+
+    /**
+     * Like {@link #predecessorPathsAccept(CompactCallGraph, MethodSignature, Predicate, int, int)}
+     * but using default values for max depth and max width.
+     *
+     * @param callGraph The {@link CompactCallGraph} to use as the basis of this exploration
+     * @param start     The method that is to be used as the exploration root
+     * @param handler   The callback function that is invoked for newly visited paths. If this returns false,
+     *                  this specific path is not explored any further, without marking it as truncated.
+     * @return The {@link Node} representing the start method and all its predecessors
+     */
+    public static Node predecessorPathsAccept(CompactCallGraph callGraph, MethodSignature start, Predicate<Node> handler)
+    {
+        return predecessorPathsAccept(callGraph, start, handler, MAX_DEPTH_DEFAULT, MAX_WIDTH_DEFAULT);
+    }
+
     /**
      * Generic call graph exploration function. The reachable methods are visited in a breadth-first way.
      * The direction of this procedure (i.e. if the call graph is explored through outgoing or incoming
      * edges) is determined by a user-provided function.
      *
-     * @param callGraph The {@link CallGraph} to use as the basis of this exploration
      * @param start     The method that is to be used as the exploration root
      * @param getNext   After all methods of the current depth have been visited, this method
      *                  is used to determine the methods of the next level. E.g. if we want to
@@ -272,9 +415,8 @@ public class CallGraphWalker
      * @return The {@link Node} representing the start method and all its successors/predecessors (depending
      *     on the concrete implementation of getNext
      */
-    private static Node explore(CallGraph callGraph,
-                                MethodSignature start,
-                                BiFunction<CallGraph, Node, Collection<Node>> getNext,
+    private static Node explore(MethodSignature start,
+                                Function<Node, Collection<Node>> getNext,
                                 Predicate<Node> handler,
                                 int maxDepth,
                                 int maxWidth)
@@ -292,7 +434,7 @@ public class CallGraphWalker
                 worklist.forEach(n -> n.isTruncated = true);
                 break;
             }
-            worklist = currentLevelAccept(callGraph, getNext, handler, worklist, maxWidth);
+            worklist = currentLevelAccept(getNext, handler, worklist, maxWidth);
             currLevel++;
         }
 
@@ -303,7 +445,6 @@ public class CallGraphWalker
      * Visit all the nodes of the current depth in the call graph, forward them to the provided
      * handler function and make sure that the next level is prepared.
      *
-     * @param callGraph The {@link CallGraph} to use as the basis of this exploration
      * @param getNext   After all methods of the current depth have been visited, this method
      *                  is used to determine the methods of the next level. E.g. if we want to
      *                  visit the call graph in the outgoing/successor direction, this function
@@ -316,8 +457,7 @@ public class CallGraphWalker
      * @return The nodes of the next level, making sure that the depth and width limits of the call
      *     graph won't be exceeded
      */
-    private static ArrayList<Node> currentLevelAccept(CallGraph callGraph,
-                                                      BiFunction<CallGraph, Node, Collection<Node>> getNext,
+    private static ArrayList<Node> currentLevelAccept(Function<Node, Collection<Node>> getNext,
                                                       Predicate<Node> handler,
                                                       ArrayList<Node> worklist,
                                                       int maxWidth)
@@ -331,7 +471,7 @@ public class CallGraphWalker
                 continue;
             }
 
-            for (Node next : getNext.apply(callGraph, curr))
+            for (Node next : getNext.apply(curr))
             {
                 if (nextLevel.size() >= maxWidth)
                 {
@@ -360,16 +500,7 @@ public class CallGraphWalker
                 log.error("Call graph edge {} does not have a method as the caller member!", i);
                 continue;
             }
-            // Only add the caller to the chain if this doesn't create a loop
-            if (!curr.successorsContain((MethodSignature) i.caller.signature))
-            {
-                Node prev = new Node((MethodSignature) i.caller.signature);
-                curr.predecessors.add(prev);
-                curr.incomingCallLocations.add(i.caller);
-                prev.successors.add(curr);
-                prev.outgoingCallLocations.add(i.caller);
-                predecessors.add(prev);
-            }
+            addPredecessor(curr, (MethodSignature) i.caller.signature, i.caller, predecessors);
         }
         return predecessors;
     }
@@ -382,17 +513,214 @@ public class CallGraphWalker
         Set<Node> successors = new HashSet<>();
         for (Call i : callGraph.outgoing.getOrDefault(curr.signature, Collections.emptySet()))
         {
-            // Only add the caller to the chain if this doesn't create a loop
-            if (!curr.predecessorsContain(i.getTarget()))
+            addSuccessor(curr, i.getTarget(), i.caller, successors);
+        }
+        return successors;
+    }
+
+    /**
+     * Return all direct predecessors of curr in this compact callgraph.
+     */
+    private static Set<Node> calculatePredecessors(CompactCallGraph callGraph, Node curr)
+    {
+        Set<Node> predecessors = new HashSet<>();
+        int       methodId     = callGraph.getMethodId(curr.signature);
+        if (methodId >= 0)
+        {
+            int callCount = callGraph.getIncomingCallCount(methodId);
+            for (int index = 0; index < callCount; index++)
+            {
+                int call = callGraph.getIncomingCall(methodId, index);
+                addPredecessor(curr,
+                               callGraph.getMethod(callGraph.getCaller(call)),
+                               callGraph.getCallLocation(call),
+                               predecessors);
+            }
+        }
+        return predecessors;
+    }
+
+    /**
+     * Return all direct successors of curr in this compact callgraph.
+     */
+    private static Set<Node> calculateSuccessors(CompactCallGraph callGraph, Node curr)
+    {
+        Set<Node> successors = new HashSet<>();
+        int       methodId   = callGraph.getMethodId(curr.signature);
+        if (methodId >= 0)
+        {
+            int callCount = callGraph.getOutgoingCallCount(methodId);
+            for (int index = 0; index < callCount; index++)
             {
-                Node successor = new Node(i.getTarget());
-                curr.successors.add(successor);
-                curr.outgoingCallLocations.add(i.caller);
-                successor.predecessors.add(curr);
-                successor.incomingCallLocations.add(i.caller);
-                successors.add(successor);
+                int call = callGraph.getOutgoingCall(methodId, index);
+                addSuccessor(curr,
+                             callGraph.getMethod(callGraph.getTarget(call)),
+                             callGraph.getCallLocation(call),
+                             successors);
             }
         }
         return successors;
     }
+
+    /**
+     * Link a new predecessor node for the given caller to curr, unless this creates a loop.
+     */
+    private static void addPredecessor(Node curr, MethodSignature caller, CodeLocation callLocation, Set<Node> predecessors)
+    {
+        // Only add the caller to the chain if this doesn't create a loop
+        if (!curr.successorsContain(caller))
+        {
+            Node prev = new Node(caller);
+            curr.predecessors.add(prev);
+            curr.incomingCallLocations.add(callLocation);
+            prev.successors.add(curr);
+            prev.outgoingCallLocations.add(callLocation);
+            predecessors.add(prev);
+        }
+    }
+
+    /**
+     * Link a new successor node for the given target to curr, unless this creates a loop.
+     */
+    private static void addSuccessor(Node curr, MethodSignature target, CodeLocation callLocation, Set<Node> successors)
+    {
+        // Only add the caller to the chain if this doesn't create a loop
+        if (!curr.predecessorsContain(target))
+        {
+            Node successor = new Node(target);
+            curr.successors.add(successor);
+            curr.outgoingCallLocations.add(callLocation);
+            successor.predecessors.add(curr);
+            successor.incomingCallLocations.add(callLocation);
+            successors.add(successor);
+        }
+    }
+
+    /**
+     * Collect the methods that are reachable from start in the compact callgraph,
+     * breadth-first, in the outgoing or in the incoming direction. The levels
+     * contain the same entries as the levels of {@link #explore}, including
+     * methods that have already been found, so they are truncated at the same
+     * width. Each entry only stores its method id and the index of the entry
+     * from which it was found.
+     */
+    private static Set<MethodSignature> reachableMethods(CompactCallGraph callGraph,
+                                                         MethodSignature  start,
+                                                         boolean          successors,
+                                                         int              maxDepth,
+                                                         int              maxWidth)
+    {
+        Set<MethodSignature> reachable = new HashSet<>();
+        if (maxDepth <= 0)
+        {
+            Metrics.increaseCount(MetricType.CALL_GRAPH_RECONSTRUCTION_MAX_DEPTH_REACHED);
+            return reachable;
+        }
+
+        reachable.add(start);
+        int startId = callGraph.getMethodId(start);
+        if (startId < 0)
+        {
+            return reachable;
+        }
+
+        int    methodCount  = callGraph.getMethodCount();
+        int    capacity     = Math.max(16, Math.min(maxWidth, methodCount));
+        int[]  entryMethods = new int[capacity];
+        int[]  entryParents = new int[capacity];
+        int    entryCount   = 1;
+        BitSet visited      = new BitSet(methodCount);
+
+        // The entry that last added each method to the next level, plus one,
+        // to add every method only once per entry.
+        int[] addingEntries = new int[methodCount];
+
+        entryMethods[0] = startId;
+        entryParents[0] = -1;
+
+        int levelStart = 0;
+        int levelEnd   = 1;
+        for (int depth = 0; levelStart < levelEnd; depth++)
+        {
+            if (depth >= maxDepth)
+            {
+                Metrics.increaseCount(MetricType.CALL_GRAPH_RECONSTRUCTION_MAX_DEPTH_REACHED);
+                break;
+            }
+
+            for (int entry = levelStart; entry < levelEnd; entry++)
+            {
+                // Only explore each method once.
+                int methodId = entryMethods[entry];
+                if (visited.get(methodId))
+                {
+                    continue;
+                }
+                visited.set(methodId);
+                reachable.add(callGraph.getMethod(methodId));
+
+                int callCount = successors ?
+                    callGraph.getOutgoingCallCount(methodId) :
+                    callGraph.getIncomingCallCount(methodId);
+
+                for (int index = 0; index < callCount; index++)
+                {
+                    int nextId = successors ?
+                        callGraph.getTarget(callGraph.getOutgoingCall(methodId, index)) :
+                        callGraph.getCaller(callGraph.getIncomingCall(methodId, index));
+
+                    // Skip the same loops as addSuccessor and addPredecessor.
+                    if (addingEntries[nextId] == entry + 1 ||
+                        (successors ?
+                            nextId == methodId :
+                            pathContains(entryMethods, entryParents, entry, nextId)))
+                    {
+                        continue;
+                    }
+                    addingEntries[nextId] = entry + 1;
+
+                    if (entryCount - levelEnd >= maxWidth)
+                    {
+                        Metrics.increaseCount(MetricType.CALL_GRAPH_RECONSTRUCTION_MAX_WIDTH_REACHED);
+                    }
+                    else
+                    {
+                        if (entryCount == entryMethods.length)
+                        {
+                            entryMethods = Arrays.copyOf(entryMethods, entryCount * 2);
+                            entryParents = Arrays.copyOf(entryParents, entryCount * 2);
+                        }
+                        entryMethods[entryCount]   = nextId;
+                        entryParents[entryCount++] = entry;
+                    }
+                }
+            }
+
+            levelStart = levelEnd;
+            levelEnd   = entryCount;
+        }
+
+        return reachable;
+    }
+
+
+    /**
+     * Returns whether the given method is the method of the given entry or
+     * of any entry from which it was found.
+     */
+    private static boolean pathContains(int[] entryMethods,
+                                        int[] entryParents,
+                                        int   entry,
+                                        int   methodId)
+    {
+        for (; entry >= 0; entry = entryParents[entry])
+        {
+            if (entryMethods[entry] == methodId)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
 }
@@ -0,0 +1,167 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.shouldBe
+import proguard.analysis.datastructure.callgraph.CallGraph
+import proguard.analysis.datastructure.callgraph.CallGraphSnapshot
+import proguard.classfile.AccessConstants
+import proguard.classfile.ClassPool
+import proguard.classfile.ProgramClass
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.editor.ClassBuilder
+import proguard.testutils.ClassPoolBuilder
+import proguard.testutils.ClassPools
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.file.Paths
+
+class CallGraphSnapshotTest : FreeSpec({
+
+    val topLevel = Paths.get("src", "test", "resources", "callResolver", "hierarchy")
+
+    fun resolve(classPools: ClassPools, callGraph: CallGraph, classNames: Set<String>? = null) {
+        val resolver = CallResolver.Builder(classPools.programClassPool, classPools.libraryClassPool, callGraph)
+            .setUseDominatorAnalysis(true)
+            .setEvaluateAllCode(true)
+            .setSkipIncompleteCalls(false)
+            .build()
+        if (classNames == null) {
+            classPools.programClassPool.classesAccept(resolver)
+        } else {
+            classNames.forEach { classPools.programClassPool.classAccept(it, resolver) }
+        }
+    }
+
+    // The calls of a call graph, independent of their objects.
+    fun calls(callGraph: CallGraph): Set<String> =
+        callGraph.outgoing.values.flatten().map {
+            "$it ${it.caller.line} ${it.controlFlowDependent} ${it.runtimeTypeDependent} ${it.javaClass.simpleName} ${it.instruction}"
+        }.toSet()
+
+    val classPools = ClassPoolBuilder.fromDirectory(topLevel.toFile())
+    val callGraph = CallGraph()
+    resolve(classPools, callGraph)
+
+    val file = File.createTempFile("callgraph", ".snapshot")
+    file.deleteOnExit()
+    CallGraphSnapshot.create(classPools.programClassPool, classPools.libraryClassPool, callGraph).write(file)
+
+    "Given a snapshot that is loaded for the same classes" - {
+        val loadedCallGraph = CallGraph()
+        val unresolvedClassNames = CallGraphSnapshot.read(file).load(classPools.programClassPool, classPools.libraryClassPool, loadedCallGraph)
+
+        "Then all classes are resolved" {
+            unresolvedClassNames.shouldBeEmpty()
+        }
+
+        "Then the call graph contains the same calls" {
+            calls(loadedCallGraph) shouldBe calls(callGraph)
+            loadedCallGraph.incoming.keys shouldBe callGraph.incoming.keys
+        }
+
+        "Then the calls are linked to the classes in the class pool" {
+            loadedCallGraph.outgoing.values.flatten().forEach {
+                classPools.programClassPool.getClass(it.caller.clazz.name) shouldBe it.caller.clazz
+            }
+        }
+    }
+
+    "Given a snapshot that is loaded for a changed class" - {
+        val changedClassPools = ClassPoolBuilder.fromDirectory(topLevel.toFile())
+        val changedClass = changedClassPools.programClassPool.getClass("A") as ProgramClass
+        changedClass.u4version = changedClass.u4version xor 1
+
+        val loadedCallGraph = CallGraph()
+        val unresolvedClassNames = CallGraphSnapshot.read(file).load(changedClassPools.programClassPool, changedClassPools.libraryClassPool, loadedCallGraph)
+
+        "Then only the changed class needs to be resolved again" {
+            unresolvedClassNames shouldBe setOf("A")
+        }
+
+        "Then resolving the changed class completes the call graph" {
+            resolve(changedClassPools, loadedCallGraph, unresolvedClassNames)
+            calls(loadedCallGraph) shouldBe calls(callGraph)
+        }
+    }
+
+    "Given a snapshot that is loaded after a method was added to a superclass of called classes" - {
+        val changedClassPools = ClassPoolBuilder.fromDirectory(topLevel.toFile())
+        ClassBuilder(changedClassPools.programClassPool.getClass("NotOverridden") as ProgramClass)
+            .addMethod(AccessConstants.PUBLIC, "test", "()V", 10) { code -> code.return_() }
+
+        val loadedCallGraph = CallGraph()
+        val unresolvedClassNames = CallGraphSnapshot.read(file).load(changedClassPools.programClassPool, changedClassPools.libraryClassPool, loadedCallGraph)
+
+        "Then the classes whose calls may resolve to the new method need to be resolved again" {
+            unresolvedClassNames shouldBe setOf("Main", "NotOverridden", "SubNotOverridden")
+        }
+
+        "Then resolving them gives the same calls as resolving all classes again" {
+            resolve(changedClassPools, loadedCallGraph, unresolvedClassNames)
+            val expectedCallGraph = CallGraph()
+            resolve(changedClassPools, expectedCallGraph)
+            calls(loadedCallGraph) shouldBe calls(expectedCallGraph)
+        }
+    }
+
+    "Given a snapshot that is loaded for a class pool with a new class" - {
+        val loadedCallGraph = CallGraph()
+        val programClassPool = ClassPool(classPools.programClassPool)
+        programClassPool.addClass(ClassBuilder(CLASS_VERSION_1_8, AccessConstants.PUBLIC, "New", "java/lang/Object").programClass)
+
+        "Then the new class and the classes that call methods of its superclass virtually need to be resolved" {
+            // Main calls Object#toString, which the new class might override.
+            CallGraphSnapshot.read(file).load(programClassPool, classPools.libraryClassPool, loadedCallGraph) shouldBe setOf("Main", "New")
+        }
+    }
+
+    "Given snapshot files with corrupt counts or indices" - {
+        val validBytes = file.readBytes()
+        val corruptFile = File.createTempFile("corrupt", ".snapshot")
+        corruptFile.deleteOnExit()
+
+        "Then reading them fails with IOExceptions only" {
+            for (offset in 8 until validBytes.size - 4) {
+                for (value in listOf(-2, Int.MAX_VALUE)) {
+                    corruptFile.writeBytes(validBytes.copyOf().also { ByteBuffer.wrap(it).putInt(offset, value) })
+                    try {
+                        CallGraphSnapshot.read(corruptFile)
+                    } catch (e: IOException) {
+                        // The corruption was detected.
+                    }
+                }
+            }
+        }
+    }
+
+    "Given a file that isn't a snapshot" - {
+        val otherFile = File.createTempFile("other", ".snapshot")
+        otherFile.deleteOnExit()
+        otherFile.writeText("Not a snapshot")
+
+        "Then it can't be read" {
+            shouldThrow<IOException> { CallGraphSnapshot.read(otherFile) }
+        }
+    }
+})
@@ -0,0 +1,150 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.analysis.Metrics.MetricType
+import proguard.analysis.datastructure.CodeLocation
+import proguard.analysis.datastructure.callgraph.CallGraph
+import proguard.analysis.datastructure.callgraph.CompactCallGraph
+import proguard.analysis.datastructure.callgraph.Node
+import proguard.analysis.datastructure.callgraph.SymbolicCall
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.MethodSignature
+import proguard.classfile.ProgramClass
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.instruction.ConstantInstruction
+import proguard.classfile.instruction.Instruction
+import proguard.evaluation.value.Value
+import proguard.util.CallGraphWalker
+import kotlin.random.Random
+
+class CompactCallGraphTest : FreeSpec({
+
+    val classBuilder = ClassBuilder(CLASS_VERSION_1_8, PUBLIC, "Test", "java/lang/Object")
+    (0 until 20).forEach { classBuilder.addMethod(PUBLIC, "method$it", "()V") }
+    val clazz: ProgramClass = classBuilder.programClass
+    val methods = clazz.methods.map { MethodSignature.computeIfAbsent(clazz, it) }
+    val invokestatic = ConstantInstruction(Instruction.OP_INVOKESTATIC, 0)
+
+    fun call(caller: Int, offset: Int, target: Int, controlFlowDependent: Boolean = false) =
+        SymbolicCall(CodeLocation(clazz, clazz.methods[caller], offset, -1), methods[target], Value.NEVER, invokestatic, controlFlowDependent, false)
+
+    // Canonical form of the paths below a node, ignoring the order of the sets.
+    fun paths(node: Node, successors: Boolean): String =
+        node.signature.toString() + node.isTruncated +
+            (if (successors) node.successors else node.predecessors).map { paths(it, successors) }.sorted()
+
+    "Given a small call graph" - {
+        val callGraph = CallGraph()
+        callGraph.addCall(call(0, 0, 1))
+        callGraph.addCall(call(0, 4, 2, true))
+        callGraph.addCall(call(1, 2, 3))
+        callGraph.addCall(call(2, 3, 3))
+        callGraph.addCall(call(3, 0, 0))
+        val compactCallGraph = CompactCallGraph(callGraph)
+
+        "Then it contains all methods and calls" {
+            compactCallGraph.methodCount shouldBe 4
+            compactCallGraph.callCount shouldBe 5
+            compactCallGraph.getMethodId(methods[5]) shouldBe -1
+        }
+
+        "Then the calls have the right callers, targets, and attributes" {
+            val method0 = compactCallGraph.getMethodId(methods[0])
+            compactCallGraph.getOutgoingCallCount(method0) shouldBe 2
+            val calls = (0 until 2).map { compactCallGraph.getOutgoingCall(method0, it) }
+            calls.map { compactCallGraph.getMethod(compactCallGraph.getTarget(it)) } shouldBe listOf(methods[1], methods[2])
+            calls.map { compactCallGraph.getCallLocation(it).offset } shouldBe listOf(0, 4)
+            calls.map { compactCallGraph.isCertainlyCalled(it) } shouldBe listOf(true, false)
+            calls.map { compactCallGraph.getOpcode(it) } shouldBe listOf(Instruction.OP_INVOKESTATIC, Instruction.OP_INVOKESTATIC)
+        }
+
+        "Then the incoming calls have the right callers" {
+            val method3 = compactCallGraph.getMethodId(methods[3])
+            compactCallGraph.getIncomingCallCount(method3) shouldBe 2
+            (0 until 2).map { compactCallGraph.getMethod(compactCallGraph.getCaller(compactCallGraph.getIncomingCall(method3, it))) }
+                .toSet() shouldBe setOf(methods[1], methods[2])
+        }
+
+        "Then the reachable methods respect the maximum depth" {
+            CallGraphWalker.getSuccessors(compactCallGraph, methods[0], 2, 100) shouldBe setOf(methods[0], methods[1], methods[2])
+            CallGraphWalker.getPredecessors(compactCallGraph, methods[0], 2, 100) shouldBe setOf(methods[0], methods[3])
+            CallGraphWalker.getSuccessors(compactCallGraph, methods[5]) shouldBe setOf(methods[5])
+        }
+    }
+
+    "Given a call graph in which methods are found again" - {
+        val callGraph = CallGraph()
+        callGraph.addCall(call(0, 0, 1))
+        callGraph.addCall(call(1, 0, 0))
+        callGraph.addCall(call(1, 1, 2))
+        callGraph.addCall(call(3, 0, 0))
+        callGraph.addCall(call(3, 1, 1))
+        callGraph.addCall(call(2, 0, 1))
+        callGraph.addCall(call(2, 1, 3))
+        val compactCallGraph = CompactCallGraph(callGraph)
+
+        fun widthReached(walk: () -> Set<MethodSignature>): Pair<Set<MethodSignature>, Int?> {
+            Metrics.flush()
+            val reachable = walk()
+            return reachable to Metrics.counts[MetricType.CALL_GRAPH_RECONSTRUCTION_MAX_WIDTH_REACHED]
+        }
+
+        "Then the methods that have been found count toward the maximum width" {
+            widthReached { CallGraphWalker.getSuccessors(compactCallGraph, methods[0], 2, 1) } shouldBe
+                (setOf(methods[0], methods[1]) to 1)
+            widthReached { CallGraphWalker.getSuccessors(callGraph, methods[0], 2, 1) } shouldBe
+                (setOf(methods[0], methods[1]) to 1)
+            widthReached { CallGraphWalker.getPredecessors(compactCallGraph, methods[0], 2, 2) } shouldBe
+                (setOf(methods[0], methods[1], methods[3]) to 1)
+            widthReached { CallGraphWalker.getPredecessors(callGraph, methods[0], 2, 2) } shouldBe
+                (setOf(methods[0], methods[1], methods[3]) to 1)
+        }
+    }
+
+    "Given a random call graph" - {
+        val random = Random(1)
+        val callGraph = CallGraph()
+        (0 until 60).forEach { callGraph.addCall(call(random.nextInt(20), random.nextInt(50), random.nextInt(20))) }
+        val compactCallGraph = CompactCallGraph(callGraph)
+
+        "Then the reachable methods are the same as in the call graph" {
+            methods.forEach { method ->
+                (1..4).forEach { depth ->
+                    CallGraphWalker.getSuccessors(compactCallGraph, method, depth, 1000) shouldBe
+                        CallGraphWalker.getSuccessors(callGraph, method, depth, 1000)
+                    CallGraphWalker.getPredecessors(compactCallGraph, method, depth, 1000) shouldBe
+                        CallGraphWalker.getPredecessors(callGraph, method, depth, 1000)
+                }
+            }
+        }
+
+        "Then the paths are the same as in the call graph" {
+            methods.forEach { method ->
+                paths(CallGraphWalker.successorPathsAccept(compactCallGraph, method, { true }, 3, 1000), true) shouldBe
+                    paths(CallGraphWalker.successorPathsAccept(callGraph, method, { true }, 3, 1000), true)
+                paths(CallGraphWalker.predecessorPathsAccept(compactCallGraph, method, { true }, 3, 1000), false) shouldBe
+                    paths(CallGraphWalker.predecessorPathsAccept(callGraph, method, { true }, 3, 1000), false)
+            }
+        }
+    }
+})
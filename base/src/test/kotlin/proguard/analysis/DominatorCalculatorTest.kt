@@ -33,8 +33,9 @@ import proguard.classfile.attribute.visitor.AttributeVisitor
 import proguard.classfile.instruction.Instruction
 import proguard.classfile.visitor.ClassVisitor
 import proguard.classfile.visitor.MemberVisitor
-import java.util.BitSet
-import kotlin.streams.asSequence
+
+// The maximum length of the code in the tests.
+private const val MAX_CODE_LENGTH = 64
 
 class DominatorCalculatorTest : FreeSpec({
 
@@ -77,18 +78,15 @@ class DominatorCalculatorTest : FreeSpec({
 
     /**
      * In order to thoroughly test the calculator,
-     * we need access to the raw dominator map.
-     * This is private, so we're retrieving it via
-     * reflection.
+     * we need the complete dominator set of an
+     * offset, so we're collecting all offsets in
+     * the test code that dominate it.
      */
-    fun DominatorCalculator.getDominators(offset: Int): Set<Int> {
-        val dominatorMapField = this.javaClass.declaredFields
-            .find { it.name == "dominatorMap" }!!
-        dominatorMapField.isAccessible = true
-        val dominatorMap = dominatorMapField.get(this) as Map<Int, BitSet>
+    fun DominatorCalculator.getDominators(offset: Int): Set<Int> =
+        (ENTRY_NODE_OFFSET until MAX_CODE_LENGTH).filter { dominates(it, offset) }.toSet()
 
-        return dominatorMap[offset]!!.stream().asSequence().map { it - 2 }.toSet()
-    }
+    fun DominatorCalculator.getPostDominators(offset: Int): Set<Int> =
+        (ENTRY_NODE_OFFSET until MAX_CODE_LENGTH).filter { postDominates(it, offset) }.toSet()
 
     "Simple" {
         val code = byteArrayOf(
@@ -546,6 +544,128 @@ class DominatorCalculatorTest : FreeSpec({
         calculator.getDominators(EXIT_NODE_OFFSET) shouldBe setOf(ENTRY_NODE_OFFSET, 8, EXIT_NODE_OFFSET)
     }
 
+    "Post-dominators and dominance frontiers of a branch" {
+        val code = byteArrayOf(
+            Instruction.OP_BIPUSH, 42, //     0  bipush 42
+            Instruction.OP_IFICMPNE, 0, 8, // 2  if_icmpne 10 (+8)
+            Instruction.OP_BIPUSH, 43, //     5  bipush 43
+            Instruction.OP_GOTO, 0, 5, //     7  goto 12 (+5)
+            Instruction.OP_BIPUSH, 44, //     10 bipush 44
+            Instruction.OP_BIPUSH, 45, //     12 bipush 45
+            Instruction.OP_RETURN //          14 return
+        )
+        val clazz = NamedClass("Test")
+        val method = NamedMember("", "()V")
+        val codeAttribute = CodeAttribute(0, 1, 0, code.size, code)
+
+        val calculator = DominatorCalculator()
+        codeAttribute.accept(clazz, method, calculator)
+
+        /*
+             ENTRY
+               |
+               0
+               |
+               2
+              / \
+             5   10
+             |   |
+             7   |
+              \ /
+               12
+               |
+               14
+               |
+              EXIT
+         */
+
+        calculator.getPostDominators(ENTRY_NODE_OFFSET) shouldBe setOf(ENTRY_NODE_OFFSET, 0, 2, 12, 14, EXIT_NODE_OFFSET)
+        calculator.getPostDominators(2) shouldBe setOf(2, 12, 14, EXIT_NODE_OFFSET)
+        calculator.getPostDominators(5) shouldBe setOf(5, 7, 12, 14, EXIT_NODE_OFFSET)
+        calculator.getPostDominators(10) shouldBe setOf(10, 12, 14, EXIT_NODE_OFFSET)
+        calculator.getPostDominators(EXIT_NODE_OFFSET) shouldBe setOf(EXIT_NODE_OFFSET)
+
+        calculator.getDominanceFrontier(ENTRY_NODE_OFFSET) shouldBe emptySet()
+        calculator.getDominanceFrontier(2) shouldBe emptySet()
+        calculator.getDominanceFrontier(5) shouldBe setOf(12)
+        calculator.getDominanceFrontier(7) shouldBe setOf(12)
+        calculator.getDominanceFrontier(10) shouldBe setOf(12)
+        calculator.getDominanceFrontier(12) shouldBe emptySet()
+    }
+
+    "Dominance frontiers of a loop" {
+        val code = byteArrayOf(
+            Instruction.OP_BIPUSH, 42, //                        0  bipush 42
+            Instruction.OP_IFICMPNE, 0, 8, //                    2  if_icmpne 10 (+8)
+            Instruction.OP_BIPUSH, 43, //                        5  bipush 43
+            Instruction.OP_GOTO, 0xff.toByte(), 251.toByte(), // 7  goto 2 (-5)
+            Instruction.OP_BIPUSH, 44, //                        10 bipush 44
+            Instruction.OP_RETURN //                             12 return
+        )
+        val clazz = NamedClass("Test")
+        val method = NamedMember("", "()V")
+        val codeAttribute = CodeAttribute(0, 1, 0, code.size, code)
+
+        val calculator = DominatorCalculator()
+        codeAttribute.accept(clazz, method, calculator)
+
+        /*
+             ENTRY
+               |
+               0
+               |
+               2 <--|
+              / \   |
+             |   5  |
+             |   |  |
+             |   7 -|
+              \ /
+               10
+               |
+               12
+               |
+              EXIT
+         */
+
+        calculator.getDominanceFrontier(0) shouldBe emptySet()
+        calculator.getDominanceFrontier(2) shouldBe setOf(2)
+        calculator.getDominanceFrontier(5) shouldBe setOf(2)
+        calculator.getDominanceFrontier(10) shouldBe emptySet()
+
+        calculator.getPostDominators(5) shouldBe setOf(2, 5, 7, 10, 12, EXIT_NODE_OFFSET)
+    }
+
+    "Method without return" - {
+        val code = byteArrayOf(
+            Instruction.OP_BIPUSH, 42, //                        0  bipush 42
+            Instruction.OP_IFICMPNE, 0, 5, //                    2  if_icmpne 7 (+5)
+            Instruction.OP_BIPUSH, 43, //                        5  bipush 43
+            Instruction.OP_GOTO, 0xff.toByte(), 249.toByte() //  7  goto 0 (-7)
+        )
+        val clazz = NamedClass("Test")
+        val method = NamedMember("", "()V")
+        val codeAttribute = CodeAttribute(0, 1, 0, code.size, code)
+
+        val calculator = DominatorCalculator()
+        codeAttribute.accept(clazz, method, calculator)
+
+        "All instructions dominate the unreachable exit" {
+            calculator.dominates(5, EXIT_NODE_OFFSET) shouldBe true
+            calculator.dominates(7, EXIT_NODE_OFFSET) shouldBe true
+        }
+
+        "All instructions post-dominate the instructions that can't return" {
+            calculator.postDominates(5, 7) shouldBe true
+            calculator.postDominates(7, 5) shouldBe true
+        }
+
+        "The exit has no post-dominator information" {
+            shouldThrow<IllegalStateException> {
+                calculator.postDominates(EXIT_NODE_OFFSET, EXIT_NODE_OFFSET)
+            }
+        }
+    }
+
     "Unknown offsets should not have dominators" {
         val code = byteArrayOf(
             Instruction.OP_BIPUSH, 42, // 0  bipush 42
@@ -0,0 +1,131 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.analysis.datastructure.callgraph.Call
+import proguard.analysis.datastructure.callgraph.CallGraph
+import proguard.testutils.ClassPoolBuilder
+import java.nio.file.Paths
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+class ParallelCallResolverTest : FreeSpec({
+
+    val topLevel = Paths.get("src", "test", "resources", "callResolver", "hierarchy")
+    val classPools = ClassPoolBuilder.fromDirectory(topLevel.toFile())
+
+    fun builder(callGraph: CallGraph, vararg visitors: CallVisitor) =
+        CallResolver.Builder(classPools.programClassPool, classPools.libraryClassPool, callGraph, *visitors)
+            .setUseDominatorAnalysis(true)
+            .setEvaluateAllCode(true)
+            .setIncludeSubClasses(true)
+            .setSkipIncompleteCalls(false)
+
+    // The calls of a call graph, independent of their objects.
+    fun calls(callGraph: CallGraph): Set<String> {
+        val calls = callGraph.outgoing.values.flatten().map { "$it ${it.controlFlowDependent} ${it.runtimeTypeDependent}" }
+        calls.size shouldBe callGraph.incoming.values.sumOf { it.size }
+        return calls.toSet()
+    }
+
+    val sequentialCallGraph = CallGraph()
+    var sequentialCallCount = 0
+    classPools.programClassPool.classesAccept(builder(sequentialCallGraph, CallVisitor { sequentialCallCount++ }).build())
+
+    "Given calls that are resolved in parallel with a shared visitor" - {
+        val callGraph = CallGraph.concurrentCallGraph()
+        var callCount = 0
+        val visitor = SynchronizedCallVisitor { callCount++ }
+        classPools.programClassPool.accept(ParallelCallResolver({ builder(callGraph, visitor).build() }, 4))
+
+        "Then the call graph is the same as when resolving them sequentially" {
+            calls(callGraph) shouldBe calls(sequentialCallGraph)
+        }
+
+        "Then the visitor has visited all calls" {
+            callCount shouldBe sequentialCallCount
+        }
+    }
+
+    "Given calls that are resolved in parallel with thread-confined visitors" - {
+        val executor = Executors.newFixedThreadPool(3)
+        val callGraph = CallGraph.concurrentCallGraph()
+        val visitedCalls = mutableListOf<MutableList<Call>>()
+        classPools.programClassPool.accept(
+            ParallelCallResolver(
+                {
+                    val calls = mutableListOf<Call>()
+                    synchronized(visitedCalls) { visitedCalls.add(calls) }
+                    builder(callGraph, CallVisitor { calls.add(it) }).build()
+                },
+                executor,
+                3
+            )
+        )
+        executor.shutdown()
+
+        "Then the call graph is the same as when resolving them sequentially" {
+            calls(callGraph) shouldBe calls(sequentialCallGraph)
+        }
+
+        "Then the visitors have visited all calls" {
+            visitedCalls.sumOf { it.size } shouldBe sequentialCallCount
+        }
+    }
+
+    "Given a visitor that fails" - {
+        "Then the exception is rethrown" {
+            shouldThrow<IllegalStateException> {
+                classPools.programClassPool.accept(
+                    ParallelCallResolver({ builder(CallGraph.concurrentCallGraph(), CallVisitor { throw IllegalStateException() }).build() }, 2)
+                )
+            }
+        }
+    }
+
+    "Given a visitor that fails while other classes are still being analyzed" - {
+        val activeVisitors = AtomicInteger()
+        val visitedCount = AtomicInteger()
+        val failure = IllegalStateException("Test failure")
+        val visitor = CallVisitor {
+            activeVisitors.incrementAndGet()
+            try {
+                if (visitedCount.incrementAndGet() == 3) throw failure
+                Thread.sleep(5)
+            } finally {
+                activeVisitors.decrementAndGet()
+            }
+        }
+
+        val exception = shouldThrow<IllegalStateException> {
+            classPools.programClassPool.accept(ParallelCallResolver({ builder(CallGraph.concurrentCallGraph(), visitor).build() }, 4))
+        }
+
+        "Then the exception is rethrown" {
+            exception shouldBe failure
+        }
+
+        "Then the other threads have stopped analyzing classes" {
+            activeVisitors.get() shouldBe 0
+        }
+    }
+})
@@ -3,9 +3,13 @@ package proguard.analysis
 import io.kotest.core.spec.style.FreeSpec
 import io.kotest.matchers.shouldBe
 import io.kotest.matchers.types.shouldBeInstanceOf
+import proguard.classfile.AccessConstants
+import proguard.classfile.ClassConstants
+import proguard.classfile.VersionConstants
 import proguard.classfile.attribute.Attribute.CODE
 import proguard.classfile.attribute.visitor.AllAttributeVisitor
 import proguard.classfile.attribute.visitor.AttributeNameFilter
+import proguard.classfile.editor.ClassBuilder
 import proguard.classfile.visitor.NamedMethodVisitor
 import proguard.evaluation.BasicInvocationUnit
 import proguard.evaluation.PartialEvaluator
@@ -355,4 +359,149 @@ class PartialEvaluatorTest : FreeSpec({
             stackTopAfterGeneralize.id shouldBe stackTopAfterStringBuilderInit.id
         }
     }
+
+    "Test partial evaluation of subroutines with a reused evaluator" - {
+        val programClass = ClassBuilder(
+            VersionConstants.CLASS_VERSION_1_2,
+            AccessConstants.PUBLIC,
+            "SubroutineClass",
+            ClassConstants.NAME_JAVA_LANG_OBJECT
+        )
+            .addMethod(AccessConstants.PUBLIC or AccessConstants.STATIC, "subroutine", "()I", 50) { code ->
+                val subroutine = code.createLabel()
+                code
+                    .iconst_1()
+                    .istore_0()
+                    .jsr(subroutine)
+                    .iload_0()
+                    .ireturn()
+                    .label(subroutine)
+                    .astore_1()
+                    .iinc(0, 1)
+                    .ret(1)
+            }
+            .addMethod(AccessConstants.PUBLIC or AccessConstants.STATIC, "straight", "(I)I", 50) { code ->
+                code
+                    .iload_0()
+                    .iconst_2()
+                    .iadd()
+                    .istore_0()
+                    .iconst_3()
+                    .istore_1()
+                    .iload_1()
+                    .ireturn()
+            }
+            .programClass
+
+        val particularValueFactory = ParticularValueFactory()
+        val partialEvaluator = PartialEvaluator(particularValueFactory, BasicInvocationUnit(particularValueFactory), false)
+
+        fun evaluate(name: String, descriptor: String) =
+            programClass.methodAccept(name, descriptor, AllAttributeVisitor(AttributeNameFilter(CODE, partialEvaluator)))
+
+        fun checkSubroutine() {
+            // The variable is incremented in the subroutine.
+            partialEvaluator.getVariablesAfter(8).getValue(0).integerValue().value() shouldBe 2
+            partialEvaluator.getVariablesBefore(11).getValue(0).integerValue().value() shouldBe 2
+            partialEvaluator.getStackAfter(5).getTop(0).integerValue().value() shouldBe 2
+            partialEvaluator.getStackBefore(6).getTop(0).integerValue().value() shouldBe 2
+            partialEvaluator.getVariablesAfter(0).toString() shouldBe partialEvaluator.getVariablesBefore(1).toString()
+        }
+
+        "Subroutine" {
+            evaluate("subroutine", "()I")
+            checkSubroutine()
+        }
+
+        "Straight-line code after a subroutine" {
+            evaluate("subroutine", "()I")
+            evaluate("straight", "(I)I")
+
+            partialEvaluator.getStackAfter(0).size() shouldBe 1
+            partialEvaluator.getStackAfter(1).size() shouldBe 2
+            partialEvaluator.getStackBefore(2).size() shouldBe 2
+            partialEvaluator.getVariablesAfter(5).getValue(1).integerValue().value() shouldBe 3
+            partialEvaluator.getStackAfter(6).getTop(0).integerValue().value() shouldBe 3
+        }
+
+        "Subroutine after straight-line code" {
+            evaluate("straight", "(I)I")
+            evaluate("subroutine", "()I")
+            checkSubroutine()
+        }
+    }
+
+    "Test partial evaluation of subroutines in a try block" - {
+        val programClass = ClassBuilder(
+            VersionConstants.CLASS_VERSION_1_2,
+            AccessConstants.PUBLIC,
+            "TryFinallyClass",
+            ClassConstants.NAME_JAVA_LANG_OBJECT
+        )
+            .addMethod(AccessConstants.PUBLIC or AccessConstants.STATIC, "tryFinally", "()I", 50) { code ->
+                val tryStart = code.createLabel()
+                val tryEnd = code.createLabel()
+                val handler = code.createLabel()
+                val subroutine = code.createLabel()
+                val subroutineEnd = code.createLabel()
+                code
+                    .iconst_1()
+                    .istore_0()
+                    .label(tryStart)
+                    .jsr(subroutine)
+                    .iload_0()
+                    .ireturn()
+                    .label(tryEnd)
+                    .label(handler)
+                    .astore_2()
+                    .jsr(subroutine)
+                    .aload_2()
+                    .athrow()
+                    .label(subroutine)
+                    .astore_1()
+                    .iinc(0, 1)
+                    .iload_0()
+                    .istore_3()
+                    .ret(1)
+                    .label(subroutineEnd)
+                    .catchAll(tryStart, tryEnd, handler)
+                    .catchAll(subroutine, subroutineEnd, handler)
+            }
+            .programClass
+
+        val particularValueFactory = ParticularValueFactory()
+        val partialEvaluator = PartialEvaluator(particularValueFactory, BasicInvocationUnit(particularValueFactory), true)
+
+        fun evaluate() =
+            programClass.methodAccept("tryFinally", "()I", AllAttributeVisitor(AttributeNameFilter(CODE, partialEvaluator)))
+
+        // The straight-line instructions in the method body, the exception
+        // handler, and the subroutine, with their successors.
+        val straightLineOffsets = mapOf(0 to 1, 1 to 2, 5 to 6, 7 to 8, 11 to 12, 13 to 14, 14 to 17, 17 to 18, 18 to 19)
+
+        fun checkTryFinally() {
+            straightLineOffsets.forEach { (offset, nextOffset) ->
+                partialEvaluator.getVariablesAfter(offset).toString() shouldBe partialEvaluator.getVariablesBefore(nextOffset).toString()
+                partialEvaluator.getStackAfter(offset).toString() shouldBe partialEvaluator.getStackBefore(nextOffset).toString()
+            }
+
+            // The variable is incremented in the subroutine.
+            partialEvaluator.getStackAfter(5).getTop(0).integerValue().value() shouldBe 2
+
+            // The exception handler may see the variable before and after
+            // the increment.
+            partialEvaluator.getVariablesBefore(7).getValue(0).integerValue().isParticular shouldBe false
+        }
+
+        "Subroutine in a try block" {
+            evaluate()
+            checkTryFinally()
+        }
+
+        "Subroutine in a try block with a reused evaluator" {
+            evaluate()
+            evaluate()
+            checkTryFinally()
+        }
+    }
 })
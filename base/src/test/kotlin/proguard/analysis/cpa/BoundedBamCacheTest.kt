@@ -0,0 +1,85 @@
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.analysis.cpa.bam.BlockAbstraction
+import proguard.analysis.cpa.bam.BoundedBamCache
+import proguard.analysis.cpa.defaults.BreadthFirstWaitlist
+import proguard.analysis.cpa.defaults.DefaultReachedSet
+import proguard.classfile.MethodSignature
+import proguard.testutils.cpa.IntegerAbstractState
+
+class BoundedBamCacheTest : FreeSpec({
+
+    val signature = MethodSignature("a", "test", "()V")
+
+    fun blockAbstraction(stateCount: Int, incomplete: Boolean = false): BlockAbstraction {
+        val reachedSet = DefaultReachedSet()
+        (0 until stateCount).forEach { reachedSet.add(IntegerAbstractState(it)) }
+        val waitlist = BreadthFirstWaitlist()
+        if (incomplete) {
+            waitlist.add(IntegerAbstractState(0))
+        }
+        return BlockAbstraction(reachedSet, waitlist)
+    }
+
+    "The least recently used block abstraction is evicted" {
+        val cache = BoundedBamCache<MethodSignature>(2)
+        cache.put(IntegerAbstractState(1), null, signature, blockAbstraction(1))
+        cache.put(IntegerAbstractState(2), null, signature, blockAbstraction(1))
+        cache.get(IntegerAbstractState(1), null, signature)
+        cache.put(IntegerAbstractState(3), null, signature, blockAbstraction(1))
+
+        cache.size() shouldBe 2
+        (cache.get(IntegerAbstractState(2), null, signature) == null) shouldBe true
+        (cache.get(IntegerAbstractState(1), null, signature) == null) shouldBe false
+        (cache.get(IntegerAbstractState(3), null, signature) == null) shouldBe false
+        cache.hitCount shouldBe 3
+        cache.missCount shouldBe 1
+        cache.evictionCount shouldBe 1
+    }
+
+    "The block abstraction that is the cheapest to recompute is evicted" {
+        val cache = BoundedBamCache<MethodSignature>(2, Long.MAX_VALUE, BoundedBamCache.EvictionPolicy.LEAST_RECOMPUTATION_COST)
+        cache.put(IntegerAbstractState(1), null, signature, blockAbstraction(3))
+        cache.put(IntegerAbstractState(2), null, signature, blockAbstraction(1))
+        cache.put(IntegerAbstractState(3), null, signature, blockAbstraction(2))
+
+        cache.size() shouldBe 2
+        cache.stateCount shouldBe 5
+        (cache.get(IntegerAbstractState(2), null, signature) == null) shouldBe true
+    }
+
+    "The number of reached states is bounded" {
+        val cache = BoundedBamCache<MethodSignature>(Int.MAX_VALUE, 3, BoundedBamCache.EvictionPolicy.LEAST_RECENTLY_USED)
+        cache.put(IntegerAbstractState(1), null, signature, blockAbstraction(2))
+        cache.put(IntegerAbstractState(2), null, signature, blockAbstraction(2))
+
+        cache.size() shouldBe 1
+        cache.stateCount shouldBe 2
+        (cache.get(IntegerAbstractState(1), null, signature) == null) shouldBe true
+    }
+
+    "Incomplete block abstractions are not evicted" {
+        val cache = BoundedBamCache<MethodSignature>(1)
+        cache.put(IntegerAbstractState(1), null, signature, blockAbstraction(1, true))
+        cache.put(IntegerAbstractState(2), null, signature, blockAbstraction(1))
+
+        cache.size() shouldBe 2
+        cache.evictionCount shouldBe 0
+
+        // the block abstraction is evicted once its analysis completes
+        cache.put(IntegerAbstractState(1), null, signature, blockAbstraction(1))
+        cache.size() shouldBe 1
+        (cache.get(IntegerAbstractState(1), null, signature) == null) shouldBe false
+    }
+
+    "Methods without block abstractions are removed" {
+        val cache = BoundedBamCache<MethodSignature>(1)
+        val otherSignature = MethodSignature("b", "test", "()V")
+        cache.put(IntegerAbstractState(1), null, signature, blockAbstraction(1))
+        cache.put(IntegerAbstractState(1), null, otherSignature, blockAbstraction(1))
+
+        cache.allMethods shouldBe setOf(otherSignature)
+    }
+})
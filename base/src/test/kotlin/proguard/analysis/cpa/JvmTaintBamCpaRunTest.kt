@@ -1,18 +1,28 @@
 package proguard.analysis.cpa
 
 import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.collections.shouldContainAll
+import io.kotest.matchers.ints.shouldBeGreaterThan
+import io.kotest.matchers.shouldBe
 import io.kotest.matchers.types.shouldBeInstanceOf
+import proguard.analysis.cpa.bam.ConcurrentBamCache
+import proguard.analysis.cpa.bam.PersistentBamCache
 import proguard.analysis.cpa.defaults.ProgramLocationDependentReachedSet
+import proguard.analysis.cpa.jvm.cfa.JvmCfa
 import proguard.analysis.cpa.jvm.cfa.edges.JvmCfaEdge
 import proguard.analysis.cpa.jvm.cfa.nodes.JvmCfaNode
 import proguard.analysis.cpa.jvm.domain.taint.JvmTaintAbstractState
 import proguard.analysis.cpa.jvm.domain.taint.JvmTaintBamCpaRun
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource
 import proguard.analysis.cpa.jvm.state.heap.HeapModel
 import proguard.analysis.cpa.jvm.util.CfaUtil
 import proguard.analysis.cpa.util.StateNames
 import proguard.classfile.MethodSignature
 import proguard.testutils.ClassPoolBuilder
 import proguard.testutils.JavaSource
+import java.io.File
+import java.nio.ByteBuffer
+import java.util.concurrent.Executors
 
 class JvmTaintBamCpaRunTest : FreeSpec({
 
@@ -58,4 +68,279 @@ class JvmTaintBamCpaRunTest : FreeSpec({
             .getStateByName(StateNames.Jvm)
             .shouldBeInstanceOf<JvmTaintAbstractState>()
     }
+
+    "The parallel analysis computes the same results as the sequential one" {
+        val interproceduralCfa = CfaUtil.createInterproceduralCfaFromClassPool(
+            ClassPoolBuilder.fromSource(
+                JavaSource(
+                    "A.java",
+                    """
+                    class A
+                    {
+
+                        public void main(boolean b)
+                        {
+                            String s = source();
+                            String t = "";
+                            if (b)
+                            {
+                                t = identity(s);
+                            }
+                            sink(t);
+                            sink(identity(""));
+                            sink(recursive(s, 3));
+                            sink(even(5, t));
+                            sink(odd(3, s));
+                            sink(identity(s));
+                        }
+
+                        public static String identity(String s)
+                        {
+                            return s;
+                        }
+
+                        public static String recursive(String s, int n)
+                        {
+                            return n == 0 ? identity(s) : recursive(s, n - 1);
+                        }
+
+                        public static String even(int n, String s)
+                        {
+                            return n == 0 ? s : odd(n - 1, s);
+                        }
+
+                        public static String odd(int n, String s)
+                        {
+                            return n == 0 ? "" : even(n - 1, s);
+                        }
+
+                        public static void sink(String s)
+                        {
+                        }
+
+                        public static String source()
+                        {
+                            return null;
+                        }
+                    }
+                    """.trimIndent()
+                ),
+                javacArguments = listOf("-source", "1.8", "-target", "1.8")
+            ).programClassPool
+        )
+        val mainSignature = interproceduralCfa!!.functionEntryNodes.stream().filter { it.signature.fqn.contains("main") }.findFirst().get().signature
+        val taintSource = JvmTaintSource(MethodSignature("A", "source", "()Ljava/lang/String;"), false, true, setOf(), setOf())
+        val executor = Executors.newFixedThreadPool(4)
+
+        fun run(parallel: Boolean): JvmTaintBamCpaRun<*> {
+            val taintCpaRun = JvmTaintBamCpaRun
+                .Builder()
+                .setCfa(interproceduralCfa)
+                .setMainSignature(mainSignature)
+                .setTaintSources(setOf(taintSource))
+                .setExecutorService(if (parallel) executor else null)
+                .build()
+            taintCpaRun.execute()
+            return taintCpaRun
+        }
+
+        val sequentialRun = run(false)
+        val parallelRun = run(true)
+        executor.shutdown()
+        interproceduralCfa.clear()
+
+        parallelRun.cpa.cache.shouldBeInstanceOf<ConcurrentBamCache<MethodSignature>>()
+        parallelRun.analyzedMethods shouldBe sequentialRun.analyzedMethods
+        parallelRun.cpa.cache.size() shouldBe sequentialRun.cpa.cache.size()
+        for (signature in sequentialRun.analyzedMethods) {
+            parallelRun.cpa.cache.get(signature).map { it.reachedSet.asCollection().toSet() }.toSet() shouldBe
+                sequentialRun.cpa.cache.get(signature).map { it.reachedSet.asCollection().toSet() }.toSet()
+        }
+    }
+
+    "The persisted cache is reused as long as the code doesn't change" {
+        fun createCfa(identityBody: String) = CfaUtil.createInterproceduralCfaFromClassPool(
+            ClassPoolBuilder.fromSource(
+                JavaSource(
+                    "A.java",
+                    """
+                    class A
+                    {
+
+                        public void main()
+                        {
+                            String s = source();
+                            sink(identity(s));
+                            sink(recursive(s, 3));
+                            sink(constant());
+                        }
+
+                        public static String identity(String s)
+                        {
+                            $identityBody
+                        }
+
+                        public static String recursive(String s, int n)
+                        {
+                            return n == 0 ? identity(s) : recursive(s, n - 1);
+                        }
+
+                        public static String constant()
+                        {
+                            return "";
+                        }
+
+                        public static void sink(String s)
+                        {
+                        }
+
+                        public static String source()
+                        {
+                            return null;
+                        }
+                    }
+                    """.trimIndent()
+                ),
+                javacArguments = listOf("-source", "1.8", "-target", "1.8")
+            ).programClassPool
+        )!!
+        val taintSource = JvmTaintSource(MethodSignature("A", "source", "()Ljava/lang/String;"), false, true, setOf(), setOf())
+        val cacheFile = File.createTempFile("bam", ".cache")
+        cacheFile.delete()
+
+        fun run(cfa: JvmCfa, cacheFile: File?): JvmTaintBamCpaRun<*> {
+            val taintCpaRun = JvmTaintBamCpaRun
+                .Builder()
+                .setCfa(cfa)
+                .setMainSignature(cfa.functionEntryNodes.stream().filter { it.signature.fqn.contains("main") }.findFirst().get().signature)
+                .setTaintSources(setOf(taintSource))
+                .setCacheFile(cacheFile)
+                .build()
+            taintCpaRun.execute()
+            return taintCpaRun
+        }
+
+        fun states(run: JvmTaintBamCpaRun<*>) = run.analyzedMethods.associateWith { signature ->
+            run.cpa.cache.get(signature).map { it.reachedSet.asCollection().toSet() }.toSet()
+        }
+
+        try {
+            val cfa = createCfa("return s;")
+            val firstRun = run(cfa, cacheFile)
+            (firstRun.cpa.cache as PersistentBamCache<MethodSignature>).loadedBlockCount shouldBe 0
+            cacheFile.exists() shouldBe true
+
+            val secondRun = run(cfa, cacheFile)
+            val secondCache = secondRun.cpa.cache as PersistentBamCache<MethodSignature>
+            secondCache.loadedBlockCount shouldBeGreaterThan 0
+            secondCache.discardedBlockCount shouldBe 0
+            states(secondRun) shouldBe states(firstRun)
+
+            // corrupt lengths in the cache file only discard the affected block abstractions
+            val validCache = cacheFile.readBytes()
+            val recordOffset = 16 + ByteBuffer.wrap(validCache).getInt(8)
+            fun runCorrupt(offset: Int, value: Int): PersistentBamCache<MethodSignature> {
+                cacheFile.writeBytes(validCache.copyOf().also { ByteBuffer.wrap(it).putInt(offset, value) })
+                val corruptRun = run(cfa, cacheFile)
+                states(corruptRun) shouldBe states(firstRun)
+                return corruptRun.cpa.cache as PersistentBamCache<MethodSignature>
+            }
+            runCorrupt(recordOffset, -1).loadedBlockCount shouldBe 0
+            runCorrupt(recordOffset + 4, Int.MAX_VALUE).loadedBlockCount shouldBeGreaterThan 0
+            cfa.clear()
+
+            // the blocks depending on the changed method are analyzed again
+            val changedCfa = createCfa("return \"\";")
+            val thirdRun = run(changedCfa, cacheFile)
+            val thirdCache = thirdRun.cpa.cache as PersistentBamCache<MethodSignature>
+            thirdCache.loadedBlockCount shouldBeGreaterThan 0
+            thirdCache.discardedBlockCount shouldBeGreaterThan 0
+            // the cache may keep valid blocks that the changed code doesn't reach anymore
+            val thirdStates = states(thirdRun)
+            states(run(changedCfa, null)).forEach { (signature, blocks) -> thirdStates[signature]!! shouldContainAll blocks }
+            changedCfa.clear()
+        } finally {
+            cacheFile.delete()
+        }
+    }
+
+    "The analysis with indexed taint sources computes the same results as with plain sets" {
+        val interproceduralCfa = CfaUtil.createInterproceduralCfaFromClassPool(
+            ClassPoolBuilder.fromSource(
+                JavaSource(
+                    "A.java",
+                    """
+                    class A
+                    {
+
+                        public void main(boolean b)
+                        {
+                            String s = source1();
+                            String t = source2();
+                            sink(b ? identity(s) : t);
+                            sink(identity(s));
+                            sink(recursive(t, 3));
+                        }
+
+                        public static String identity(String s)
+                        {
+                            return s;
+                        }
+
+                        public static String recursive(String s, int n)
+                        {
+                            return n == 0 ? identity(s) : recursive(s, n - 1);
+                        }
+
+                        public static void sink(String s)
+                        {
+                        }
+
+                        public static String source1()
+                        {
+                            return null;
+                        }
+
+                        public static String source2()
+                        {
+                            return null;
+                        }
+                    }
+                    """.trimIndent()
+                ),
+                javacArguments = listOf("-source", "1.8", "-target", "1.8")
+            ).programClassPool
+        )
+        val mainSignature = interproceduralCfa!!.functionEntryNodes.stream().filter { it.signature.fqn.contains("main") }.findFirst().get().signature
+        val taintSources = setOf(
+            JvmTaintSource(MethodSignature("A", "source1", "()Ljava/lang/String;"), false, true, setOf(), setOf()),
+            JvmTaintSource(MethodSignature("A", "source2", "()Ljava/lang/String;"), false, true, setOf(), setOf("A.field"))
+        )
+
+        fun run(heapModel: HeapModel, indexTaintSources: Boolean): JvmTaintBamCpaRun<*> {
+            val taintCpaRun = JvmTaintBamCpaRun
+                .Builder()
+                .setCfa(interproceduralCfa)
+                .setMainSignature(mainSignature)
+                .setTaintSources(taintSources)
+                .setHeapModel(heapModel)
+                .setIndexTaintSources(indexTaintSources)
+                .build()
+            taintCpaRun.execute()
+            return taintCpaRun
+        }
+
+        for (heapModel in listOf(HeapModel.FORGETFUL, HeapModel.TAINT_TREE)) {
+            val plainRun = run(heapModel, false)
+            val indexedRun = run(heapModel, true)
+
+            indexedRun.taintSourceIndex.size() shouldBe 2
+            indexedRun.analyzedMethods shouldBe plainRun.analyzedMethods
+            for (signature in plainRun.analyzedMethods) {
+                indexedRun.cpa.cache.get(signature).map { it.reachedSet.asCollection().toSet() }.toSet() shouldBe
+                    plainRun.cpa.cache.get(signature).map { it.reachedSet.asCollection().toSet() }.toSet()
+            }
+        }
+        interproceduralCfa.clear()
+    }
 })
@@ -0,0 +1,99 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.analysis.cpa.defaults.SetAbstractState
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSource
+import proguard.analysis.cpa.jvm.domain.taint.JvmTaintSourceIndex
+import proguard.classfile.MethodSignature
+import kotlin.random.Random
+
+class JvmTaintBitSetAbstractStateTest : FreeSpec({
+
+    // More sources than fit inline.
+    val sources = (0 until 150).map { JvmTaintSource(MethodSignature("A", "source$it", "()V"), false, true, setOf(), setOf()) }
+    val index = JvmTaintSourceIndex(sources.shuffled(Random(1)).toSet())
+
+    val state1 = index.createState(listOf(sources[1], sources[100]))
+    val state2 = index.createState(listOf(sources[2], sources[140]))
+    val state3 = index.createState(listOf(sources[1], sources[2], sources[100], sources[140]))
+
+    "Empty set is the neutral element" {
+        index.bottom.join(state1) shouldBeSameInstanceAs state1
+        state1.join(index.bottom) shouldBeSameInstanceAs state1
+        state1.join(SetAbstractState.bottom) shouldBeSameInstanceAs state1
+    }
+
+    "Arbitrary sets are correctly joined" {
+        state1.join(state2) shouldBe state3
+        state1.join(state3) shouldBeSameInstanceAs state3
+        state3.join(state1) shouldBeSameInstanceAs state3
+    }
+
+    "Comparison is antisymmetric" {
+        state1.isLessOrEqual(state3) shouldBe true
+        state3.isLessOrEqual(state1) shouldBe false
+        state1.isLessOrEqual(state2) shouldBe false
+    }
+
+    "Sets with a single source are shared" {
+        index.createState(sources[7]) shouldBeSameInstanceAs index.createState(listOf(sources[7]))
+    }
+
+    "Sets behave like plain sets" {
+        state3.size shouldBe 4
+        state3.toList() shouldBe listOf(sources[1], sources[100], sources[140], sources[2])
+        state3 shouldBe setOf(sources[1], sources[2], sources[100], sources[140])
+        setOf(sources[1], sources[2], sources[100], sources[140]) shouldBe state3
+        state3.hashCode() shouldBe setOf(sources[1], sources[2], sources[100], sources[140]).hashCode()
+        state3.contains(sources[3]) shouldBe false
+    }
+
+    "Sets can be mixed with plain sets" {
+        val plainState2 = SetAbstractState(sources[2], sources[140])
+        state1.join(plainState2) shouldBe state3
+        plainState2.join(state1) shouldBe state3
+        state1.isLessOrEqual(SetAbstractState(sources[1], sources[100], sources[5])) shouldBe true
+        plainState2.isLessOrEqual(state3) shouldBe true
+    }
+
+    "Copies can be modified without affecting the original" {
+        val copy = state1.copy()
+        copy.add(sources[3]) shouldBe true
+        copy.remove(sources[100]) shouldBe true
+        copy shouldBe setOf(sources[1], sources[3])
+        state1 shouldBe setOf(sources[1], sources[100])
+    }
+
+    "Sets can be converted to typed arrays" {
+        val array = state3.toTypedArray()
+        array.size shouldBe 4
+        array.toSet() shouldBe state3
+    }
+
+    "Sources that aren't indexed can't be added" {
+        shouldThrow<IllegalArgumentException> {
+            index.bottom.copy().add(JvmTaintSource(MethodSignature("B", "source", "()V"), false, true, setOf(), setOf()))
+        }
+    }
+})
@@ -0,0 +1,184 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.analysis.cpa
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.analysis.cpa.algorithms.CpaAlgorithm
+import proguard.analysis.cpa.algorithms.ParallelCpaAlgorithm
+import proguard.analysis.cpa.defaults.ControllableAbortOperator
+import proguard.analysis.cpa.defaults.DefaultReachedSet
+import proguard.analysis.cpa.defaults.DelegateAbstractDomain
+import proguard.analysis.cpa.defaults.DepthFirstWaitlist
+import proguard.analysis.cpa.defaults.MergeJoinOperator
+import proguard.analysis.cpa.defaults.MergeSepOperator
+import proguard.analysis.cpa.defaults.SimpleCpa
+import proguard.analysis.cpa.defaults.StaticPrecisionAdjustment
+import proguard.analysis.cpa.defaults.StopAlwaysOperator
+import proguard.analysis.cpa.defaults.StopContainedOperator
+import proguard.analysis.cpa.defaults.StopSepOperator
+import proguard.analysis.cpa.interfaces.AbstractState
+import proguard.analysis.cpa.interfaces.MergeOperator
+import proguard.analysis.cpa.interfaces.Precision
+import proguard.analysis.cpa.interfaces.StopOperator
+import proguard.analysis.cpa.interfaces.TransferRelation
+import proguard.testutils.cpa.BoundedAdditiveTransferRelation
+import proguard.testutils.cpa.IntegerAbstractState
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+class ParallelCpaAlgorithmTest : FreeSpec({
+
+    val executor = Executors.newFixedThreadPool(4)
+
+    afterSpec { executor.shutdown() }
+
+    val abstractDomain = DelegateAbstractDomain<IntegerAbstractState>()
+
+    // Every state has two successors, so the waitlist contains independent states.
+    val branchingTransferRelation = TransferRelation { abstractState: AbstractState, _: Precision? ->
+        val value = (abstractState as IntegerAbstractState).v
+        listOf(IntegerAbstractState(minOf(value + 2, 200)), IntegerAbstractState(minOf(value + 3, 200)))
+    }
+
+    val mergeOperators = listOf("join" to MergeJoinOperator(abstractDomain), "sep" to MergeSepOperator())
+    val stopOperators = listOf(
+        "always" to StopAlwaysOperator(),
+        "contained" to StopContainedOperator(),
+        "sep" to StopSepOperator(abstractDomain)
+    )
+
+    fun run(
+        parallel: Boolean,
+        transferRelation: TransferRelation,
+        mergeOperator: MergeOperator,
+        stopOperator: StopOperator,
+        initialReached: List<IntegerAbstractState>,
+        maxBatchSize: Int = 16
+    ): Set<AbstractState> {
+        val waitlist = DepthFirstWaitlist()
+        waitlist.add(IntegerAbstractState(0))
+        val reachedSet = DefaultReachedSet()
+        reachedSet.addAll(initialReached)
+        val cpa = SimpleCpa(abstractDomain, transferRelation, mergeOperator, stopOperator, StaticPrecisionAdjustment())
+        val algorithm = if (parallel) {
+            ParallelCpaAlgorithm(
+                cpa.transferRelation,
+                cpa.mergeOperator,
+                cpa.stopOperator,
+                cpa.precisionAdjustment,
+                executor,
+                maxBatchSize
+            )
+        } else {
+            CpaAlgorithm(cpa)
+        }
+        algorithm.run(reachedSet, waitlist)
+        return reachedSet.toSet()
+    }
+
+    "Given the configurations of the sequential algorithm" - {
+        val transferRelations = listOf(
+            "additive" to BoundedAdditiveTransferRelation(2, 10),
+            "branching" to branchingTransferRelation
+        )
+        val initialReachedSets = listOf(
+            emptyList(),
+            listOf(IntegerAbstractState(0)),
+            listOf(IntegerAbstractState(20))
+        )
+
+        for ((transferName, transferRelation) in transferRelations) {
+            for ((mergeName, mergeOperator) in mergeOperators) {
+                for ((stopName, stopOperator) in stopOperators) {
+                    for (initialReached in initialReachedSets) {
+                        "With $transferName transfer, $mergeName merge, $stopName stop, and initial reached set $initialReached" - {
+                            "Then the parallel algorithm reaches the same fixpoint" {
+                                run(true, transferRelation, mergeOperator, stopOperator, initialReached) shouldBe
+                                    run(false, transferRelation, mergeOperator, stopOperator, initialReached)
+                            }
+
+                            "Then the result doesn't depend on the batch size" {
+                                run(true, transferRelation, mergeOperator, stopOperator, initialReached, 1) shouldBe
+                                    run(true, transferRelation, mergeOperator, stopOperator, initialReached, 1000)
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    "Given successors that take different times to compute" - {
+        val reachedSet = DefaultReachedSet()
+        val concurrentChanges = AtomicInteger()
+
+        // The transfer relation checks that the reached set doesn't change while it runs.
+        val slowTransferRelation = TransferRelation { abstractState: AbstractState, _: Precision? ->
+            val value = (abstractState as IntegerAbstractState).v
+            val sizeBefore = reachedSet.size
+            Thread.sleep(5L * (value % 4))
+            if (reachedSet.size != sizeBefore) {
+                concurrentChanges.incrementAndGet()
+            }
+            listOf(IntegerAbstractState(minOf(value + 2, 60)), IntegerAbstractState(minOf(value + 3, 60)))
+        }
+
+        val waitlist = DepthFirstWaitlist()
+        waitlist.add(IntegerAbstractState(0))
+        ParallelCpaAlgorithm(
+            slowTransferRelation,
+            MergeSepOperator(),
+            StopContainedOperator(),
+            StaticPrecisionAdjustment(),
+            executor,
+            16
+        ).run(reachedSet, waitlist)
+
+        "Then the reached set isn't modified while successors are being computed" {
+            concurrentChanges.get() shouldBe 0
+            reachedSet.toSet() shouldBe run(false, slowTransferRelation, MergeSepOperator(), StopContainedOperator(), emptyList())
+        }
+    }
+
+    "Given an abort operator" - {
+        "When it aborts immediately" - {
+            val waitlist = DepthFirstWaitlist()
+            waitlist.add(IntegerAbstractState(0))
+            val reachedSet = DefaultReachedSet()
+            reachedSet.add(IntegerAbstractState(0))
+            val abortOperator = ControllableAbortOperator()
+            abortOperator.abort = true
+            ParallelCpaAlgorithm(
+                SimpleCpa(
+                    abstractDomain,
+                    branchingTransferRelation,
+                    MergeSepOperator(),
+                    StopContainedOperator(),
+                    StaticPrecisionAdjustment()
+                ),
+                executor
+            ).run(reachedSet, waitlist, abortOperator)
+
+            "Then no successors are computed" {
+                reachedSet.toSet() shouldBe setOf(IntegerAbstractState(0))
+            }
+        }
+    }
+})
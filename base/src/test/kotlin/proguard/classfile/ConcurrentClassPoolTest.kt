@@ -0,0 +1,100 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeInstanceOf
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.visitor.ClassCollector
+import proguard.classfile.visitor.ClassPoolFiller
+import proguard.classfile.visitor.ClassVisitor
+import proguard.util.ListParser
+import proguard.util.NameParser
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class ConcurrentClassPoolTest : FreeSpec({
+
+    fun libraryClass(name: String) = LibraryClass(PUBLIC, name, "java/lang/Object")
+
+    "Given a ConcurrentClassPool that is filled from multiple threads" - {
+        val classPool = ConcurrentClassPool()
+        val classes = (0 until 10000).map { libraryClass("p${it % 13}/C$it") }
+
+        val executor = Executors.newFixedThreadPool(8)
+        classes.chunked(100).forEach { chunk ->
+            executor.submit { chunk.forEach { it.accept(ClassPoolFiller(classPool)) } }
+        }
+        executor.shutdown()
+        executor.awaitTermination(1, TimeUnit.MINUTES)
+
+        "Then it contains all classes" {
+            classPool.size() shouldBe classes.size
+            classes.all { classPool.contains(it) && classPool.getClass(it.name) === it } shouldBe true
+        }
+
+        "Then it visits the classes in sorted order, like a plain class pool" {
+            val visited = mutableListOf<Clazz>()
+            classPool.classesAccept(ClassCollector(visited))
+            visited.map { it.name } shouldBe ClassPool(classes).classes().map { it.name }
+        }
+
+        "Then it visits matching classes by prefix" {
+            val visited = mutableListOf<Clazz>()
+            classPool.classesAccept(ListParser(NameParser()).parse("p7/**"), ClassCollector(visited))
+            visited.map { it.name } shouldBe classes.map { it.name }.filter { it.startsWith("p7/") }.sorted()
+        }
+
+        "Then a refreshed copy is concurrent as well" {
+            val copy = classPool.refreshedCopy()
+            copy.shouldBeInstanceOf<ConcurrentClassPool>()
+            copy.size() shouldBe classes.size
+        }
+    }
+
+    "Given a ConcurrentClassPool with a few classes" - {
+        val classPool = ConcurrentClassPool(listOf(libraryClass("a/A"), libraryClass("b/B"), libraryClass("c/C")))
+
+        "When a visitor adds and removes classes while visiting all classes" - {
+            val visited = mutableListOf<String>()
+            classPool.classesAccept(object : ClassVisitor {
+                override fun visitAnyClass(clazz: Clazz) {
+                    visited.add(clazz.name)
+                    classPool.addClass(libraryClass(clazz.name + "Extra"))
+                    classPool.removeClass("c/C")
+                }
+            })
+
+            "Then it visits a stable snapshot" {
+                visited shouldBe listOf("a/A", "b/B", "c/C")
+            }
+
+            "Then the lookups reflect the changes" {
+                classPool.getClass("a/AExtra").name shouldBe "a/AExtra"
+                classPool.getClass("c/C") shouldBe null
+                classPool.snapshot().map { it.name } shouldBe listOf("a/A", "a/AExtra", "b/B", "b/BExtra", "c/CExtra")
+            }
+        }
+
+        "Then it doesn't contain null" {
+            classPool.contains(null) shouldBe false
+        }
+    }
+})
@@ -0,0 +1,122 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.visitor.ClassCollector
+import proguard.util.ListParser
+import proguard.util.NameParser
+
+class LazyClassPoolTest : FreeSpec({
+
+    fun libraryClass(name: String) = LibraryClass(PUBLIC, name, "java/lang/Object")
+
+    "Given a LazyClassPool with lazy and regular classes" - {
+        val classPool = LazyClassPool()
+        val created = mutableListOf<String>()
+        listOf("a/A", "b/B1", "b/B2", "c/C").forEach { name ->
+            classPool.addLazyClass(name) { created.add(name); libraryClass(name) }
+        }
+        classPool.addLazyClass("d/Skipped") { created.add("d/Skipped"); null }
+        classPool.addClass(libraryClass("e/E"))
+
+        "Then it counts and lists all names as upper bounds, without creating any classes" {
+            classPool.size() shouldBe 6
+            classPool.classNames().asSequence().toList() shouldBe listOf("a/A", "b/B1", "b/B2", "c/C", "d/Skipped", "e/E")
+            created shouldBe emptyList()
+        }
+
+        "When a class is looked up" - {
+            val clazz = classPool.getClass("c/C")
+
+            "Then only that class is created, once" {
+                clazz.name shouldBe "c/C"
+                classPool.getClass("c/C") shouldBe clazz
+                created shouldBe listOf("c/C")
+                classPool.isLazy("c/C") shouldBe false
+            }
+        }
+
+        "When classes are visited with a name filter" - {
+            val visited = mutableListOf<Clazz>()
+            classPool.classesAccept(ListParser(NameParser()).parse("b/**"), ClassCollector(visited))
+
+            "Then only the matching classes are created" {
+                visited.map { it.name } shouldBe listOf("b/B1", "b/B2")
+                created shouldBe listOf("c/C", "b/B1", "b/B2")
+            }
+        }
+
+        "When all classes are visited" - {
+            val visited = mutableListOf<Clazz>()
+            classPool.classesAccept(ClassCollector(visited))
+
+            "Then all remaining classes are created and classes without a result disappear" {
+                visited.map { it.name } shouldBe listOf("a/A", "b/B1", "b/B2", "c/C", "e/E")
+                classPool.size() shouldBe 5
+                classPool.lazyClassCount() shouldBe 0
+                classPool.getClass("d/Skipped") shouldBe null
+            }
+        }
+    }
+
+    "Given a LazyClassPool with a class that turns out to be irrelevant" - {
+        val classPool = LazyClassPool()
+        classPool.addLazyClass("a/A") { libraryClass("a/A") }
+        classPool.addLazyClass("b/Skipped") { null }
+
+        "When retrieving all classes" - {
+            val sizeBefore = classPool.size()
+            val classes = classPool.classes().toList()
+
+            "Then the size is exact afterwards" {
+                sizeBefore shouldBe 2
+                classes.map { it.name } shouldBe listOf("a/A")
+                classPool.size() shouldBe 1
+                classPool.classNames().asSequence().toList() shouldBe listOf("a/A")
+            }
+        }
+    }
+
+    "Given a LazyClassPool with a lazy class" - {
+        val classPool = LazyClassPool()
+        classPool.addLazyClass("a/A") { libraryClass("a/A") }
+
+        "When a regular class with the same name is added" - {
+            val clazz = libraryClass("a/A")
+            classPool.addClass(clazz)
+
+            "Then it replaces the lazy class" {
+                classPool.size() shouldBe 1
+                classPool.getClass("a/A") shouldBe clazz
+            }
+        }
+
+        "When the class is removed" - {
+            classPool.addLazyClass("b/B") { libraryClass("b/B") }
+            val removed = classPool.removeClass("b/B")
+
+            "Then it is returned and no longer in the class pool" {
+                removed.name shouldBe "b/B"
+                classPool.getClass("b/B") shouldBe null
+            }
+        }
+    }
+})
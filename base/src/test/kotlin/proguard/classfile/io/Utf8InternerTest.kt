@@ -0,0 +1,112 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.classfile.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.LibraryClass
+import proguard.classfile.ProgramClass
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.editor.ClassBuilder
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+class Utf8InternerTest : FreeSpec({
+
+    fun write(programClass: ProgramClass): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        programClass.accept(ProgramClassWriter(DataOutputStream(bytes)))
+        return bytes.toByteArray()
+    }
+
+    fun readProgramClass(bytes: ByteArray, interner: Utf8Interner?): ProgramClass {
+        val programClass = ProgramClass()
+        programClass.accept(ProgramClassReader(DataInputStream(ByteArrayInputStream(bytes)), false, interner))
+        return programClass
+    }
+
+    fun readLibraryClass(bytes: ByteArray, interner: Utf8Interner?): LibraryClass {
+        val libraryClass = LibraryClass()
+        libraryClass.accept(LibraryClassReader(DataInputStream(ByteArrayInputStream(bytes)), false, false, null, interner))
+        return libraryClass
+    }
+
+    fun classBytes(name: String) = write(
+        ClassBuilder(CLASS_VERSION_1_8, PUBLIC, name, "java/lang/Object")
+            .addMethod(PUBLIC, "greet", "()Ljava/lang/String;", 10) {
+                it.ldc("Grüße \u0000 😀").areturn()
+            }
+            .programClass
+    )
+
+    val bytesA = classBytes("p/A")
+    val bytesB = classBytes("p/B")
+
+    "Given classes that are read with a shared interner" - {
+        val interner = Utf8Interner()
+        val classA = readProgramClass(bytesA, interner)
+        val classB = readProgramClass(bytesB, interner)
+        val libraryClass = readLibraryClass(bytesB, interner)
+
+        "Then identical strings are shared" {
+            classA.superName shouldBeSameInstanceAs classB.superName
+            libraryClass.superName shouldBeSameInstanceAs classA.superName
+            classA.findMethod("greet", null).getDescriptor(classA) shouldBeSameInstanceAs
+                classB.findMethod("greet", null).getDescriptor(classB)
+        }
+
+        "Then different strings remain different" {
+            classA.name shouldBe "p/A"
+            classB.name shouldBe "p/B"
+            libraryClass.name shouldBe "p/B"
+        }
+
+        "Then the classes are written back identically" {
+            write(classA) shouldBe bytesA
+            write(classB) shouldBe bytesB
+        }
+    }
+
+    "Given an interner with a maximum size" - {
+        val interner = Utf8Interner(2)
+        val bytes = "xaby".toByteArray()
+
+        "Then it decodes the given ranges of bytes" {
+            interner.intern(bytes, 1, 2) shouldBe "ab"
+            interner.intern(bytes, 0, 0) shouldBe ""
+        }
+
+        "Then it returns the same instance for the same bytes" {
+            interner.intern(bytes, 1, 2) shouldBeSameInstanceAs interner.intern("ab".toByteArray(), 0, 2)
+        }
+
+        "Then it stops adding strings at its maximum size" {
+            interner.intern(bytes, 0, 4) shouldBe "xaby"
+            interner.size() shouldBe 2
+        }
+
+        "Then it can be cleared" {
+            interner.clear()
+            interner.size() shouldBe 0
+        }
+    }
+})
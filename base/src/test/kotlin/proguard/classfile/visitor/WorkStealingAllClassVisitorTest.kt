@@ -0,0 +1,114 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.classfile.visitor
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.ints.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.ClassPool
+import proguard.classfile.Clazz
+import proguard.classfile.ConcurrentClassPool
+import proguard.classfile.LazyClassPool
+import proguard.classfile.LibraryClass
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicInteger
+
+class WorkStealingAllClassVisitorTest : FreeSpec({
+
+    val forkJoinPool = ForkJoinPool(4)
+
+    afterSpec { forkJoinPool.shutdown() }
+
+    val classes = (0 until 5000).map { LibraryClass(PUBLIC, "p${it % 17}/C$it", "java/lang/Object") }
+
+    "Given a class pool with many classes" - {
+        "When visiting it in parallel" - {
+            val visited = Collections.newSetFromMap(ConcurrentHashMap<Clazz, Boolean>())
+            val createdVisitors = AtomicInteger()
+            val visitor = WorkStealingAllClassVisitor(
+                {
+                    createdVisitors.incrementAndGet()
+                    ClassVisitor { clazz -> visited.add(clazz) }
+                },
+                forkJoinPool,
+                100
+            )
+
+            ClassPool(classes).accept(visitor)
+            ConcurrentClassPool(classes).accept(visitor)
+
+            "Then every class is visited" {
+                visited shouldBe classes.toSet()
+            }
+
+            "Then the counters reflect the visits" {
+                visitor.visitedClassCount shouldBe 2L * classes.size
+                visitor.chunkCount shouldBe 2L * 64
+                visitor.workerTimes.values.all { it >= 0 } shouldBe true
+                visitor.workerTimes.size shouldBeLessThanOrEqual 4
+            }
+
+            "Then the class visitors are reused across calls" {
+                createdVisitors.get() shouldBeLessThanOrEqual 4
+            }
+
+            "Then the counters can be reset" {
+                visitor.resetStatistics()
+                visitor.visitedClassCount shouldBe 0L
+                visitor.workerTimes shouldBe emptyMap()
+            }
+        }
+
+        "When a class visitor fails" - {
+            val failure = IllegalStateException("Test failure")
+            val visitor = WorkStealingAllClassVisitor(
+                {
+                    ClassVisitor { clazz -> if (clazz.name.endsWith("/C1000")) throw failure }
+                },
+                forkJoinPool,
+                10
+            )
+
+            "Then the failure is rethrown" {
+                val exception = shouldThrow<IllegalStateException> { ClassPool(classes).accept(visitor) }
+                generateSequence<Throwable>(exception) { it.cause }.any { it === failure } shouldBe true
+            }
+        }
+    }
+
+    "Given a lazy class pool with classes that turn out to be irrelevant" - {
+        val lazyClassPool = LazyClassPool()
+        classes.forEachIndexed { index, clazz ->
+            lazyClassPool.addLazyClass(clazz.name) { if (index % 10 == 0) null else clazz }
+        }
+
+        "When visiting it in parallel" - {
+            val visited = Collections.newSetFromMap(ConcurrentHashMap<Clazz, Boolean>())
+            lazyClassPool.accept(WorkStealingAllClassVisitor({ ClassVisitor { clazz -> visited.add(clazz) } }, forkJoinPool, 100))
+
+            "Then only the created classes are visited" {
+                visited shouldBe classes.filterIndexed { index, _ -> index % 10 != 0 }.toSet()
+            }
+        }
+    }
+})
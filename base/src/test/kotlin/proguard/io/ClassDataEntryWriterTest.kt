@@ -0,0 +1,140 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.ClassPool
+import proguard.classfile.ProgramClass
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.io.ProgramClassWriter
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.OutputStream
+import java.io.PrintWriter
+import java.util.concurrent.Executors
+
+class ClassDataEntryWriterTest : FreeSpec({
+
+    val executor = Executors.newFixedThreadPool(4)
+
+    afterSpec { executor.shutdown() }
+
+    val classPool = ClassPool()
+    (0 until 50).forEach { index ->
+        classPool.addClass(
+            ClassBuilder(CLASS_VERSION_1_8, PUBLIC, "p/Class$index", "java/lang/Object")
+                .addMethod(PUBLIC, "method$index", "()V", 10) { it.return_() }
+                .programClass
+        )
+    }
+
+    // A class that has been renamed.
+    classPool.addClass("p/OldName", ClassBuilder(CLASS_VERSION_1_8, PUBLIC, "p/NewName", "java/lang/Object").programClass)
+
+    fun serialize(programClass: ProgramClass): List<Byte> {
+        val bytes = ByteArrayOutputStream()
+        programClass.accept(ProgramClassWriter(DataOutputStream(bytes)))
+        return bytes.toByteArray().asList()
+    }
+
+    // A writer that records the entries that it receives, in order.
+    class RecordingDataEntryWriter : DataEntryWriter {
+        val entries = mutableListOf<Pair<String, List<Byte>>>()
+        var closed = false
+
+        override fun createDirectory(dataEntry: DataEntry) = true
+
+        override fun sameOutputStream(dataEntry1: DataEntry, dataEntry2: DataEntry) = false
+
+        override fun createOutputStream(dataEntry: DataEntry): OutputStream = object : ByteArrayOutputStream() {
+            override fun close() {
+                entries.add(dataEntry.name to toByteArray().asList())
+            }
+        }
+
+        override fun close() {
+            closed = true
+        }
+
+        override fun println(pw: PrintWriter, prefix: String) {}
+    }
+
+    // Writes all classes, the renamed class, an unknown class, and some
+    // resources in between.
+    fun write(classDataEntryWriter: (DataEntryWriter) -> ClassDataEntryWriter): RecordingDataEntryWriter {
+        val recordingWriter = RecordingDataEntryWriter()
+        val writer = classDataEntryWriter(recordingWriter)
+        (0 until 50).forEach { index ->
+            writer.createOutputStream(DummyDataEntry(null, "p/Class$index.class", 0, false))
+            if (index % 10 == 9) {
+                writer.createOutputStream(DummyDataEntry(null, "resource$index.txt", 0, false)).use {
+                    it.write(index)
+                }
+            }
+        }
+        writer.createOutputStream(DummyDataEntry(null, "p/OldName.class", 0, false))
+        writer.createOutputStream(DummyDataEntry(null, "p/Unknown.class", 0, false))
+        writer.close()
+        return recordingWriter
+    }
+
+    val sequentialWriter = write { ClassDataEntryWriter(classPool, it) }
+
+    "Given classes that are written sequentially" - {
+        "Then the entries have the right names and contents" {
+            val expectedEntries = mutableListOf<Pair<String, List<Byte>>>()
+            (0 until 50).forEach { index ->
+                expectedEntries.add("p/Class$index.class" to serialize(classPool.getClass("p/Class$index") as ProgramClass))
+                if (index % 10 == 9) {
+                    expectedEntries.add("resource$index.txt" to listOf(index.toByte()))
+                }
+            }
+            expectedEntries.add("p/NewName.class" to serialize(classPool.getClass("p/OldName") as ProgramClass))
+
+            sequentialWriter.entries shouldBe expectedEntries
+        }
+    }
+
+    "Given classes that are serialized in parallel" - {
+        listOf(1, 4, 1000).forEach { maxPendingClasses ->
+            "When the maximum number of pending classes is $maxPendingClasses" - {
+                val parallelWriter = write { ClassDataEntryWriter(classPool, it, executor, maxPendingClasses) }
+
+                "Then the entries are identical to the sequentially written entries" {
+                    parallelWriter.entries shouldBe sequentialWriter.entries
+                }
+
+                "Then the delegate writer is closed" {
+                    parallelWriter.closed shouldBe true
+                }
+            }
+        }
+    }
+
+    "Given an invalid maximum number of pending classes" - {
+        "Then the writer can't be created" {
+            shouldThrow<IllegalArgumentException> {
+                ClassDataEntryWriter(classPool, RecordingDataEntryWriter(), executor, 0)
+            }
+        }
+    }
+})
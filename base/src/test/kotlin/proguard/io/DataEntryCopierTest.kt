@@ -0,0 +1,118 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+class DataEntryCopierTest : FreeSpec({
+
+    val contents = mapOf(
+        "assets/deflated.txt" to (0 until 2000).joinToString(",") { (it * 7919 % 1000).toString() }.toByteArray(),
+        "assets/stored.txt" to "Stored".toByteArray(),
+        "assets/empty.txt" to ByteArray(0)
+    )
+
+    // Deflate the input quickly, so compressing it again at the best level
+    // gives different data.
+    val inputFile = File.createTempFile("input", ".jar").apply { deleteOnExit() }
+    inputFile.writeBytes(
+        ByteArrayOutputStream().also { bytes ->
+            ZipOutputStream(bytes).use { zip ->
+                zip.setLevel(Deflater.BEST_SPEED)
+                contents.forEach { (name, content) ->
+                    val entry = ZipEntry(name)
+                    if (name == "assets/stored.txt") {
+                        entry.method = ZipEntry.STORED
+                        entry.size = content.size.toLong()
+                        entry.crc = CRC32().apply { update(content) }.value
+                    }
+                    zip.putNextEntry(entry)
+                    zip.write(content)
+                    zip.closeEntry()
+                }
+            }
+        }.toByteArray()
+    )
+
+    fun copy(copyCompressedData: Boolean, mapFiles: Boolean): File {
+        val outputFile = File.createTempFile("output", ".jar").apply { deleteOnExit() }
+        val writer = ZipWriter(FixedFileWriter(outputFile))
+        JarReader(false, mapFiles, DataEntryCopier(writer, copyCompressedData)).read(FileDataEntry(inputFile))
+        writer.close()
+        return outputFile
+    }
+
+    fun compressedSizes(file: File): Map<String, Long> =
+        ZipFile(file).use { zip -> zip.entries().asSequence().associate { it.name to it.compressedSize } }
+
+    fun readAll(file: File): Map<String, String> =
+        ZipFile(file).use { zip ->
+            zip.entries().asSequence().associate { it.name to zip.getInputStream(it).readBytes().decodeToString() }
+        }
+
+    val expected = contents.mapValues { it.value.decodeToString() }
+    val inputSizes = compressedSizes(inputFile)
+
+    "Given an archive with entries that were deflated at a low level" - {
+        "When copying its mapped entries with compressed data" - {
+            val outputFile = copy(copyCompressedData = true, mapFiles = true)
+
+            "Then the deflated entries keep their original compressed data" {
+                compressedSizes(outputFile)["assets/deflated.txt"] shouldBe inputSizes["assets/deflated.txt"]
+            }
+
+            "Then all entries have the right contents" {
+                readAll(outputFile) shouldBe expected
+            }
+        }
+
+        "When copying its mapped entries without compressed data" - {
+            val outputFile = copy(copyCompressedData = false, mapFiles = true)
+
+            "Then the deflated entries are compressed again" {
+                compressedSizes(outputFile)["assets/deflated.txt"] shouldNotBe inputSizes["assets/deflated.txt"]
+            }
+
+            "Then all entries have the right contents" {
+                readAll(outputFile) shouldBe expected
+            }
+        }
+
+        "When copying its unmapped entries with compressed data" - {
+            val outputFile = copy(copyCompressedData = true, mapFiles = false)
+
+            "Then the deflated entries are compressed again" {
+                compressedSizes(outputFile)["assets/deflated.txt"] shouldNotBe inputSizes["assets/deflated.txt"]
+            }
+
+            "Then all entries have the right contents" {
+                readAll(outputFile) shouldBe expected
+            }
+        }
+    }
+})
@@ -0,0 +1,96 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.LazyClassPool
+import proguard.classfile.LibraryClass
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.io.ProgramClassWriter
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+class LazyLibraryClassReaderTest : FreeSpec({
+
+    fun classBytes(name: String, accessFlags: Int = PUBLIC): ByteArray {
+        val clazz = ClassBuilder(CLASS_VERSION_1_8, accessFlags, name, "java/lang/Object")
+            .addMethod(PUBLIC, "run", "()V", 10) { it.return_() }
+            .programClass
+        val bytes = ByteArrayOutputStream()
+        clazz.accept(ProgramClassWriter(DataOutputStream(bytes)))
+        return bytes.toByteArray()
+    }
+
+    val jarBytes = ByteArrayOutputStream().also { bytes ->
+        JarOutputStream(bytes).use { jar ->
+            (0 until 20).forEach { index ->
+                jar.putNextEntry(JarEntry("p/C$index.class"))
+                jar.write(classBytes("p/C$index"))
+                jar.closeEntry()
+            }
+            jar.putNextEntry(JarEntry("p/Hidden.class"))
+            jar.write(classBytes("p/Hidden", 0))
+            jar.closeEntry()
+        }
+    }.toByteArray()
+    val jarFile = File.createTempFile("lazy", ".jar").apply { deleteOnExit() }
+    jarFile.writeBytes(jarBytes)
+
+    fun reader(classPool: LazyClassPool) = ClassFilter(LazyLibraryClassReader(classPool, true, true, null))
+
+    "Given a library jar that is mapped in memory" - {
+        val classPool = LazyClassPool()
+        FileSource(jarFile).pumpDataEntries(
+            DataEntryReaderFactory(false, true).createDataEntryReader(ClassPathEntry(jarFile, false), reader(classPool))
+        )
+
+        "Then its classes are only indexed" {
+            classPool.size() shouldBe 21
+            classPool.lazyClassCount() shouldBe 21
+        }
+
+        "Then a class is parsed when it is looked up" {
+            val clazz = classPool.getClass("p/C7") as LibraryClass
+            clazz.superClassName shouldBe "java/lang/Object"
+            clazz.methods.map { it.name } shouldBe listOf("run")
+            classPool.lazyClassCount() shouldBe 20
+        }
+
+        "Then a non-public class disappears when it is parsed" {
+            classPool.getClass("p/Hidden") shouldBe null
+            classPool.size() shouldBe 20
+        }
+    }
+
+    "Given a library jar that is read as a stream" - {
+        val classPool = LazyClassPool()
+        JarReader(reader(classPool)).read(StreamingDataEntry(jarFile.name, ByteArrayInputStream(jarBytes)))
+
+        "Then its classes are parsed right away" {
+            classPool.lazyClassCount() shouldBe 0
+            classPool.size() shouldBe 20
+        }
+    }
+})
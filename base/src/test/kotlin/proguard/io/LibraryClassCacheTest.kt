@@ -0,0 +1,144 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import proguard.classfile.AccessConstants.PRIVATE
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.ClassPool
+import proguard.classfile.LibraryClass
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.io.ProgramClassWriter
+import proguard.classfile.visitor.ClassPoolFiller
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.nio.file.Files
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+class LibraryClassCacheTest : FreeSpec({
+
+    fun classBytes(index: Int): ByteArray {
+        val clazz = ClassBuilder(CLASS_VERSION_1_8, PUBLIC, "p/C$index", if (index == 0) "java/lang/Object" else "p/C${index - 1}")
+            .addInterface("java/io/Serializable")
+            .addField(PUBLIC, "field$index", "I")
+            .addField(PRIVATE, "hidden", "J")
+            .addMethod(PUBLIC, "method", "(Ljava/lang/String;)V", 10) { it.return_() }
+            .programClass
+        val bytes = ByteArrayOutputStream()
+        clazz.accept(ProgramClassWriter(DataOutputStream(bytes)))
+        return bytes.toByteArray()
+    }
+
+    val jarFile = File.createTempFile("library", ".jar").apply { deleteOnExit() }
+    JarOutputStream(jarFile.outputStream()).use { jar ->
+        (0 until 50).forEach { index ->
+            jar.putNextEntry(JarEntry("p/C$index.class"))
+            jar.write(classBytes(index))
+            jar.closeEntry()
+        }
+    }
+
+    val cacheDirectory = Files.createTempDirectory("LibraryClassCacheTest").toFile().apply { deleteOnExit() }
+    val cache = LibraryClassCache(cacheDirectory)
+    val classPathEntry = ClassPathEntry(jarFile, false)
+
+    // Reads the library, counting the readers that actually parse the jar.
+    fun read(): Pair<ClassPool, Int> {
+        val classPool = ClassPool()
+        var readerCount = 0
+        val reader = DataEntryReaderFactory(false).createCachingDataEntryReader(
+            classPathEntry,
+            { classVisitor ->
+                readerCount++
+                ClassFilter(ClassReader(true, true, true, false, null, classVisitor))
+            },
+            "public classes and members",
+            ClassPoolFiller(classPool),
+            cache
+        )
+        FileSource(jarFile).pumpDataEntries(reader)
+        return classPool to readerCount
+    }
+
+    "Given a library jar" - {
+        val (parsedPool, parsedReaderCount) = read()
+        val (cachedPool, cachedReaderCount) = read()
+
+        "Then it is only parsed the first time" {
+            parsedReaderCount shouldBe 1
+            cachedReaderCount shouldBe 0
+            cacheDirectory.list()!!.size shouldBe 1
+        }
+
+        "Then the cached classes contain the same data as the parsed classes" {
+            cachedPool.classNames().asSequence().toList() shouldBe parsedPool.classNames().asSequence().toList()
+            parsedPool.classes().forEach { parsed ->
+                parsed as LibraryClass
+                val cached = cachedPool.getClass(parsed.name) as LibraryClass
+                cached.u2accessFlags shouldBe parsed.u2accessFlags
+                cached.superClassName shouldBe parsed.superClassName
+                cached.interfaceNames.toList() shouldBe parsed.interfaceNames.toList()
+                cached.fields.map { it.u2accessFlags to it.name + it.descriptor } shouldBe
+                    parsed.fields.map { it.u2accessFlags to it.name + it.descriptor }
+                cached.methods.map { it.u2accessFlags to it.name + it.descriptor } shouldBe
+                    parsed.methods.map { it.u2accessFlags to it.name + it.descriptor }
+            }
+        }
+
+        "When the jar changes" - {
+            JarOutputStream(jarFile.outputStream()).use { jar ->
+                jar.putNextEntry(JarEntry("p/C0.class"))
+                jar.write(classBytes(0))
+                jar.closeEntry()
+            }
+            val (changedPool, changedReaderCount) = read()
+
+            "Then it is parsed again" {
+                changedReaderCount shouldBe 1
+                changedPool.size() shouldBe 1
+            }
+        }
+    }
+
+    "Given a corrupt cache file with a negative count" - {
+        val (parsedPool, _) = read()
+        cacheDirectory.listFiles()!!.forEach { file ->
+            DataOutputStream(file.outputStream()).use { output ->
+                output.writeInt(0x4c434c43)
+                output.writeInt(1)
+                output.writeInt(-1)
+            }
+        }
+        val (reparsedPool, reparsedReaderCount) = read()
+        val (_, cachedReaderCount) = read()
+
+        "Then the cache file is ignored and the jar is parsed again" {
+            reparsedReaderCount shouldBe 1
+            reparsedPool.classNames().asSequence().toList() shouldBe parsedPool.classNames().asSequence().toList()
+        }
+
+        "Then the cache file is replaced" {
+            cachedReaderCount shouldBe 0
+        }
+    }
+})
@@ -0,0 +1,194 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeInstanceOf
+import proguard.util.ExtensionMatcher
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipException
+import java.util.zip.ZipOutputStream
+
+class MappedZipSourceTest : FreeSpec({
+
+    fun zipBytes(entries: List<Pair<String, ByteArray>>, stored: Set<String> = emptySet()): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        ZipOutputStream(bytes).use { zip ->
+            zip.setComment("A comment")
+            entries.forEach { (name, content) ->
+                val entry = ZipEntry(name)
+                if (name in stored) {
+                    entry.method = ZipEntry.STORED
+                    entry.size = content.size.toLong()
+                    entry.crc = CRC32().apply { update(content) }.value
+                }
+                zip.putNextEntry(entry)
+                zip.write(content)
+                zip.closeEntry()
+            }
+        }
+        return bytes.toByteArray()
+    }
+
+    // Reads the names and contents of all entries, including the ones of
+    // nested archives.
+    fun readAll(dataEntry: DataEntry, jmod: Boolean = false, mapFiles: Boolean = true): Map<String, String> {
+        val contents = linkedMapOf<String, String>()
+        val entryReader = DataEntryReader { entry ->
+            contents[entry.name] = entry.inputStream.readBytes().decodeToString()
+            entry.closeInputStream()
+        }
+        JarReader(
+            jmod, mapFiles,
+            FilteredDataEntryReader(
+                DataEntryNameFilter(ExtensionMatcher(".jar")),
+                JarReader(entryReader),
+                entryReader
+            )
+        ).read(dataEntry)
+        return contents
+    }
+
+    val nestedJar = zipBytes(listOf("nested/a.txt" to "Nested A".toByteArray(), "nested/b.txt" to "Nested B".toByteArray()))
+    val deflatedNestedJar = zipBytes(listOf("deflated/c.txt" to "Deflated C".toByteArray()))
+    val archive = zipBytes(
+        listOf(
+            "dir/" to ByteArray(0),
+            "dir/deflated.txt" to "Hello, ".repeat(100).toByteArray(),
+            "dir/stored.txt" to "Stored".toByteArray(),
+            "lib/stored.jar" to nestedJar,
+            "lib/deflated.jar" to deflatedNestedJar
+        ),
+        stored = setOf("dir/stored.txt", "lib/stored.jar")
+    )
+    val archiveFile = File.createTempFile("mapped", ".jar").apply { deleteOnExit() }
+    archiveFile.writeBytes(archive)
+
+    val expected = mapOf(
+        "dir" to "",
+        "dir/deflated.txt" to "Hello, ".repeat(100),
+        "dir/stored.txt" to "Stored",
+        "nested/a.txt" to "Nested A",
+        "nested/b.txt" to "Nested B",
+        "deflated/c.txt" to "Deflated C"
+    )
+
+    "Given an archive file with stored and deflated entries and nested archives" - {
+        "When reading the entries of the mapped file" - {
+            val entries = MappedZipSource(archiveFile).entries
+
+            "Then they are listed in the order of the archive" {
+                entries.map { it.name } shouldBe listOf("dir", "dir/deflated.txt", "dir/stored.txt", "lib/stored.jar", "lib/deflated.jar")
+                entries.map { it.isDirectory } shouldBe listOf(true, false, false, false, false)
+                entries.map { it.isStored } shouldBe listOf(false, false, true, true, false)
+            }
+
+            "Then the stored data are available without copying" {
+                val data = entries[2].compressedData
+                data.isReadOnly shouldBe true
+                ByteArray(data.remaining()).also { data.get(it) }.decodeToString() shouldBe "Stored"
+            }
+        }
+
+        "When reading it with a mapping JarReader" - {
+            val contents = readAll(FileDataEntry(archiveFile))
+
+            "Then all entries, including the ones of nested archives, have the right contents" {
+                contents shouldBe expected
+            }
+
+            "Then the result is the same as when reading it as a zip file" {
+                contents shouldBe readAll(FileDataEntry(archiveFile), mapFiles = false)
+            }
+        }
+
+        "When reading the entries of the stored nested archive" - {
+            val nestedEntry = MappedZipSource(archiveFile).entries.single { it.name == "lib/stored.jar" }
+            val nestedEntries = MappedZipSource(nestedEntry).entries
+
+            "Then they are mapped as well, with the nested archive as parent" {
+                nestedEntries.forEach {
+                    it.shouldBeInstanceOf<MappedZipDataEntry>()
+                    it.parent shouldBe nestedEntry
+                }
+                nestedEntries.map { it.inputStream.readBytes().decodeToString() } shouldBe listOf("Nested A", "Nested B")
+            }
+        }
+    }
+
+    "Given a jmod file with a header" - {
+        val jmodFile = File.createTempFile("mapped", ".jmod").apply { deleteOnExit() }
+        jmodFile.writeBytes(byteArrayOf('J'.code.toByte(), 'M'.code.toByte(), 1, 0) + archive)
+
+        "When reading it with a mapping JarReader" - {
+            val contents = readAll(FileDataEntry(jmodFile), jmod = true)
+
+            "Then the header is skipped" {
+                contents shouldBe expected
+            }
+        }
+    }
+
+    "Given a nested archive whose central directory claims an entry of 2 GB" - {
+        // Patch the compressed size of the first entry in the central
+        // directory; the local headers remain intact.
+        val corruptJar = nestedJar.copyOf()
+        val directoryOffset = (0 until corruptJar.size - 4).first {
+            corruptJar[it] == 0x50.toByte() && corruptJar[it + 1] == 0x4b.toByte() &&
+                corruptJar[it + 2] == 0x01.toByte() && corruptJar[it + 3] == 0x02.toByte()
+        }
+        byteArrayOf(0, 0, 0, 0x80.toByte()).copyInto(corruptJar, directoryOffset + 20)
+
+        val corruptFile = File.createTempFile("mapped", ".jar").apply { deleteOnExit() }
+        corruptFile.writeBytes(zipBytes(listOf("lib/corrupt.jar" to corruptJar), stored = setOf("lib/corrupt.jar")))
+
+        "When reading the entries of the mapped nested archive" - {
+            val nestedEntry = MappedZipSource(corruptFile).entries.single()
+
+            "Then the invalid size is reported" {
+                shouldThrow<IOException> { MappedZipSource(nestedEntry).entries }
+            }
+        }
+
+        "When reading it with a mapping JarReader" - {
+            val contents = readAll(FileDataEntry(corruptFile))
+
+            "Then it falls back to streaming the nested archive" {
+                contents shouldBe mapOf("nested/a.txt" to "Nested A", "nested/b.txt" to "Nested B")
+            }
+        }
+    }
+
+    "Given a file that isn't an archive" - {
+        val file = File.createTempFile("mapped", ".jar").apply { deleteOnExit() }
+        file.writeBytes(ByteArray(100))
+
+        "When reading it with a mapping JarReader" - {
+            "Then it falls back to reading it as a zip file, which reports the problem" {
+                shouldThrow<ZipException> { readAll(FileDataEntry(file)) }
+            }
+        }
+    }
+})
@@ -0,0 +1,111 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.Executors
+
+class ParallelDirectorySourceTest : FreeSpec({
+
+    val executor = Executors.newFixedThreadPool(4)
+
+    afterSpec { executor.shutdown() }
+
+    val directory = Files.createTempDirectory("ParallelDirectorySourceTest").toFile()
+    directory.deleteOnExit()
+
+    (0 until 40).forEach { index ->
+        val file = File(directory, "package${index % 4}/Class$index.class")
+        file.parentFile.mkdirs()
+        file.writeText("class $index")
+    }
+    File(directory, "large.bin").writeBytes(ByteArray(100_000) { it.toByte() })
+
+    // Reads all entries, returning their names and contents, in order.
+    fun read(source: DataEntrySource): List<Pair<String, String>> {
+        val entries = mutableListOf<Pair<String, String>>()
+        source.pumpDataEntries { dataEntry ->
+            val content = if (dataEntry.isDirectory) "" else {
+                val bytes = dataEntry.inputStream.readBytes()
+                dataEntry.closeInputStream()
+                if (bytes.size > 1000) "${bytes.size} bytes" else String(bytes)
+            }
+            entries.add(dataEntry.name to content)
+        }
+        return entries
+    }
+
+    "Given a directory tree" - {
+        "When reading it in parallel" - {
+            val entries = read(ParallelDirectorySource(directory, executor, null, null, null, 3, 1000))
+
+            "Then it contains the same entries as when reading it sequentially" {
+                entries.sortedBy { it.first } shouldBe read(DirectorySource(directory)).sortedBy { it.first }
+            }
+
+            "Then the entries are sorted with the directory first" {
+                entries.first().first shouldBe directory.name
+                entries.drop(1) shouldBe entries.drop(1).sortedBy { it.first }
+            }
+        }
+
+        "When reading it again with the index of a previous run" - {
+            val index = DirectoryIndex()
+            read(ParallelDirectorySource(directory, executor, null, index, null))
+
+            val indexFile = File.createTempFile("directory", ".index")
+            indexFile.deleteOnExit()
+            index.write(indexFile)
+
+            val changedFile = File(directory, "package1/Class1.class")
+            changedFile.writeText("changed class 1")
+            val touchedFile = File(directory, "package2/Class2.class")
+            touchedFile.setLastModified(touchedFile.lastModified() - 100_000)
+
+            val previousIndex = DirectoryIndex.read(indexFile)
+            val newIndex = DirectoryIndex()
+            val unchangedNames = mutableListOf<String>()
+            val entries = read(
+                ParallelDirectorySource(directory, executor, previousIndex, newIndex) { unchangedNames.add(it.name) }
+            ).filter { it.second.isNotEmpty() }
+
+            "Then the index is read back completely" {
+                previousIndex.names shouldBe index.names
+                previousIndex.getFileInfo("package3/Class3.class") shouldBe index.getFileInfo("package3/Class3.class")
+            }
+
+            "Then only the changed file is read" {
+                entries shouldBe listOf("package1/Class1.class" to "changed class 1")
+            }
+
+            "Then the unchanged files are passed to the other reader" {
+                unchangedNames.size shouldBe 40
+                unchangedNames.contains("package2/Class2.class") shouldBe true
+            }
+
+            "Then the new index contains all files" {
+                newIndex.names shouldBe index.names
+                newIndex.getFileInfo("package1/Class1.class")!!.size shouldBe 15L
+            }
+        }
+    }
+})
@@ -0,0 +1,204 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import proguard.classfile.AccessConstants.PUBLIC
+import proguard.classfile.ClassPool
+import proguard.classfile.Clazz
+import proguard.classfile.ProgramClass
+import proguard.classfile.VersionConstants.CLASS_VERSION_1_8
+import proguard.classfile.editor.ClassBuilder
+import proguard.classfile.io.ProgramClassWriter
+import proguard.classfile.visitor.ClassCollector
+import proguard.classfile.visitor.ClassPoolFiller
+import proguard.classfile.visitor.ClassVisitor
+import proguard.util.ExtensionMatcher
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+class ParallelJarReaderTest : FreeSpec({
+
+    val executor = Executors.newFixedThreadPool(4)
+
+    afterSpec { executor.shutdown() }
+
+    fun classBytes(name: String, superName: String = "java/lang/Object"): ByteArray {
+        val clazz = ClassBuilder(CLASS_VERSION_1_8, PUBLIC, name, superName).programClass
+        val bytes = ByteArrayOutputStream()
+        clazz.accept(ProgramClassWriter(DataOutputStream(bytes)))
+        return bytes.toByteArray()
+    }
+
+    fun jarBytes(entries: List<Pair<String, ByteArray>>): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        JarOutputStream(bytes).use { jar ->
+            entries.forEach { (name, content) ->
+                jar.putNextEntry(JarEntry(name))
+                jar.write(content)
+                jar.closeEntry()
+            }
+        }
+        return bytes.toByteArray()
+    }
+
+    fun entryReader(classVisitor: ClassVisitor): DataEntryReader =
+        ClassFilter(ClassReader(false, false, false, false, null, classVisitor))
+
+    // A few hundred classes, plus a class that is defined twice, under
+    // different entry names, and a nested jar.
+    val classEntries = (0 until 300).map { "p${it % 7}/C$it.class" to classBytes("p${it % 7}/C$it") }
+    val duplicateEntries = listOf(
+        "dup/A.class" to classBytes("dup/A"),
+        "other/A.class" to classBytes("dup/A", "p0/C0")
+    )
+    val nestedJar = jarBytes((0 until 20).map { "nested/N$it.class" to classBytes("nested/N$it") })
+    val jarFile = File.createTempFile("parallel", ".jar").apply { deleteOnExit() }
+    jarFile.writeBytes(jarBytes(classEntries + duplicateEntries + listOf("lib/nested.jar" to nestedJar)))
+
+    fun readSequentially(dataEntry: DataEntry): List<Clazz> {
+        val classes = mutableListOf<Clazz>()
+        JarReader(
+            FilteredDataEntryReader(
+                DataEntryNameFilter(ExtensionMatcher(".jar")),
+                JarReader(entryReader(ClassCollector(classes))),
+                entryReader(ClassCollector(classes))
+            )
+        ).read(dataEntry)
+        return classes
+    }
+
+    fun readInParallel(dataEntry: DataEntry): List<Clazz> {
+        val classes = mutableListOf<Clazz>()
+        ParallelJarReader(
+            { classVisitor ->
+                FilteredDataEntryReader(
+                    DataEntryNameFilter(ExtensionMatcher(".jar")),
+                    JarReader(entryReader(classVisitor)),
+                    entryReader(classVisitor)
+                )
+            },
+            ClassCollector(classes),
+            executor
+        ).read(dataEntry)
+        return classes
+    }
+
+    "Given a jar file with classes, a duplicate class and a nested jar" - {
+        "When reading it in parallel from the file" - {
+            val sequential = readSequentially(FileDataEntry(jarFile))
+            val parallel = readInParallel(FileDataEntry(jarFile))
+
+            "Then the classes are visited in the same order as when reading it sequentially" {
+                parallel.map { it.name } shouldBe sequential.map { it.name }
+                parallel.size shouldBe 300 + 2 + 20
+            }
+
+            "Then a class pool ends up with the same duplicate class" {
+                val classPool = ClassPool()
+                parallel.forEach { it.accept(ClassPoolFiller(classPool)) }
+                classPool.size() shouldBe 300 + 1 + 20
+                classPool.getClass("dup/A").superName shouldBe "p0/C0"
+            }
+        }
+
+        "When reading it in parallel from a stream" - {
+            val parallel = readInParallel(StreamingDataEntry(jarFile.name, ByteArrayInputStream(jarFile.readBytes())))
+
+            "Then the classes are visited in the same order as when reading it sequentially" {
+                val sequential = readSequentially(StreamingDataEntry(jarFile.name, ByteArrayInputStream(jarFile.readBytes())))
+                parallel.map { it.name } shouldBe sequential.map { it.name }
+            }
+        }
+
+        "When reading it with a bound on the pending entries" - {
+            val classes = mutableListOf<Clazz>()
+            ParallelJarReader(false, { entryReader(it) }, ClassCollector(classes), executor, 1)
+                .read(FileDataEntry(jarFile))
+
+            "Then all classes of the top-level jar are still visited in order" {
+                classes.map { it.name } shouldBe (classEntries + duplicateEntries).map { (name, _) -> name.removeSuffix(".class") }
+                    .map { if (it == "other/A") "dup/A" else it }
+            }
+        }
+
+        "When an entry reader fails" - {
+            val failure = IOException("Test failure")
+            val reader = ParallelJarReader(
+                { classVisitor ->
+                    DataEntryReader { dataEntry ->
+                        if (dataEntry.name == "p3/C10.class") throw failure
+                        entryReader(classVisitor).read(dataEntry)
+                    }
+                },
+                ClassCollector(mutableListOf<Clazz>()),
+                executor
+            )
+
+            "Then the failure is rethrown" {
+                shouldThrow<IOException> { reader.read(FileDataEntry(jarFile)) } shouldBeSameInstanceAs failure
+            }
+        }
+    }
+
+    "Given a jar file that is read in parallel" - {
+        "When the class visitor fails while other entries are still being read" - {
+            val failure = IllegalStateException("Test failure")
+            val activeReaders = AtomicInteger()
+            val reader = ParallelJarReader(
+                { classVisitor ->
+                    DataEntryReader { dataEntry ->
+                        activeReaders.incrementAndGet()
+                        try {
+                            Thread.sleep(5)
+                            entryReader(classVisitor).read(dataEntry)
+                        } finally {
+                            activeReaders.decrementAndGet()
+                        }
+                    }
+                },
+                ClassVisitor { throw failure },
+                executor
+            )
+
+            "Then the failure is rethrown once no entry is being read from the closed jar anymore" {
+                shouldThrow<IllegalStateException> { reader.read(FileDataEntry(jarFile)) } shouldBeSameInstanceAs failure
+                activeReaders.get() shouldBe 0
+            }
+        }
+    }
+
+    "Given the classes read in parallel" - {
+        val parallel = readInParallel(FileDataEntry(jarFile))
+
+        "Then they are fully parsed program classes" {
+            parallel.all { it is ProgramClass && it.superName != null } shouldBe true
+        }
+    }
+})
@@ -0,0 +1,80 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+class ParallelTaskTest : FreeSpec({
+
+    "Given a task that is running and a task that hasn't started" - {
+        val executor = Executors.newSingleThreadExecutor()
+        val started = CountDownLatch(1)
+        val running = AtomicBoolean()
+        val runCount = AtomicInteger()
+
+        val runningTask = ParallelTask.submit(executor) {
+            running.set(true)
+            started.countDown()
+            Thread.sleep(200)
+            running.set(false)
+            runCount.incrementAndGet()
+        }
+        val pendingTask = ParallelTask.submit(executor) { runCount.incrementAndGet() }
+
+        started.await()
+        ParallelTask.cancelAll(listOf(runningTask, pendingTask))
+        executor.shutdown()
+
+        "Then cancelling waits until the running task has finished" {
+            running.get() shouldBe false
+            runCount.get() shouldBe 1
+        }
+
+        "Then the pending task never runs" {
+            executor.awaitTermination(1, TimeUnit.SECONDS)
+            runCount.get() shouldBe 1
+            shouldThrow<CancellationException> { pendingTask.get() }
+        }
+    }
+
+    "Given a task that fails" - {
+        val executor = Executors.newSingleThreadExecutor()
+        val failure = IllegalStateException("Test failure")
+        val task = ParallelTask.submit<Int>(executor) { throw failure }
+
+        "Then its failure is reported" {
+            val exception = shouldThrow<ExecutionException> { task.get() }
+            exception.cause shouldBe failure
+        }
+
+        "Then cancelling it returns" {
+            ParallelTask.cancelAll(listOf(task))
+            executor.shutdown()
+        }
+    }
+})
@@ -0,0 +1,91 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.util.concurrent.Executors
+import java.util.zip.ZipInputStream
+import kotlin.random.Random
+
+class ParallelZipWriterTest : FreeSpec({
+
+    val executor = Executors.newFixedThreadPool(4)
+
+    afterSpec { executor.shutdown() }
+
+    val random = Random(42)
+    val contents = (0 until 50).associate { index ->
+        "entry$index.bin" to ByteArray(random.nextInt(50_000)) { (random.nextInt(16) + it % 7).toByte() }
+    }
+
+    // Writes the entries, closing some of them in a different order than
+    // the order in which they were opened.
+    fun write(createZipOutput: (OutputStream) -> ZipOutput): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        val zipOutput = createZipOutput(bytes)
+        val openStreams = mutableListOf<OutputStream>()
+        contents.entries.forEachIndexed { index, (name, content) ->
+            val outputStream = zipOutput.createOutputStream(name, index % 4 != 0, 4, 0)
+            for (offset in content.indices step 1000) {
+                outputStream.write(content, offset, minOf(1000, content.size - offset))
+            }
+            openStreams.add(outputStream)
+            if (index % 5 == 4) {
+                openStreams.reversed().forEach { it.close() }
+                openStreams.clear()
+            }
+        }
+        openStreams.forEach { it.close() }
+        zipOutput.close()
+        return bytes.toByteArray()
+    }
+
+    fun readAll(zip: ByteArray): Map<String, List<Byte>> {
+        val entries = mutableMapOf<String, List<Byte>>()
+        ZipInputStream(ByteArrayInputStream(zip)).use { zipInputStream ->
+            while (true) {
+                val entry = zipInputStream.nextEntry ?: break
+                entries[entry.name] = zipInputStream.readBytes().asList()
+            }
+        }
+        return entries
+    }
+
+    val sequentialZip = write { ZipOutput(it, null, 4, false, "Comment") }
+
+    "Given entries that are compressed in parallel" - {
+        listOf(0L, 100_000L, Long.MAX_VALUE).forEach { maxPendingSize ->
+            "When the maximum pending size is $maxPendingSize" - {
+                val parallelZip = write { ZipOutput(it, null, 4, false, "Comment", executor, maxPendingSize) }
+
+                "Then the zip file is identical to the sequentially written zip file" {
+                    parallelZip.asList() shouldBe sequentialZip.asList()
+                }
+
+                "Then the entries have the right contents" {
+                    readAll(parallelZip) shouldBe contents.mapValues { it.value.asList() }
+                }
+            }
+        }
+    }
+})
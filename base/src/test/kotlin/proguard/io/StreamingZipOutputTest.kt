@@ -0,0 +1,102 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipInputStream
+import kotlin.random.Random
+
+class StreamingZipOutputTest : FreeSpec({
+
+    val random = Random(42)
+    val large = ByteArray(3_000_000) { random.nextInt(10).toByte() }
+
+    fun streamingZipOutput(bytes: ByteArrayOutputStream, useZip64: Boolean = false) =
+        ZipOutput(bytes, null, 4, useZip64, null, ZipCompressionPolicy.DEFAULT, null, 0L, true)
+
+    // Writes a large compressed entry that is streamed, while writing
+    // other entries, including a large uncompressed entry.
+    fun write(useZip64: Boolean): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        val zipOutput = streamingZipOutput(bytes, useZip64)
+        val streamed = zipOutput.createOutputStream("streamed.bin", true, 0)
+        val compressed = zipOutput.createOutputStream("compressed.txt", true, 0)
+        val stored = zipOutput.createOutputStream("stored.bin", false, 0)
+        streamed.write(large, 0, 1_000_000)
+        compressed.write("Compressed".toByteArray())
+        stored.write(large)
+        streamed.write(large, 1_000_000, large.size - 1_000_000)
+        compressed.close()
+        stored.close()
+        streamed.close()
+        zipOutput.createOutputStream("last.txt", true, 0).use { it.write("Last".toByteArray()) }
+        zipOutput.close()
+        return bytes.toByteArray()
+    }
+
+    val expected = mapOf(
+        "streamed.bin" to large.asList(),
+        "compressed.txt" to "Compressed".toByteArray().asList(),
+        "stored.bin" to large.asList(),
+        "last.txt" to "Last".toByteArray().asList()
+    )
+
+    listOf(false, true).forEach { useZip64 ->
+        "Given entries that are streamed ${if (useZip64) "in zip64 format" else ""}" - {
+            val zip = write(useZip64)
+
+            "Then they can be read as a zip file" {
+                val file = File.createTempFile("streaming", ".zip").apply { deleteOnExit() }
+                file.writeBytes(zip)
+                ZipFile(file).use { zipFile ->
+                    zipFile.entries().asSequence().associate { it.name to zipFile.getInputStream(it).readBytes().asList() } shouldBe expected
+                    zipFile.getEntry("stored.bin").method shouldBe ZipEntry.STORED
+                }
+            }
+
+            "Then they can be read as a zip stream, in the order of their data" {
+                val entries = linkedMapOf<String, List<Byte>>()
+                ZipInputStream(ByteArrayInputStream(zip)).use { zipInputStream ->
+                    while (true) {
+                        val entry = zipInputStream.nextEntry ?: break
+                        entries[entry.name] = zipInputStream.readBytes().asList()
+                    }
+                }
+                entries.keys.toList() shouldBe listOf("streamed.bin", "compressed.txt", "stored.bin", "last.txt")
+                entries shouldBe expected
+            }
+        }
+    }
+
+    "Given a streamed entry that isn't closed" - {
+        "Then the zip output can't be closed" {
+            val zipOutput = streamingZipOutput(ByteArrayOutputStream())
+            zipOutput.createOutputStream("open.txt", true, 0).write(1)
+            shouldThrow<IOException> { zipOutput.close() }
+        }
+    }
+})
@@ -0,0 +1,145 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package proguard.io
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FreeSpec
+import io.kotest.matchers.shouldBe
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.OutputStream
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import kotlin.random.Random
+
+class ZipCompressionPolicyTest : FreeSpec({
+
+    val executor = Executors.newFixedThreadPool(2)
+
+    afterSpec { executor.shutdown() }
+
+    val text = "Hello, world! ".repeat(1000).toByteArray()
+    val noise = Random(42).nextBytes(10_000)
+    val contents = mapOf(
+        "text.txt" to text,
+        "noise.bin" to noise,
+        "image.png" to text
+    )
+
+    // Writes the entries and returns the methods, compressed sizes, and
+    // contents of the resulting zip entries.
+    fun write(policy: ZipCompressionPolicy, executorService: ExecutorService? = null): Map<String, Triple<Int, Long, List<Byte>>> {
+        val bytes = ByteArrayOutputStream()
+        val zipOutput = ZipOutput(bytes, null, 1, false, null, policy, executorService, 0L)
+        contents.forEach { (name, content) ->
+            zipOutput.createOutputStream(name, true, 0).use { it.write(content) }
+        }
+        zipOutput.close()
+
+        val file = File.createTempFile("policy", ".zip").apply { deleteOnExit() }
+        file.writeBytes(bytes.toByteArray())
+        return ZipFile(file).use { zip ->
+            zip.entries().asSequence().associate {
+                it.name to Triple(it.method, it.compressedSize, zip.getInputStream(it).readBytes().asList())
+            }
+        }
+    }
+
+    "Given the default policy" - {
+        val entries = write(ZipCompressionPolicy.DEFAULT)
+
+        "Then all entries are compressed" {
+            entries.mapValues { it.value.first } shouldBe contents.mapValues { ZipEntry.DEFLATED }
+        }
+
+        "Then the entries have the right contents" {
+            entries.mapValues { it.value.third } shouldBe contents.mapValues { it.value.asList() }
+        }
+    }
+
+    "Given a policy without compression" - {
+        val entries = write(ZipCompressionPolicy.Builder().setLevel(Deflater.NO_COMPRESSION).build())
+
+        "Then the compressed data are larger than the uncompressed data" {
+            (entries.getValue("text.txt").second > text.size) shouldBe true
+        }
+    }
+
+    "Given a policy that stores entries by extension and if they are not smaller" - {
+        val policy = ZipCompressionPolicy.Builder()
+            .setLevel(Deflater.BEST_SPEED)
+            .setStoreIfNotSmaller(true)
+            .setUncompressedExtensions(".png", ".jpg")
+            .build()
+
+        listOf(null, executor).forEach { executorService ->
+            "When writing the entries ${if (executorService == null) "sequentially" else "in parallel"}" - {
+                val entries = write(policy, executorService)
+
+                "Then only the compressible entries are compressed" {
+                    entries.mapValues { it.value.first } shouldBe mapOf(
+                        "text.txt" to ZipEntry.DEFLATED,
+                        "noise.bin" to ZipEntry.STORED,
+                        "image.png" to ZipEntry.STORED
+                    )
+                }
+
+                "Then the entries have the right contents" {
+                    entries.mapValues { it.value.third } shouldBe contents.mapValues { it.value.asList() }
+                }
+            }
+        }
+    }
+
+    "Given a zip writer that overrides the creation of its zip outputs" - {
+        val file = File.createTempFile("writer", ".zip").apply { deleteOnExit() }
+        var createdZipOutputs = 0
+        val zipWriter = object : ZipWriter(FixedFileWriter(file)) {
+            override fun createZipOutput(
+                outputStream: OutputStream,
+                header: ByteArray?,
+                uncompressedAlignment: Int,
+                useZip64: Boolean,
+                comment: String?
+            ): ZipOutput {
+                createdZipOutputs++
+                return super.createZipOutput(outputStream, header, uncompressedAlignment, useZip64, comment)
+            }
+        }
+        zipWriter.createOutputStream(DummyDataEntry(null, "text.txt", 0L, false)).use { it.write(text) }
+        zipWriter.close()
+
+        "Then the writer creates its zip output through the overridden method" {
+            createdZipOutputs shouldBe 1
+        }
+
+        "Then the entries have the right contents" {
+            ZipFile(file).use { zip -> zip.getInputStream(zip.getEntry("text.txt")).readBytes().asList() } shouldBe text.asList()
+        }
+    }
+
+    "Given an invalid compression level" - {
+        "Then the policy can't be built" {
+            shouldThrow<IllegalArgumentException> { ZipCompressionPolicy.Builder().setLevel(10).build() }
+        }
+    }
+})
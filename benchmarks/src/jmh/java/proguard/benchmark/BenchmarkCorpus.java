@@ -0,0 +1,245 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import proguard.classfile.*;
+import proguard.classfile.editor.ClassBuilder;
+import proguard.classfile.io.*;
+import proguard.classfile.util.ClassUtil;
+
+import java.io.*;
+import java.util.*;
+import java.util.jar.*;
+
+/**
+ * This utility class generates a deterministic corpus of synthetic classes
+ * for the benchmarks. The classes form shallow inheritance chains, implement
+ * a handful of shared interfaces, and reference each other through fields,
+ * method invocations and string constants, so reading, writing and
+ * initializing them exercises the same code paths as real applications.
+ */
+public class BenchmarkCorpus
+{
+    /**
+     * The number of classes in the corpus. The benchmarks normalize their
+     * results to this number of operations per invocation.
+     */
+    public static final int CLASS_COUNT = 5000;
+
+    private static final int    INTERFACE_COUNT   = 16;
+    private static final int    CHAIN_LENGTH      = 10;
+    private static final int    PACKAGE_SIZE      = 100;
+    private static final String INTERFACE_PREFIX  = "bench/api/Service";
+    private static final String CLASS_PREFIX      = "bench/impl";
+    private static final String VALUE_METHOD_NAME = "value";
+    private static final String VALUE_METHOD_TYPE = "()I";
+
+
+    /**
+     * Creates a new class pool with the interfaces and classes of the corpus.
+     * The classes are not initialized.
+     */
+    public static ClassPool createProgramClassPool()
+    {
+        ClassPool programClassPool = new ClassPool();
+
+        for (int index = 0; index < INTERFACE_COUNT; index++)
+        {
+            programClassPool.addClass(createInterface(index));
+        }
+
+        for (int index = 0; index < CLASS_COUNT; index++)
+        {
+            programClassPool.addClass(createClass(index));
+        }
+
+        return programClassPool;
+    }
+
+
+    /**
+     * Returns the class files of all classes in the given class pool, in the
+     * iteration order of the class pool.
+     */
+    public static List<byte[]> toClassFiles(ClassPool classPool)
+    {
+        List<byte[]> classFiles = new ArrayList<>(classPool.size());
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        for (Clazz clazz : classPool.classes())
+        {
+            byteArrayOutputStream.reset();
+            clazz.accept(new ProgramClassWriter(new DataOutputStream(byteArrayOutputStream)));
+            classFiles.add(byteArrayOutputStream.toByteArray());
+        }
+
+        return classFiles;
+    }
+
+
+    /**
+     * Parses the given class files into a new class pool of program classes.
+     */
+    public static ClassPool readProgramClassPool(List<byte[]> classFiles)
+    {
+        ClassPool programClassPool = new ClassPool();
+
+        for (byte[] classFile : classFiles)
+        {
+            programClassPool.addClass(readProgramClass(classFile));
+        }
+
+        return programClassPool;
+    }
+
+
+    /**
+     * Parses the given class file into a new program class.
+     */
+    public static ProgramClass readProgramClass(byte[] classFile)
+    {
+        ProgramClass programClass = new ProgramClass();
+        programClass.accept(
+            new ProgramClassReader(
+            new DataInputStream(
+            new ByteArrayInputStream(classFile))));
+
+        return programClass;
+    }
+
+
+    /**
+     * Writes all classes of the given class pool to a jar file.
+     */
+    public static void writeJar(ClassPool classPool, File jarFile) throws IOException
+    {
+        try (JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(jarFile)))
+        {
+            for (Clazz clazz : classPool.classes())
+            {
+                jarOutputStream.putNextEntry(new JarEntry(clazz.getName() + ClassConstants.CLASS_FILE_EXTENSION));
+                clazz.accept(new ProgramClassWriter(new DataOutputStream(jarOutputStream)));
+                jarOutputStream.closeEntry();
+            }
+        }
+    }
+
+
+    // Small utility methods.
+
+    private static ProgramClass createInterface(int index)
+    {
+        return
+            new ClassBuilder(
+                VersionConstants.CLASS_VERSION_1_8,
+                AccessConstants.PUBLIC    |
+                AccessConstants.INTERFACE |
+                AccessConstants.ABSTRACT,
+                interfaceName(index),
+                ClassConstants.NAME_JAVA_LANG_OBJECT)
+
+                .addMethod(
+                    AccessConstants.PUBLIC |
+                    AccessConstants.ABSTRACT,
+                    VALUE_METHOD_NAME,
+                    VALUE_METHOD_TYPE)
+
+                .getProgramClass();
+    }
+
+
+    private static ProgramClass createClass(int index)
+    {
+        String className      = className(index);
+        String superClassName = index % CHAIN_LENGTH == 0 ?
+            ClassConstants.NAME_JAVA_LANG_OBJECT :
+            className(index - 1);
+
+        // Each class points to a pseudo-random other class, so references
+        // cross package boundaries.
+        String targetClassName = className((index * 31 + 7) % CLASS_COUNT);
+        String targetType      = ClassUtil.internalTypeFromClassName(targetClassName);
+
+        return
+            new ClassBuilder(
+                VersionConstants.CLASS_VERSION_1_8,
+                AccessConstants.PUBLIC,
+                className,
+                superClassName)
+
+                .addInterface(interfaceName(index % INTERFACE_COUNT))
+
+                .addField(
+                    AccessConstants.PRIVATE,
+                    "next",
+                    targetType)
+
+                .addField(
+                    AccessConstants.PRIVATE,
+                    "count",
+                    "I")
+
+                .addMethod(
+                    AccessConstants.PUBLIC,
+                    ClassConstants.METHOD_NAME_INIT,
+                    ClassConstants.METHOD_TYPE_INIT,
+                    50,
+                    code -> code
+                        .aload_0()
+                        .invokespecial(superClassName, ClassConstants.METHOD_NAME_INIT, ClassConstants.METHOD_TYPE_INIT)
+                        .return_())
+
+                .addMethod(
+                    AccessConstants.PUBLIC,
+                    VALUE_METHOD_NAME,
+                    VALUE_METHOD_TYPE,
+                    50,
+                    code -> code
+                        .aload_0()
+                        .getfield(className, "next", targetType)
+                        .invokevirtual(targetClassName, VALUE_METHOD_NAME, VALUE_METHOD_TYPE)
+                        .aload_0()
+                        .getfield(className, "count", "I")
+                        .iadd()
+                        .ireturn())
+
+                .addMethod(
+                    AccessConstants.PUBLIC |
+                    AccessConstants.STATIC,
+                    "describe",
+                    "()Ljava/lang/String;",
+                    50,
+                    code -> code
+                        .ldc("Synthetic benchmark class " + index)
+                        .areturn())
+
+                .getProgramClass();
+    }
+
+
+    private static String interfaceName(int index)
+    {
+        return INTERFACE_PREFIX + index;
+    }
+
+
+    private static String className(int index)
+    {
+        return CLASS_PREFIX + index / PACKAGE_SIZE + "/Impl" + index;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import proguard.analysis.CallResolver;
+import proguard.analysis.Metrics;
+import proguard.analysis.datastructure.callgraph.CallGraph;
+import proguard.classfile.ClassPool;
+import proguard.classfile.util.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for resolving the calls of all classes with a single
+ * {@link CallResolver}. The resolver only reads the classes, so the same
+ * class pool is reused across invocations, with a new call graph for each
+ * invocation. Results are normalized per class.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(BenchmarkCorpus.CLASS_COUNT)
+public class CallResolverBenchmark
+{
+    private ClassPool programClassPool;
+    private ClassPool libraryClassPool;
+
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        programClassPool = BenchmarkCorpus.readProgramClassPool(
+                           BenchmarkCorpus.toClassFiles(
+                           BenchmarkCorpus.createProgramClassPool()));
+        libraryClassPool = new ClassPool();
+
+        programClassPool.classesAccept(
+            new ClassReferenceInitializer(programClassPool,
+                                          libraryClassPool));
+        programClassPool.classesAccept(
+            new ClassSuperHierarchyInitializer(programClassPool,
+                                               libraryClassPool));
+        programClassPool.accept(new ClassSubHierarchyInitializer());
+    }
+
+
+    @TearDown(Level.Iteration)
+    public void tearDown()
+    {
+        // Reset the metrics that the resolver collects.
+        Metrics.flush();
+    }
+
+
+    @Benchmark
+    public CallGraph resolveCalls()
+    {
+        CallGraph callGraph = new CallGraph();
+
+        programClassPool.classesAccept(
+            new CallResolver.Builder(programClassPool,
+                                     libraryClassPool,
+                                     callGraph)
+                .setUseDominatorAnalysis(true)
+                .build());
+
+        return callGraph;
+    }
+}
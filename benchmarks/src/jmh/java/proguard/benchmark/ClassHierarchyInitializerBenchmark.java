@@ -0,0 +1,74 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import proguard.classfile.ClassPool;
+import proguard.classfile.util.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for initializing the class hierarchy with
+ * {@link ClassSuperHierarchyInitializer} and {@link ClassSubHierarchyInitializer}.
+ * Both initializers support re-initialization, so the same class pool is
+ * reused across invocations. Results are normalized per class.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(BenchmarkCorpus.CLASS_COUNT)
+public class ClassHierarchyInitializerBenchmark
+{
+    private ClassPool programClassPool;
+    private ClassPool libraryClassPool;
+
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        programClassPool = BenchmarkCorpus.readProgramClassPool(
+                           BenchmarkCorpus.toClassFiles(
+                           BenchmarkCorpus.createProgramClassPool()));
+        libraryClassPool = new ClassPool();
+
+        // The sub-hierarchy is derived from the super-hierarchy.
+        programClassPool.classesAccept(
+            new ClassSuperHierarchyInitializer(programClassPool,
+                                               libraryClassPool));
+    }
+
+
+    @Benchmark
+    public ClassPool initializeSuperHierarchy()
+    {
+        programClassPool.classesAccept(
+            new ClassSuperHierarchyInitializer(programClassPool,
+                                               libraryClassPool));
+
+        return programClassPool;
+    }
+
+
+    @Benchmark
+    public ClassPool initializeSubHierarchy()
+    {
+        programClassPool.accept(new ClassSubHierarchyInitializer());
+
+        return programClassPool;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import proguard.classfile.ClassPool;
+import proguard.classfile.visitor.ClassPoolFiller;
+import proguard.io.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for reading a jar of classes into a class pool with
+ * {@link JarReader} and {@link ClassReader}, both from a file and from a
+ * stream. Results are normalized per class.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(BenchmarkCorpus.CLASS_COUNT)
+public class JarReaderBenchmark
+{
+    private File   jarFile;
+    private byte[] jarBytes;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        jarFile = File.createTempFile("benchmark", ".jar");
+        jarFile.deleteOnExit();
+
+        BenchmarkCorpus.writeJar(BenchmarkCorpus.createProgramClassPool(), jarFile);
+
+        jarBytes = Files.readAllBytes(jarFile.toPath());
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        jarFile.delete();
+    }
+
+
+    @Benchmark
+    public ClassPool readJarFile() throws IOException
+    {
+        ClassPool programClassPool = new ClassPool();
+
+        new FileSource(jarFile).pumpDataEntries(createJarReader(programClassPool));
+
+        return programClassPool;
+    }
+
+
+    @Benchmark
+    public ClassPool readJarStream() throws IOException
+    {
+        ClassPool programClassPool = new ClassPool();
+
+        createJarReader(programClassPool).read(
+            new StreamingDataEntry(jarFile.getName(),
+                                   new ByteArrayInputStream(jarBytes)));
+
+        return programClassPool;
+    }
+
+
+    // Small utility methods.
+
+    private static DataEntryReader createJarReader(ClassPool programClassPool)
+    {
+        return
+            new JarReader(
+            new ClassFilter(
+            new ClassReader(false, false, false, false, null,
+            new ClassPoolFiller(programClassPool))));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * ProGuardCORE -- library to process Java bytecode.
+ *
+ * Copyright (c) 2002-2023 Guardsquare NV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package proguard.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import proguard.classfile.ProgramClass;
+import proguard.classfile.io.ProgramClassWriter;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for parsing classes with {@link proguard.classfile.io.ProgramClassReader}
+ * and serializing them with {@link ProgramClassWriter}. Results are normalized
+ * per class.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(BenchmarkCorpus.CLASS_COUNT)
+public class ProgramClassIOBenchmark
+{
+    private List<byte[]>          classFiles;
+    private List<ProgramClass>    programClasses;
+    private ByteArrayOutputStream byteArrayOutputStream;
+
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        classFiles = BenchmarkCorpus.toClassFiles(BenchmarkCorpus.createProgramClassPool());
+
+        programClasses = new ArrayList<>(classFiles.size());
+        for (byte[] classFile : classFiles)
+        {
+            programClasses.add(BenchmarkCorpus.readProgramClass(classFile));
+        }
+
+        byteArrayOutputStream = new ByteArrayOutputStream(4096);
+    }
+
+
+    @Benchmark
+    public void read(Blackhole blackhole)
+    {
+        for (byte[] classFile : classFiles)
+        {
+            blackhole.consume(BenchmarkCorpus.readProgramClass(classFile));
+        }
+    }
+
+
+    @Benchmark
+    public void write(Blackhole blackhole)
+    {
+        for (ProgramClass programClass : programClasses)
+        {
+            blackhole.consume(write(programClass));
+        }
+    }
+
+
+    @Benchmark
+    public void roundTrip(Blackhole blackhole)
+    {
+        for (byte[] classFile : classFiles)
+        {
+            blackhole.consume(write(BenchmarkCorpus.readProgramClass(classFile)));
+        }
+    }
+
+
+    // Small utility methods.
+
+    private int write(ProgramClass programClass)
+    {
+        byteArrayOutputStream.reset();
+        programClass.accept(new ProgramClassWriter(new DataOutputStream(byteArrayOutputStream)));
+
+        return byteArrayOutputStream.size();
+    }
+}